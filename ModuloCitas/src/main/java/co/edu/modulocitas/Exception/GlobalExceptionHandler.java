@@ -35,4 +35,12 @@ public class GlobalExceptionHandler {
         error.put("mensaje", ex.getMessage());
         return new ResponseEntity<>(error, HttpStatus.CONFLICT);
     }
+
+    @ExceptionHandler(ServicioRemotoNoDisponible.class)
+    public ResponseEntity<Map<String, String>> manejarServicioRemotoNoDisponible(ServicioRemotoNoDisponible ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Servicio no disponible");
+        error.put("mensaje", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
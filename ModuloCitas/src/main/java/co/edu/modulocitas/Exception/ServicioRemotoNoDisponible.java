@@ -0,0 +1,7 @@
+package co.edu.modulocitas.Exception;
+
+public class ServicioRemotoNoDisponible extends RuntimeException {
+    public ServicioRemotoNoDisponible(String message) {
+        super(message);
+    }
+}
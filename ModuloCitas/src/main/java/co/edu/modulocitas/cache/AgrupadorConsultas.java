@@ -0,0 +1,118 @@
+package co.edu.modulocitas.cache;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Junta las consultas individuales de otro microservicio en consultas por lote, como un
+ * DataLoader: la primera clave abre una ventana de unos milisegundos y todas las claves pedidas
+ * durante ella salen juntas en una sola llamada al cargador. Si se juntan {@code maxLote} claves
+ * el lote sale sin esperar. Una clave pedida dos veces en la misma ventana viaja una vez.
+ */
+public class AgrupadorConsultas<K, V> {
+
+    private final long ventanaMs;
+    private final int maxLote;
+    private final Function<Set<K>, Mono<Map<K, V>>> cargador;
+    private Map<K, Sinks.One<V>> pendientes = new LinkedHashMap<>();
+
+    private final AtomicLong consultas = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong claves = new AtomicLong();
+    private final AtomicLong lotesLlenos = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    // El cargador recibe las claves del lote y devuelve las que existen; las que falten terminan vacias
+    public AgrupadorConsultas(Duration ventana, int maxLote, Function<Set<K>, Mono<Map<K, V>>> cargador) {
+        if (maxLote <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo del lote debe ser mayor a 0");
+        }
+        this.ventanaMs = ventana.toMillis();
+        this.maxLote = maxLote;
+        this.cargador = cargador;
+    }
+
+    // Termina vacio si la clave no existe y con el error del lote si no se pudo consultar
+    public Mono<V> obtener(K clave) {
+        return Mono.defer(() -> {
+            consultas.incrementAndGet();
+            Sinks.One<V> respuesta;
+            Map<K, Sinks.One<V>> lleno = null;
+            Map<K, Sinks.One<V>> abierto = null;
+            synchronized (this) {
+                respuesta = pendientes.get(clave);
+                if (respuesta == null) {
+                    respuesta = Sinks.one();
+                    pendientes.put(clave, respuesta);
+                    if (pendientes.size() >= maxLote) {
+                        lleno = pendientes;
+                        pendientes = new LinkedHashMap<>();
+                    } else if (pendientes.size() == 1) {
+                        abierto = pendientes;
+                    }
+                }
+            }
+            if (lleno != null) {
+                lotesLlenos.incrementAndGet();
+                enviar(lleno);
+            } else if (abierto != null) {
+                Map<K, Sinks.One<V>> lote = abierto;
+                Schedulers.parallel().schedule(() -> cerrarVentana(lote), ventanaMs, TimeUnit.MILLISECONDS);
+            }
+            return respuesta.asMono();
+        });
+    }
+
+    public Map<String, Object> estadisticas() {
+        long totalLotes = lotes.get();
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("consultas", consultas.get());
+        estadisticas.put("lotes", totalLotes);
+        estadisticas.put("clavesPorLote", totalLotes == 0 ? 0.0 : (double) claves.get() / totalLotes);
+        // Lotes que salieron antes de cerrar la ventana por llegar a maxLote
+        estadisticas.put("lotesLlenos", lotesLlenos.get());
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("ventanaMs", ventanaMs);
+        estadisticas.put("maxLote", maxLote);
+        return estadisticas;
+    }
+
+    // Si el lote ya salio por estar lleno, otro lote ocupa su lugar y esta ventana no le corresponde
+    private void cerrarVentana(Map<K, Sinks.One<V>> lote) {
+        synchronized (this) {
+            if (pendientes != lote) {
+                return;
+            }
+            pendientes = new LinkedHashMap<>();
+        }
+        enviar(lote);
+    }
+
+    private void enviar(Map<K, Sinks.One<V>> lote) {
+        lotes.incrementAndGet();
+        claves.addAndGet(lote.size());
+        Mono.defer(() -> cargador.apply(new LinkedHashSet<>(lote.keySet())))
+                .defaultIfEmpty(Map.of())
+                .subscribe(valores -> lote.forEach((clave, respuesta) -> {
+                    V valor = valores.get(clave);
+                    if (valor != null) {
+                        respuesta.tryEmitValue(valor);
+                    } else {
+                        respuesta.tryEmitEmpty();
+                    }
+                }), e -> {
+                    errores.incrementAndGet();
+                    lote.values().forEach(respuesta -> respuesta.tryEmitError(e));
+                });
+    }
+}
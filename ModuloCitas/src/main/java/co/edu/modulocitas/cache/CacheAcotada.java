@@ -0,0 +1,137 @@
+package co.edu.modulocitas.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache en memoria con un numero maximo de entradas. Cuando se llena descarta la
+ * entrada usada hace mas tiempo (LRU) y lleva la cuenta de aciertos, fallos y desalojos.
+ */
+public class CacheAcotada<K, V> {
+
+    private final int maxEntradas;
+    private final Map<K, V> entradas;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+
+    // Cambia en cada invalidacion para no guardar valores leidos antes de ella
+    private long generacion;
+
+    public CacheAcotada(int maxEntradas) {
+        if (maxEntradas <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo de la cache debe ser mayor a 0");
+        }
+        this.maxEntradas = maxEntradas;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> mayor) {
+                if (size() > CacheAcotada.this.maxEntradas) {
+                    desalojos.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Devuelve el valor en cache o lo carga; los valores vacios no se guardan
+    public Optional<V> obtener(K clave, Function<K, Optional<V>> cargador) {
+        long generacionLectura;
+        synchronized (entradas) {
+            V valor = entradas.get(clave);
+            if (valor != null) {
+                aciertos.incrementAndGet();
+                return Optional.of(valor);
+            }
+            generacionLectura = generacion;
+        }
+        fallos.incrementAndGet();
+        Optional<V> cargado = cargador.apply(clave);
+        cargado.ifPresent(valor -> {
+            synchronized (entradas) {
+                if (generacion == generacionLectura) {
+                    entradas.put(clave, valor);
+                }
+            }
+        });
+        return cargado;
+    }
+
+    // Como obtener, pero lee todas las claves ausentes con una sola llamada al cargador
+    public Map<K, V> obtenerTodos(Collection<K> claves, Function<List<K>, Map<K, V>> cargador) {
+        Map<K, V> resultado = new HashMap<>();
+        List<K> ausentes = new ArrayList<>();
+        long generacionLectura;
+        synchronized (entradas) {
+            for (K clave : claves) {
+                V valor = entradas.get(clave);
+                if (valor != null) {
+                    resultado.put(clave, valor);
+                } else {
+                    ausentes.add(clave);
+                }
+            }
+            generacionLectura = generacion;
+        }
+        aciertos.addAndGet(resultado.size());
+        if (ausentes.isEmpty()) {
+            return resultado;
+        }
+        fallos.addAndGet(ausentes.size());
+        Map<K, V> cargados = cargador.apply(ausentes);
+        synchronized (entradas) {
+            if (generacion == generacionLectura) {
+                entradas.putAll(cargados);
+            }
+        }
+        resultado.putAll(cargados);
+        return resultado;
+    }
+
+    public void guardar(K clave, V valor) {
+        synchronized (entradas) {
+            entradas.put(clave, valor);
+        }
+    }
+
+    public void invalidar(K clave) {
+        synchronized (entradas) {
+            generacion++;
+            entradas.remove(clave);
+        }
+    }
+
+    public void invalidarTodo() {
+        synchronized (entradas) {
+            generacion++;
+            entradas.clear();
+        }
+    }
+
+    public Map<String, Object> estadisticas() {
+        long totalAciertos = aciertos.get();
+        long totalFallos = fallos.get();
+        long consultas = totalAciertos + totalFallos;
+        int tamano;
+        synchronized (entradas) {
+            tamano = entradas.size();
+        }
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("tamano", tamano);
+        estadisticas.put("maxEntradas", maxEntradas);
+        estadisticas.put("aciertos", totalAciertos);
+        estadisticas.put("fallos", totalFallos);
+        estadisticas.put("desalojos", desalojos.get());
+        estadisticas.put("tasaAciertos", consultas == 0 ? 0.0 : (double) totalAciertos / consultas);
+        return estadisticas;
+    }
+}
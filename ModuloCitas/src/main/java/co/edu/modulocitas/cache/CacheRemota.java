@@ -0,0 +1,147 @@
+package co.edu.modulocitas.cache;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache en memoria para datos de otro microservicio que casi nunca cambian. Tiene un numero
+ * maximo de entradas (LRU) y una vigencia por entrada; los ids que no existen se recuerdan
+ * tambien, con su propia vigencia (normalmente mas corta). Mientras una clave se carga, las
+ * demas peticiones de esa clave esperan la misma llamada en lugar de hacer otra. Un error al
+ * cargar no se guarda: la siguiente peticion lo vuelve a intentar.
+ */
+public class CacheRemota<K, V> {
+
+    private final int maxEntradas;
+    private final long vigenciaNanos;
+    private final long vigenciaAusentesNanos;
+    private final Map<K, Entrada<V>> entradas;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong aciertosAusentes = new AtomicLong();
+    private final AtomicLong compartidas = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    public CacheRemota(int maxEntradas, Duration vigencia, Duration vigenciaAusentes) {
+        if (maxEntradas <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo de la cache debe ser mayor a 0");
+        }
+        this.maxEntradas = maxEntradas;
+        this.vigenciaNanos = vigencia.toNanos();
+        this.vigenciaAusentesNanos = vigenciaAusentes.toNanos();
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> mayor) {
+                if (size() > CacheRemota.this.maxEntradas) {
+                    desalojos.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Termina vacio si el id no existe; el cargador debe terminar vacio en ese caso y con error si no pudo consultar
+    public Mono<V> obtener(K clave, Function<K, Mono<V>> cargador) {
+        Entrada<V> entrada;
+        synchronized (entradas) {
+            entrada = entradas.get(clave);
+            if (entrada != null && entrada.vigente(System.nanoTime())) {
+                contarAcierto(entrada);
+            } else {
+                fallos.incrementAndGet();
+                entrada = new Entrada<>();
+                Entrada<V> nueva = entrada;
+                nueva.valor = Mono.defer(() -> cargador.apply(clave))
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .doOnNext(valor -> {
+                            nueva.ausente = valor.isEmpty();
+                            nueva.expira = System.nanoTime() + (valor.isPresent() ? vigenciaNanos : vigenciaAusentesNanos);
+                        })
+                        .doOnError(e -> {
+                            errores.incrementAndGet();
+                            quitar(clave, nueva);
+                        })
+                        .cache();
+                entradas.put(clave, nueva);
+            }
+        }
+        return entrada.valor.flatMap(Mono::justOrEmpty);
+    }
+
+    public void invalidar(K clave) {
+        synchronized (entradas) {
+            if (entradas.remove(clave) != null) {
+                invalidaciones.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidarTodo() {
+        synchronized (entradas) {
+            invalidaciones.addAndGet(entradas.size());
+            entradas.clear();
+        }
+    }
+
+    public Map<String, Object> estadisticas() {
+        long totalAciertos = aciertos.get() + aciertosAusentes.get() + compartidas.get();
+        long totalFallos = fallos.get();
+        long consultas = totalAciertos + totalFallos;
+        int tamano;
+        synchronized (entradas) {
+            tamano = entradas.size();
+        }
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("tamano", tamano);
+        estadisticas.put("maxEntradas", maxEntradas);
+        estadisticas.put("aciertos", aciertos.get());
+        estadisticas.put("aciertosAusentes", aciertosAusentes.get());
+        // Peticiones que esperaron una carga ya en curso de la misma clave
+        estadisticas.put("compartidas", compartidas.get());
+        estadisticas.put("fallos", totalFallos);
+        estadisticas.put("errores", errores.get());
+        estadisticas.put("desalojos", desalojos.get());
+        estadisticas.put("invalidaciones", invalidaciones.get());
+        estadisticas.put("tasaAciertos", consultas == 0 ? 0.0 : (double) totalAciertos / consultas);
+        return estadisticas;
+    }
+
+    private void contarAcierto(Entrada<V> entrada) {
+        if (entrada.expira == 0) {
+            compartidas.incrementAndGet();
+        } else if (entrada.ausente) {
+            aciertosAusentes.incrementAndGet();
+        } else {
+            aciertos.incrementAndGet();
+        }
+    }
+
+    private void quitar(K clave, Entrada<V> entrada) {
+        synchronized (entradas) {
+            entradas.remove(clave, entrada);
+        }
+    }
+
+    private static final class Entrada<V> {
+
+        private Mono<Optional<V>> valor;
+        // 0 mientras se carga; despues, el instante (System.nanoTime) en que deja de valer
+        private volatile long expira;
+        private volatile boolean ausente;
+
+        boolean vigente(long ahora) {
+            return expira == 0 || ahora - expira < 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package co.edu.modulocitas.config;
+
+import co.edu.modulocitas.service.AgendaDiariaService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Construye la vista materializada de la agenda al arrancar. Hasta que termina, las
+ * consultas de la vista se resuelven en la base de datos.
+ */
+@Component
+@RequiredArgsConstructor
+public class AgendaDiariaInicializador implements ApplicationRunner {
+
+    private final AgendaDiariaService agendaDiariaService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            System.out.println("Vista de agenda construida: " + agendaDiariaService.verificar());
+        } catch (DataAccessException e) {
+            System.err.println("No se pudo construir la vista de agenda: " + e.getMessage());
+        }
+    }
+}
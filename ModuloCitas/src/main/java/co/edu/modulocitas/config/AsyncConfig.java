@@ -0,0 +1,59 @@
+package co.edu.modulocitas.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executor;
+
+// Las tareas periodicas (@Scheduled) usan el planificador por defecto de Spring
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    // Pool para el camino de la peticion: validaciones en paralelo de crearCita y consultas de horarios
+    @Bean
+    public Executor agendaExecutor(@Value("${agenda.ejecutor.hilos:16}") int hilos,
+                                   @Value("${agenda.ejecutor.cola:500}") int cola,
+                                   Environment environment) {
+        return acotado("agenda-", hilos, cola, environment);
+    }
+
+    // Pool propio para los avisos en segundo plano: si se llena no frena ni rechaza las validaciones
+    @Bean
+    public Executor notificacionesExecutor(@Value("${agenda.ejecutor.hilos-notificaciones:8}") int hilos,
+                                           @Value("${agenda.ejecutor.cola-notificaciones:1000}") int cola,
+                                           Environment environment) {
+        return acotado("aviso-", hilos, cola, environment);
+    }
+
+    private static Executor acotado(String prefijo, int hilos, int cola, Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            // Un hilo virtual por tarea; como con el pool, pasadas hilos + cola tareas en curso se rechazan
+            SimpleAsyncTaskExecutor virtual = new SimpleAsyncTaskExecutor(prefijo);
+            virtual.setVirtualThreads(true);
+            return new EjecutorAcotado(virtual, hilos + cola);
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(hilos);
+        executor.setMaxPoolSize(hilos);
+        executor.setQueueCapacity(cola);
+        executor.setThreadNamePrefix(prefijo);
+        executor.initialize();
+        return executor;
+    }
+
+    // Hilos para las llamadas JPA de los servicios reactivos: tantos como conexiones tiene el pool
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(@Value("${agenda.reactivo.hilos-jdbc:10}") int hilos,
+                                   @Value("${agenda.reactivo.cola-jdbc:1000}") int cola) {
+        return Schedulers.newBoundedElastic(hilos, cola, "jdbc");
+    }
+}
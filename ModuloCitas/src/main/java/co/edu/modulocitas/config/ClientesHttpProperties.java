@@ -0,0 +1,31 @@
+package co.edu.modulocitas.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Pools de conexiones de los WebClient hacia usuarios y notificaciones ({@code agenda.http.<cliente>}).
+ * Se validan al arrancar: un valor que falta o que no es positivo impide levantar la aplicacion en vez
+ * de dejar un pool sin conexiones o sin tiempo de espera.
+ */
+@Validated
+@ConfigurationProperties(prefix = "agenda.http")
+public record ClientesHttpProperties(@Valid @NotNull Cliente usuarios,
+                                     @Valid @NotNull Cliente notificaciones) {
+
+    // max-pendientes 0 rechaza en el acto cuando no hay conexion libre
+    public record Cliente(@Positive int maxConexiones,
+                          @PositiveOrZero int maxPendientes,
+                          @Positive long msEsperaConexion,
+                          @Positive long segundosInactividad,
+                          @Positive long segundosVida,
+                          @Positive long segundosDesalojo,
+                          @Positive int msConexion,
+                          @Positive long msRespuesta,
+                          boolean http2) {
+    }
+}
@@ -0,0 +1,50 @@
+package co.edu.modulocitas.config;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limita las tareas en curso de otro ejecutor sin hacer esperar a quien las envia: pasado el
+ * limite, execute lanza RejectedExecutionException igual que un ThreadPoolTaskExecutor con la cola
+ * llena. Con hilos virtuales reemplaza al pool mas su cola; el limite de concurrencia de
+ * SimpleAsyncTaskExecutor bloquearia el hilo de la peticion en lugar de rechazar la tarea.
+ */
+public class EjecutorAcotado implements Executor {
+
+    private final Executor delegado;
+    private final int maxTareas;
+    private final Semaphore permisos;
+
+    public EjecutorAcotado(Executor delegado, int maxTareas) {
+        if (maxTareas <= 0) {
+            throw new IllegalArgumentException("El máximo de tareas debe ser mayor a 0");
+        }
+        this.delegado = delegado;
+        this.maxTareas = maxTareas;
+        this.permisos = new Semaphore(maxTareas);
+    }
+
+    @Override
+    public void execute(Runnable tarea) {
+        if (!permisos.tryAcquire()) {
+            throw new RejectedExecutionException("Hay " + maxTareas + " tareas de la agenda en curso");
+        }
+        try {
+            delegado.execute(() -> {
+                try {
+                    tarea.run();
+                } finally {
+                    permisos.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    public int enCurso() {
+        return maxTareas - permisos.availablePermits();
+    }
+}
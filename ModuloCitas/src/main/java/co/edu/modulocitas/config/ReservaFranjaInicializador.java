@@ -0,0 +1,44 @@
+package co.edu.modulocitas.config;
+
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.impl.IndiceAgenda;
+import co.edu.modulocitas.service.impl.ReservaAgenda;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Las citas guardadas antes de existir reserva_franja no tienen franjas reclamadas. Al arrancar
+ * se reclaman las de hoy en adelante para que la base de datos tambien las proteja.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReservaFranjaInicializador implements ApplicationRunner {
+
+    private final CitaRepository citaRepository;
+    private final ReservaAgenda reservaAgenda;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Cita> pendientes;
+        try {
+            pendientes = citaRepository.buscarSinReservas(LocalDate.now(), IndiceAgenda.ESTADOS_OCUPADOS);
+        } catch (DataAccessException e) {
+            System.err.println("No se pudieron consultar las citas sin franjas reservadas: " + e.getMessage());
+            return;
+        }
+        int reclamadas = 0;
+        for (Cita cita : pendientes) {
+            if (reservaAgenda.reclamar(cita)) {
+                reclamadas++;
+            }
+        }
+        System.out.println("Franjas reclamadas para " + reclamadas + " de " + pendientes.size() + " citas existentes");
+    }
+}
@@ -0,0 +1,34 @@
+package co.edu.modulocitas.config;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Las citas existentes se crearon con AUTO_INCREMENT. Al arrancar se adelanta la tabla
+ * cita_seq por encima del mayor idCita (tambien de cita_archivo) para que los bloques de la
+ * secuencia no choquen.
+ */
+@Component
+@RequiredArgsConstructor
+public class SecuenciaCitaInicializador implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            int filas = jdbcTemplate.update(
+                    "UPDATE cita_seq SET next_val = GREATEST(next_val, (SELECT COALESCE(MAX(id_cita), 0) + ? FROM cita),"
+                            + " (SELECT COALESCE(MAX(id_cita), 0) + ? FROM cita_archivo))",
+                    Cita.TAMANO_BLOQUE_IDS + 1, Cita.TAMANO_BLOQUE_IDS + 1);
+            System.out.println("Secuencia de citas sincronizada (" + filas + " fila)");
+        } catch (DataAccessException e) {
+            System.err.println("No se pudo sincronizar la secuencia de citas: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package co.edu.modulocitas.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Solo deja pasar las peticiones con el secreto compartido servicios.token en X-Servicio-Token.
+// Sin token configurado se rechaza todo: estas operaciones nunca quedan abiertas
+public class ServicioInternoInterceptor implements HandlerInterceptor {
+
+    public static final String CABECERA = "X-Servicio-Token";
+
+    private final byte[] token;
+
+    public ServicioInternoInterceptor(String token) {
+        this.token = token == null ? new byte[0] : token.getBytes(StandardCharsets.UTF_8);
+        if (this.token.length == 0) {
+            System.err.println("servicios.token vacio (SERVICIOS_TOKEN): se rechazan las operaciones internas");
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String recibido = request.getHeader(CABECERA);
+        // Comparacion en tiempo constante para no revelar el secreto por la duracion de la respuesta
+        if (token.length > 0 && recibido != null
+                && MessageDigest.isEqual(token, recibido.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        response.setStatus(HttpStatus.UNAUTHORIZED.value());
+        return false;
+    }
+}
@@ -1,6 +1,8 @@
 package co.edu.modulocitas.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -8,6 +10,22 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final String tokenServicios;
+
+    public WebConfig(@Value("${servicios.token:}") String tokenServicios) {
+        this.tokenServicios = tokenServicios;
+    }
+
+    // Operaciones de mantenimiento y el aviso de usuarios: solo con el token compartido entre servicios
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ServicioInternoInterceptor(tokenServicios))
+                .addPathPatterns("/agenda/archivo/ejecutar",
+                        "/agenda/vencimiento/ejecutar",
+                        "/agenda/usuarios/cache/invalidar",
+                        "/agenda/vista/verificar");
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry.addResourceHandler("/**")
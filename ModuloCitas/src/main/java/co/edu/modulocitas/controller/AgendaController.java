@@ -1,16 +1,49 @@
 package co.edu.modulocitas.controller;
 
+import co.edu.modulocitas.dto.CambioEstadoLote;
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.CitaUrgente;
+import co.edu.modulocitas.dto.EventoAgenda;
+import co.edu.modulocitas.dto.HorariosLibres;
+import co.edu.modulocitas.dto.InvalidacionUsuarios;
+import co.edu.modulocitas.dto.PaginaCitas;
+import co.edu.modulocitas.dto.ResultadoCambioEstado;
+import co.edu.modulocitas.dto.ResultadoCitaLote;
+import co.edu.modulocitas.dto.ResultadoSerieCitas;
+import co.edu.modulocitas.dto.ResultadoUrgencia;
+import co.edu.modulocitas.dto.SerieCitas;
 import co.edu.modulocitas.enums.Estado;
 import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.service.AgendaDiariaService;
 import co.edu.modulocitas.service.AgendaService;
+import co.edu.modulocitas.service.ArchivoCitasService;
+import co.edu.modulocitas.service.EstadisticasAgendaService;
+import co.edu.modulocitas.service.EventosAgendaService;
+import co.edu.modulocitas.service.HorarioService;
+import co.edu.modulocitas.service.SerieCitasService;
+import co.edu.modulocitas.service.UrgenciasService;
+import co.edu.modulocitas.service.VencimientoCitasService;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import co.edu.modulocitas.service.impl.VersionesRecursos;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 import java.sql.Time;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -19,26 +52,49 @@ import java.util.Optional;
 public class AgendaController {
 
     private final AgendaService agendaService;
+    private final HorarioService horarioService;
+    private final AgendaDiariaService agendaDiariaService;
+    private final EventosAgendaService eventosAgendaService;
+    private final EstadisticasAgendaService estadisticasAgendaService;
+    private final ArchivoCitasService archivoCitasService;
+    private final SerieCitasService serieCitasService;
+    private final UrgenciasService urgenciasService;
+    private final VencimientoCitasService vencimientoCitasService;
+    private final VersionesRecursos versionesRecursos;
+    private final UsuarioServiceImpl usuarioServiceImpl;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/cita/{idCita}")
     public Optional<Cita> consultarCita(@PathVariable Integer idCita) {
         return agendaService.consultarCitaPorId(idCita);
     }
 
-    @PostMapping("/crear")
-    @ResponseStatus(HttpStatus.CREATED)
-    public Cita crearCita(@RequestBody Cita cita) {
-        return agendaService.crearCita(cita);
+    // /agenda/crear, /agenda/actualizar/{idCita} y /agenda/estado/cita/{idCita} avisan al cliente:
+    // estan en EscriturasConAvisoController (o en su version reactiva con el perfil "reactivo")
+
+    @PostMapping("/crear/lote")
+    public List<ResultadoCitaLote> crearCitasLote(@RequestBody List<Cita> citas) {
+        return agendaService.crearCitasLote(citas);
     }
 
-    @PutMapping("/actualizar/{idCita}")
-    public Optional<Cita> actualizarCita(@PathVariable int idCita, @RequestBody Cita cita) {
-        return agendaService.actualizarCita(idCita, cita);
+    // Serie de citas (p. ej. cada 21 dias, 6 dosis): 201 si se guardo completa, 409 con las alternativas si no
+    @PostMapping("/crear/serie")
+    public ResponseEntity<ResultadoSerieCitas> crearSerie(@RequestBody SerieCitas serie) {
+        ResultadoSerieCitas resultado = serieCitasService.crearSerie(serie);
+        return ResponseEntity.status(resultado.isCreada() ? HttpStatus.CREATED : HttpStatus.CONFLICT).body(resultado);
     }
 
-    @PutMapping("/estado/cita/{idCita}")
-    public Optional<Cita> cambiarEstado(@PathVariable int idCita, @RequestBody Estado estado) {
-        return agendaService.cambiarEstado(idCita, estado);
+    // Urgencia: si la hora esta ocupada mueve las citas programadas que la bloquean al hueco libre mas cercano
+    @PostMapping("/crear/urgencia")
+    @ResponseStatus(HttpStatus.CREATED)
+    public ResultadoUrgencia crearUrgencia(@RequestBody CitaUrgente peticion) {
+        return urgenciasService.crearUrgencia(peticion);
+    }
+
+    // Cierre del dia: varias citas a ATENDIDA o CANCELADA, cada una con la version que se leyo
+    @PutMapping("/estado/citas")
+    public List<ResultadoCambioEstado> cambiarEstados(@RequestBody CambioEstadoLote cambio) {
+        return agendaService.cambiarEstados(cambio);
     }
 
     @GetMapping("/cita/allCitas")
@@ -46,13 +102,40 @@ public class AgendaController {
         return agendaService.consultarCitas();
     }
 
+    @GetMapping("/cita/allCitas/pagina")
+    public PaginaCitas consultarPaginaCitas(@RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "50") int tamano) {
+        return agendaService.consultarPaginaCitas(null, null, cursor, tamano);
+    }
+
+    @GetMapping(value = "/cita/allCitas/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> transmitirTodasLasCitas() {
+        return transmitirCitas(null, null);
+    }
+
     @GetMapping("/cita/estado/{estado}")
     public List<Cita> consultarCitaPorEstado(@PathVariable Estado estado) {
         return agendaService.consultarCitaPorEstado(estado);
     }
 
+    @GetMapping("/cita/estado/{estado}/pagina")
+    public PaginaCitas consultarPaginaPorEstado(@PathVariable Estado estado,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(defaultValue = "50") int tamano) {
+        return agendaService.consultarPaginaCitas(estado, null, cursor, tamano);
+    }
+
+    @GetMapping(value = "/cita/estado/{estado}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> transmitirCitasPorEstado(@PathVariable Estado estado) {
+        return transmitirCitas(estado, null);
+    }
+
+    // Con If-None-Match vigente responde 304 sin consultar la base de datos
     @GetMapping("/cita/fecha/{fecha}")
-    public List<Cita> consultarCitaPorFecha(@PathVariable LocalDate fecha) {
+    public List<Cita> consultarCitaPorFecha(@PathVariable LocalDate fecha, WebRequest peticion) {
+        if (peticion.checkNotModified(versionesRecursos.etagAgenda(fecha))) {
+            return null;
+        }
         return agendaService.consultarCitaPorFecha(fecha);
     }
 
@@ -71,11 +154,175 @@ public class AgendaController {
         return agendaService.consultarCitaPorVeterinario(idVeterinario);
     }
 
+    @GetMapping("/cita/veterinario/{idVeterinario}/pagina")
+    public PaginaCitas consultarPaginaPorVeterinario(@PathVariable String idVeterinario,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(defaultValue = "50") int tamano) {
+        return agendaService.consultarPaginaCitas(null, idVeterinario, cursor, tamano);
+    }
+
+    @GetMapping(value = "/cita/veterinario/{idVeterinario}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> transmitirCitasPorVeterinario(@PathVariable String idVeterinario) {
+        return transmitirCitas(null, idVeterinario);
+    }
+
     @GetMapping("/cita/paciente/{idPaciente}")
     public List<Cita> consultarCitaPorPaciente(@PathVariable String idPaciente) {
         return agendaService.consultarCitaPorPaciente(idPaciente);
     }
 
+    // Horas de inicio reservables, p. ej. /horarios/libres?veterinarios=v1,v2&desde=2025-03-10&hasta=2025-03-16&idServicio=3
+    @GetMapping("/horarios/libres")
+    public List<HorariosLibres> consultarHorariosLibres(@RequestParam List<String> veterinarios,
+                                                        @RequestParam LocalDate desde,
+                                                        @RequestParam LocalDate hasta,
+                                                        @RequestParam(required = false) Integer idServicio,
+                                                        @RequestParam(required = false) Integer duracion) {
+        return horarioService.consultarHorariosLibres(veterinarios, desde, hasta, idServicio, duracion);
+    }
+
+    // Agenda del dia servida desde la vista en memoria, sin consultar MySQL
+    @GetMapping("/vista/veterinario/{idVeterinario}/fecha/{fecha}")
+    public List<CitaResumen> consultarAgendaDelDia(@PathVariable String idVeterinario, @PathVariable LocalDate fecha) {
+        return agendaDiariaService.consultarAgendaDelDia(idVeterinario, fecha);
+    }
+
+    @GetMapping("/vista/veterinario/{idVeterinario}")
+    public List<CitaResumen> consultarAgendaVeterinario(@PathVariable String idVeterinario,
+                                                        @RequestParam(required = false) LocalDate desde,
+                                                        @RequestParam(required = false) LocalDate hasta) {
+        LocalDate inicio = desde == null ? LocalDate.now() : desde;
+        return agendaDiariaService.consultarAgendaVeterinario(idVeterinario, inicio, hasta == null ? inicio.plusDays(6) : hasta);
+    }
+
+    @GetMapping("/vista/fecha/{fecha}")
+    public List<CitaResumen> consultarAgendaFecha(@PathVariable LocalDate fecha) {
+        return agendaDiariaService.consultarAgendaFecha(fecha);
+    }
+
+    @PostMapping("/vista/verificar")
+    public Map<String, Object> verificarAgenda() {
+        return agendaDiariaService.verificar();
+    }
+
+    // Cambios de la agenda (CREADA, REPROGRAMADA, CAMBIO_ESTADO) como Server-Sent Events
+    @GetMapping(value = "/eventos", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<EventoAgenda>> suscribirEventos(@RequestParam(required = false) String idVeterinario,
+                                                                @RequestParam(required = false) LocalDate fecha) {
+        return eventosAgendaService.suscribir(idVeterinario, fecha);
+    }
+
+    @GetMapping("/eventos/estadisticas")
+    public Map<String, Object> estadisticasEventos() {
+        return eventosAgendaService.estadisticas();
+    }
+
+    // Citas y minutos por estado, veterinario y dia, p. ej. /estadisticas?desde=2025-03-01&hasta=2025-03-31
+    @GetMapping("/estadisticas")
+    public Map<String, Object> consultarEstadisticas(@RequestParam LocalDate desde,
+                                                     @RequestParam LocalDate hasta,
+                                                     @RequestParam(required = false) String idVeterinario) {
+        return estadisticasAgendaService.consultarEstadisticas(desde, hasta, idVeterinario);
+    }
+
+    @GetMapping("/estadisticas/cache")
+    public Map<String, Object> estadisticasCacheEstadisticas() {
+        return estadisticasAgendaService.estadisticasCache();
+    }
+
+    // Ultimo traslado a cita_archivo y tamano de las tablas cita y cita_archivo
+    @GetMapping("/archivo")
+    public Map<String, Object> estadisticasArchivo() {
+        return archivoCitasService.estadisticas();
+    }
+
+    // Protegido por ServicioInternoInterceptor (cabecera X-Servicio-Token), igual que los otros POST de mantenimiento
+    @PostMapping("/archivo/ejecutar")
+    public Map<String, Object> archivarCitas() {
+        return archivoCitasService.archivar();
+    }
+
+    // Aciertos de la cache de emails y nombres pedidos a usuarios
+    @GetMapping("/usuarios/cache")
+    public Map<String, Object> estadisticasCacheUsuarios() {
+        return usuarioServiceImpl.estadisticasCache();
+    }
+
+    // Estado del circuito y de los limites de las llamadas a usuarios
+    @GetMapping("/usuarios/proteccion")
+    public Map<String, Object> proteccionUsuarios() {
+        return usuarioServiceImpl.estadisticasProteccion();
+    }
+
+    // Lo llama usuarios, con el token compartido, al modificar o borrar una mascota, un propietario o un veterinario
+    @PostMapping("/usuarios/cache/invalidar")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void invalidarCacheUsuarios(@RequestBody InvalidacionUsuarios invalidacion) {
+        usuarioServiceImpl.invalidar(invalidacion);
+    }
+
+    // Barrido nocturno de citas PROGRAMADA vencidas: filas procesadas y tiempo de bloqueo
+    @GetMapping("/vencimiento")
+    public Map<String, Object> estadisticasVencimiento() {
+        return vencimientoCitasService.estadisticas();
+    }
+
+    @PostMapping("/vencimiento/ejecutar")
+    public Map<String, Object> vencerCitas() {
+        return vencimientoCitasService.vencer();
+    }
+
+    // Listados planos (CitaResumen) resueltos con un unico SELECT
+    @GetMapping("/resumen/allCitas")
+    public List<CitaResumen> consultarResumenCitas() {
+        return agendaService.consultarResumenCitas();
+    }
+
+    @GetMapping("/resumen/estado/{estado}")
+    public List<CitaResumen> consultarResumenPorEstado(@PathVariable Estado estado) {
+        return agendaService.consultarResumenPorEstado(estado);
+    }
+
+    @GetMapping("/resumen/fecha/{fecha}")
+    public List<CitaResumen> consultarResumenPorFecha(@PathVariable LocalDate fecha) {
+        return agendaService.consultarResumenPorFecha(fecha);
+    }
+
+    @GetMapping("/resumen/hora/{hora}")
+    public List<CitaResumen> consultarResumenPorHora(@PathVariable LocalTime hora) {
+        return agendaService.consultarResumenPorHora(hora);
+    }
+
+    @GetMapping("/resumen/fechaYhora/{fecha}/{hora}")
+    public List<CitaResumen> consultarResumenPorFechaYHora(@PathVariable LocalDate fecha, @PathVariable LocalTime hora) {
+        return agendaService.consultarResumenPorFechaYHora(fecha, hora);
+    }
+
+    @GetMapping("/resumen/veterinario/{idVeterinario}")
+    public List<CitaResumen> consultarResumenPorVeterinario(@PathVariable String idVeterinario) {
+        return agendaService.consultarResumenPorVeterinario(idVeterinario);
+    }
+
+    @GetMapping("/resumen/paciente/{idPaciente}")
+    public List<CitaResumen> consultarResumenPorPaciente(@PathVariable String idPaciente) {
+        return agendaService.consultarResumenPorPaciente(idPaciente);
+    }
+
+    // Una cita JSON por linea (NDJSON), escrita a medida que se lee de la base de datos
+    private ResponseEntity<StreamingResponseBody> transmitirCitas(Estado estado, String idVeterinario) {
+        StreamingResponseBody cuerpo = salida -> agendaService.recorrerCitas(estado, idVeterinario, cita -> {
+            try {
+                salida.write(objectMapper.writeValueAsBytes(cita));
+                salida.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(cuerpo);
+    }
+
 
 }
 
@@ -0,0 +1,56 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.HistoriaClinica;
+import co.edu.modulocitas.service.AgendaService;
+import co.edu.modulocitas.service.HistoriaClinicaService;
+import co.edu.modulocitas.service.impl.RespuestasIdempotentes;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+
+/**
+ * Altas y cambios de citas e historias clinicas que consultan usuarios y avisan al cliente. Es la
+ * version por defecto: responde en el hilo de la peticion. Con el perfil "reactivo" las mismas rutas
+ * las atiende EscriturasConAvisoReactivoController.
+ */
+@RestController
+@Profile("!reactivo")
+@RequiredArgsConstructor
+public class EscriturasConAvisoController {
+
+    private final AgendaService agendaService;
+    private final HistoriaClinicaService historiaClinicaService;
+    private final RespuestasIdempotentes respuestasIdempotentes;
+
+    // Un reintento con la misma Idempotency-Key devuelve la cita ya creada sin repetir el alta
+    @PostMapping("/agenda/crear")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Cita crearCita(@RequestBody Cita cita,
+                          @RequestHeader(value = RespuestasIdempotentes.CABECERA, required = false) String claveIdempotencia) {
+        return respuestasIdempotentes.ejecutarBloqueante("/agenda/crear", claveIdempotencia, cita,
+                () -> agendaService.crearCita(cita));
+    }
+
+    @PutMapping("/agenda/actualizar/{idCita}")
+    public Optional<Cita> actualizarCita(@PathVariable int idCita, @RequestBody Cita cita) {
+        return agendaService.actualizarCita(idCita, cita);
+    }
+
+    @PutMapping("/agenda/estado/cita/{idCita}")
+    public Optional<Cita> cambiarEstado(@PathVariable int idCita, @RequestBody Estado estado) {
+        return agendaService.cambiarEstado(idCita, estado);
+    }
+
+    // Un reintento con la misma Idempotency-Key no guarda otra historia ni vuelve a enviar el PDF
+    @PostMapping("/historiaClinica/crear")
+    public HistoriaClinica crearHistoriaClinica(@RequestBody HistoriaClinica historiaClinica,
+                                                @RequestHeader(value = RespuestasIdempotentes.CABECERA, required = false) String claveIdempotencia) {
+        return respuestasIdempotentes.ejecutarBloqueante("/historiaClinica/crear", claveIdempotencia, historiaClinica,
+                () -> historiaClinicaService.crearHistoriaClinica(historiaClinica));
+    }
+}
@@ -0,0 +1,55 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.HistoriaClinica;
+import co.edu.modulocitas.service.AgendaReactivaService;
+import co.edu.modulocitas.service.HistoriaClinicaReactivaService;
+import co.edu.modulocitas.service.impl.RespuestasIdempotentes;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * Las rutas de EscriturasConAvisoController con el perfil "reactivo": devuelven un Mono que Spring MVC
+ * resuelve de forma asincrona, sin retener el hilo de la peticion mientras responden usuarios y
+ * notificaciones. Mismas rutas, codigos y cuerpos JSON.
+ */
+@RestController
+@Profile("reactivo")
+@RequiredArgsConstructor
+public class EscriturasConAvisoReactivoController {
+
+    private final AgendaReactivaService agendaReactivaService;
+    private final HistoriaClinicaReactivaService historiaClinicaReactivaService;
+    private final RespuestasIdempotentes respuestasIdempotentes;
+
+    @PostMapping("/agenda/crear")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Cita> crearCita(@RequestBody Cita cita,
+                                @RequestHeader(value = RespuestasIdempotentes.CABECERA, required = false) String claveIdempotencia) {
+        return respuestasIdempotentes.ejecutar("/agenda/crear", claveIdempotencia, cita,
+                () -> agendaReactivaService.crearCita(cita));
+    }
+
+    @PutMapping("/agenda/actualizar/{idCita}")
+    public Mono<Optional<Cita>> actualizarCita(@PathVariable int idCita, @RequestBody Cita cita) {
+        return agendaReactivaService.actualizarCita(idCita, cita);
+    }
+
+    @PutMapping("/agenda/estado/cita/{idCita}")
+    public Mono<Optional<Cita>> cambiarEstado(@PathVariable int idCita, @RequestBody Estado estado) {
+        return agendaReactivaService.cambiarEstado(idCita, estado);
+    }
+
+    @PostMapping("/historiaClinica/crear")
+    public Mono<HistoriaClinica> crearHistoriaClinica(@RequestBody HistoriaClinica historiaClinica,
+                                                      @RequestHeader(value = RespuestasIdempotentes.CABECERA, required = false) String claveIdempotencia) {
+        return respuestasIdempotentes.ejecutar("/historiaClinica/crear", claveIdempotencia, historiaClinica,
+                () -> historiaClinicaReactivaService.crearHistoriaClinica(historiaClinica));
+    }
+}
@@ -2,8 +2,10 @@ package co.edu.modulocitas.controller;
 
 import co.edu.modulocitas.model.HistoriaClinica;
 import co.edu.modulocitas.service.HistoriaClinicaService;
+import co.edu.modulocitas.service.impl.VersionesRecursos;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,6 +16,7 @@ import java.util.Optional;
 public class HistoriaClinicaController {
 
     private final HistoriaClinicaService historiaClinicaService;
+    private final VersionesRecursos versionesRecursos;
 
     @GetMapping
     public List<HistoriaClinica> consultarTodasLasCitas() {
@@ -25,8 +28,12 @@ public class HistoriaClinicaController {
         return historiaClinicaService.consultarHistoriaPorId(idHistoria);
     }
 
+    // Con If-None-Match vigente responde 304 sin consultar la base de datos
     @GetMapping("/paciente/{idPaciente}")
-    public Optional<HistoriaClinica> consultarHistoriaPaciente(@PathVariable("idPaciente") String  idPaciente) {
+    public Optional<HistoriaClinica> consultarHistoriaPaciente(@PathVariable("idPaciente") String  idPaciente, WebRequest peticion) {
+        if (peticion.checkNotModified(versionesRecursos.etagHistoriaPaciente(idPaciente))) {
+            return null;
+        }
         return historiaClinicaService.consultarHistoriaPaciente(idPaciente);
     }
 
@@ -40,10 +47,7 @@ public class HistoriaClinicaController {
         return historiaClinicaService.consultarHistoriaPorIdVeternario(idVeterinario);
     }
 
-    @PostMapping("/crear")
-    public HistoriaClinica crearHistoriaClinica(@RequestBody HistoriaClinica historiaClinica) {
-        return historiaClinicaService.crearHistoriaClinica(historiaClinica);
-    }
+    // /historiaClinica/crear envia el PDF al cliente: esta en EscriturasConAvisoController
 
     @PutMapping("/editar/{idHistoria}")
     public Optional<HistoriaClinica> actualizarHistoriaClinica(@PathVariable("idHistoria") Integer idHistoria, HistoriaClinica historiaClinica) {
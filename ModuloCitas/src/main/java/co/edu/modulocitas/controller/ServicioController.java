@@ -7,6 +7,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 
@@ -37,4 +38,9 @@ public class ServicioController {
         return servicioService.actualizarServicio(idServicio,servicio);
     }
 
+    @GetMapping("/cache/estadisticas")
+    public Map<String, Object> consultarEstadisticasCache() {
+        return servicioService.estadisticasCache();
+    }
+
 }
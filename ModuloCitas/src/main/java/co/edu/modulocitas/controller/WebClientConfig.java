@@ -1,27 +1,121 @@
 package co.edu.modulocitas.controller;
 
-import lombok.Value;
+import co.edu.modulocitas.config.ClientesHttpProperties;
+import co.edu.modulocitas.remoto.ProteccionRemota;
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Clientes HTTP hacia usuarios y notificaciones, cada uno con su pool de conexiones configurado en
+ * {@code agenda.http.<cliente>} (ClientesHttpProperties). Las conexiones inactivas se cierran antes
+ * de que el otro servicio las corte por su lado, asi no se reutiliza una conexion ya cerrada. Los
+ * pools y los tiempos de respuesta por endpoint se publican en Micrometer
+ * (reactor.netty.connection.provider.* y reactor.netty.http.client.*, etiquetados con name y uri) y
+ * se consultan en /actuator/metrics.
+ */
 @Configuration
+@EnableConfigurationProperties(ClientesHttpProperties.class)
 public class WebClientConfig {
 
+    // Segmentos con digitos (ids de Mongo, "vet-12") se agrupan para no crear una metrica por id
+    private static final Pattern SEGMENTO_ID = Pattern.compile("/[^/]*\\d[^/]*");
+
     @Bean
     @Qualifier("usuarioWebClient")
-    public WebClient usuarioWebClient(WebClient.Builder builder){
+    public WebClient usuarioWebClient(WebClient.Builder builder,
+                                      @Qualifier("usuariosConnectionProvider") ConnectionProvider conexiones,
+                                      @Value("${usuarios.url:http://localhost:8080/api}") String url,
+                                      @Value("${servicios.token:}") String tokenServicios,
+                                      ClientesHttpProperties clientes){
+        // Las consultas por lote de usuarios exigen el secreto compartido entre servicios
         return builder
-                .baseUrl("http://localhost:8080/api")
+                .baseUrl(url)
+                .defaultHeader("X-Servicio-Token", tokenServicios)
+                .clientConnector(conector(conexiones, clientes.usuarios(), url))
                 .build();
     }
 
+    @Bean(destroyMethod = "dispose")
+    @Qualifier("usuariosConnectionProvider")
+    public ConnectionProvider usuariosConnectionProvider(ClientesHttpProperties clientes) {
+        return pool("usuarios", clientes.usuarios());
+    }
+
+    // Un 4xx es una respuesta de usuarios, no un fallo: no abre el circuito
+    @Bean
+    @Qualifier("proteccionUsuarios")
+    public ProteccionRemota proteccionUsuarios(@Value("${agenda.usuarios.proteccion.max-llamadas:50}") int maxLlamadas,
+                                               @Value("${agenda.usuarios.proteccion.fallos-para-abrir:5}") int fallosParaAbrir,
+                                               @Value("${agenda.usuarios.proteccion.ms-abierto:10000}") long msAbierto) {
+        return new ProteccionRemota("usuarios", maxLlamadas, fallosParaAbrir, Duration.ofMillis(msAbierto),
+                e -> !(e instanceof WebClientResponseException respuesta && respuesta.getStatusCode().is4xxClientError()));
+    }
+
     @Bean
     @Qualifier("notificacionesWebClient")
-    public WebClient notificacionesWebClient(WebClient.Builder builder){
+    public WebClient notificacionesWebClient(WebClient.Builder builder,
+                                             @Qualifier("notificacionesConnectionProvider") ConnectionProvider conexiones,
+                                             @Value("${notificaciones.url:http://localhost:8000}") String url,
+                                             ClientesHttpProperties clientes){
         return builder
-                .baseUrl("http://localhost:8000")
+                .baseUrl(url)
+                .clientConnector(conector(conexiones, clientes.notificaciones(), url))
+                .build();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    @Qualifier("notificacionesConnectionProvider")
+    public ConnectionProvider notificacionesConnectionProvider(ClientesHttpProperties clientes) {
+        return pool("notificaciones", clientes.notificaciones());
+    }
+
+    // Los pendientes esperan conexion como mucho ms-espera-conexion; pasado max-pendientes se rechazan en el acto
+    private static ConnectionProvider pool(String nombre, ClientesHttpProperties.Cliente cliente) {
+        return ConnectionProvider.builder(nombre)
+                .maxConnections(cliente.maxConexiones())
+                .pendingAcquireMaxCount(cliente.maxPendientes())
+                .pendingAcquireTimeout(Duration.ofMillis(cliente.msEsperaConexion()))
+                .maxIdleTime(Duration.ofSeconds(cliente.segundosInactividad()))
+                .maxLifeTime(Duration.ofSeconds(cliente.segundosVida()))
+                .evictInBackground(Duration.ofSeconds(cliente.segundosDesalojo()))
+                .metrics(true)
                 .build();
     }
+
+    // Con http2 se negocia HTTP/2 (h2c sin TLS) y se vuelve a HTTP/1.1 si el servicio no lo admite
+    private static ReactorClientHttpConnector conector(ConnectionProvider conexiones, ClientesHttpProperties.Cliente cliente,
+                                                       String url) {
+        HttpClient httpClient = HttpClient.create(conexiones)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, cliente.msConexion())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(cliente.msRespuesta()))
+                .metrics(true, WebClientConfig::plantillaUri);
+        if (cliente.http2()) {
+            httpClient = httpClient.protocol(url.startsWith("https")
+                    ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                    : new HttpProtocol[]{HttpProtocol.H2C, HttpProtocol.HTTP11});
+        }
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    // "/api/disponibilidades/verificar/vet-3?fecha=..." -> "/api/disponibilidades/verificar/{id}"
+    static String plantillaUri(String uri) {
+        int consulta = uri.indexOf('?');
+        String path = consulta < 0 ? uri : uri.substring(0, consulta);
+        return SEGMENTO_ID.matcher(path).replaceAll("/{id}");
+    }
 }
@@ -0,0 +1,20 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.enums.Estado;
+import lombok.Data;
+
+import java.util.List;
+
+// Peticion de /agenda/estado/citas: el estado final y cada cita con la version que leyo el cliente
+@Data
+public class CambioEstadoLote {
+
+    private Estado estado;
+    private List<VersionCita> citas;
+
+    @Data
+    public static class VersionCita {
+        private Integer idCita;
+        private Long version;
+    }
+}
@@ -0,0 +1,20 @@
+package co.edu.modulocitas.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalTime;
+
+// Una cita movida para hacer sitio a una urgencia: de donde salio y donde quedo
+@Data
+@AllArgsConstructor
+public class CitaDesplazada {
+
+    private Integer idCita;
+    private String idPaciente;
+    private String veterinarioAnterior;
+    private LocalTime horaAnterior;
+    private String idVeterinario;
+    private LocalTime hora;
+    private long minutosDesplazada;
+}
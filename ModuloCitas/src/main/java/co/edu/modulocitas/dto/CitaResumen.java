@@ -0,0 +1,31 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Vista de solo lectura de una cita para listados; no carga entidades
+public record CitaResumen(
+        Integer idCita,
+        String idPaciente,
+        String idVeterinario,
+        LocalDate fecha,
+        LocalTime hora,
+        Estado estado,
+        boolean esUrgencia,
+        String motivo,
+        Integer idServicio,
+        String tipoServicio,
+        Integer duracionServicio) {
+
+    public static CitaResumen de(Cita cita, Servicio servicio) {
+        return new CitaResumen(cita.getIdCita(), cita.getIdPaciente(), cita.getIdVeterinario(), cita.getFecha(),
+                cita.getHora(), cita.getEstado(), cita.isEsUrgencia(), cita.getMotivo(),
+                servicio == null ? null : servicio.getId(),
+                servicio == null ? null : servicio.getTipo(),
+                servicio == null ? null : servicio.getDuracion());
+    }
+}
@@ -0,0 +1,14 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.Data;
+
+import java.util.List;
+
+// Peticion de /agenda/crear/urgencia: la cita urgente y los veterinarios que pueden recibir las citas desplazadas
+@Data
+public class CitaUrgente {
+
+    private Cita cita;
+    private List<String> veterinariosAlternativos;
+}
@@ -0,0 +1,14 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.enums.Estado;
+
+import java.time.LocalDate;
+
+// Una fila del GROUP BY de estadisticas: citas y minutos de servicio de un veterinario en un dia y estado
+public record ConteoCitas(
+        LocalDate fecha,
+        String idVeterinario,
+        Estado estado,
+        long citas,
+        long minutos) {
+}
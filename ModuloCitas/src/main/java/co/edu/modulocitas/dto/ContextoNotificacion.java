@@ -0,0 +1,15 @@
+package co.edu.modulocitas.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Datos de usuarios para armar un aviso; cada campo es null si usuarios no lo encuentra o no responde
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContextoNotificacion {
+    private String email;
+    private String nombreMascota;
+    private String nombreVeterinario;
+}
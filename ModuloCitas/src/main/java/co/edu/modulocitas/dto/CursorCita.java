@@ -0,0 +1,41 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Base64;
+
+/**
+ * Posicion (fecha, hora, idCita) de la ultima cita entregada en una pagina. Se envia al
+ * cliente como texto opaco y la siguiente pagina empieza justo despues de ella.
+ */
+public record CursorCita(LocalDate fecha, LocalTime hora, Integer idCita) {
+
+    // Anterior a cualquier cita guardada (DATE de MySQL empieza en el año 1000)
+    public static final CursorCita INICIO = new CursorCita(LocalDate.of(1000, 1, 1), LocalTime.MIN, 0);
+
+    public static CursorCita despuesDe(Cita cita) {
+        return new CursorCita(cita.getFecha(), cita.getHora(), cita.getIdCita());
+    }
+
+    public static CursorCita decodificar(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return INICIO;
+        }
+        try {
+            String[] partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            return new CursorCita(LocalDate.parse(partes[0]), LocalTime.parse(partes[1]), Integer.valueOf(partes[2]));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor de paginación inválido");
+        }
+    }
+
+    public String codificar() {
+        String texto = fecha + "|" + hora + "|" + idCita;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+}
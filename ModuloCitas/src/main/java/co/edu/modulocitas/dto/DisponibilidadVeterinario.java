@@ -0,0 +1,27 @@
+package co.edu.modulocitas.dto;
+
+import lombok.Data;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Franja semanal de atencion de un veterinario, tal como la devuelve el microservicio de usuarios
+@Data
+public class DisponibilidadVeterinario {
+
+    private String id;
+    private DayOfWeek diaSemana;
+    private LocalTime horaInicio;
+    private LocalTime horaFin;
+    private String veterinarioId;
+    private boolean activo;
+
+    // Misma regla que DisponibilidadServiceImpl.isVeterinarioDisponible en usuarios
+    public boolean cubre(LocalDate fecha, LocalTime hora) {
+        return activo
+                && fecha.getDayOfWeek() == diaSemana
+                && !hora.isBefore(horaInicio)
+                && hora.isBefore(horaFin);
+    }
+}
@@ -0,0 +1,14 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.enums.TipoEventoAgenda;
+
+import java.time.LocalDate;
+
+// Cambio de la agenda enviado por /agenda/eventos; cita es null en RESINCRONIZAR
+public record EventoAgenda(
+        long secuencia,
+        TipoEventoAgenda tipo,
+        CitaResumen cita,
+        String idVeterinarioAnterior,
+        LocalDate fechaAnterior) {
+}
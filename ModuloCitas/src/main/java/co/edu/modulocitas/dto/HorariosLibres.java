@@ -0,0 +1,18 @@
+package co.edu.modulocitas.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+// Horas de inicio en las que se puede reservar una cita de la duracion pedida
+@Data
+@AllArgsConstructor
+public class HorariosLibres {
+
+    private String idVeterinario;
+    private LocalDate fecha;
+    private List<LocalTime> horas;
+}
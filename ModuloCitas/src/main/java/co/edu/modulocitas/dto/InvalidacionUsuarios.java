@@ -0,0 +1,16 @@
+package co.edu.modulocitas.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Ids que usuarios acaba de modificar o borrar; sus datos se vuelven a pedir en la siguiente consulta
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvalidacionUsuarios {
+    private List<String> mascotas;
+    private List<String> veterinarios;
+}
@@ -0,0 +1,22 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// Una fecha de la serie: el motivo si estaba ocupada, la hora libre mas cercana y la cita guardada
+@Data
+@AllArgsConstructor
+public class OcurrenciaSerie {
+
+    private int posicion;
+    private LocalDate fecha;
+    private LocalTime hora;
+    private String conflicto;
+    private LocalDate fechaAlternativa;
+    private LocalTime horaAlternativa;
+    private Cita cita;
+}
@@ -0,0 +1,16 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// siguienteCursor es null cuando ya no quedan mas citas
+@Data
+@AllArgsConstructor
+public class PaginaCitas {
+
+    private List<Cita> citas;
+    private String siguienteCursor;
+}
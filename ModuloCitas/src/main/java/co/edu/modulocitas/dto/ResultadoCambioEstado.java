@@ -0,0 +1,23 @@
+package co.edu.modulocitas.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Resultado de cada cita de /agenda/estado/citas, en el mismo orden de la peticion
+@Data
+@AllArgsConstructor
+public class ResultadoCambioEstado {
+
+    private Integer idCita;
+    private boolean actualizada;
+    private Long version;
+    private String error;
+
+    public static ResultadoCambioEstado actualizada(Integer idCita, long version) {
+        return new ResultadoCambioEstado(idCita, true, version, null);
+    }
+
+    public static ResultadoCambioEstado rechazada(Integer idCita, String error) {
+        return new ResultadoCambioEstado(idCita, false, null, error);
+    }
+}
@@ -0,0 +1,24 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Resultado de cada cita enviada a /agenda/crear/lote, en el mismo orden de la peticion
+@Data
+@AllArgsConstructor
+public class ResultadoCitaLote {
+
+    private int posicion;
+    private boolean creada;
+    private Cita cita;
+    private String error;
+
+    public static ResultadoCitaLote creada(int posicion, Cita cita) {
+        return new ResultadoCitaLote(posicion, true, cita, null);
+    }
+
+    public static ResultadoCitaLote rechazada(int posicion, Cita cita, String error) {
+        return new ResultadoCitaLote(posicion, false, cita, error);
+    }
+}
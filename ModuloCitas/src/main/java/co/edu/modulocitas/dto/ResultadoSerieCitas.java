@@ -0,0 +1,15 @@
+package co.edu.modulocitas.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Resultado de /agenda/crear/serie: se guardan todas las citas de la serie o ninguna
+@Data
+@AllArgsConstructor
+public class ResultadoSerieCitas {
+
+    private boolean creada;
+    private List<OcurrenciaSerie> ocurrencias;
+}
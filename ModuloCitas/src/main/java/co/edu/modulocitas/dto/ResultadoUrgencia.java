@@ -0,0 +1,17 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Resultado de /agenda/crear/urgencia: la cita creada, las citas que se movieron y lo que tardo la decision
+@Data
+@AllArgsConstructor
+public class ResultadoUrgencia {
+
+    private Cita cita;
+    private List<CitaDesplazada> desplazadas;
+    private double msDecision;
+}
@@ -0,0 +1,15 @@
+package co.edu.modulocitas.dto;
+
+import co.edu.modulocitas.model.Cita;
+import lombok.Data;
+
+// Peticion de /agenda/crear/serie: la primera cita y la regla de repeticion (p. ej. cada 21 dias, 6 dosis)
+@Data
+public class SerieCitas {
+
+    private Cita cita;
+    private int intervaloDias;
+    private int repeticiones;
+    // Si es true, las fechas ocupadas se reservan en la alternativa propuesta en lugar de rechazar la serie
+    private boolean aceptarAlternativas;
+}
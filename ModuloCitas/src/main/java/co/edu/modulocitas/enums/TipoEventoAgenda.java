@@ -0,0 +1,9 @@
+package co.edu.modulocitas.enums;
+
+public enum TipoEventoAgenda {
+    CREADA,
+    REPROGRAMADA,
+    CAMBIO_ESTADO,
+    // Solo en el feed de eventos: el suscriptor perdio eventos y debe volver a consultar la agenda
+    RESINCRONIZAR
+}
@@ -0,0 +1,10 @@
+package co.edu.modulocitas.event;
+
+import co.edu.modulocitas.enums.TipoEventoAgenda;
+import co.edu.modulocitas.model.Cita;
+
+import java.time.LocalDate;
+
+// Se publica tras guardar una cita, con el veterinario y la fecha que tenia antes (null si es nueva)
+public record CitaGuardadaEvent(TipoEventoAgenda tipo, Cita cita, String idVeterinarioAnterior, LocalDate fechaAnterior) {
+}
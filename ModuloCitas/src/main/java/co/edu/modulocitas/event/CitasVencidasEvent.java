@@ -0,0 +1,8 @@
+package co.edu.modulocitas.event;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+// Se publica tras cada lote del barrido de vencimiento, con las fechas de las citas que cambiaron de estado
+public record CitasVencidasEvent(Set<LocalDate> fechas) {
+}
@@ -0,0 +1,5 @@
+package co.edu.modulocitas.event;
+
+// Se publica tras crear, editar o borrar la historia clinica de un paciente
+public record HistoriaClinicaGuardadaEvent(String idPaciente) {
+}
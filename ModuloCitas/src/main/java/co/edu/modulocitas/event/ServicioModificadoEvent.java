@@ -0,0 +1,5 @@
+package co.edu.modulocitas.event;
+
+// Se publica cuando un servicio se crea, actualiza o borra
+public record ServicioModificadoEvent(Integer idServicio) {
+}
@@ -3,17 +3,26 @@ package co.edu.modulocitas.model;
 import co.edu.modulocitas.enums.Estado;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 import java.sql.Time;
 import java.time.LocalDate;
 import java.time.LocalTime;
 
 @Entity
 @Data
-@Table(name = "cita")
+@Table(name = "cita", indexes = {
+        @Index(name = "idx_cita_agenda", columnList = "fecha, hora, idCita"),
+        @Index(name = "idx_cita_estado_agenda", columnList = "estado, fecha, hora, idCita"),
+        @Index(name = "idx_cita_veterinario_agenda", columnList = "idVeterinario, fecha, hora, idCita")
+})
 public class Cita {
 
+    public static final int TAMANO_BLOQUE_IDS = 50;
+
+    // Secuencia con pool (tabla cita_seq en MySQL): IDENTITY impide que Hibernate agrupe los INSERT
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cita_seq")
+    @SequenceGenerator(name = "cita_seq", sequenceName = "cita_seq", allocationSize = Cita.TAMANO_BLOQUE_IDS)
     private Integer idCita;
 
     private String idPaciente;
@@ -26,7 +35,13 @@ public class Cita {
     @Enumerated(EnumType.STRING)
     private Estado estado;
 
-    @ManyToOne
+    // Control optimista: cada UPDATE la incrementa; las filas anteriores a la columna empiezan en 0
+    @Version
+    @ColumnDefault("0")
+    private long version;
+
+    // Se resuelve desde la cache de ServicioService, no con un select por cita
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "servicio_id")
     private Servicio servicio;
 
@@ -0,0 +1,56 @@
+package co.edu.modulocitas.model;
+
+import co.edu.modulocitas.enums.Estado;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Cita ATENDIDA o CANCELADA anterior al horizonte de agenda.archivo, movida desde la tabla cita
+ * por ArchivoCitasService. Tiene las mismas columnas que cita para que el traslado sea un
+ * INSERT ... SELECT, y solo los indices que usan las consultas historicas.
+ */
+@Entity
+@Data
+@Table(name = "cita_archivo", indexes = {
+        @Index(name = "idx_cita_archivo_fecha", columnList = "fecha, hora, idCita"),
+        @Index(name = "idx_cita_archivo_veterinario", columnList = "idVeterinario, fecha"),
+        @Index(name = "idx_cita_archivo_paciente", columnList = "idPaciente, fecha")
+})
+public class CitaArchivada {
+
+    // Conserva el idCita original: historia_clinica sigue apuntando a el
+    @Id
+    private Integer idCita;
+
+    private String idPaciente;
+    private String idVeterinario;
+    private LocalDate fecha;
+    private LocalTime hora;
+    private boolean esUrgencia;
+    private String motivo;
+
+    @Enumerated(EnumType.STRING)
+    private Estado estado;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "servicio_id")
+    private Servicio servicio;
+
+    // Copia desacoplada para las respuestas de AgendaService; no se debe guardar en cita
+    public Cita aCita() {
+        Cita cita = new Cita();
+        cita.setIdCita(idCita);
+        cita.setIdPaciente(idPaciente);
+        cita.setIdVeterinario(idVeterinario);
+        cita.setFecha(fecha);
+        cita.setHora(hora);
+        cita.setEsUrgencia(esUrgencia);
+        cita.setMotivo(motivo);
+        cita.setEstado(estado);
+        cita.setServicio(servicio);
+        return cita;
+    }
+}
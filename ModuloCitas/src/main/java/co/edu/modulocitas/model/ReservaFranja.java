@@ -0,0 +1,54 @@
+package co.edu.modulocitas.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Franja de la agenda de un veterinario reclamada por una cita. La clave primaria
+ * (veterinario, fecha, franja) hace que la base de datos rechace dos citas solapadas
+ * aunque se creen a la vez desde distintas instancias del servicio.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(ReservaFranja.Clave.class)
+@Table(name = "reserva_franja", indexes = @Index(name = "idx_reserva_franja_cita", columnList = "idCita"))
+public class ReservaFranja implements Persistable<ReservaFranja.Clave> {
+
+    @Id
+    private String idVeterinario;
+    @Id
+    private LocalDate fecha;
+    // Numero de franja dentro del dia (minuto de inicio / agenda.reservas.minutos-franja)
+    @Id
+    private int franja;
+
+    private Integer idCita;
+
+    @Override
+    public Clave getId() {
+        return new Clave(idVeterinario, fecha, franja);
+    }
+
+    // Siempre se inserta: save() nunca debe convertir un choque de clave en un UPDATE
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Clave implements Serializable {
+        private String idVeterinario;
+        private LocalDate fecha;
+        private int franja;
+    }
+}
@@ -0,0 +1,172 @@
+package co.edu.modulocitas.remoto;
+
+import co.edu.modulocitas.Exception.ServicioRemotoNoDisponible;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Limites para las llamadas a otro microservicio: cada operacion tiene su tiempo maximo, como
+ * mucho {@code maxLlamadas} esperan respuesta a la vez (las demas se rechazan en el acto, sin
+ * ocupar un hilo) y un circuito que se abre tras {@code fallosParaAbrir} fallos seguidos. Con el
+ * circuito abierto las llamadas se rechazan sin salir de la instancia; pasado {@code tiempoAbierto}
+ * se deja pasar una sola llamada de prueba que lo cierra o lo vuelve a abrir. Los rechazos y los
+ * tiempos agotados terminan con ServicioRemotoNoDisponible. Solo cuentan como fallo los errores
+ * que {@code esFallo} acepta: una respuesta 4xx significa que el servicio contesto.
+ */
+public class ProteccionRemota {
+
+    private enum Circuito { CERRADO, ABIERTO, SEMIABIERTO }
+
+    private enum Permiso { RECHAZADA, NORMAL, PRUEBA }
+
+    private final String servicio;
+    private final int maxLlamadas;
+    private final int fallosParaAbrir;
+    private final long tiempoAbiertoNanos;
+    private final Predicate<Throwable> esFallo;
+    private final AtomicInteger enCurso = new AtomicInteger();
+
+    private Circuito circuito = Circuito.CERRADO;
+    private int fallosSeguidos;
+    private long abiertoHasta;
+    private boolean pruebaEnCurso;
+
+    private final AtomicLong llamadas = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong tiemposAgotados = new AtomicLong();
+    private final AtomicLong rechazadasPorCircuito = new AtomicLong();
+    private final AtomicLong rechazadasPorLimite = new AtomicLong();
+    private final AtomicLong aperturas = new AtomicLong();
+    private final Map<String, AtomicLong> tiemposAgotadosPorOperacion = new ConcurrentHashMap<>();
+
+    public ProteccionRemota(String servicio, int maxLlamadas, int fallosParaAbrir, Duration tiempoAbierto,
+                            Predicate<Throwable> esFallo) {
+        if (maxLlamadas <= 0 || fallosParaAbrir <= 0) {
+            throw new IllegalArgumentException("Los límites de " + servicio + " deben ser mayores a 0");
+        }
+        this.servicio = servicio;
+        this.maxLlamadas = maxLlamadas;
+        this.fallosParaAbrir = fallosParaAbrir;
+        this.tiempoAbiertoNanos = tiempoAbierto.toNanos();
+        this.esFallo = esFallo;
+    }
+
+    // La llamada se crea al suscribirse, asi un rechazo no llega a abrir conexion
+    public <T> Mono<T> proteger(String operacion, Duration limite, Mono<T> llamada) {
+        return Mono.defer(() -> {
+            Permiso permiso = permitir();
+            if (permiso == Permiso.RECHAZADA) {
+                rechazadasPorCircuito.incrementAndGet();
+                return Mono.error(new ServicioRemotoNoDisponible(
+                        servicio + " no responde; se reintentará en unos segundos (" + operacion + ")"));
+            }
+            if (enCurso.incrementAndGet() > maxLlamadas) {
+                enCurso.decrementAndGet();
+                rechazadasPorLimite.incrementAndGet();
+                liberarPrueba(permiso);
+                return Mono.error(new ServicioRemotoNoDisponible(
+                        "Demasiadas llamadas en curso a " + servicio + " (" + operacion + ")"));
+            }
+            llamadas.incrementAndGet();
+            return llamada
+                    .timeout(limite, Mono.error(() -> {
+                        tiemposAgotados.incrementAndGet();
+                        tiemposAgotadosPorOperacion.computeIfAbsent(operacion, clave -> new AtomicLong()).incrementAndGet();
+                        return new ServicioRemotoNoDisponible(servicio + " no respondió en " + limite.toMillis()
+                                + " ms (" + operacion + ")");
+                    }))
+                    .doOnSuccess(valor -> registrarExito(permiso))
+                    .doOnError(e -> {
+                        if (esFallo.test(e)) {
+                            registrarFallo(permiso);
+                        } else {
+                            registrarExito(permiso);
+                        }
+                    })
+                    .doFinally(senal -> {
+                        enCurso.decrementAndGet();
+                        // Una prueba cancelada no dice nada del servicio: la siguiente llamada prueba otra vez
+                        if (senal == SignalType.CANCEL) {
+                            liberarPrueba(permiso);
+                        }
+                    });
+        });
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        synchronized (this) {
+            estadisticas.put("circuito", circuito.name());
+            estadisticas.put("fallosSeguidos", fallosSeguidos);
+        }
+        estadisticas.put("enCurso", enCurso.get());
+        estadisticas.put("maxLlamadas", maxLlamadas);
+        estadisticas.put("llamadas", llamadas.get());
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("tiemposAgotados", tiemposAgotados.get());
+        estadisticas.put("tiemposAgotadosPorOperacion", new LinkedHashMap<>(tiemposAgotadosPorOperacion));
+        estadisticas.put("rechazadasPorCircuito", rechazadasPorCircuito.get());
+        estadisticas.put("rechazadasPorLimite", rechazadasPorLimite.get());
+        estadisticas.put("aperturas", aperturas.get());
+        return estadisticas;
+    }
+
+    private synchronized Permiso permitir() {
+        if (circuito == Circuito.ABIERTO) {
+            if (System.nanoTime() - abiertoHasta < 0) {
+                return Permiso.RECHAZADA;
+            }
+            circuito = Circuito.SEMIABIERTO;
+            pruebaEnCurso = false;
+        }
+        if (circuito == Circuito.SEMIABIERTO) {
+            if (pruebaEnCurso) {
+                return Permiso.RECHAZADA;
+            }
+            pruebaEnCurso = true;
+            return Permiso.PRUEBA;
+        }
+        return Permiso.NORMAL;
+    }
+
+    // Solo la llamada de prueba cierra el circuito: una llamada lenta que salio antes de abrirse y
+    // termina bien mientras esta abierto (o en prueba) no dice que el servicio se haya recuperado
+    private synchronized void registrarExito(Permiso permiso) {
+        if (permiso == Permiso.PRUEBA && circuito == Circuito.SEMIABIERTO) {
+            circuito = Circuito.CERRADO;
+            pruebaEnCurso = false;
+            fallosSeguidos = 0;
+        } else if (circuito == Circuito.CERRADO) {
+            fallosSeguidos = 0;
+        }
+    }
+
+    private synchronized void registrarFallo(Permiso permiso) {
+        fallos.incrementAndGet();
+        fallosSeguidos++;
+        if (circuito == Circuito.ABIERTO) {
+            return;
+        }
+        if (permiso == Permiso.PRUEBA || fallosSeguidos >= fallosParaAbrir) {
+            circuito = Circuito.ABIERTO;
+            abiertoHasta = System.nanoTime() + tiempoAbiertoNanos;
+            pruebaEnCurso = false;
+            aperturas.incrementAndGet();
+            System.err.println("Circuito hacia " + servicio + " abierto tras " + fallosSeguidos + " fallos seguidos");
+        }
+    }
+
+    private synchronized void liberarPrueba(Permiso permiso) {
+        if (permiso == Permiso.PRUEBA && circuito == Circuito.SEMIABIERTO) {
+            pruebaEnCurso = false;
+        }
+    }
+}
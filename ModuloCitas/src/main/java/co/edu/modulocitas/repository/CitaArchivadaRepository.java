@@ -0,0 +1,92 @@
+package co.edu.modulocitas.repository;
+
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.ConteoCitas;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.CitaArchivada;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static co.edu.modulocitas.repository.CitaRepository.DESPUES_DEL_CURSOR;
+import static co.edu.modulocitas.repository.CitaRepository.ORDEN_AGENDA;
+import static co.edu.modulocitas.repository.CitaRepository.TAMANO_FETCH;
+
+// Mismas consultas de lectura que CitaRepository, sobre cita_archivo
+public interface CitaArchivadaRepository extends JpaRepository<CitaArchivada, Integer> {
+
+    String RESUMEN = "SELECT new co.edu.modulocitas.dto.CitaResumen(c.idCita, c.idPaciente, c.idVeterinario,"
+            + " c.fecha, c.hora, c.estado, c.esUrgencia, c.motivo, s.id, s.tipo, s.duracion)"
+            + " FROM CitaArchivada c LEFT JOIN c.servicio s";
+
+    @Query("SELECT new co.edu.modulocitas.dto.ConteoCitas(c.fecha, c.idVeterinario, c.estado, COUNT(c),"
+            + " COALESCE(SUM(s.duracion), 0L)) FROM CitaArchivada c LEFT JOIN c.servicio s"
+            + " WHERE c.fecha BETWEEN :desde AND :hasta GROUP BY c.fecha, c.idVeterinario, c.estado")
+    List<ConteoCitas> contarPorDiaVeterinarioYEstado(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    @Override
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findAll();
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findByEstado(Estado estado);
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findByFecha(LocalDate fecha);
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findByHora(LocalTime hora);
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findByFechaAndHora(LocalDate fecha, LocalTime hora);
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findByIdVeterinario(String idVeterinario);
+    @EntityGraph(attributePaths = "servicio")
+    List<CitaArchivada> findByIdPaciente(String idPaciente);
+
+    @Query(RESUMEN)
+    List<CitaResumen> findResumenes();
+    @Query(RESUMEN + " WHERE c.estado = :estado")
+    List<CitaResumen> findResumenesByEstado(@Param("estado") Estado estado);
+    @Query(RESUMEN + " WHERE c.fecha = :fecha")
+    List<CitaResumen> findResumenesByFecha(@Param("fecha") LocalDate fecha);
+    @Query(RESUMEN + " WHERE c.hora = :hora")
+    List<CitaResumen> findResumenesByHora(@Param("hora") LocalTime hora);
+    @Query(RESUMEN + " WHERE c.fecha = :fecha AND c.hora = :hora")
+    List<CitaResumen> findResumenesByFechaAndHora(@Param("fecha") LocalDate fecha, @Param("hora") LocalTime hora);
+    @Query(RESUMEN + " WHERE c.idVeterinario = :idVeterinario")
+    List<CitaResumen> findResumenesByIdVeterinario(@Param("idVeterinario") String idVeterinario);
+    @Query(RESUMEN + " WHERE c.idPaciente = :idPaciente")
+    List<CitaResumen> findResumenesByIdPaciente(@Param("idPaciente") String idPaciente);
+
+    // Paginas por cursor y recorridos en el mismo orden que CitaRepository, para mezclarlos con las citas vigentes
+    @Query("SELECT c FROM CitaArchivada c LEFT JOIN FETCH c.servicio WHERE" + DESPUES_DEL_CURSOR + ORDEN_AGENDA)
+    List<CitaArchivada> buscarPagina(@Param("fecha") LocalDate fecha, @Param("hora") LocalTime hora,
+                                     @Param("idCita") Integer idCita, Limit limite);
+
+    @Query("SELECT c FROM CitaArchivada c LEFT JOIN FETCH c.servicio WHERE c.estado = :estado AND" + DESPUES_DEL_CURSOR + ORDEN_AGENDA)
+    List<CitaArchivada> buscarPaginaPorEstado(@Param("estado") Estado estado, @Param("fecha") LocalDate fecha,
+                                              @Param("hora") LocalTime hora, @Param("idCita") Integer idCita, Limit limite);
+
+    @Query("SELECT c FROM CitaArchivada c LEFT JOIN FETCH c.servicio WHERE c.idVeterinario = :idVeterinario AND" + DESPUES_DEL_CURSOR + ORDEN_AGENDA)
+    List<CitaArchivada> buscarPaginaPorVeterinario(@Param("idVeterinario") String idVeterinario, @Param("fecha") LocalDate fecha,
+                                                   @Param("hora") LocalTime hora, @Param("idCita") Integer idCita, Limit limite);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = TAMANO_FETCH))
+    @Query("SELECT c FROM CitaArchivada c LEFT JOIN FETCH c.servicio" + ORDEN_AGENDA)
+    Stream<CitaArchivada> recorrerTodas();
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = TAMANO_FETCH))
+    @Query("SELECT c FROM CitaArchivada c LEFT JOIN FETCH c.servicio WHERE c.estado = :estado" + ORDEN_AGENDA)
+    Stream<CitaArchivada> recorrerPorEstado(@Param("estado") Estado estado);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = TAMANO_FETCH))
+    @Query("SELECT c FROM CitaArchivada c LEFT JOIN FETCH c.servicio WHERE c.idVeterinario = :idVeterinario" + ORDEN_AGENDA)
+    Stream<CitaArchivada> recorrerPorVeterinario(@Param("idVeterinario") String idVeterinario);
+}
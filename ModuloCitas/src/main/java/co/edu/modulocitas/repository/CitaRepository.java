@@ -1,18 +1,50 @@
 package co.edu.modulocitas.repository;
 
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.ConteoCitas;
 import co.edu.modulocitas.enums.Estado;
 import co.edu.modulocitas.model.Cita;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.sql.Time;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface CitaRepository extends JpaRepository<Cita, Integer> {
+
+    // Paginacion por cursor: citas estrictamente posteriores a (fecha, hora, idCita) en ese orden
+    String DESPUES_DEL_CURSOR = " (c.fecha > :fecha OR (c.fecha = :fecha AND (c.hora > :hora"
+            + " OR (c.hora = :hora AND c.idCita > :idCita)))) ";
+    String ORDEN_AGENDA = " ORDER BY c.fecha, c.hora, c.idCita";
+    // Integer.MIN_VALUE: Connector/J entrega las filas del Stream una a una en lugar de cargar el
+    // resultado entero, sin cursores de servidor para el resto de consultas. Mientras el Stream esta
+    // abierto la conexion no admite otra consulta: el servicio va en el JOIN FETCH
+    String TAMANO_FETCH = "-2147483648";
+    // Proyeccion plana de la cita con los datos de su servicio en un solo SELECT
+    String RESUMEN = "SELECT new co.edu.modulocitas.dto.CitaResumen(c.idCita, c.idPaciente, c.idVeterinario,"
+            + " c.fecha, c.hora, c.estado, c.esUrgencia, c.motivo, s.id, s.tipo, s.duracion)"
+            + " FROM Cita c LEFT JOIN c.servicio s";
+
+    // Citas y minutos reservados por dia, veterinario y estado, agregados en MySQL
+    @Query("SELECT new co.edu.modulocitas.dto.ConteoCitas(c.fecha, c.idVeterinario, c.estado, COUNT(c),"
+            + " COALESCE(SUM(s.duracion), 0L)) FROM Cita c LEFT JOIN c.servicio s"
+            + " WHERE c.fecha BETWEEN :desde AND :hasta GROUP BY c.fecha, c.idVeterinario, c.estado")
+    List<ConteoCitas> contarPorDiaVeterinarioYEstado(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
     Optional<Cita> findByMotivo(String motivo);
     // Verifica si ya hay una cita para ese veterinario en esa fecha y hora
     boolean existsByIdVeterinarioAndFechaAndHora(String idVeterinario, LocalDate fecha, LocalTime hora);
@@ -26,13 +58,96 @@ public interface CitaRepository extends JpaRepository<Cita, Integer> {
     boolean existsByIdPacienteAndFechaAndHoraAndEstadoIn(
             String idPaciente, LocalDate fecha, LocalTime hora, List<Estado> estados);
 
+    // Los listados traen el servicio en el mismo SELECT (LEFT JOIN) en vez de una consulta por cita
+    @Override
+    @EntityGraph(attributePaths = "servicio")
+    List<Cita> findAll();
+    @EntityGraph(attributePaths = "servicio")
     List<Cita> findCitaByEstado(Estado estado);
+    @EntityGraph(attributePaths = "servicio")
     List<Cita> findCitaByFecha(LocalDate fecha);
+    @EntityGraph(attributePaths = "servicio")
     List<Cita> findCitaByHora(LocalTime hora);
+    @EntityGraph(attributePaths = "servicio")
     List<Cita> findCitaByFechaAndHora(LocalDate fecha, LocalTime hora);
+    @EntityGraph(attributePaths = "servicio")
     List<Cita> findCitaByIdVeterinario(String idVeterinario);
+    @EntityGraph(attributePaths = "servicio")
     List<Cita> findCitaByIdPaciente(String idPaciente);
 
+    @Query(RESUMEN)
+    List<CitaResumen> findResumenes();
+    @Query(RESUMEN + " WHERE c.estado = :estado")
+    List<CitaResumen> findResumenesByEstado(@Param("estado") Estado estado);
+    @Query(RESUMEN + " WHERE c.fecha = :fecha")
+    List<CitaResumen> findResumenesByFecha(@Param("fecha") LocalDate fecha);
+    @Query(RESUMEN + " WHERE c.hora = :hora")
+    List<CitaResumen> findResumenesByHora(@Param("hora") LocalTime hora);
+    @Query(RESUMEN + " WHERE c.fecha = :fecha AND c.hora = :hora")
+    List<CitaResumen> findResumenesByFechaAndHora(@Param("fecha") LocalDate fecha, @Param("hora") LocalTime hora);
+    @Query(RESUMEN + " WHERE c.idVeterinario = :idVeterinario")
+    List<CitaResumen> findResumenesByIdVeterinario(@Param("idVeterinario") String idVeterinario);
+    @Query(RESUMEN + " WHERE c.idPaciente = :idPaciente")
+    List<CitaResumen> findResumenesByIdPaciente(@Param("idPaciente") String idPaciente);
+    @Query(RESUMEN + " WHERE c.fecha >= :desde")
+    List<CitaResumen> findResumenesDesde(@Param("desde") LocalDate desde);
+    @Query(RESUMEN + " WHERE c.idVeterinario = :idVeterinario AND c.fecha BETWEEN :desde AND :hasta" + ORDEN_AGENDA)
+    List<CitaResumen> findResumenesByIdVeterinarioAndFechaBetween(@Param("idVeterinario") String idVeterinario,
+                                                                 @Param("desde") LocalDate desde,
+                                                                 @Param("hasta") LocalDate hasta);
+
+    List<Cita> findCitaByIdVeterinarioAndFecha(String idVeterinario, LocalDate fecha);
+    // Citas desde una fecha que aun no han reclamado sus franjas en reserva_franja
+    @Query("SELECT c FROM Cita c WHERE c.fecha >= :desde AND (c.estado IS NULL OR c.estado IN :estados)"
+            + " AND NOT EXISTS (SELECT r FROM ReservaFranja r WHERE r.idCita = c.idCita)")
+    List<Cita> buscarSinReservas(@Param("desde") LocalDate desde, @Param("estados") List<Estado> estados);
+
+    // Citas de la lista que siguen en la agenda indicada, programadas y sin urgencia: las que se pueden desplazar
+    @Query("SELECT c.idCita FROM Cita c WHERE c.idCita IN :ids AND c.idVeterinario = :idVeterinario"
+            + " AND c.fecha = :fecha AND c.estado = co.edu.modulocitas.enums.Estado.PROGRAMADA AND c.esUrgencia = false")
+    List<Integer> buscarDesplazables(@Param("ids") Collection<Integer> ids,
+                                     @Param("idVeterinario") String idVeterinario,
+                                     @Param("fecha") LocalDate fecha);
+
+    // Bloquea las filas hasta el final de la transaccion para comprobar sus versiones antes del UPDATE
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Cita c WHERE c.idCita IN :ids")
+    List<Cita> bloquearPorIds(@Param("ids") Collection<Integer> ids);
+
+    // Un solo UPDATE para todas las citas; deja el contexto de persistencia limpio para no volver a escribirlas
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Cita c SET c.estado = :estado, c.version = c.version + 1 WHERE c.idCita IN :ids")
+    int cambiarEstado(@Param("ids") Collection<Integer> ids, @Param("estado") Estado estado);
+
+    List<Cita> findCitaByIdVeterinarioInAndFechaBetween(
+            Collection<String> idsVeterinario, LocalDate desde, LocalDate hasta);
+    List<Cita> findCitaByIdPacienteInAndFechaBetweenAndEstadoIn(
+            Collection<String> idsPaciente, LocalDate desde, LocalDate hasta, List<Estado> estados);
+
+    @Query("SELECT c FROM Cita c LEFT JOIN FETCH c.servicio WHERE" + DESPUES_DEL_CURSOR + ORDEN_AGENDA)
+    List<Cita> buscarPagina(@Param("fecha") LocalDate fecha, @Param("hora") LocalTime hora,
+                            @Param("idCita") Integer idCita, Limit limite);
+
+    @Query("SELECT c FROM Cita c LEFT JOIN FETCH c.servicio WHERE c.estado = :estado AND" + DESPUES_DEL_CURSOR + ORDEN_AGENDA)
+    List<Cita> buscarPaginaPorEstado(@Param("estado") Estado estado, @Param("fecha") LocalDate fecha,
+                                     @Param("hora") LocalTime hora, @Param("idCita") Integer idCita, Limit limite);
+
+    @Query("SELECT c FROM Cita c LEFT JOIN FETCH c.servicio WHERE c.idVeterinario = :idVeterinario AND" + DESPUES_DEL_CURSOR + ORDEN_AGENDA)
+    List<Cita> buscarPaginaPorVeterinario(@Param("idVeterinario") String idVeterinario, @Param("fecha") LocalDate fecha,
+                                          @Param("hora") LocalTime hora, @Param("idCita") Integer idCita, Limit limite);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = TAMANO_FETCH))
+    @Query("SELECT c FROM Cita c LEFT JOIN FETCH c.servicio" + ORDEN_AGENDA)
+    Stream<Cita> recorrerTodas();
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = TAMANO_FETCH))
+    @Query("SELECT c FROM Cita c LEFT JOIN FETCH c.servicio WHERE c.estado = :estado" + ORDEN_AGENDA)
+    Stream<Cita> recorrerPorEstado(@Param("estado") Estado estado);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = TAMANO_FETCH))
+    @Query("SELECT c FROM Cita c LEFT JOIN FETCH c.servicio WHERE c.idVeterinario = :idVeterinario" + ORDEN_AGENDA)
+    Stream<Cita> recorrerPorVeterinario(@Param("idVeterinario") String idVeterinario);
+
     @Query(value = """
     SELECT COALESCE(COUNT(*), 0)
     FROM cita c
@@ -0,0 +1,20 @@
+package co.edu.modulocitas.repository;
+
+import co.edu.modulocitas.model.ReservaFranja;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+
+public interface ReservaFranjaRepository extends JpaRepository<ReservaFranja, ReservaFranja.Clave> {
+
+    @Modifying
+    @Query("DELETE FROM ReservaFranja r WHERE r.idCita = :idCita")
+    int liberarPorCita(@Param("idCita") Integer idCita);
+
+    @Modifying
+    @Query("DELETE FROM ReservaFranja r WHERE r.idCita IN :idsCita")
+    int liberarPorCitas(@Param("idsCita") Collection<Integer> idsCita);
+}
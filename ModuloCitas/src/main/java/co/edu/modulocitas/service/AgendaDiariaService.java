@@ -0,0 +1,17 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.dto.CitaResumen;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+public interface AgendaDiariaService {
+
+    // Citas del dia ordenadas por hora
+    List<CitaResumen> consultarAgendaDelDia(String idVeterinario, LocalDate fecha);
+    List<CitaResumen> consultarAgendaVeterinario(String idVeterinario, LocalDate desde, LocalDate hasta);
+    List<CitaResumen> consultarAgendaFecha(LocalDate fecha);
+    // Compara la vista con la tabla cita, la corrige y devuelve las diferencias encontradas
+    Map<String, Object> verificar();
+}
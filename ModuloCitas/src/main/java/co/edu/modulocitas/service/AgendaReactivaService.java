@@ -0,0 +1,14 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+// Operaciones de la agenda que dependen de usuarios y notificaciones, sin bloquear el hilo de la peticion
+public interface AgendaReactivaService {
+    Mono<Cita> crearCita(Cita cita);
+    Mono<Optional<Cita>> actualizarCita(int idCita, Cita cita);
+    Mono<Optional<Cita>> cambiarEstado(int idCita, Estado estado);
+}
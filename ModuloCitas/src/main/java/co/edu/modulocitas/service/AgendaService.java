@@ -1,5 +1,10 @@
 package co.edu.modulocitas.service;
 
+import co.edu.modulocitas.dto.CambioEstadoLote;
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.PaginaCitas;
+import co.edu.modulocitas.dto.ResultadoCambioEstado;
+import co.edu.modulocitas.dto.ResultadoCitaLote;
 import co.edu.modulocitas.enums.Estado;
 import co.edu.modulocitas.model.Cita;
 
@@ -8,17 +13,30 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface AgendaService {
     List<Cita> consultarCitas();
     Optional<Cita> consultarCitaPorId(Integer idCita);
     Cita crearCita(Cita cita);
+    List<ResultadoCitaLote> crearCitasLote(List<Cita> citas);
     Optional<Cita> actualizarCita(int idCita, Cita cita);
     Optional<Cita> cambiarEstado(int idCita, Estado estado);
+    List<ResultadoCambioEstado> cambiarEstados(CambioEstadoLote cambio);
     List<Cita> consultarCitaPorEstado(Estado estado);
     List<Cita> consultarCitaPorFecha(LocalDate fecha);
     List<Cita> consultarCitaPorHora(LocalTime hora);
     List<Cita> consultarCitaPorFechaYHora(LocalDate fecha, LocalTime hora);
     List<Cita> consultarCitaPorVeterinario(String idVeterinario);
     List<Cita> consultarCitaPorPaciente(String idPaciente);
+    List<CitaResumen> consultarResumenCitas();
+    List<CitaResumen> consultarResumenPorEstado(Estado estado);
+    List<CitaResumen> consultarResumenPorFecha(LocalDate fecha);
+    List<CitaResumen> consultarResumenPorHora(LocalTime hora);
+    List<CitaResumen> consultarResumenPorFechaYHora(LocalDate fecha, LocalTime hora);
+    List<CitaResumen> consultarResumenPorVeterinario(String idVeterinario);
+    List<CitaResumen> consultarResumenPorPaciente(String idPaciente);
+    // estado e idVeterinario son filtros opcionales (null = sin filtrar)
+    PaginaCitas consultarPaginaCitas(Estado estado, String idVeterinario, String cursor, int tamano);
+    void recorrerCitas(Estado estado, String idVeterinario, Consumer<Cita> consumidor);
 }
@@ -0,0 +1,9 @@
+package co.edu.modulocitas.service;
+
+import java.util.Map;
+
+public interface ArchivoCitasService {
+    // Mueve a cita_archivo las citas terminadas anteriores al horizonte y devuelve lo movido
+    Map<String, Object> archivar();
+    Map<String, Object> estadisticas();
+}
@@ -0,0 +1,10 @@
+package co.edu.modulocitas.service;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+public interface EstadisticasAgendaService {
+    // idVeterinario es un filtro opcional (null = todos)
+    Map<String, Object> consultarEstadisticas(LocalDate desde, LocalDate hasta, String idVeterinario);
+    Map<String, Object> estadisticasCache();
+}
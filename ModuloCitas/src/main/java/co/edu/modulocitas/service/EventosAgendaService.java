@@ -0,0 +1,15 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.dto.EventoAgenda;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+public interface EventosAgendaService {
+
+    // idVeterinario y fecha son filtros opcionales (null = sin filtrar)
+    Flux<ServerSentEvent<EventoAgenda>> suscribir(String idVeterinario, LocalDate fecha);
+    Map<String, Object> estadisticas();
+}
@@ -0,0 +1,8 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.model.HistoriaClinica;
+import reactor.core.publisher.Mono;
+
+public interface HistoriaClinicaReactivaService {
+    Mono<HistoriaClinica> crearHistoriaClinica(HistoriaClinica historiaClinica);
+}
@@ -0,0 +1,13 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.dto.HorariosLibres;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface HorarioService {
+
+    // Se indica idServicio o una duracion en minutos; si vienen ambos manda el servicio
+    List<HorariosLibres> consultarHorariosLibres(List<String> idsVeterinario, LocalDate desde, LocalDate hasta,
+                                                 Integer idServicio, Integer duracion);
+}
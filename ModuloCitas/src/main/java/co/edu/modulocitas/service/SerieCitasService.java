@@ -0,0 +1,8 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.dto.ResultadoSerieCitas;
+import co.edu.modulocitas.dto.SerieCitas;
+
+public interface SerieCitasService {
+    ResultadoSerieCitas crearSerie(SerieCitas serie);
+}
@@ -2,6 +2,7 @@ package co.edu.modulocitas.service;
 
 import co.edu.modulocitas.model.Servicio;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ServicioService {
@@ -11,5 +12,6 @@ public interface ServicioService {
     Optional<Servicio> borrarServicio(int idServicio);
     Optional<Servicio> consultarServicioPorId(int idServicio);
     List<Servicio> consultarServicios();
+    Map<String, Object> estadisticasCache();
 
 }
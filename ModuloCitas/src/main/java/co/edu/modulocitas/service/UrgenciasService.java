@@ -0,0 +1,8 @@
+package co.edu.modulocitas.service;
+
+import co.edu.modulocitas.dto.CitaUrgente;
+import co.edu.modulocitas.dto.ResultadoUrgencia;
+
+public interface UrgenciasService {
+    ResultadoUrgencia crearUrgencia(CitaUrgente peticion);
+}
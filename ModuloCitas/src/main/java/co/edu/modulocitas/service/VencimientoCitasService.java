@@ -0,0 +1,9 @@
+package co.edu.modulocitas.service;
+
+import java.util.Map;
+
+public interface VencimientoCitasService {
+    // Pasa a CANCELADA las citas PROGRAMADA cuya fecha ya paso y devuelve lo procesado
+    Map<String, Object> vencer();
+    Map<String, Object> estadisticas();
+}
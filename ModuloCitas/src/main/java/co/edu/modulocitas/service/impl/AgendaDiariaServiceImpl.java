@@ -0,0 +1,268 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.event.CitaGuardadaEvent;
+import co.edu.modulocitas.event.CitasVencidasEvent;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.AgendaDiariaService;
+import co.edu.modulocitas.service.ServicioService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vista materializada de la agenda: las citas desde {@code agenda.vista.dias-atras} dias antes
+ * de hoy, agrupadas por veterinario y dia y ordenadas por hora. Se construye al arrancar, se
+ * actualiza con cada CitaGuardadaEvent y se compara periodicamente con la tabla cita. Las
+ * listas de cada dia son inmutables y se reemplazan en cada cambio, asi las lecturas no
+ * necesitan bloqueo. Las fechas fuera de la ventana se consultan en la base de datos.
+ */
+@Service
+public class AgendaDiariaServiceImpl implements AgendaDiariaService {
+
+    private static final Comparator<CitaResumen> ORDEN = Comparator
+            .comparing(CitaResumen::hora, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(CitaResumen::idCita, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final CitaRepository citaRepository;
+    private final ServicioService servicioService;
+    private final Executor agendaExecutor;
+    private final int diasAtras;
+    private final int maxDiasConsulta;
+    // Citas desfasadas encontradas por todas las verificaciones desde el arranque
+    private final AtomicLong correcciones = new AtomicLong();
+
+    private volatile Vista vista;
+    // Cambios recibidos mientras se reconstruye la vista; se aplican al terminar (solo bajo this)
+    private List<CitaResumen> pendientes;
+
+    public AgendaDiariaServiceImpl(CitaRepository citaRepository,
+                                   ServicioService servicioService,
+                                   Executor agendaExecutor,
+                                   @Value("${agenda.vista.dias-atras:7}") int diasAtras,
+                                   @Value("${agenda.vista.max-dias-consulta:62}") int maxDiasConsulta) {
+        this.citaRepository = citaRepository;
+        this.servicioService = servicioService;
+        this.agendaExecutor = agendaExecutor;
+        this.diasAtras = diasAtras;
+        this.maxDiasConsulta = maxDiasConsulta;
+    }
+
+    @Override
+    public List<CitaResumen> consultarAgendaDelDia(String idVeterinario, LocalDate fecha) {
+        Vista actual = vista;
+        if (actual == null || fecha.isBefore(actual.inicio)) {
+            return citaRepository.findResumenesByIdVeterinarioAndFechaBetween(idVeterinario, fecha, fecha);
+        }
+        NavigableMap<LocalDate, List<CitaResumen>> dias = actual.porVeterinario.get(idVeterinario);
+        return dias == null ? List.of() : dias.getOrDefault(fecha, List.of());
+    }
+
+    @Override
+    public List<CitaResumen> consultarAgendaVeterinario(String idVeterinario, LocalDate desde, LocalDate hasta) {
+        if (hasta.isBefore(desde)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La fecha final no puede ser anterior a la inicial");
+        }
+        if (ChronoUnit.DAYS.between(desde, hasta) >= maxDiasConsulta) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El rango no puede superar " + maxDiasConsulta + " días");
+        }
+        Vista actual = vista;
+        if (actual == null || desde.isBefore(actual.inicio)) {
+            return citaRepository.findResumenesByIdVeterinarioAndFechaBetween(idVeterinario, desde, hasta);
+        }
+        NavigableMap<LocalDate, List<CitaResumen>> dias = actual.porVeterinario.get(idVeterinario);
+        if (dias == null) {
+            return List.of();
+        }
+        List<CitaResumen> citas = new ArrayList<>();
+        dias.subMap(desde, true, hasta, true).values().forEach(citas::addAll);
+        return citas;
+    }
+
+    @Override
+    public List<CitaResumen> consultarAgendaFecha(LocalDate fecha) {
+        Vista actual = vista;
+        if (actual == null || fecha.isBefore(actual.inicio)) {
+            List<CitaResumen> citas = new ArrayList<>(citaRepository.findResumenesByFecha(fecha));
+            citas.sort(ORDEN);
+            return citas;
+        }
+        return actual.porFecha.getOrDefault(fecha, List.of());
+    }
+
+    @EventListener
+    public void alGuardarCita(CitaGuardadaEvent evento) {
+        Cita cita = evento.cita();
+        Servicio servicio = cita.getServicio() == null ? null
+                : servicioService.consultarServicioPorId(cita.getServicio().getId()).orElse(null);
+        registrar(CitaResumen.de(cita, servicio));
+    }
+
+    // Solo si el barrido toco dias de la ventana; la vista se relee entera, como tras cambiar un servicio
+    @EventListener
+    public void alVencerCitas(CitasVencidasEvent evento) {
+        Vista actual = vista;
+        if (actual != null && evento.fechas().stream().anyMatch(fecha -> !fecha.isBefore(actual.inicio))) {
+            agendaExecutor.execute(this::verificar);
+        }
+    }
+
+    // El tipo y la duracion del servicio se copian en cada cita de la vista
+    @EventListener
+    public void alModificarServicio(ServicioModificadoEvent evento) {
+        agendaExecutor.execute(this::verificar);
+    }
+
+    @Scheduled(initialDelayString = "${agenda.vista.verificacion-ms:900000}",
+            fixedDelayString = "${agenda.vista.verificacion-ms:900000}")
+    public void verificarPeriodicamente() {
+        Map<String, Object> resultado = verificar();
+        if (resultado.get("diferencias") instanceof Integer diferencias && diferencias > 0) {
+            System.err.println("Vista de agenda corregida: " + resultado);
+        }
+    }
+
+    // Relee la ventana completa, compara con la vista anterior y la reemplaza
+    @Override
+    public Map<String, Object> verificar() {
+        synchronized (this) {
+            if (pendientes != null) {
+                Map<String, Object> enCurso = new LinkedHashMap<>();
+                enCurso.put("estado", "reconstruccion en curso");
+                return enCurso;
+            }
+            pendientes = new ArrayList<>();
+        }
+        long inicioMs = System.currentTimeMillis();
+        LocalDate inicio = LocalDate.now().minusDays(diasAtras);
+        List<CitaResumen> citas;
+        try {
+            citas = citaRepository.findResumenesDesde(inicio);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendientes = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            Vista nueva = new Vista(inicio);
+            citas.forEach(nueva::aplicar);
+            pendientes.forEach(nueva::aplicar);
+            pendientes = null;
+            Vista anterior = vista;
+            vista = nueva;
+
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("desde", inicio);
+            resultado.put("citas", nueva.porId.size());
+            if (anterior != null) {
+                int faltantes = 0;
+                int distintas = 0;
+                for (Map.Entry<Integer, CitaResumen> entrada : nueva.porId.entrySet()) {
+                    CitaResumen enVista = anterior.porId.get(entrada.getKey());
+                    if (enVista == null) {
+                        faltantes++;
+                    } else if (!enVista.equals(entrada.getValue())) {
+                        distintas++;
+                    }
+                }
+                int sobrantes = 0;
+                for (Map.Entry<Integer, CitaResumen> entrada : anterior.porId.entrySet()) {
+                    CitaResumen enTabla = nueva.porId.get(entrada.getKey());
+                    if (enTabla == null && !entrada.getValue().fecha().isBefore(inicio)) {
+                        sobrantes++;
+                    }
+                }
+                resultado.put("faltantes", faltantes);
+                resultado.put("sobrantes", sobrantes);
+                resultado.put("distintas", distintas);
+                resultado.put("diferencias", faltantes + sobrantes + distintas);
+                resultado.put("correccionesAcumuladas", correcciones.addAndGet(faltantes + sobrantes + distintas));
+            }
+            resultado.put("duracionMs", System.currentTimeMillis() - inicioMs);
+            return resultado;
+        }
+    }
+
+    private synchronized void registrar(CitaResumen cita) {
+        if (pendientes != null) {
+            pendientes.add(cita);
+        }
+        if (vista != null) {
+            vista.aplicar(cita);
+        }
+    }
+
+    private static final class Vista {
+
+        private final LocalDate inicio;
+        private final Map<String, NavigableMap<LocalDate, List<CitaResumen>>> porVeterinario = new ConcurrentHashMap<>();
+        private final Map<LocalDate, List<CitaResumen>> porFecha = new ConcurrentHashMap<>();
+        private final Map<Integer, CitaResumen> porId = new HashMap<>();
+
+        private Vista(LocalDate inicio) {
+            this.inicio = inicio;
+        }
+
+        // Inserta o mueve la cita; quien llama tiene el monitor de AgendaDiariaServiceImpl
+        private void aplicar(CitaResumen cita) {
+            CitaResumen anterior = porId.remove(cita.idCita());
+            if (anterior != null) {
+                porFecha.computeIfPresent(anterior.fecha(), (fecha, citas) -> sin(citas, anterior.idCita()));
+                NavigableMap<LocalDate, List<CitaResumen>> dias = porVeterinario.get(anterior.idVeterinario());
+                if (dias != null) {
+                    dias.computeIfPresent(anterior.fecha(), (fecha, citas) -> sin(citas, anterior.idCita()));
+                }
+            }
+            if (cita.fecha() == null || cita.idVeterinario() == null || cita.fecha().isBefore(inicio)) {
+                return;
+            }
+            porId.put(cita.idCita(), cita);
+            porFecha.merge(cita.fecha(), List.of(cita), (citas, nueva) -> con(citas, cita));
+            porVeterinario.computeIfAbsent(cita.idVeterinario(), vet -> new ConcurrentSkipListMap<>())
+                    .merge(cita.fecha(), List.of(cita), (citas, nueva) -> con(citas, cita));
+        }
+
+        // null elimina la entrada del mapa cuando el dia se queda sin citas
+        private static List<CitaResumen> sin(List<CitaResumen> citas, Integer idCita) {
+            List<CitaResumen> resto = new ArrayList<>(citas.size());
+            for (CitaResumen cita : citas) {
+                if (!Objects.equals(cita.idCita(), idCita)) {
+                    resto.add(cita);
+                }
+            }
+            return resto.isEmpty() ? null : Collections.unmodifiableList(resto);
+        }
+
+        private static List<CitaResumen> con(List<CitaResumen> citas, CitaResumen cita) {
+            List<CitaResumen> nuevas = new ArrayList<>(citas.size() + 1);
+            nuevas.addAll(citas);
+            int posicion = Collections.binarySearch(nuevas, cita, ORDEN);
+            nuevas.add(posicion < 0 ? -posicion - 1 : posicion, cita);
+            return Collections.unmodifiableList(nuevas);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.request.NotificacionRequest;
+import co.edu.modulocitas.service.AgendaReactivaService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Crear, reprogramar y cambiar el estado de una cita sin dejar hilos esperando a usuarios o a
+ * notificaciones. Solo existe con el perfil "reactivo": la verificacion remota del veterinario
+ * corre a la vez que las validaciones locales, los datos del aviso se piden en paralelo y el envio
+ * no ocupa ningun hilo del pool de la agenda. JPA sigue siendo bloqueante: esas llamadas pasan a
+ * jdbcScheduler. Sin el perfil las rutas las atiende AgendaService directamente.
+ */
+@Service
+@Profile("reactivo")
+public class AgendaReactivaServiceImpl implements AgendaReactivaService {
+
+    private final AgendaServiceImpl agendaService;
+    private final UsuarioServiceImpl usuarioServiceImpl;
+    private final NotificacionesService notificacionesService;
+    private final Scheduler jdbcScheduler;
+    private final Duration timeoutValidacion;
+
+    public AgendaReactivaServiceImpl(AgendaServiceImpl agendaService,
+                                     UsuarioServiceImpl usuarioServiceImpl,
+                                     NotificacionesService notificacionesService,
+                                     Scheduler jdbcScheduler,
+                                     @Value("${agenda.validacion.timeout-ms:3000}") long timeoutValidacionMs) {
+        this.agendaService = agendaService;
+        this.usuarioServiceImpl = usuarioServiceImpl;
+        this.notificacionesService = notificacionesService;
+        this.jdbcScheduler = jdbcScheduler;
+        this.timeoutValidacion = Duration.ofMillis(timeoutValidacionMs);
+    }
+
+    @Override
+    public Mono<Cita> crearCita(Cita cita) {
+        Mono<Servicio> validacionLocal = Mono.fromCallable(() -> agendaService.validarCitaLocal(cita))
+                .subscribeOn(jdbcScheduler);
+        Mono<Boolean> validacionRemota = usuarioServiceImpl.verificarDisponibilidadVeterinarioReactivo(
+                cita.getIdVeterinario(), cita.getFecha(), cita.getHora()).thenReturn(Boolean.TRUE);
+
+        // zip cancela la otra validacion en cuanto una falla
+        return Mono.zip(validacionLocal, validacionRemota)
+                .timeout(timeoutValidacion, Mono.error(() -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                        "No se pudo validar la cita en " + timeoutValidacion.toMillis() + " ms")))
+                .publishOn(jdbcScheduler)
+                .map(validada -> agendaService.guardarCitaValidada(cita, validada.getT1()))
+                .doOnNext(guardada -> notificacionesService.enSegundoPlano(avisoCitaCreada(guardada)));
+    }
+
+    @Override
+    public Mono<Optional<Cita>> actualizarCita(int idCita, Cita cita) {
+        return Mono.fromCallable(() -> agendaService.actualizarCitaSinNotificar(idCita, cita))
+                .subscribeOn(jdbcScheduler)
+                .doOnNext(actualizada -> actualizada.ifPresent(guardada ->
+                        notificacionesService.enSegundoPlano(avisoCambioEstado(guardada, Estado.REPROGRAMADA))));
+    }
+
+    @Override
+    public Mono<Optional<Cita>> cambiarEstado(int idCita, Estado estado) {
+        return Mono.fromCallable(() -> agendaService.cambiarEstadoSinNotificar(idCita, estado))
+                .subscribeOn(jdbcScheduler)
+                .doOnNext(actualizada -> actualizada.ifPresent(guardada ->
+                        notificacionesService.enSegundoPlano(avisoCambioEstado(guardada, estado))));
+    }
+
+    private Mono<Void> avisoCitaCreada(Cita cita) {
+        return contexto(cita)
+                .mapNotNull(datos -> agendaService.solicitudCita(cita, datos.getEmail(), datos.getNombreMascota(),
+                        datos.getNombreVeterinario()))
+                .flatMap(notificacionesService::notificar);
+    }
+
+    private Mono<Void> avisoCambioEstado(Cita cita, Estado estado) {
+        return contexto(cita)
+                .mapNotNull(datos -> agendaService.solicitudCambioEstado(cita, estado,
+                        datos.getEmail(), datos.getNombreMascota(), datos.getNombreVeterinario()))
+                .flatMap(notificacionesService::notificar);
+    }
+
+    // Una sola consulta a usuarios; lo que no se pueda obtener queda en null como en la version bloqueante
+    private Mono<ContextoNotificacion> contexto(Cita cita) {
+        return usuarioServiceImpl.obtenerContextoNotificacionReactivo(cita.getIdPaciente(), cita.getIdVeterinario());
+    }
+
+    static Mono<Optional<String>> opcional(Mono<String> valor) {
+        return valor.map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+}
@@ -4,85 +4,280 @@ package co.edu.modulocitas.service.impl;
 import co.edu.modulocitas.Exception.RecursoNoEncontradoExcepcion;
 import co.edu.modulocitas.Exception.UsuarioOcupadoExcepcion;
 import co.edu.modulocitas.Exception.VeterinarioNoDisponible;
+import co.edu.modulocitas.dto.CambioEstadoLote;
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.dto.CursorCita;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.PaginaCitas;
+import co.edu.modulocitas.dto.ResultadoCambioEstado;
+import co.edu.modulocitas.dto.ResultadoCitaLote;
 import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.enums.TipoEventoAgenda;
 import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.CitaArchivada;
 import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaArchivadaRepository;
 import co.edu.modulocitas.repository.CitaRepository;
 import co.edu.modulocitas.request.NotificacionRequest;
 import co.edu.modulocitas.service.AgendaService;
 import co.edu.modulocitas.service.ServicioService;
 import feign.Request;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.sql.Time;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @RequiredArgsConstructor
 @Service
 public class AgendaServiceImpl implements AgendaService {
 
     private final CitaRepository citaRepository;
+    private final CitaArchivadaRepository citaArchivadaRepository;
+    private final ArchivoCitasServiceImpl archivoCitasService;
     private final ServicioService servicioService;
     private final NotificacionesService notificacionesService;
     private final UsuarioServiceImpl usuarioServiceImpl;
+    private final IndiceAgenda indiceAgenda;
+    private final ReservaAgenda reservaAgenda;
+    private final Executor agendaExecutor;
+    private final Executor notificacionesExecutor;
+    private final EntityManager entityManager;
 
+    private static final int TAMANO_MAXIMO_PAGINA = 500;
+    // Mismo orden que CitaRepository.ORDEN_AGENDA
+    private static final Comparator<Cita> ORDEN_AGENDA =
+            Comparator.comparing(Cita::getFecha).thenComparing(Cita::getHora).thenComparing(Cita::getIdCita);
 
-    List<Estado> estadosOcupados = List.of(Estado.PROGRAMADA, Estado.ATENDIDA, Estado.EN_CURSO);
+    // Plazo total para el conjunto de validaciones de crearCita
+    @Value("${agenda.validacion.timeout-ms:3000}")
+    private long timeoutValidacionMs;
+
+    @Value("${agenda.lote.max-citas:500}")
+    private int maxCitasLote;
+
+    List<Estado> estadosOcupados = IndiceAgenda.ESTADOS_OCUPADOS;
+
+    private final AtomicLong avisosDescartados = new AtomicLong();
 
     @Override
     public List<Cita> consultarCitas() {
-        return citaRepository.findAll();
+        return conArchivo(citaRepository.findAll(), true, citaArchivadaRepository::findAll);
     }
 
     @Override
     public Optional<Cita> consultarCitaPorId(Integer idCita){
-        return citaRepository.findById(idCita);
+        // Las citas antiguas ya atendidas o canceladas pueden estar en cita_archivo
+        return citaRepository.findById(idCita)
+                .or(() -> archivoCitasService.hayArchivadas()
+                        ? citaArchivadaRepository.findById(idCita).map(CitaArchivada::aCita)
+                        : Optional.empty())
+                .map(this::conServicio);
     }
 
     @Override
     public Cita crearCita(Cita cita) {
 
         Servicio servicio = validarYObtenerServicio(cita.getServicio().getId());
-        validarVeterinarioDisponible(cita.getIdVeterinario(), cita.getFecha(), cita.getHora());
-        validarPacienteDisponible(cita.getIdPaciente(), cita.getFecha(), cita.getHora());
-        validarHorarioCita(cita);
-        usuarioServiceImpl.verificarDisponibilidadVeterinario(cita.getIdVeterinario(), cita.getFecha(),cita.getHora());
+        // Las validaciones son independientes entre si: se lanzan a la vez y se espera a todas
+        validarEnParalelo(
+                () -> validarVeterinarioDisponible(cita.getIdVeterinario(), cita.getFecha(), cita.getHora()),
+                () -> validarPacienteDisponible(cita.getIdPaciente(), cita.getFecha(), cita.getHora()),
+                () -> validarHorarioCita(cita, servicio),
+                () -> usuarioServiceImpl.verificarDisponibilidadVeterinario(cita.getIdVeterinario(), cita.getFecha(),cita.getHora())
+        );
         cita.setServicio(servicio);
-        notificarCita(cita);
 
-        return citaRepository.save(cita);
+        // Vuelve a comprobar el horario bajo el bloqueo de la agenda del veterinario antes de guardar
+        Cita citaGuardada = reservaAgenda.crear(cita);
+        // Los nombres y el email se consultan fuera de la peticion, despues de guardar
+        enSegundoPlano(() -> notificarCita(citaGuardada));
+        return citaGuardada;
 
     }
 
+    @Override
+    public List<ResultadoCitaLote> crearCitasLote(List<Cita> citas) {
+        if (citas.size() > maxCitasLote) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El lote admite como máximo " + maxCitasLote + " citas");
+        }
+
+        ResultadoCitaLote[] resultados = new ResultadoCitaLote[citas.size()];
+        IndiceAgenda.Lote lote = indiceAgenda.nuevoLote();
+        Set<String> pacientesOcupados = pacientesOcupados(citas);
+        Map<String, List<DisponibilidadVeterinario>> disponibilidades = new HashMap<>();
+        List<Cita> aceptadas = new ArrayList<>();
+        List<Integer> posiciones = new ArrayList<>();
+
+        // Todo el lote se valida en memoria: contra las citas guardadas y contra las ya aceptadas del lote
+        for (int i = 0; i < citas.size(); i++) {
+            Cita cita = citas.get(i);
+            try {
+                Servicio servicio = validarCitaDeLote(cita, lote, pacientesOcupados, disponibilidades);
+                cita.setServicio(servicio);
+                lote.reservar(cita.getIdVeterinario(), cita.getFecha(), cita.getHora(), servicio.getDuracion());
+                pacientesOcupados.add(clavePaciente(cita.getIdPaciente(), cita.getFecha(), cita.getHora()));
+                aceptadas.add(cita);
+                posiciones.add(i);
+            } catch (RuntimeException e) {
+                resultados[i] = ResultadoCitaLote.rechazada(i, cita, e.getMessage());
+            }
+        }
+
+        // Una sola transaccion y Hibernate agrupa los INSERT (hibernate.jdbc.batch_size)
+        Set<Cita> guardadas = Collections.newSetFromMap(new IdentityHashMap<>());
+        guardadas.addAll(reservaAgenda.crearLote(aceptadas));
+        List<Cita> creadas = new ArrayList<>();
+        for (int j = 0; j < aceptadas.size(); j++) {
+            Cita cita = aceptadas.get(j);
+            int posicion = posiciones.get(j);
+            if (!guardadas.contains(cita)) {
+                resultados[posicion] = ResultadoCitaLote.rechazada(posicion, cita,
+                        "Ya hay una cita asignada en ese intervalo para el veterinario.");
+                continue;
+            }
+            resultados[posicion] = ResultadoCitaLote.creada(posicion, cita);
+            creadas.add(cita);
+        }
+        // Un solo envio a /notificar/lote para todo el lote, sin ocupar una tarea por cita
+        if (!creadas.isEmpty()) {
+            notificacionesService.enSegundoPlano(avisosEnLote(creadas, this::solicitudCita));
+        }
+        return Arrays.asList(resultados);
+    }
+
     @Override
     public Optional<Cita> actualizarCita(int idCita, Cita cita) {
+        return actualizarCitaSinNotificar(idCita, cita)
+                .map(citaGuardada -> {
+                    enSegundoPlano(() -> notificarCambioEstadoCita(citaGuardada, Estado.REPROGRAMADA));
+                    return citaGuardada;
+                });
+    }
+
+    @Override
+    public Optional<Cita> cambiarEstado(int idCita, Estado estado) {
+        return cambiarEstadoSinNotificar(idCita, estado)
+                .map(citaGuardada -> {
+                    enSegundoPlano(() -> notificarCambioEstadoCita(citaGuardada, estado));
+                    return citaGuardada;
+                });
+    }
+
+    // Cierre del dia: un solo UPDATE para todas las citas y un unico lote de avisos
+    @Override
+    public List<ResultadoCambioEstado> cambiarEstados(CambioEstadoLote cambio) {
+        if (cambio.getEstado() == null || !ArchivoCitasServiceImpl.ESTADOS_ARCHIVABLES.contains(cambio.getEstado())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El cambio en lote solo admite los estados " + ArchivoCitasServiceImpl.ESTADOS_ARCHIVABLES);
+        }
+        if (cambio.getCitas() == null || cambio.getCitas().isEmpty() || cambio.getCitas().size() > maxCitasLote) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El lote debe tener entre 1 y " + maxCitasLote + " citas");
+        }
+        Map<Integer, Long> versiones = new LinkedHashMap<>();
+        for (CambioEstadoLote.VersionCita cita : cambio.getCitas()) {
+            if (cita.getIdCita() == null || versiones.containsKey(cita.getIdCita())) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cada cita del lote debe indicar un idCita distinto");
+            }
+            versiones.put(cita.getIdCita(), cita.getVersion());
+        }
+
+        ReservaAgenda.CambioEstados resultado = reservaAgenda.cambiarEstados(versiones, cambio.getEstado());
+        Map<Integer, Cita> actualizadas = new HashMap<>();
+        resultado.actualizadas().forEach(cita -> actualizadas.put(cita.getIdCita(), cita));
+        List<ResultadoCambioEstado> resultados = new ArrayList<>();
+        for (Integer idCita : versiones.keySet()) {
+            Cita cita = actualizadas.get(idCita);
+            resultados.add(cita != null
+                    ? ResultadoCambioEstado.actualizada(idCita, cita.getVersion())
+                    : ResultadoCambioEstado.rechazada(idCita, resultado.rechazadas().get(idCita)));
+        }
+        if (seNotifica(cambio.getEstado()) && !resultado.actualizadas().isEmpty()) {
+            notificacionesService.enSegundoPlano(avisosEnLote(resultado.actualizadas(),
+                    (cita, email, nombreMascota, nombreVeterinario) ->
+                            solicitudCambioEstado(cita, cambio.getEstado(), email, nombreMascota, nombreVeterinario)));
+        }
+        return resultados;
+    }
+
+    // Pasos de crearCita sin las llamadas a usuarios, para AgendaReactivaServiceImpl
+    Servicio validarCitaLocal(Cita cita) {
+        Servicio servicio = validarYObtenerServicio(cita.getServicio().getId());
+        validarVeterinarioDisponible(cita.getIdVeterinario(), cita.getFecha(), cita.getHora());
+        validarPacienteDisponible(cita.getIdPaciente(), cita.getFecha(), cita.getHora());
+        validarHorarioCita(cita, servicio);
+        return servicio;
+    }
+
+    Cita guardarCitaValidada(Cita cita, Servicio servicio) {
+        cita.setServicio(servicio);
+        return reservaAgenda.crear(cita);
+    }
+
+    Optional<Cita> actualizarCitaSinNotificar(int idCita, Cita cita) {
         return citaRepository.findById(idCita)
                 .map(existingCita -> {
+                    String veterinarioAnterior = existingCita.getIdVeterinario();
+                    LocalDate fechaAnterior = existingCita.getFecha();
+                    // Las citas anteriores a la rejilla de franjas conservan su hora mientras no se muevan
+                    if (!Objects.equals(cita.getHora(), existingCita.getHora())) {
+                        reservaAgenda.validarInicio(cita.getHora());
+                    }
                     existingCita.setFecha(cita.getFecha());
                     existingCita.setHora( cita.getHora());
                     existingCita.setEstado(cita.getEstado());
                     existingCita.setEsUrgencia(cita.isEsUrgencia());
                     existingCita.setIdPaciente(cita.getIdPaciente());
-                    notificarCambioEstadoCita(existingCita,Estado.REPROGRAMADA);
-                    return citaRepository.save(existingCita);
+                    return conServicio(reservaAgenda.actualizar(
+                            existingCita, veterinarioAnterior, fechaAnterior, TipoEventoAgenda.REPROGRAMADA));
                 });
     }
 
-    @Override
-    public Optional<Cita> cambiarEstado(int idCita, Estado estado) {
+    Optional<Cita> cambiarEstadoSinNotificar(int idCita, Estado estado) {
         return citaRepository.findById(idCita)
                 .map( existingCita ->{
                     existingCita.setEstado(estado);
-                    notificarCambioEstadoCita(existingCita,estado);
-                    return citaRepository.save(existingCita);
+                    return conServicio(reservaAgenda.actualizar(
+                            existingCita, existingCita.getIdVeterinario(), existingCita.getFecha(), TipoEventoAgenda.CAMBIO_ESTADO));
                 });
     }
 
@@ -90,32 +285,165 @@ public class AgendaServiceImpl implements AgendaService {
 
     @Override
     public List<Cita> consultarCitaPorEstado(Estado estado) {
-        return citaRepository.findCitaByEstado(estado);
+        return conArchivo(citaRepository.findCitaByEstado(estado), ArchivoCitasServiceImpl.ESTADOS_ARCHIVABLES.contains(estado),
+                () -> citaArchivadaRepository.findByEstado(estado));
     }
 
     @Override
     public List<Cita> consultarCitaPorFecha(LocalDate fecha) {
-        return citaRepository.findCitaByFecha(fecha);
+        return conArchivo(citaRepository.findCitaByFecha(fecha), archivoCitasService.puedeEstarArchivada(fecha),
+                () -> citaArchivadaRepository.findByFecha(fecha));
     }
 
     @Override
     public List<Cita> consultarCitaPorHora(LocalTime hora) {
-        return citaRepository.findCitaByHora(hora);
+        return conArchivo(citaRepository.findCitaByHora(hora), true, () -> citaArchivadaRepository.findByHora(hora));
     }
 
     @Override
     public List<Cita> consultarCitaPorFechaYHora(LocalDate fecha, LocalTime hora) {
-        return citaRepository.findCitaByFechaAndHora(fecha, hora);
+        return conArchivo(citaRepository.findCitaByFechaAndHora(fecha, hora), archivoCitasService.puedeEstarArchivada(fecha),
+                () -> citaArchivadaRepository.findByFechaAndHora(fecha, hora));
     }
 
     @Override
     public List<Cita> consultarCitaPorVeterinario(String idVeterinario) {
-        return citaRepository.findCitaByIdVeterinario(idVeterinario);
+        return conArchivo(citaRepository.findCitaByIdVeterinario(idVeterinario), true,
+                () -> citaArchivadaRepository.findByIdVeterinario(idVeterinario));
     }
 
     @Override
     public List<Cita> consultarCitaPorPaciente(String idPaciente) {
-        return citaRepository.findCitaByIdPaciente(idPaciente);
+        return conArchivo(citaRepository.findCitaByIdPaciente(idPaciente), true,
+                () -> citaArchivadaRepository.findByIdPaciente(idPaciente));
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenCitas() {
+        return juntar(citaRepository.findResumenes(), true, citaArchivadaRepository::findResumenes);
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenPorEstado(Estado estado) {
+        return juntar(citaRepository.findResumenesByEstado(estado), ArchivoCitasServiceImpl.ESTADOS_ARCHIVABLES.contains(estado),
+                () -> citaArchivadaRepository.findResumenesByEstado(estado));
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenPorFecha(LocalDate fecha) {
+        return juntar(citaRepository.findResumenesByFecha(fecha), archivoCitasService.puedeEstarArchivada(fecha),
+                () -> citaArchivadaRepository.findResumenesByFecha(fecha));
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenPorHora(LocalTime hora) {
+        return juntar(citaRepository.findResumenesByHora(hora), true, () -> citaArchivadaRepository.findResumenesByHora(hora));
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenPorFechaYHora(LocalDate fecha, LocalTime hora) {
+        return juntar(citaRepository.findResumenesByFechaAndHora(fecha, hora), archivoCitasService.puedeEstarArchivada(fecha),
+                () -> citaArchivadaRepository.findResumenesByFechaAndHora(fecha, hora));
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenPorVeterinario(String idVeterinario) {
+        return juntar(citaRepository.findResumenesByIdVeterinario(idVeterinario), true,
+                () -> citaArchivadaRepository.findResumenesByIdVeterinario(idVeterinario));
+    }
+
+    @Override
+    public List<CitaResumen> consultarResumenPorPaciente(String idPaciente) {
+        return juntar(citaRepository.findResumenesByIdPaciente(idPaciente), true,
+                () -> citaArchivadaRepository.findResumenesByIdPaciente(idPaciente));
+    }
+
+    @Override
+    public PaginaCitas consultarPaginaCitas(Estado estado, String idVeterinario, String cursor, int tamano) {
+        if (tamano < 1 || tamano > TAMANO_MAXIMO_PAGINA) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "El tamaño de página debe estar entre 1 y " + TAMANO_MAXIMO_PAGINA);
+        }
+        CursorCita desde = CursorCita.decodificar(cursor);
+        // Se pide una cita de mas para saber si existe una pagina siguiente
+        Limit limite = Limit.of(tamano + 1);
+        List<Cita> citas;
+        List<CitaArchivada> archivadas = List.of();
+        boolean conArchivadas = admiteArchivadas(estado);
+        if (idVeterinario != null) {
+            citas = citaRepository.buscarPaginaPorVeterinario(idVeterinario, desde.fecha(), desde.hora(), desde.idCita(), limite);
+            if (conArchivadas) {
+                archivadas = citaArchivadaRepository.buscarPaginaPorVeterinario(idVeterinario, desde.fecha(), desde.hora(), desde.idCita(), limite);
+            }
+        } else if (estado != null) {
+            citas = citaRepository.buscarPaginaPorEstado(estado, desde.fecha(), desde.hora(), desde.idCita(), limite);
+            if (conArchivadas) {
+                archivadas = citaArchivadaRepository.buscarPaginaPorEstado(estado, desde.fecha(), desde.hora(), desde.idCita(), limite);
+            }
+        } else {
+            citas = citaRepository.buscarPagina(desde.fecha(), desde.hora(), desde.idCita(), limite);
+            if (conArchivadas) {
+                archivadas = citaArchivadaRepository.buscarPagina(desde.fecha(), desde.hora(), desde.idCita(), limite);
+            }
+        }
+        if (!archivadas.isEmpty()) {
+            // Ambas tablas vienen en orden de agenda y comparten los id, asi que el cursor vale para las dos
+            citas = Stream.concat(citas.stream(), archivadas.stream().map(CitaArchivada::aCita))
+                    .sorted(ORDEN_AGENDA)
+                    .limit(tamano + 1)
+                    .toList();
+        }
+
+        String siguienteCursor = null;
+        if (citas.size() > tamano) {
+            citas = new ArrayList<>(citas.subList(0, tamano));
+            siguienteCursor = CursorCita.despuesDe(citas.get(tamano - 1)).codificar();
+        }
+        return new PaginaCitas(conServicio(citas), siguienteCursor);
+    }
+
+    // Primero las archivadas y luego las vigentes: MySQL no admite dos resultados en streaming
+    // abiertos en la misma conexion, asi que cada tabla sale en orden de agenda pero no intercaladas
+    @Override
+    @Transactional(readOnly = true)
+    public void recorrerCitas(Estado estado, String idVeterinario, Consumer<Cita> consumidor) {
+        if (admiteArchivadas(estado)) {
+            Stream<CitaArchivada> archivadas;
+            if (idVeterinario != null) {
+                archivadas = citaArchivadaRepository.recorrerPorVeterinario(idVeterinario);
+            } else if (estado != null) {
+                archivadas = citaArchivadaRepository.recorrerPorEstado(estado);
+            } else {
+                archivadas = citaArchivadaRepository.recorrerTodas();
+            }
+            try (archivadas) {
+                archivadas.forEach(archivada -> {
+                    consumidor.accept(conServicio(archivada.aCita()));
+                    entityManager.detach(archivada);
+                });
+            }
+        }
+
+        Stream<Cita> citas;
+        if (idVeterinario != null) {
+            citas = citaRepository.recorrerPorVeterinario(idVeterinario);
+        } else if (estado != null) {
+            citas = citaRepository.recorrerPorEstado(estado);
+        } else {
+            citas = citaRepository.recorrerTodas();
+        }
+        try (citas) {
+            citas.forEach(cita -> {
+                consumidor.accept(conServicio(cita));
+                // Se suelta cada cita del contexto de persistencia para que la memoria no crezca
+                entityManager.detach(cita);
+            });
+        }
+    }
+
+    private boolean admiteArchivadas(Estado estado) {
+        return archivoCitasService.hayArchivadas()
+                && (estado == null || ArchivoCitasServiceImpl.ESTADOS_ARCHIVABLES.contains(estado));
     }
 
 //    private void validarVeterinarioDisponible(Integer idVeterinario, LocalDate fecha, LocalTime hora) {
@@ -156,31 +484,212 @@ public class AgendaServiceImpl implements AgendaService {
                 .orElseThrow(() -> new RecursoNoEncontradoExcepcion("El servicio con ID " + servicioId + " no existe. No se puede crear la cita."));
     }
 
-    private void validarHorarioCita( Cita  cita) {
+    private void validarHorarioCita(Cita cita, Servicio servicio) {
 
-        Servicio servicio = servicioService.consultarServicioPorId(cita.getServicio().getId())
-                .orElseThrow(() -> new RuntimeException("Servicio no encontrado"));
         if (servicio.getDuracion() <= 0) {
             throw new IllegalArgumentException("La duración del servicio debe ser mayor a 0");
         }
-        long horarioDisponible = citaRepository.conflictoHorario(
+        reservaAgenda.validarInicio(cita.getHora());
+        long horarioDisponible = indiceAgenda.contarConflictos(
                 cita.getIdVeterinario(), cita.getFecha(),cita.getHora(),servicio.getDuracion());
-        System.out.println("Conflictos encontrados: " + horarioDisponible);
-        System.out.println("Fecha: " + cita.getFecha());
-        System.out.println("Hora nueva: " + cita.getHora());
-        System.out.println("Duración: " + servicio.getDuracion());
         if (horarioDisponible >0) {
             throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
         }
     }
 
+    // Datos minimos de una cita de lote o de serie; devuelve su servicio desde la cache
+    Servicio validarDatosCita(Cita cita) {
+        if (cita.getIdVeterinario() == null || cita.getIdPaciente() == null
+                || cita.getFecha() == null || cita.getHora() == null) {
+            throw new IllegalArgumentException("La cita debe indicar veterinario, paciente, fecha y hora");
+        }
+        if (cita.getServicio() == null || cita.getServicio().getId() == null) {
+            throw new RecursoNoEncontradoExcepcion("La cita no indica el servicio. No se puede crear la cita.");
+        }
+        Servicio servicio = validarYObtenerServicio(cita.getServicio().getId());
+        if (servicio.getDuracion() <= 0) {
+            throw new IllegalArgumentException("La duración del servicio debe ser mayor a 0");
+        }
+        reservaAgenda.validarInicio(cita.getHora());
+        return servicio;
+    }
+
+    private Servicio validarCitaDeLote(Cita cita, IndiceAgenda.Lote lote, Set<String> pacientesOcupados,
+                                       Map<String, List<DisponibilidadVeterinario>> disponibilidades) {
+        Servicio servicio = validarDatosCita(cita);
+        if (pacientesOcupados.contains(clavePaciente(cita.getIdPaciente(), cita.getFecha(), cita.getHora()))) {
+            throw new UsuarioOcupadoExcepcion("La mascota ya tiene una cita en esa fecha y hora.");
+        }
+        if (lote.hayConflicto(cita.getIdVeterinario(), cita.getFecha(), cita.getHora(), servicio.getDuracion())) {
+            throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
+        }
+        // Una sola consulta de franjas por veterinario en lugar de una verificacion remota por cita
+        List<DisponibilidadVeterinario> franjas = disponibilidades.computeIfAbsent(
+                cita.getIdVeterinario(), this::consultarDisponibilidades);
+        if (franjas == null) {
+            throw new VeterinarioNoDisponible("No se pudo consultar la disponibilidad del veterinario");
+        }
+        if (franjas.stream().noneMatch(franja -> franja.cubre(cita.getFecha(), cita.getHora()))) {
+            throw new VeterinarioNoDisponible("El veterinario no está disponible en ese horario");
+        }
+        return servicio;
+    }
+
+    List<DisponibilidadVeterinario> consultarDisponibilidades(String idVeterinario) {
+        try {
+            return usuarioServiceImpl.obtenerDisponibilidadesActivas(idVeterinario);
+        } catch (Exception e) {
+            System.err.println("Error al consultar la disponibilidad del veterinario " + idVeterinario + ": " + e.getMessage());
+            // computeIfAbsent no guarda null: se reintentara con la siguiente cita de ese veterinario
+            return null;
+        }
+    }
+
+    // Citas ocupadas de los pacientes del lote, leidas con una sola consulta
+    private Set<String> pacientesOcupados(List<Cita> citas) {
+        Set<String> pacientes = new HashSet<>();
+        LocalDate desde = null;
+        LocalDate hasta = null;
+        for (Cita cita : citas) {
+            if (cita.getIdPaciente() == null || cita.getFecha() == null) {
+                continue;
+            }
+            pacientes.add(cita.getIdPaciente());
+            desde = desde == null || cita.getFecha().isBefore(desde) ? cita.getFecha() : desde;
+            hasta = hasta == null || cita.getFecha().isAfter(hasta) ? cita.getFecha() : hasta;
+        }
+        return pacientesOcupados(pacientes, desde, hasta);
+    }
+
+    Set<String> pacientesOcupados(Set<String> pacientes, LocalDate desde, LocalDate hasta) {
+        Set<String> ocupados = new HashSet<>();
+        if (pacientes.isEmpty()) {
+            return ocupados;
+        }
+        for (Cita cita : citaRepository.findCitaByIdPacienteInAndFechaBetweenAndEstadoIn(
+                pacientes, desde, hasta, estadosOcupados)) {
+            ocupados.add(clavePaciente(cita.getIdPaciente(), cita.getFecha(), cita.getHora()));
+        }
+        return ocupados;
+    }
+
+    static String clavePaciente(String idPaciente, LocalDate fecha, LocalTime hora) {
+        return idPaciente + "|" + fecha + "|" + hora;
+    }
+
+    // Sustituye el proxy perezoso del servicio por la instancia en cache de ServicioService.
+    // Los listados ya traen el servicio con la cita (EntityGraph) y no se tocan.
+    private Cita conServicio(Cita cita) {
+        if (cita.getServicio() != null && !Hibernate.isInitialized(cita.getServicio())) {
+            servicioService.consultarServicioPorId(cita.getServicio().getId())
+                    .ifPresent(cita::setServicio);
+        }
+        return cita;
+    }
+
+    private List<Cita> conServicio(List<Cita> citas) {
+        citas.forEach(this::conServicio);
+        return citas;
+    }
+
+    // Los listados completos incluyen las citas archivadas despues de las de la tabla cita. cita_archivo
+    // solo se consulta si el filtro admite citas archivadas y la tabla no esta vacia
+    private List<Cita> conArchivo(List<Cita> citas, boolean admiteArchivadas, Supplier<List<CitaArchivada>> consulta) {
+        List<CitaArchivada> archivadas = admiteArchivadas && archivoCitasService.hayArchivadas() ? consulta.get() : List.of();
+        if (archivadas.isEmpty()) {
+            return conServicio(citas);
+        }
+        List<Cita> todas = new ArrayList<>(citas.size() + archivadas.size());
+        todas.addAll(citas);
+        archivadas.forEach(archivada -> todas.add(archivada.aCita()));
+        return conServicio(todas);
+    }
+
+    private List<CitaResumen> juntar(List<CitaResumen> resumenes, boolean admiteArchivadas, Supplier<List<CitaResumen>> consulta) {
+        List<CitaResumen> archivados = admiteArchivadas && archivoCitasService.hayArchivadas() ? consulta.get() : List.of();
+        if (archivados.isEmpty()) {
+            return resumenes;
+        }
+        List<CitaResumen> todos = new ArrayList<>(resumenes.size() + archivados.size());
+        todos.addAll(resumenes);
+        todos.addAll(archivados);
+        return todos;
+    }
+
+    private void validarEnParalelo(Runnable... validaciones) {
+        CompletableFuture<?>[] tareas = new CompletableFuture<?>[validaciones.length];
+        for (int i = 0; i < validaciones.length; i++) {
+            try {
+                tareas[i] = CompletableFuture.runAsync(validaciones[i], agendaExecutor);
+            } catch (RejectedExecutionException e) {
+                // Pool lleno: la peticion se rechaza con un 503 y se cancelan las validaciones ya lanzadas
+                for (int j = 0; j < i; j++) {
+                    tareas[j].cancel(true);
+                }
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Demasiadas citas validandose a la vez, inténtelo de nuevo");
+            }
+        }
+        CompletableFuture<Void> todas = CompletableFuture.allOf(tareas);
+        // La primera validacion que falla corta la espera sin aguardar a las demas
+        for (CompletableFuture<?> tarea : tareas) {
+            tarea.whenComplete((resultado, error) -> {
+                if (error != null) {
+                    todas.completeExceptionally(error);
+                }
+            });
+        }
+
+        try {
+            todas.get(timeoutValidacionMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                    "No se pudo validar la cita en " + timeoutValidacionMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Validación de la cita interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            while (causa instanceof CompletionException && causa.getCause() != null) {
+                causa = causa.getCause();
+            }
+            if (causa instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(causa);
+        } finally {
+            for (CompletableFuture<?> tarea : tareas) {
+                tarea.cancel(true);
+            }
+        }
+    }
+
+    private void enSegundoPlano(Runnable tarea) {
+        try {
+            CompletableFuture.runAsync(tarea, notificacionesExecutor)
+                    .exceptionally(e -> {
+                        System.err.println("Error al enviar la notificación de la cita: " + e.getMessage());
+                        return null;
+                    });
+        } catch (RejectedExecutionException e) {
+            System.err.println("Cola de notificaciones llena, se descarta el aviso (" + avisosDescartados.incrementAndGet()
+                    + " descartados desde el arranque)");
+        }
+    }
+
     private void notificarCita(Cita cita) {
-        NotificacionRequest request = new NotificacionRequest();
+        ContextoNotificacion contexto = usuarioServiceImpl.obtenerContextoNotificacion(cita.getIdPaciente(), cita.getIdVeterinario());
 
-        String email = usuarioServiceImpl.obtenerEmail(cita.getIdPaciente());
-        String nombreMascota = usuarioServiceImpl.obtenerNombreMascota(cita.getIdPaciente());
-        String nombreVeterinario = usuarioServiceImpl.obtenerNombreVeterinario(cita.getIdVeterinario());
+        NotificacionRequest request = solicitudCita(cita, contexto.getEmail(), contexto.getNombreMascota(),
+                contexto.getNombreVeterinario());
+        if (request != null) {
+            notificacionesService.enviarNotificacion(request);
+        }
+    }
 
+    // Arma el aviso de cita creada; null si no hay a quien enviarlo
+    NotificacionRequest solicitudCita(Cita cita, String email, String nombreMascota, String nombreVeterinario) {
+        NotificacionRequest request = new NotificacionRequest();
         request.setTipo("Cita");
         request.setDestinatario(email);
         String mensaje = String.format(
@@ -207,28 +716,68 @@ public class AgendaServiceImpl implements AgendaService {
 
         if (request.getDestinatario() == null || !request.getDestinatario().contains("@")) {
             System.err.println("Email destinatario no válido: {}" + request.getDestinatario());
-            return;
+            return null;
         }
 
         if (request.getMensaje() == null || request.getMensaje().trim().isEmpty()) {
             System.err.println("Mensaje vacío");
-            return;
+            return null;
         }
 
-
-        notificacionesService.enviarNotificacion(request);
+        return request;
     }
 
     private void notificarCambioEstadoCita(Cita cita, Estado nuevoEstado) {
-        NotificacionRequest request = new NotificacionRequest();
+        ContextoNotificacion contexto = usuarioServiceImpl.obtenerContextoNotificacion(cita.getIdPaciente(), cita.getIdVeterinario());
+
+        NotificacionRequest request = solicitudCambioEstado(cita, nuevoEstado, contexto.getEmail(),
+                contexto.getNombreMascota(), contexto.getNombreVeterinario());
+        if (request != null) {
+            notificacionesService.enviarNotificacion(request);
+        }
+    }
 
-        String email = usuarioServiceImpl.obtenerEmail(cita.getIdPaciente());
-        String nombreMascota = usuarioServiceImpl.obtenerNombreMascota(cita.getIdPaciente());
-        String nombreVeterinario = usuarioServiceImpl.obtenerNombreVeterinario(cita.getIdPaciente());
+    // Estados para los que solicitudCambioEstado arma un aviso
+    static boolean seNotifica(Estado estado) {
+        return estado == Estado.REPROGRAMADA || estado == Estado.CANCELADA;
+    }
+
+    // Avisos de varias citas en una sola peticion a notificaciones; cada paciente y veterinario se consulta una vez
+    // y las consultas de todas las citas salen juntas en las peticiones por lote de UsuarioServiceImpl
+    Mono<Void> avisosEnLote(List<Cita> citas, SolicitudAviso solicitud) {
+        Map<String, Mono<Optional<String>>> emails = new HashMap<>();
+        Map<String, Mono<Optional<String>>> mascotas = new HashMap<>();
+        Map<String, Mono<Optional<String>>> veterinarios = new HashMap<>();
+        for (Cita cita : citas) {
+            emails.computeIfAbsent(cita.getIdPaciente(), id ->
+                    AgendaReactivaServiceImpl.opcional(usuarioServiceImpl.obtenerEmailReactivo(id)).cache());
+            mascotas.computeIfAbsent(cita.getIdPaciente(), id ->
+                    AgendaReactivaServiceImpl.opcional(usuarioServiceImpl.obtenerNombreMascotaReactivo(id)).cache());
+            veterinarios.computeIfAbsent(cita.getIdVeterinario(), id ->
+                    AgendaReactivaServiceImpl.opcional(usuarioServiceImpl.obtenerNombreVeterinarioReactivo(id)).cache());
+        }
+        return Flux.fromIterable(citas)
+                .flatMap(cita -> Mono.zip(emails.get(cita.getIdPaciente()), mascotas.get(cita.getIdPaciente()),
+                                veterinarios.get(cita.getIdVeterinario()))
+                        .mapNotNull(datos -> solicitud.armar(cita, datos.getT1().orElse(null),
+                                datos.getT2().orElse(null), datos.getT3().orElse(null))))
+                .collectList()
+                .filter(solicitudes -> !solicitudes.isEmpty())
+                .flatMap(notificacionesService::notificarLote);
+    }
+
+    interface SolicitudAviso {
+        NotificacionRequest armar(Cita cita, String email, String nombreMascota, String nombreVeterinario);
+    }
+
+    // Arma el aviso de reprogramacion o cancelacion; null si el estado no se notifica
+    NotificacionRequest solicitudCambioEstado(Cita cita, Estado nuevoEstado, String email,
+                                              String nombreMascota, String nombreVeterinario) {
+        NotificacionRequest request = new NotificacionRequest();
 
         if (email == null || !email.contains("@")) {
             System.err.println("Email destinatario no válido: " + email);
-            return;
+            return null;
         }
 
         request.setTipo("Actualización de Cita");
@@ -273,15 +822,14 @@ public class AgendaServiceImpl implements AgendaService {
             default:
                 // Puedes agregar manejo para otros estados si es necesario
                 System.err.println("Estado no requiere notificación: " + nuevoEstado);
-                return;
+                return null;
         }
 
         mensajeBuilder.append("\nGracias por confiar en nosotros. 🐾\n\n")
                 .append("Mensaje generado automáticamente, por favor no responder este correo.");
 
         request.setMensaje(mensajeBuilder.toString());
-
-        notificacionesService.enviarNotificacion(request);
+        return request;
     }
 
 }
@@ -0,0 +1,192 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.service.ArchivoCitasService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mantiene pequena la tabla cita: las citas ATENDIDA o CANCELADA con fecha anterior a
+ * {@code agenda.archivo.dias-horizonte} se trasladan de madrugada a cita_archivo. Cada lote
+ * bloquea sus filas con SELECT ... FOR UPDATE (por idx_cita_estado_agenda), las copia con un
+ * INSERT ... SELECT y las borra de cita y de reserva_franja en la misma transaccion, asi una
+ * cita nunca esta en las dos tablas ni en ninguna. AgendaServiceImpl y las estadisticas leen
+ * tambien cita_archivo, por lo que el traslado no cambia ninguna respuesta.
+ */
+@Service
+public class ArchivoCitasServiceImpl implements ArchivoCitasService {
+
+    // Estados terminales: una cita en estos estados ya no ocupa la agenda ni vuelve a cambiar
+    public static final List<Estado> ESTADOS_ARCHIVABLES = List.of(Estado.ATENDIDA, Estado.CANCELADA);
+
+    private static final String COLUMNAS =
+            "id_cita, id_paciente, id_veterinario, fecha, hora, es_urgencia, motivo, estado, servicio_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean habilitado;
+    private final int diasHorizonte;
+    private final int tamanoLote;
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+
+    // Con cita_archivo vacia los listados de AgendaServiceImpl no la consultan
+    private volatile boolean hayArchivadas = true;
+    private volatile Map<String, Object> ultimaEjecucion = Map.of();
+    private volatile long totalArchivadas;
+
+    public ArchivoCitasServiceImpl(NamedParameterJdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${agenda.archivo.habilitado:true}") boolean habilitado,
+                                   @Value("${agenda.archivo.dias-horizonte:180}") int diasHorizonte,
+                                   @Value("${agenda.archivo.tamano-lote:1000}") int tamanoLote,
+                                   @Value("${agenda.vista.dias-atras:7}") int diasVista) {
+        // La vista de agenda y la cache de estadisticas asumen que los dias recientes siguen en cita
+        if (diasHorizonte <= diasVista) {
+            throw new IllegalStateException("agenda.archivo.dias-horizonte (" + diasHorizonte
+                    + ") debe ser mayor que agenda.vista.dias-atras (" + diasVista + ")");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.habilitado = habilitado;
+        this.diasHorizonte = diasHorizonte;
+        this.tamanoLote = tamanoLote;
+    }
+
+    // Comprueba si hay citas archivadas al arrancar y tras cada traslado (puede haberlo hecho otra instancia)
+    @EventListener(ApplicationReadyEvent.class)
+    public void comprobarArchivo() {
+        try {
+            hayArchivadas = !jdbcTemplate.queryForList("SELECT id_cita FROM cita_archivo LIMIT 1",
+                    Map.of(), Integer.class).isEmpty();
+        } catch (DataAccessException e) {
+            hayArchivadas = true;
+            System.err.println("No se pudo comprobar la tabla cita_archivo: " + e.getMessage());
+        }
+    }
+
+    public boolean hayArchivadas() {
+        return hayArchivadas;
+    }
+
+    // Solo se archivan citas anteriores a hoy menos el horizonte
+    public boolean puedeEstarArchivada(LocalDate fecha) {
+        return hayArchivadas && fecha.isBefore(LocalDate.now().minusDays(diasHorizonte));
+    }
+
+    @Scheduled(cron = "${agenda.archivo.cron:0 30 3 * * *}")
+    public void archivarPeriodicamente() {
+        if (!habilitado) {
+            return;
+        }
+        try {
+            System.out.println("Archivo de citas: " + archivar());
+        } catch (DataAccessException e) {
+            System.err.println("No se pudieron archivar las citas: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> archivar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            Map<String, Object> ocupado = new LinkedHashMap<>();
+            ocupado.put("estado", "archivo en curso");
+            return ocupado;
+        }
+        try {
+            LocalDate limite = LocalDate.now().minusDays(diasHorizonte);
+            long inicio = System.nanoTime();
+            long maxMsLote = 0;
+            int lotes = 0;
+            int archivadas = 0;
+            int movidas;
+            do {
+                long inicioLote = System.nanoTime();
+                Integer resultado = transactionTemplate.execute(estado -> moverLote(limite));
+                movidas = resultado == null ? 0 : resultado;
+                maxMsLote = Math.max(maxMsLote, (System.nanoTime() - inicioLote) / 1_000_000);
+                if (movidas > 0) {
+                    lotes++;
+                    archivadas += movidas;
+                }
+            } while (movidas == tamanoLote);
+            totalArchivadas += archivadas;
+            comprobarArchivo();
+
+            Map<String, Object> ejecucion = new LinkedHashMap<>();
+            ejecucion.put("fecha", LocalDateTime.now());
+            ejecucion.put("anterioresA", limite);
+            ejecucion.put("archivadas", archivadas);
+            ejecucion.put("lotes", lotes);
+            ejecucion.put("ms", (System.nanoTime() - inicio) / 1_000_000);
+            // Tiempo maximo que un lote mantuvo filas de cita bloqueadas
+            ejecucion.put("msMaxLote", maxMsLote);
+            ultimaEjecucion = ejecucion;
+            return ejecucion;
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    @Override
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("habilitado", habilitado);
+        estadisticas.put("diasHorizonte", diasHorizonte);
+        estadisticas.put("tamanoLote", tamanoLote);
+        estadisticas.put("totalArchivadas", totalArchivadas);
+        estadisticas.put("ultimaEjecucion", ultimaEjecucion);
+        estadisticas.put("tablas", tamanoTablas());
+        return estadisticas;
+    }
+
+    private int moverLote(LocalDate limite) {
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("estados", ESTADOS_ARCHIVABLES.stream().map(Estado::name).toList())
+                .addValue("limite", limite)
+                .addValue("lote", tamanoLote);
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT id_cita FROM cita WHERE estado IN (:estados) AND fecha < :limite LIMIT :lote FOR UPDATE",
+                parametros, Integer.class);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        MapSqlParameterSource porIds = new MapSqlParameterSource("ids", ids);
+        jdbcTemplate.update("INSERT INTO cita_archivo (" + COLUMNAS + ") SELECT " + COLUMNAS
+                + " FROM cita WHERE id_cita IN (:ids)", porIds);
+        jdbcTemplate.update("DELETE FROM reserva_franja WHERE id_cita IN (:ids)", porIds);
+        return jdbcTemplate.update("DELETE FROM cita WHERE id_cita IN (:ids)", porIds);
+    }
+
+    // Filas y tamano de datos e indices de ambas tablas; information_schema solo tiene estos datos en MySQL
+    private Map<String, Object> tamanoTablas() {
+        Map<String, Object> tablas = new LinkedHashMap<>();
+        try {
+            jdbcTemplate.query("SELECT table_name, table_rows, data_length, index_length FROM information_schema.tables"
+                            + " WHERE table_schema = DATABASE() AND table_name IN ('cita', 'cita_archivo')",
+                    fila -> {
+                        Map<String, Object> tabla = new LinkedHashMap<>();
+                        tabla.put("filasAproximadas", fila.getLong("table_rows"));
+                        tabla.put("bytesDatos", fila.getLong("data_length"));
+                        tabla.put("bytesIndices", fila.getLong("index_length"));
+                        tablas.put(fila.getString("table_name"), tabla);
+                    });
+        } catch (DataAccessException e) {
+            tablas.put("error", "Tamanos no disponibles: " + e.getMostSpecificCause().getMessage());
+        }
+        return tablas;
+    }
+}
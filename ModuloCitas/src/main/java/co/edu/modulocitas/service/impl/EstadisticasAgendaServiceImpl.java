@@ -0,0 +1,161 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.cache.CacheAcotada;
+import co.edu.modulocitas.dto.ConteoCitas;
+import co.edu.modulocitas.event.CitaGuardadaEvent;
+import co.edu.modulocitas.event.CitasVencidasEvent;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
+import co.edu.modulocitas.repository.CitaArchivadaRepository;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.EstadisticasAgendaService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Conteos de citas y minutos reservados por estado, veterinario y dia, calculados con un
+ * GROUP BY en MySQL. Los dias anteriores a hoy se guardan en cache por dia: solo cambian si
+ * alguien modifica una cita de esa fecha, y en ese caso el CitaGuardadaEvent los invalida. Una
+ * consulta hace como mucho dos SELECT: uno para los dias pasados que faltan en cache y otro
+ * para los dias desde hoy. Los dias pasados suman tambien las citas ya movidas a cita_archivo.
+ */
+@Service
+public class EstadisticasAgendaServiceImpl implements EstadisticasAgendaService {
+
+    private static final Comparator<ConteoCitas> ORDEN = Comparator
+            .comparing(ConteoCitas::fecha)
+            .thenComparing(ConteoCitas::idVeterinario, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ConteoCitas::estado, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final CitaRepository citaRepository;
+    private final CitaArchivadaRepository citaArchivadaRepository;
+    private final int maxDias;
+    private final CacheAcotada<LocalDate, List<ConteoCitas>> diasCerrados;
+
+    public EstadisticasAgendaServiceImpl(CitaRepository citaRepository,
+                                         CitaArchivadaRepository citaArchivadaRepository,
+                                         @Value("${agenda.estadisticas.max-dias:366}") int maxDias,
+                                         @Value("${agenda.estadisticas.max-dias-cache:1100}") int maxDiasCache) {
+        this.citaRepository = citaRepository;
+        this.citaArchivadaRepository = citaArchivadaRepository;
+        this.maxDias = maxDias;
+        this.diasCerrados = new CacheAcotada<>(maxDiasCache);
+    }
+
+    @Override
+    public Map<String, Object> consultarEstadisticas(LocalDate desde, LocalDate hasta, String idVeterinario) {
+        if (hasta.isBefore(desde)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La fecha final no puede ser anterior a la inicial");
+        }
+        if (ChronoUnit.DAYS.between(desde, hasta) >= maxDias) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El rango no puede superar " + maxDias + " días");
+        }
+
+        LocalDate hoy = LocalDate.now();
+        List<ConteoCitas> filas = new ArrayList<>();
+        if (desde.isBefore(hoy)) {
+            List<LocalDate> pasados = new ArrayList<>();
+            for (LocalDate fecha = desde; fecha.isBefore(hoy) && !fecha.isAfter(hasta); fecha = fecha.plusDays(1)) {
+                pasados.add(fecha);
+            }
+            diasCerrados.obtenerTodos(pasados, this::cargarDias).values().forEach(filas::addAll);
+        }
+        if (!hasta.isBefore(hoy)) {
+            filas.addAll(citaRepository.contarPorDiaVeterinarioYEstado(desde.isAfter(hoy) ? desde : hoy, hasta));
+        }
+        if (idVeterinario != null) {
+            filas.removeIf(fila -> !idVeterinario.equals(fila.idVeterinario()));
+        }
+        filas.sort(ORDEN);
+
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("desde", desde);
+        estadisticas.put("hasta", hasta);
+        estadisticas.put("idVeterinario", idVeterinario);
+        estadisticas.put("citas", filas.stream().mapToLong(ConteoCitas::citas).sum());
+        estadisticas.put("minutos", filas.stream().mapToLong(ConteoCitas::minutos).sum());
+        estadisticas.put("porEstado", totalesPor(filas, fila -> String.valueOf(fila.estado())));
+        estadisticas.put("porVeterinario", totalesPor(filas, fila -> String.valueOf(fila.idVeterinario())));
+        estadisticas.put("porDia", totalesPor(filas, fila -> fila.fecha().toString()));
+        estadisticas.put("detalle", filas);
+        return estadisticas;
+    }
+
+    @Override
+    public Map<String, Object> estadisticasCache() {
+        return diasCerrados.estadisticas();
+    }
+
+    // Un cambio en una cita pasada (p. ej. marcarla ATENDIDA al dia siguiente) reabre ese dia
+    @EventListener
+    public void alGuardarCita(CitaGuardadaEvent evento) {
+        if (evento.cita().getFecha() != null) {
+            diasCerrados.invalidar(evento.cita().getFecha());
+        }
+        if (evento.fechaAnterior() != null) {
+            diasCerrados.invalidar(evento.fechaAnterior());
+        }
+    }
+
+    // El barrido de vencimiento cambia el estado de citas pasadas sin pasar por ReservaAgenda
+    @EventListener
+    public void alVencerCitas(CitasVencidasEvent evento) {
+        evento.fechas().forEach(diasCerrados::invalidar);
+    }
+
+    // Los minutos dependen de la duracion del servicio
+    @EventListener
+    public void alModificarServicio(ServicioModificadoEvent evento) {
+        diasCerrados.invalidarTodo();
+    }
+
+    // Un GROUP BY por tabla entre el primer y el ultimo dia ausente; los dias sin citas se guardan vacios
+    private Map<LocalDate, List<ConteoCitas>> cargarDias(List<LocalDate> fechas) {
+        LocalDate primera = Collections.min(fechas);
+        LocalDate ultima = Collections.max(fechas);
+        Map<LocalDate, Map<List<Object>, ConteoCitas>> porDia = new HashMap<>();
+        fechas.forEach(fecha -> porDia.put(fecha, new LinkedHashMap<>()));
+        List<ConteoCitas> filas = new ArrayList<>(citaRepository.contarPorDiaVeterinarioYEstado(primera, ultima));
+        filas.addAll(citaArchivadaRepository.contarPorDiaVeterinarioYEstado(primera, ultima));
+        for (ConteoCitas fila : filas) {
+            Map<List<Object>, ConteoCitas> dia = porDia.get(fila.fecha());
+            if (dia != null) {
+                // Mientras se archiva un dia, el mismo grupo puede tener filas en las dos tablas
+                dia.merge(Arrays.asList(fila.idVeterinario(), fila.estado()), fila, (a, b) -> new ConteoCitas(
+                        a.fecha(), a.idVeterinario(), a.estado(), a.citas() + b.citas(), a.minutos() + b.minutos()));
+            }
+        }
+        Map<LocalDate, List<ConteoCitas>> resultado = new HashMap<>();
+        porDia.forEach((fecha, grupos) -> resultado.put(fecha, List.copyOf(grupos.values())));
+        return resultado;
+    }
+
+    private static Map<String, Map<String, Long>> totalesPor(List<ConteoCitas> filas, Function<ConteoCitas, String> clave) {
+        Map<String, Map<String, Long>> totales = new LinkedHashMap<>();
+        for (ConteoCitas fila : filas) {
+            Map<String, Long> total = totales.computeIfAbsent(clave.apply(fila), k -> {
+                Map<String, Long> nuevo = new LinkedHashMap<>();
+                nuevo.put("citas", 0L);
+                nuevo.put("minutos", 0L);
+                return nuevo;
+            });
+            total.merge("citas", fila.citas(), Long::sum);
+            total.merge("minutos", fila.minutos(), Long::sum);
+        }
+        return totales;
+    }
+}
@@ -0,0 +1,172 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.EventoAgenda;
+import co.edu.modulocitas.enums.TipoEventoAgenda;
+import co.edu.modulocitas.event.CitaGuardadaEvent;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.service.EventosAgendaService;
+import co.edu.modulocitas.service.ServicioService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feed de cambios de la agenda. Cada suscriptor tiene una cola acotada: si se llena porque el
+ * cliente no lee, los eventos siguientes se descartan y, en cuanto vuelve a haber sitio, se le
+ * envia un unico RESINCRONIZAR para que recargue la agenda (p. ej. desde /agenda/vista). Asi un
+ * panel lento nunca retiene mas de {@code agenda.eventos.capacidad} eventos en memoria.
+ */
+@Service
+public class EventosAgendaServiceImpl implements EventosAgendaService {
+
+    private final ServicioService servicioService;
+    private final int capacidad;
+    private final int maxSuscriptores;
+    private final Duration latido;
+
+    private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+    private final AtomicLong secuencia = new AtomicLong();
+    private final AtomicLong publicados = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong resincronizaciones = new AtomicLong();
+
+    public EventosAgendaServiceImpl(ServicioService servicioService,
+                                    @Value("${agenda.eventos.capacidad:256}") int capacidad,
+                                    @Value("${agenda.eventos.max-suscriptores:200}") int maxSuscriptores,
+                                    @Value("${agenda.eventos.latido-segundos:15}") int latidoSegundos) {
+        this.servicioService = servicioService;
+        this.capacidad = capacidad;
+        this.maxSuscriptores = maxSuscriptores;
+        this.latido = Duration.ofSeconds(latidoSegundos);
+    }
+
+    @Override
+    public Flux<ServerSentEvent<EventoAgenda>> suscribir(String idVeterinario, LocalDate fecha) {
+        if (suscriptores.size() >= maxSuscriptores) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Se alcanzó el máximo de suscriptores al feed de la agenda");
+        }
+        Suscriptor suscriptor = new Suscriptor(idVeterinario, fecha);
+        suscriptores.add(suscriptor);
+
+        Flux<ServerSentEvent<EventoAgenda>> eventos = suscriptor.sink.asFlux()
+                .map(evento -> ServerSentEvent.builder(evento)
+                        .id(String.valueOf(evento.secuencia()))
+                        .event(evento.tipo().name())
+                        .build());
+        // El latido mantiene viva la conexion y reintenta el RESINCRONIZAR pendiente aunque no lleguen cambios
+        Flux<ServerSentEvent<EventoAgenda>> latidos = Flux.interval(latido)
+                .onBackpressureDrop()
+                .doOnNext(tick -> suscriptor.resincronizarSiHaySitio())
+                .map(tick -> ServerSentEvent.<EventoAgenda>builder().comment("latido").build());
+        // prefetch 1: los eventos esperan en la cola acotada del suscriptor y no en la del merge
+        return Flux.merge(1, eventos, latidos)
+                .doFinally(senal -> suscriptores.remove(suscriptor));
+    }
+
+    @EventListener
+    public void alGuardarCita(CitaGuardadaEvent evento) {
+        if (suscriptores.isEmpty()) {
+            return;
+        }
+        Cita cita = evento.cita();
+        Servicio servicio = cita.getServicio() == null ? null
+                : servicioService.consultarServicioPorId(cita.getServicio().getId()).orElse(null);
+        publicar(new EventoAgenda(secuencia.incrementAndGet(), evento.tipo(), CitaResumen.de(cita, servicio),
+                evento.idVeterinarioAnterior(), evento.fechaAnterior()));
+    }
+
+    void publicar(EventoAgenda evento) {
+        publicados.incrementAndGet();
+        for (Suscriptor suscriptor : suscriptores) {
+            if (suscriptor.interesa(evento)) {
+                suscriptor.entregar(evento);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("suscriptores", suscriptores.size());
+        estadisticas.put("capacidadPorSuscriptor", capacidad);
+        estadisticas.put("publicados", publicados.get());
+        estadisticas.put("descartados", descartados.get());
+        estadisticas.put("resincronizaciones", resincronizaciones.get());
+        return estadisticas;
+    }
+
+    private final class Suscriptor {
+
+        private final String idVeterinario;
+        private final LocalDate fecha;
+        private final Sinks.Many<EventoAgenda> sink;
+        // Se perdio al menos un evento y aun no se ha podido avisar al cliente (bajo this)
+        private boolean desincronizado;
+
+        private Suscriptor(String idVeterinario, LocalDate fecha) {
+            this.idVeterinario = idVeterinario;
+            this.fecha = fecha;
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(capacidad));
+        }
+
+        // Un cambio interesa si la cita estaba o queda en la agenda filtrada
+        private boolean interesa(EventoAgenda evento) {
+            CitaResumen cita = evento.cita();
+            boolean ahora = coincide(cita.idVeterinario(), cita.fecha());
+            boolean antes = evento.idVeterinarioAnterior() != null
+                    && coincide(evento.idVeterinarioAnterior(), evento.fechaAnterior());
+            return ahora || antes;
+        }
+
+        private boolean coincide(String veterinario, LocalDate dia) {
+            return (idVeterinario == null || idVeterinario.equals(veterinario))
+                    && (fecha == null || fecha.equals(dia));
+        }
+
+        // Las entregas se serializan: el sink no admite emisiones concurrentes
+        private synchronized void entregar(EventoAgenda evento) {
+            if (desincronizado && !emitirResincronizar(evento.secuencia() - 1)) {
+                descartados.incrementAndGet();
+                return;
+            }
+            Sinks.EmitResult resultado = sink.tryEmitNext(evento);
+            if (resultado == Sinks.EmitResult.FAIL_OVERFLOW) {
+                desincronizado = true;
+                descartados.incrementAndGet();
+            } else if (resultado.isFailure()) {
+                suscriptores.remove(this);
+            }
+        }
+
+        private synchronized void resincronizarSiHaySitio() {
+            if (desincronizado) {
+                emitirResincronizar(secuencia.get());
+            }
+        }
+
+        private boolean emitirResincronizar(long ultimaSecuencia) {
+            if (sink.tryEmitNext(new EventoAgenda(ultimaSecuencia, TipoEventoAgenda.RESINCRONIZAR, null, null, null)).isFailure()) {
+                return false;
+            }
+            desincronizado = false;
+            resincronizaciones.incrementAndGet();
+            return true;
+        }
+    }
+}
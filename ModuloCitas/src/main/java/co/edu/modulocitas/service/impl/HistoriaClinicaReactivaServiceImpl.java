@@ -0,0 +1,63 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.model.HistoriaClinica;
+import co.edu.modulocitas.service.AgendaService;
+import co.edu.modulocitas.service.HistoriaClinicaReactivaService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+
+/**
+ * Alta de historias clinicas sin esperar a usuarios, al PDF ni a notificaciones. Solo existe con
+ * el perfil "reactivo": la historia se guarda primero y el aviso con el PDF se arma despues, con
+ * los tres datos del paciente pedidos a la vez. Sin el perfil la atiende HistoriaClinicaService,
+ * que avisa antes de guardar y dentro de la peticion.
+ */
+@Service
+@Profile("reactivo")
+public class HistoriaClinicaReactivaServiceImpl implements HistoriaClinicaReactivaService {
+
+    private final HistoriaClinicaServiceImpl historiaClinicaService;
+    private final AgendaService agendaService;
+    private final UsuarioServiceImpl usuarioServiceImpl;
+    private final NotificacionesService notificacionesService;
+    private final Scheduler jdbcScheduler;
+
+    public HistoriaClinicaReactivaServiceImpl(HistoriaClinicaServiceImpl historiaClinicaService,
+                                              AgendaService agendaService,
+                                              UsuarioServiceImpl usuarioServiceImpl,
+                                              NotificacionesService notificacionesService,
+                                              Scheduler jdbcScheduler) {
+        this.historiaClinicaService = historiaClinicaService;
+        this.agendaService = agendaService;
+        this.usuarioServiceImpl = usuarioServiceImpl;
+        this.notificacionesService = notificacionesService;
+        this.jdbcScheduler = jdbcScheduler;
+    }
+
+    @Override
+    public Mono<HistoriaClinica> crearHistoriaClinica(HistoriaClinica historiaClinica) {
+        return Mono.fromCallable(() -> agendaService.consultarCitaPorId(historiaClinica.getIdCita()))
+                .subscribeOn(jdbcScheduler)
+                .filter(Optional::isPresent)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "La cita no existe.")))
+                .map(cita -> historiaClinicaService.guardar(historiaClinica))
+                .doOnNext(guardada -> notificacionesService.enSegundoPlano(avisoHistoriaClinica(guardada)));
+    }
+
+    private Mono<Void> avisoHistoriaClinica(HistoriaClinica historiaClinica) {
+        return usuarioServiceImpl.obtenerContextoNotificacionReactivo(historiaClinica.getIdPaciente(),
+                        historiaClinica.getIdVeterinario())
+                // El PDF es trabajo de CPU: no se genera en los hilos de red
+                .publishOn(Schedulers.parallel())
+                .map(datos -> historiaClinicaService.solicitudHistoriaClinica(historiaClinica,
+                        datos.getEmail(), datos.getNombreMascota(), datos.getNombreVeterinario()))
+                .flatMap(notificacionesService::notificarConAdjunto);
+    }
+}
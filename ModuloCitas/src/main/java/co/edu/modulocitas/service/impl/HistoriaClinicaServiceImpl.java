@@ -1,5 +1,7 @@
 package co.edu.modulocitas.service.impl;
 
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.event.HistoriaClinicaGuardadaEvent;
 import co.edu.modulocitas.model.Cita;
 import co.edu.modulocitas.model.HistoriaClinica;
 import co.edu.modulocitas.repository.HistoriaClinicaRepository;
@@ -10,6 +12,7 @@ import com.itextpdf.text.BaseColor;
 import com.lowagie.text.*;
 import com.lowagie.text.pdf.PdfWriter;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -29,6 +32,7 @@ public class HistoriaClinicaServiceImpl implements HistoriaClinicaService {
     private final AgendaService agendaService;
     private final UsuarioServiceImpl usuarioServiceImpl;
     private final NotificacionesService  notificacionesService;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     @Override
@@ -51,7 +55,7 @@ public class HistoriaClinicaServiceImpl implements HistoriaClinicaService {
         }
 
     notificarHistoriaClinica(historiaClinica);
-        return historiaClinicaRepository.save(historiaClinica);
+        return guardar(historiaClinica);
     }
 
     @Override
@@ -74,6 +78,7 @@ public class HistoriaClinicaServiceImpl implements HistoriaClinicaService {
         return historiaClinicaRepository.findById(idHistoriaClinica)
                 .map(historiaClinica -> {
                     historiaClinicaRepository.delete(historiaClinica);
+                    eventPublisher.publishEvent(new HistoriaClinicaGuardadaEvent(historiaClinica.getIdPaciente()));
                     return historiaClinica;
                 });
     }
@@ -88,10 +93,17 @@ public class HistoriaClinicaServiceImpl implements HistoriaClinicaService {
                     historiaActual.setObservaciones(historiaClinica.getObservaciones());
                     historiaActual.setTratamiento(historiaClinica.getTratamiento());
 
-                    return historiaClinicaRepository.save(historiaActual);
+                    return guardar(historiaActual);
                 });
     }
 
+    // Todas las altas y ediciones pasan por aqui para que la ETag del paciente cambie
+    HistoriaClinica guardar(HistoriaClinica historiaClinica) {
+        HistoriaClinica guardada = historiaClinicaRepository.save(historiaClinica);
+        eventPublisher.publishEvent(new HistoriaClinicaGuardadaEvent(guardada.getIdPaciente()));
+        return guardada;
+    }
+
 //    private void notificarHistoriaClinica(HistoriaClinica historiaClinica) {
 //        NotificacionRequest request = new NotificacionRequest();
 //
@@ -142,10 +154,16 @@ public class HistoriaClinicaServiceImpl implements HistoriaClinicaService {
 //    }
 
     private void notificarHistoriaClinica(HistoriaClinica historiaClinica) {
-        String email = usuarioServiceImpl.obtenerEmail(historiaClinica.getIdPaciente());
-        String nombreMascota = usuarioServiceImpl.obtenerNombreMascota(historiaClinica.getIdPaciente());
-        String nombreVeterinario = usuarioServiceImpl.obtenerNombreVeterinario(historiaClinica.getIdVeterinario());
+        ContextoNotificacion contexto = usuarioServiceImpl.obtenerContextoNotificacion(
+                historiaClinica.getIdPaciente(), historiaClinica.getIdVeterinario());
 
+        notificacionesService.enviarNotificacionConAdjunto(solicitudHistoriaClinica(historiaClinica,
+                contexto.getEmail(), contexto.getNombreMascota(), contexto.getNombreVeterinario()));
+    }
+
+    // Genera el PDF y arma el aviso con el adjunto; tambien lo usa HistoriaClinicaReactivaServiceImpl
+    NotificacionRequest solicitudHistoriaClinica(HistoriaClinica historiaClinica, String email,
+                                                 String nombreMascota, String nombreVeterinario) {
         byte[] pdf = generarPdfHistoriaClinica(historiaClinica, nombreMascota, nombreVeterinario);
 
         String base64Pdf = Base64.getEncoder().encodeToString(pdf);
@@ -157,8 +175,7 @@ public class HistoriaClinicaServiceImpl implements HistoriaClinicaService {
         request.setMensaje("Hola, señor usuari@ "+"Se adjunta el resumen de la historia clínica de tu mascota.");
         request.setAdjunto(base64Pdf);
         request.setNombreAdjunto("Historia_" + nombreMascota + historiaClinica.getFecha()+".pdf");
-
-        notificacionesService.enviarNotificacionConAdjunto(request);
+        return request;
     }
 
     public byte[] generarPdfHistoriaClinica(HistoriaClinica historia, String nombreMascota, String nombreVeterinario) {
@@ -0,0 +1,186 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.RecursoNoEncontradoExcepcion;
+import co.edu.modulocitas.Exception.VeterinarioNoDisponible;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.HorariosLibres;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.service.HorarioService;
+import co.edu.modulocitas.service.ServicioService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Busqueda de horas libres. Cada dia de cada veterinario se representa con un mapa de bits
+ * de franjas de {@code agenda.horarios.minutos-franja} minutos: se marcan las franjas en las
+ * que puede empezar una cita segun sus disponibilidades y las ocupadas segun IndiceAgenda, y
+ * una hora es libre si la cita completa no toca ninguna franja ocupada.
+ */
+@Service
+@RequiredArgsConstructor
+public class HorarioServiceImpl implements HorarioService {
+
+    private static final int SEGUNDOS_DIA = 24 * 3600;
+
+    private final ServicioService servicioService;
+    private final UsuarioServiceImpl usuarioServiceImpl;
+    private final IndiceAgenda indiceAgenda;
+    private final Executor agendaExecutor;
+
+    @Value("${agenda.horarios.minutos-franja:5}")
+    private int minutosFranja;
+
+    @Value("${agenda.horarios.max-dias:31}")
+    private int maxDias;
+
+    @Value("${agenda.horarios.max-veterinarios:20}")
+    private int maxVeterinarios;
+
+    @Override
+    public List<HorariosLibres> consultarHorariosLibres(List<String> idsVeterinario, LocalDate desde, LocalDate hasta,
+                                                        Integer idServicio, Integer duracion) {
+        List<String> veterinarios = new ArrayList<>(new LinkedHashSet<>(idsVeterinario));
+        validarRango(veterinarios, desde, hasta);
+        int duracionMinutos = duracionPedida(idServicio, duracion);
+
+        // Las citas ya pasadas no se ofrecen
+        LocalDateTime ahora = LocalDateTime.now();
+        if (hasta.isBefore(ahora.toLocalDate())) {
+            return List.of();
+        }
+        LocalDate inicio = desde.isBefore(ahora.toLocalDate()) ? ahora.toLocalDate() : desde;
+
+        Map<String, List<DisponibilidadVeterinario>> disponibilidades = consultarDisponibilidades(veterinarios);
+        indiceAgenda.precargar(veterinarios, inicio, hasta);
+
+        int segundosFranja = minutosFranja * 60;
+        List<HorariosLibres> resultado = new ArrayList<>();
+        for (String idVeterinario : veterinarios) {
+            for (LocalDate fecha = inicio; !fecha.isAfter(hasta); fecha = fecha.plusDays(1)) {
+                BitSet inicios = iniciosPermitidos(disponibilidades.get(idVeterinario), fecha, segundosFranja);
+                if (fecha.equals(ahora.toLocalDate())) {
+                    inicios.clear(0, ahora.toLocalTime().toSecondOfDay() / segundosFranja + 1);
+                }
+                if (inicios.isEmpty()) {
+                    continue;
+                }
+                BitSet ocupadas = new BitSet(SEGUNDOS_DIA / segundosFranja);
+                indiceAgenda.marcarOcupadas(idVeterinario, fecha, ocupadas, segundosFranja);
+                List<LocalTime> horas = horasLibres(inicios, ocupadas, duracionMinutos * 60, segundosFranja);
+                if (!horas.isEmpty()) {
+                    resultado.add(new HorariosLibres(idVeterinario, fecha, horas));
+                }
+            }
+        }
+        return resultado;
+    }
+
+    private void validarRango(List<String> veterinarios, LocalDate desde, LocalDate hasta) {
+        if (veterinarios.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Debe indicar al menos un veterinario");
+        }
+        if (veterinarios.size() > maxVeterinarios) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No se pueden consultar más de " + maxVeterinarios + " veterinarios a la vez");
+        }
+        if (hasta.isBefore(desde)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La fecha final no puede ser anterior a la inicial");
+        }
+        if (ChronoUnit.DAYS.between(desde, hasta) >= maxDias) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El rango no puede superar " + maxDias + " días");
+        }
+    }
+
+    private int duracionPedida(Integer idServicio, Integer duracion) {
+        if (idServicio != null) {
+            duracion = servicioService.consultarServicioPorId(idServicio)
+                    .map(Servicio::getDuracion)
+                    .orElseThrow(() -> new RecursoNoEncontradoExcepcion("El servicio con ID " + idServicio + " no existe"));
+        }
+        if (duracion == null || duracion <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La duración del servicio debe ser mayor a 0");
+        }
+        return duracion;
+    }
+
+    // Una consulta a usuarios por veterinario, todas a la vez
+    private Map<String, List<DisponibilidadVeterinario>> consultarDisponibilidades(List<String> veterinarios) {
+        Map<String, CompletableFuture<List<DisponibilidadVeterinario>>> consultas = new LinkedHashMap<>();
+        try {
+            for (String idVeterinario : veterinarios) {
+                consultas.put(idVeterinario, CompletableFuture.supplyAsync(
+                        () -> usuarioServiceImpl.obtenerDisponibilidadesActivas(idVeterinario), agendaExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            consultas.values().forEach(consulta -> consulta.cancel(true));
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Demasiadas consultas de horarios a la vez, inténtelo de nuevo");
+        }
+        Map<String, List<DisponibilidadVeterinario>> disponibilidades = new LinkedHashMap<>();
+        consultas.forEach((idVeterinario, consulta) -> {
+            try {
+                disponibilidades.put(idVeterinario, consulta.join());
+            } catch (CompletionException e) {
+                System.err.println("Error al consultar la disponibilidad del veterinario " + idVeterinario + ": "
+                        + e.getCause().getMessage());
+                throw new VeterinarioNoDisponible("No se pudo consultar la disponibilidad del veterinario " + idVeterinario);
+            }
+        });
+        return disponibilidades;
+    }
+
+    // Franjas cuyo inicio cae dentro de alguna disponibilidad activa (misma regla que DisponibilidadVeterinario.cubre)
+    static BitSet iniciosPermitidos(List<DisponibilidadVeterinario> franjas, LocalDate fecha, int segundosFranja) {
+        BitSet inicios = new BitSet(SEGUNDOS_DIA / segundosFranja);
+        for (DisponibilidadVeterinario franja : franjas) {
+            if (!franja.isActivo() || franja.getDiaSemana() != fecha.getDayOfWeek()
+                    || franja.getHoraInicio() == null || franja.getHoraFin() == null) {
+                continue;
+            }
+            int desde = techo(franja.getHoraInicio().toSecondOfDay(), segundosFranja);
+            int hasta = techo(franja.getHoraFin().toSecondOfDay(), segundosFranja);
+            if (hasta > desde) {
+                inicios.set(desde, hasta);
+            }
+        }
+        return inicios;
+    }
+
+    // Una cita que empieza en la franja i ocupa las franjas [i, i + n): debe terminar el mismo dia
+    private static List<LocalTime> horasLibres(BitSet inicios, BitSet ocupadas, int segundosCita, int segundosFranja) {
+        int franjasCita = techo(segundosCita, segundosFranja);
+        int ultimoInicio = (SEGUNDOS_DIA - segundosCita) / segundosFranja;
+        List<LocalTime> horas = new ArrayList<>();
+        for (int i = inicios.nextSetBit(0); i >= 0 && i <= ultimoInicio; i = inicios.nextSetBit(i + 1)) {
+            int siguienteOcupada = ocupadas.nextSetBit(i);
+            if (siguienteOcupada < 0 || siguienteOcupada >= i + franjasCita) {
+                horas.add(LocalTime.ofSecondOfDay((long) i * segundosFranja));
+            } else {
+                // Ninguna franja hasta la ocupada (incluida) puede servir de inicio
+                i = siguienteOcupada;
+            }
+        }
+        return horas;
+    }
+
+    private static int techo(int valor, int divisor) {
+        return (valor + divisor - 1) / divisor;
+    }
+}
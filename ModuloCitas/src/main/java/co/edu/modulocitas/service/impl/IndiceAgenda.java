@@ -0,0 +1,349 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Indice en memoria de los intervalos ocupados por cada veterinario en cada fecha.
+ * Reemplaza la consulta nativa {@link CitaRepository#conflictoHorario} en la validacion
+ * de citas: cada dia se carga de la base de datos la primera vez que se consulta y
+ * despues se mantiene actualizado desde AgendaServiceImpl.
+ */
+@Service
+@RequiredArgsConstructor
+public class IndiceAgenda {
+
+    // Estados que ocupan horario en la agenda; una cita reprogramada ocupa su nueva hora
+    public static final List<Estado> ESTADOS_OCUPADOS =
+            List.of(Estado.PROGRAMADA, Estado.REPROGRAMADA, Estado.ATENDIDA, Estado.EN_CURSO);
+
+    private final CitaRepository citaRepository;
+    private final ServicioService servicioService;
+
+    private final Map<Clave, DiaAgenda> dias = new ConcurrentHashMap<>();
+    // Cambios que llegan mientras un dia se lee de la base de datos; se aplican antes de publicarlo.
+    // Protegido por this, igual que la publicacion de los dias cargados
+    private final Map<Clave, List<Consumer<DiaAgenda>>> cargando = new HashMap<>();
+
+    public boolean hayConflicto(String idVeterinario, LocalDate fecha, LocalTime hora, int duracion) {
+        return contarConflictos(idVeterinario, fecha, hora, duracion) > 0;
+    }
+
+    // Sin contar las citas de ignorar, p. ej. la propia cita que se esta moviendo
+    public boolean hayConflicto(String idVeterinario, LocalDate fecha, LocalTime hora, int duracion,
+                                Set<Integer> ignorar) {
+        int inicio = hora.toSecondOfDay();
+        return obtenerDia(idVeterinario, fecha).contarConflictos(inicio, inicio + duracion * 60, ignorar) > 0;
+    }
+
+    // Equivalente a conflictoHorario, restringido a las citas en estados ocupados
+    public long contarConflictos(String idVeterinario, LocalDate fecha, LocalTime hora, int duracion) {
+        int inicio = hora.toSecondOfDay();
+        return obtenerDia(idVeterinario, fecha).contarConflictos(inicio, inicio + duracion * 60);
+    }
+
+    public void registrar(Cita cita) {
+        Clave clave = Clave.de(cita);
+        if (clave == null) {
+            return;
+        }
+        Integer idCita = cita.getIdCita();
+        LocalTime hora = cita.getHora();
+        int duracion = ocupaHorario(cita) ? duracion(cita) : -1;
+        aplicar(clave, dia -> {
+            dia.quitar(idCita);
+            if (duracion >= 0) {
+                dia.agregar(idCita, hora, duracion);
+            }
+        });
+    }
+
+    // Retira una cita de la posicion que ocupaba antes de ser modificada
+    public void retirar(Integer idCita, String idVeterinario, LocalDate fecha) {
+        if (idVeterinario == null || fecha == null) {
+            return;
+        }
+        aplicar(new Clave(idVeterinario, fecha), dia -> dia.quitar(idCita));
+    }
+
+    // Descarta un dia para que la siguiente consulta lo lea de nuevo de la base de datos.
+    // Una carga en curso del mismo dia ya no se publica: pudo leer antes del cambio
+    public synchronized void recargar(String idVeterinario, LocalDate fecha) {
+        Clave clave = new Clave(idVeterinario, fecha);
+        dias.remove(clave);
+        cargando.remove(clave);
+    }
+
+    public synchronized void invalidarTodo() {
+        dias.clear();
+        cargando.clear();
+    }
+
+    // La duracion de un servicio forma parte de cada intervalo indexado
+    @EventListener
+    public void alModificarServicio(ServicioModificadoEvent evento) {
+        invalidarTodo();
+    }
+
+    // Carga con una sola consulta los dias aun no indexados de varios veterinarios
+    public void precargar(Collection<String> idsVeterinario, LocalDate desde, LocalDate hasta) {
+        List<Clave> pendientes = new ArrayList<>();
+        for (String idVeterinario : idsVeterinario) {
+            for (LocalDate fecha = desde; !fecha.isAfter(hasta); fecha = fecha.plusDays(1)) {
+                Clave clave = new Clave(idVeterinario, fecha);
+                if (!dias.containsKey(clave)) {
+                    pendientes.add(clave);
+                }
+            }
+        }
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        Map<Clave, List<Consumer<DiaAgenda>>> cambios = new HashMap<>();
+        pendientes.forEach(clave -> cambios.put(clave, empezarCarga(clave)));
+        Map<Clave, DiaAgenda> cargados = new HashMap<>();
+        pendientes.forEach(clave -> cargados.put(clave, new DiaAgenda()));
+        try {
+            for (Cita cita : citaRepository.findCitaByIdVeterinarioInAndFechaBetween(idsVeterinario, desde, hasta)) {
+                DiaAgenda dia = cargados.get(Clave.de(cita));
+                if (dia != null && ocupaHorario(cita)) {
+                    dia.agregar(cita.getIdCita(), cita.getHora(), duracion(cita));
+                }
+            }
+        } catch (RuntimeException e) {
+            cambios.forEach(this::abandonarCarga);
+            throw e;
+        }
+        cargados.forEach((clave, dia) -> publicar(clave, dia, cambios.get(clave)));
+    }
+
+    // Marca en el mapa de bits cada franja de segundosPorFranja que se solapa con alguna cita ocupada
+    public void marcarOcupadas(String idVeterinario, LocalDate fecha, BitSet franjas, int segundosPorFranja) {
+        marcarOcupadas(idVeterinario, fecha, franjas, segundosPorFranja, Set.of());
+    }
+
+    public void marcarOcupadas(String idVeterinario, LocalDate fecha, BitSet franjas, int segundosPorFranja,
+                               Set<Integer> ignorar) {
+        obtenerDia(idVeterinario, fecha).marcarOcupadas(franjas, segundosPorFranja, ignorar);
+    }
+
+    public Lote nuevoLote() {
+        return new Lote();
+    }
+
+    public int diasCargados() {
+        return dias.size();
+    }
+
+    // La consulta se hace fuera de computeIfAbsent: el mapa la ejecutaria bajo un monitor y, con
+    // hilos virtuales, el hilo quedaria fijado a su portador mientras espera a MySQL. Los cambios
+    // registrados durante la lectura se guardan aparte y se aplican al publicar el dia, asi una
+    // cita confirmada despues de la consulta no se pierde. Dos cargas simultaneas del mismo dia
+    // comparten esos cambios; se queda la primera.
+    private DiaAgenda obtenerDia(String idVeterinario, LocalDate fecha) {
+        Clave clave = new Clave(idVeterinario, fecha);
+        DiaAgenda dia = dias.get(clave);
+        if (dia != null) {
+            return dia;
+        }
+        List<Consumer<DiaAgenda>> cambios = empezarCarga(clave);
+        DiaAgenda cargado;
+        try {
+            cargado = cargarDia(clave);
+        } catch (RuntimeException e) {
+            abandonarCarga(clave, cambios);
+            throw e;
+        }
+        return publicar(clave, cargado, cambios);
+    }
+
+    private synchronized List<Consumer<DiaAgenda>> empezarCarga(Clave clave) {
+        return cargando.computeIfAbsent(clave, c -> new ArrayList<>());
+    }
+
+    private synchronized void abandonarCarga(Clave clave, List<Consumer<DiaAgenda>> cambios) {
+        cargando.remove(clave, cambios);
+    }
+
+    // Devuelve el dia que queda en el indice; si la carga se invalido mientras tanto no se guarda
+    private synchronized DiaAgenda publicar(Clave clave, DiaAgenda cargado, List<Consumer<DiaAgenda>> cambios) {
+        DiaAgenda anterior = dias.get(clave);
+        if (anterior != null) {
+            return anterior;
+        }
+        cambios.forEach(cambio -> cambio.accept(cargado));
+        if (cargando.get(clave) == cambios) {
+            cargando.remove(clave);
+            dias.put(clave, cargado);
+        }
+        return cargado;
+    }
+
+    // Un dia que nadie esta cargando ni tiene indexado se leera completo en la primera consulta
+    private synchronized void aplicar(Clave clave, Consumer<DiaAgenda> cambio) {
+        DiaAgenda dia = dias.get(clave);
+        if (dia != null) {
+            cambio.accept(dia);
+            return;
+        }
+        List<Consumer<DiaAgenda>> cambios = cargando.get(clave);
+        if (cambios != null) {
+            cambios.add(cambio);
+        }
+    }
+
+    private DiaAgenda cargarDia(Clave clave) {
+        DiaAgenda dia = new DiaAgenda();
+        for (Cita cita : citaRepository.findCitaByIdVeterinarioAndFecha(clave.idVeterinario(), clave.fecha())) {
+            if (ocupaHorario(cita)) {
+                dia.agregar(cita.getIdCita(), cita.getHora(), duracion(cita));
+            }
+        }
+        return dia;
+    }
+
+    int duracion(Cita cita) {
+        return servicioService.consultarServicioPorId(cita.getServicio().getId())
+                .map(Servicio::getDuracion)
+                .orElse(0);
+    }
+
+    static boolean ocupaHorario(Cita cita) {
+        // Una cita sin estado aun no ha sido clasificada, se trata como ocupada
+        return cita.getHora() != null && cita.getServicio() != null
+                && (cita.getEstado() == null || ESTADOS_OCUPADOS.contains(cita.getEstado()));
+    }
+
+    /**
+     * Reservas de un lote de citas aun sin guardar. Cada cita se compara con el indice y
+     * con las anteriores del mismo lote, sin modificar el indice hasta que se persistan.
+     */
+    public final class Lote {
+
+        private final Map<Clave, DiaAgenda> reservas = new HashMap<>();
+        private int siguienteId;
+
+        public boolean hayConflicto(String idVeterinario, LocalDate fecha, LocalTime hora, int duracion) {
+            return hayConflicto(idVeterinario, fecha, hora, duracion, Set.of());
+        }
+
+        // Como si las citas indexadas de ignorar ya no estuvieran (p. ej. las que se van a reubicar)
+        public boolean hayConflicto(String idVeterinario, LocalDate fecha, LocalTime hora, int duracion,
+                                    Set<Integer> ignorar) {
+            int inicio = hora.toSecondOfDay();
+            int fin = inicio + duracion * 60;
+            if (obtenerDia(idVeterinario, fecha).contarConflictos(inicio, fin, ignorar) > 0) {
+                return true;
+            }
+            DiaAgenda reservado = reservas.get(new Clave(idVeterinario, fecha));
+            return reservado != null && reservado.contarConflictos(inicio, fin) > 0;
+        }
+
+        public void reservar(String idVeterinario, LocalDate fecha, LocalTime hora, int duracion) {
+            reservas.computeIfAbsent(new Clave(idVeterinario, fecha), clave -> new DiaAgenda())
+                    .agregar(++siguienteId, hora, duracion);
+        }
+    }
+
+    record Clave(String idVeterinario, LocalDate fecha) {
+        static Clave de(Cita cita) {
+            if (cita.getIdVeterinario() == null || cita.getFecha() == null) {
+                return null;
+            }
+            return new Clave(cita.getIdVeterinario(), cita.getFecha());
+        }
+    }
+
+    /**
+     * Intervalos de un dia ordenados por hora de inicio (en segundos). Una consulta solo
+     * recorre las citas que empiezan entre {@code inicio - duracionMaxima} y {@code fin},
+     * las unicas que pueden solaparse, por lo que cuesta O(log n) sobre una agenda sin solapes.
+     */
+    static final class DiaAgenda {
+
+        private static final int SEGUNDOS_DIA = 24 * 3600;
+
+        // Clave compuesta (inicio, idCita) para admitir varias citas a la misma hora
+        private final NavigableMap<Long, Integer> finPorInicio = new TreeMap<>();
+        private final Map<Integer, Long> clavePorCita = new HashMap<>();
+        private int duracionMaxima;
+
+        synchronized void agregar(Integer idCita, LocalTime hora, int duracionMinutos) {
+            int inicio = hora.toSecondOfDay();
+            int duracion = duracionMinutos * 60;
+            long clave = ((long) inicio << 32) | (Objects.requireNonNullElse(idCita, 0) & 0xFFFFFFFFL);
+            finPorInicio.put(clave, inicio + duracion);
+            if (idCita != null) {
+                clavePorCita.put(idCita, clave);
+            }
+            duracionMaxima = Math.max(duracionMaxima, duracion);
+        }
+
+        synchronized void quitar(Integer idCita) {
+            if (idCita == null) {
+                return;
+            }
+            Long clave = clavePorCita.remove(idCita);
+            if (clave != null) {
+                finPorInicio.remove(clave);
+            }
+        }
+
+        synchronized long contarConflictos(int inicio, int fin) {
+            return contarConflictos(inicio, fin, Set.of());
+        }
+
+        synchronized long contarConflictos(int inicio, int fin, Set<Integer> ignorar) {
+            long desde = (long) (inicio - duracionMaxima) << 32;
+            long hasta = (long) fin << 32;
+            long conflictos = 0;
+            // Mismo predicado que la consulta SQL: nuevoInicio < finExistente AND nuevoFin > inicioExistente
+            for (Map.Entry<Long, Integer> intervalo : finPorInicio.subMap(desde, false, hasta, false).entrySet()) {
+                if (inicio < intervalo.getValue() && !ignorar.contains((int) intervalo.getKey().longValue())) {
+                    conflictos++;
+                }
+            }
+            return conflictos;
+        }
+
+        synchronized void marcarOcupadas(BitSet franjas, int segundosPorFranja, Set<Integer> ignorar) {
+            int limite = SEGUNDOS_DIA / segundosPorFranja;
+            for (Map.Entry<Long, Integer> intervalo : finPorInicio.entrySet()) {
+                if (ignorar.contains((int) intervalo.getKey().longValue())) {
+                    continue;
+                }
+                int inicio = (int) (intervalo.getKey() >> 32);
+                int fin = Math.min(intervalo.getValue(), SEGUNDOS_DIA);
+                if (fin > inicio) {
+                    franjas.set(inicio / segundosPorFranja, Math.min((fin - 1) / segundosPorFranja + 1, limite));
+                }
+            }
+        }
+
+        synchronized int size() {
+            return finPorInicio.size();
+        }
+    }
+}
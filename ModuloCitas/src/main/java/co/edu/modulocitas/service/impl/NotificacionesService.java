@@ -3,8 +3,13 @@ package co.edu.modulocitas.service.impl;
 import co.edu.modulocitas.request.NotificacionRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @RequiredArgsConstructor
@@ -13,28 +18,60 @@ public class NotificacionesService {
     @Qualifier(value ="notificacionesWebClient")
     private final WebClient notificacionesWebClient;
 
+    private final AtomicInteger avisosEnCurso = new AtomicInteger();
+
+    @Value("${agenda.reactivo.max-avisos:500}")
+    private int maxAvisosEnCurso;
+
 
 
     public void enviarNotificacion(NotificacionRequest request) {
-        notificacionesWebClient.post()
-                .uri("/notificar") // Usa el path relativo correcto si tienes baseUrl
-                .bodyValue(request)            // Forma más limpia y moderna de enviar el body
+        notificar(request).subscribe(); // Ejecuta la llamada en modo reactivo
+    }
+
+    public void enviarNotificacionConAdjunto(NotificacionRequest request) {
+        notificarConAdjunto(request).subscribe(); // Ejecuta la llamada en modo reactivo
+    }
+
+    // Variantes que devuelven el envio sin suscribirlo, para componerlo con otras llamadas
+    public Mono<Void> notificar(NotificacionRequest request) {
+        return enviar("/notificar", request);
+    }
+
+    public Mono<Void> notificarConAdjunto(NotificacionRequest request) {
+        return enviar("/notificar/adjunto", request);
+    }
+
+    // Varios avisos en una sola peticion; el modulo de notificaciones los envia uno a uno
+    public Mono<Void> notificarLote(List<NotificacionRequest> requests) {
+        return notificacionesWebClient.post()
+                .uri("/notificar/lote")
+                .bodyValue(requests)
                 .retrieve()
                 .bodyToMono(Void.class)
-                .doOnSuccess(v -> System.out.println("Notificación enviada con éxito"))
-                .doOnError(e -> System.err.println("Error al enviar notificación: " + e.getMessage()))
-                .subscribe(); // Ejecuta la llamada en modo reactivo
+                .doOnSuccess(v -> System.out.println("Lote de " + requests.size() + " notificaciones enviado con éxito"))
+                .doOnError(e -> System.err.println("Error al enviar el lote de notificaciones: " + e.getMessage()));
     }
 
-    public void enviarNotificacionConAdjunto(NotificacionRequest request) {
-        notificacionesWebClient.post()
-                .uri("/notificar/adjunto") // Usa el path relativo correcto si tienes baseUrl
+    // Lanza un envio compuesto (datos de usuarios + aviso) sin esperarlo, con un limite de envios en curso
+    public void enSegundoPlano(Mono<Void> envio) {
+        if (avisosEnCurso.incrementAndGet() > maxAvisosEnCurso) {
+            avisosEnCurso.decrementAndGet();
+            System.err.println("Demasiadas notificaciones en curso, se descarta el aviso");
+            return;
+        }
+        envio.doFinally(senal -> avisosEnCurso.decrementAndGet())
+                .subscribe(null, e -> System.err.println("Error al enviar la notificación: " + e.getMessage()));
+    }
+
+    private Mono<Void> enviar(String uri, NotificacionRequest request) {
+        return notificacionesWebClient.post()
+                .uri(uri) // Usa el path relativo correcto si tienes baseUrl
                 .bodyValue(request)            // Forma más limpia y moderna de enviar el body
                 .retrieve()
                 .bodyToMono(Void.class)
                 .doOnSuccess(v -> System.out.println("Notificación enviada con éxito"))
-                .doOnError(e -> System.err.println("Error al enviar notificación: " + e.getMessage()))
-                .subscribe(); // Ejecuta la llamada en modo reactivo
+                .doOnError(e -> System.err.println("Error al enviar notificación: " + e.getMessage()));
     }
 
 }
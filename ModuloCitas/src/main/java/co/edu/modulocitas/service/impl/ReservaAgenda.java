@@ -0,0 +1,364 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.UsuarioOcupadoExcepcion;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.enums.TipoEventoAgenda;
+import co.edu.modulocitas.event.CitaGuardadaEvent;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.ReservaFranja;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Guarda citas sin dobles reservas. La comprobacion del horario y el INSERT se hacen bajo un
+ * bloqueo de la pareja (veterinario, fecha), repartida entre un numero fijo de bloqueos, de modo
+ * que solo compiten las peticiones de la misma agenda. Cada cita reclama ademas sus franjas en
+ * la tabla reserva_franja: si otra instancia se adelanto, el INSERT falla, se recargan esos dias
+ * del indice y se reintenta un numero acotado de veces. Las citas nuevas empiezan en el limite
+ * de una franja, asi dos citas que no se solapan nunca reclaman la misma: la que sigue a una cita
+ * de 32 minutos a las 10:00 empieza como pronto a las 10:35, fuera de la franja de las 10:30.
+ * Cada cita guardada se publica como CitaGuardadaEvent dentro del bloqueo, en el orden de escritura.
+ */
+@Service
+public class ReservaAgenda {
+
+    private static final int SEGUNDOS_DIA = 24 * 3600;
+
+    private final CitaRepository citaRepository;
+    private final ReservaFranjaRepository reservaFranjaRepository;
+    private final IndiceAgenda indiceAgenda;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReentrantLock[] bloqueos;
+    private final int reintentos;
+    private final int segundosFranja;
+
+    public ReservaAgenda(CitaRepository citaRepository,
+                         ReservaFranjaRepository reservaFranjaRepository,
+                         IndiceAgenda indiceAgenda,
+                         TransactionTemplate transactionTemplate,
+                         ApplicationEventPublisher eventPublisher,
+                         @Value("${agenda.reservas.bloqueos:256}") int numeroBloqueos,
+                         @Value("${agenda.reservas.reintentos:3}") int reintentos,
+                         @Value("${agenda.reservas.minutos-franja:5}") int minutosFranja) {
+        this.citaRepository = citaRepository;
+        this.reservaFranjaRepository = reservaFranjaRepository;
+        this.indiceAgenda = indiceAgenda;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.bloqueos = new ReentrantLock[numeroBloqueos];
+        for (int i = 0; i < numeroBloqueos; i++) {
+            bloqueos[i] = new ReentrantLock();
+        }
+        this.reintentos = reintentos;
+        this.segundosFranja = minutosFranja * 60;
+    }
+
+    // Las horas que no caen en el limite de una franja se rechazan con un 400 antes de tomar ningun bloqueo
+    public void validarInicio(LocalTime hora) {
+        if (hora != null && (hora.toSecondOfDay() % segundosFranja != 0 || hora.getNano() != 0)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La hora de la cita debe ser múltiplo de "
+                    + segundosFranja / 60 + " minutos (" + hora + ")");
+        }
+    }
+
+    public Cita crear(Cita cita) {
+        validarInicio(cita.getHora());
+        return conBloqueos(claves(List.of(cita)), () -> conReintentos(List.of(cita), () -> {
+            if (ocupado(cita, Set.of())) {
+                throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
+            }
+            Cita citaGuardada = transactionTemplate.execute(estado -> {
+                Cita guardada = citaRepository.save(cita);
+                reservaFranjaRepository.saveAllAndFlush(franjas(guardada));
+                return guardada;
+            });
+            indiceAgenda.registrar(citaGuardada);
+            eventPublisher.publishEvent(new CitaGuardadaEvent(TipoEventoAgenda.CREADA, citaGuardada, null, null));
+            return citaGuardada;
+        }));
+    }
+
+    // Guarda, en una transaccion, las citas del lote cuyo horario sigue libre y devuelve las guardadas
+    public List<Cita> crearLote(List<Cita> citas) {
+        if (citas.isEmpty()) {
+            return List.of();
+        }
+        citas.forEach(cita -> validarInicio(cita.getHora()));
+        return conBloqueos(claves(citas), () -> conReintentos(citas, () -> {
+            // Entre la validacion del lote y el bloqueo otra peticion pudo ocupar alguna hora
+            List<Cita> libres = new ArrayList<>();
+            for (Cita cita : citas) {
+                if (!ocupado(cita, Set.of())) {
+                    libres.add(cita);
+                }
+            }
+            return guardarTodas(libres);
+        }));
+    }
+
+    // Todas o ninguna: si alguna hora se ocupo desde la validacion no se guarda ninguna cita
+    public List<Cita> crearTodas(List<Cita> citas) {
+        if (citas.isEmpty()) {
+            return List.of();
+        }
+        citas.forEach(cita -> validarInicio(cita.getHora()));
+        return conBloqueos(claves(citas), () -> conReintentos(citas, () -> {
+            for (Cita cita : citas) {
+                if (ocupado(cita, Set.of())) {
+                    throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada el " + cita.getFecha() + " a las "
+                            + cita.getHora() + " para el veterinario.");
+                }
+            }
+            return guardarTodas(citas);
+        }));
+    }
+
+    // Una transaccion con los INSERT agrupados; se llama con los bloqueos de todas las citas tomados
+    private List<Cita> guardarTodas(List<Cita> citas) {
+        List<Cita> guardadas = transactionTemplate.execute(estado -> {
+            List<Cita> citasGuardadas = citaRepository.saveAll(citas);
+            List<ReservaFranja> reservas = new ArrayList<>();
+            citasGuardadas.forEach(cita -> reservas.addAll(franjas(cita)));
+            reservaFranjaRepository.saveAllAndFlush(reservas);
+            return citasGuardadas;
+        });
+        for (Cita cita : guardadas) {
+            indiceAgenda.registrar(cita);
+            eventPublisher.publishEvent(new CitaGuardadaEvent(TipoEventoAgenda.CREADA, cita, null, null));
+        }
+        return guardadas;
+    }
+
+    // Guarda una cita existente moviendo sus franjas; falla si el nuevo horario se solapa con otra
+    // cita (misma comprobacion que crear, sin contar la propia) o ya esta reclamado en la base de datos
+    public Cita actualizar(Cita cita, String veterinarioAnterior, LocalDate fechaAnterior, TipoEventoAgenda tipo) {
+        List<Cita> afectadas = new ArrayList<>(List.of(cita));
+        Cita anterior = new Cita();
+        anterior.setIdVeterinario(veterinarioAnterior);
+        anterior.setFecha(fechaAnterior);
+        afectadas.add(anterior);
+        return conBloqueos(claves(afectadas), () -> {
+            if (IndiceAgenda.ocupaHorario(cita) && ocupado(cita, Set.of(cita.getIdCita()))) {
+                throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
+            }
+            Cita citaGuardada;
+            try {
+                citaGuardada = transactionTemplate.execute(estado -> {
+                    Cita guardada = citaRepository.save(cita);
+                    reservaFranjaRepository.liberarPorCita(guardada.getIdCita());
+                    reservaFranjaRepository.saveAllAndFlush(franjas(guardada));
+                    return guardada;
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Otra instancia reclamo la franja: el indice local de ese dia esta desactualizado
+                indiceAgenda.recargar(cita.getIdVeterinario(), cita.getFecha());
+                throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
+            }
+            indiceAgenda.retirar(citaGuardada.getIdCita(), veterinarioAnterior, fechaAnterior);
+            indiceAgenda.registrar(citaGuardada);
+            eventPublisher.publishEvent(new CitaGuardadaEvent(tipo, citaGuardada, veterinarioAnterior, fechaAnterior));
+            return citaGuardada;
+        });
+    }
+
+    // Guarda una cita urgente moviendo a otra hora o veterinario las citas de su agenda que la bloqueaban.
+    // Las reubicadas ya traen su nuevo horario; todas venian del veterinario y la fecha de la urgente.
+    public Reubicacion crearDesplazando(Cita urgente, List<Cita> reubicadas) {
+        String veterinarioAnterior = urgente.getIdVeterinario();
+        LocalDate fecha = urgente.getFecha();
+        Set<Integer> ids = new HashSet<>();
+        reubicadas.forEach(cita -> ids.add(cita.getIdCita()));
+        List<Cita> afectadas = new ArrayList<>(reubicadas);
+        afectadas.add(urgente);
+        afectadas.forEach(cita -> validarInicio(cita.getHora()));
+        return conBloqueos(claves(afectadas), () -> {
+            // El plan se hizo sin bloqueos: se comprueba de nuevo contra el indice sin las citas que se mueven
+            IndiceAgenda.Lote lote = indiceAgenda.nuevoLote();
+            for (Cita cita : afectadas) {
+                int duracion = indiceAgenda.duracion(cita);
+                if (lote.hayConflicto(cita.getIdVeterinario(), cita.getFecha(), cita.getHora(), duracion, ids)) {
+                    throw new UsuarioOcupadoExcepcion("La agenda cambió mientras se reubicaban las citas, vuelva a intentarlo.");
+                }
+                lote.reservar(cita.getIdVeterinario(), cita.getFecha(), cita.getHora(), duracion);
+            }
+            Reubicacion reubicacion;
+            try {
+                reubicacion = transactionTemplate.execute(estado -> {
+                    if (citaRepository.buscarDesplazables(ids, veterinarioAnterior, fecha).size() != ids.size()) {
+                        throw new UsuarioOcupadoExcepcion("Alguna de las citas a reubicar cambió de estado, vuelva a intentarlo.");
+                    }
+                    // Primero se liberan todas las franjas para que las reubicadas puedan ocupar las de otra reubicada
+                    reservaFranjaRepository.liberarPorCitas(ids);
+                    List<Cita> movidas = citaRepository.saveAll(reubicadas);
+                    Cita guardada = citaRepository.save(urgente);
+                    List<ReservaFranja> reservas = new ArrayList<>(franjas(guardada));
+                    movidas.forEach(cita -> reservas.addAll(franjas(cita)));
+                    reservaFranjaRepository.saveAllAndFlush(reservas);
+                    return new Reubicacion(guardada, movidas);
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Otra instancia reclamo alguna de las franjas
+                for (Cita cita : afectadas) {
+                    indiceAgenda.recargar(cita.getIdVeterinario(), cita.getFecha());
+                }
+                urgente.setIdCita(null);
+                throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
+            }
+            for (Cita cita : reubicacion.reubicadas()) {
+                indiceAgenda.retirar(cita.getIdCita(), veterinarioAnterior, fecha);
+                indiceAgenda.registrar(cita);
+            }
+            indiceAgenda.registrar(reubicacion.urgente());
+            for (Cita cita : reubicacion.reubicadas()) {
+                eventPublisher.publishEvent(new CitaGuardadaEvent(TipoEventoAgenda.REPROGRAMADA, cita, veterinarioAnterior, fecha));
+            }
+            eventPublisher.publishEvent(new CitaGuardadaEvent(TipoEventoAgenda.CREADA, reubicacion.urgente(), null, null));
+            return reubicacion;
+        });
+    }
+
+    // Cierre de agenda: pasa varias citas a un estado terminal con un solo UPDATE. Solo cambian las que
+    // siguen en la version que indico el cliente y aun ocupan horario; el resto se devuelve con el motivo.
+    public CambioEstados cambiarEstados(Map<Integer, Long> versiones, Estado estado) {
+        Map<Integer, String> rechazadas = new LinkedHashMap<>();
+        List<Cita> actualizadas = transactionTemplate.execute(transaccion -> {
+            Map<Integer, Cita> bloqueadas = new HashMap<>();
+            citaRepository.bloquearPorIds(versiones.keySet()).forEach(cita -> bloqueadas.put(cita.getIdCita(), cita));
+            List<Cita> vigentes = new ArrayList<>();
+            versiones.forEach((idCita, version) -> {
+                Cita cita = bloqueadas.get(idCita);
+                if (cita == null) {
+                    rechazadas.put(idCita, "La cita no existe");
+                } else if (version == null || cita.getVersion() != version) {
+                    rechazadas.put(idCita, "La cita cambió desde que se leyó (versión actual " + cita.getVersion() + ")");
+                } else if (!IndiceAgenda.ocupaHorario(cita)) {
+                    rechazadas.put(idCita, "La cita está " + cita.getEstado() + " y ya no se puede cerrar");
+                } else {
+                    vigentes.add(cita);
+                }
+            });
+            if (vigentes.isEmpty()) {
+                return vigentes;
+            }
+            List<Integer> ids = vigentes.stream().map(Cita::getIdCita).toList();
+            citaRepository.cambiarEstado(ids, estado);
+            for (Cita cita : vigentes) {
+                cita.setEstado(estado);
+                cita.setVersion(cita.getVersion() + 1);
+            }
+            // Las citas que dejan de ocupar horario (canceladas) sueltan sus franjas
+            if (!IndiceAgenda.ocupaHorario(vigentes.get(0))) {
+                reservaFranjaRepository.liberarPorCitas(ids);
+            }
+            return vigentes;
+        });
+        for (Cita cita : actualizadas) {
+            indiceAgenda.registrar(cita);
+            eventPublisher.publishEvent(new CitaGuardadaEvent(TipoEventoAgenda.CAMBIO_ESTADO, cita,
+                    cita.getIdVeterinario(), cita.getFecha()));
+        }
+        return new CambioEstados(actualizadas, rechazadas);
+    }
+
+    // Reclama las franjas de una cita ya guardada; false si se solapa con otra que ya las tiene
+    public boolean reclamar(Cita cita) {
+        return conBloqueos(claves(List.of(cita)), () -> {
+            try {
+                transactionTemplate.executeWithoutResult(estado -> reservaFranjaRepository.saveAllAndFlush(franjas(cita)));
+                return true;
+            } catch (DataIntegrityViolationException e) {
+                System.err.println("La cita " + cita.getIdCita() + " se solapa con otra cita del veterinario " + cita.getIdVeterinario());
+                return false;
+            }
+        });
+    }
+
+    // Franjas [inicio, fin) de la cita; las citas que no ocupan horario (canceladas) no reclaman ninguna
+    private List<ReservaFranja> franjas(Cita cita) {
+        if (!IndiceAgenda.ocupaHorario(cita)) {
+            return List.of();
+        }
+        int inicio = cita.getHora().toSecondOfDay();
+        int fin = Math.min(inicio + indiceAgenda.duracion(cita) * 60, SEGUNDOS_DIA);
+        List<ReservaFranja> reservas = new ArrayList<>();
+        for (int franja = inicio / segundosFranja; franja * segundosFranja < fin; franja++) {
+            reservas.add(new ReservaFranja(cita.getIdVeterinario(), cita.getFecha(), franja, cita.getIdCita()));
+        }
+        return reservas;
+    }
+
+    private boolean ocupado(Cita cita, Set<Integer> ignorar) {
+        return indiceAgenda.hayConflicto(cita.getIdVeterinario(), cita.getFecha(), cita.getHora(),
+                indiceAgenda.duracion(cita), ignorar);
+    }
+
+    record Reubicacion(Cita urgente, List<Cita> reubicadas) {
+    }
+
+    record CambioEstados(List<Cita> actualizadas, Map<Integer, String> rechazadas) {
+    }
+
+    private <T> T conReintentos(List<Cita> citas, Supplier<T> operacion) {
+        for (int intento = 1; ; intento++) {
+            try {
+                return operacion.get();
+            } catch (DataIntegrityViolationException e) {
+                // Otra instancia reclamo alguna franja: el indice local de esos dias esta desactualizado
+                System.err.println("Franja ya reclamada (intento " + intento + " de " + reintentos + "): " + e.getMessage());
+                for (Cita cita : citas) {
+                    cita.setIdCita(null);
+                    indiceAgenda.recargar(cita.getIdVeterinario(), cita.getFecha());
+                }
+                if (intento >= reintentos) {
+                    throw new UsuarioOcupadoExcepcion("Ya hay una cita asignada en ese intervalo para el veterinario.");
+                }
+            }
+        }
+    }
+
+    // Los bloqueos se toman en orden ascendente para que dos lotes no se esperen mutuamente
+    private <T> T conBloqueos(TreeSet<Integer> indices, Supplier<T> operacion) {
+        List<ReentrantLock> tomados = new ArrayList<>();
+        try {
+            for (Integer indice : indices) {
+                bloqueos[indice].lock();
+                tomados.add(bloqueos[indice]);
+            }
+            return operacion.get();
+        } finally {
+            for (int i = tomados.size() - 1; i >= 0; i--) {
+                tomados.get(i).unlock();
+            }
+        }
+    }
+
+    private TreeSet<Integer> claves(List<Cita> citas) {
+        TreeSet<Integer> indices = new TreeSet<>();
+        for (Cita cita : citas) {
+            indices.add(Math.floorMod(Objects.hash(cita.getIdVeterinario(), cita.getFecha()), bloqueos.length));
+        }
+        return indices;
+    }
+}
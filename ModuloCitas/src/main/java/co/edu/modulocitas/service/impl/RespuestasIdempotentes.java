@@ -0,0 +1,134 @@
+package co.edu.modulocitas.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Respuestas recientes de las altas que llegan con la cabecera Idempotency-Key. La primera
+ * peticion con una clave ejecuta el alta y guarda su resultado; los reintentos con la misma
+ * clave (tambien los que llegan mientras la primera sigue en curso) reciben ese resultado sin
+ * volver a validar, llamar a usuarios, generar el PDF ni notificar. Una misma clave con otro
+ * cuerpo se rechaza con 422. Si el alta falla la clave se olvida y el reintento se ejecuta de
+ * nuevo. Se guardan como maximo {@code agenda.idempotencia.max-claves} claves durante
+ * {@code agenda.idempotencia.horas-vigencia}; el registro es de cada instancia.
+ */
+@Service
+public class RespuestasIdempotentes {
+
+    public static final String CABECERA = "Idempotency-Key";
+    private static final int LONGITUD_MAXIMA_CLAVE = 255;
+
+    private final ObjectMapper objectMapper;
+    private final int maxClaves;
+    private final long vigenciaNanos;
+
+    // Orden de acceso: al llenarse se descarta la clave usada hace mas tiempo
+    private final Map<String, Respuesta> respuestas;
+
+    public RespuestasIdempotentes(ObjectMapper objectMapper,
+                                  @Value("${agenda.idempotencia.max-claves:10000}") int maxClaves,
+                                  @Value("${agenda.idempotencia.horas-vigencia:24}") int horasVigencia) {
+        this.objectMapper = objectMapper;
+        this.maxClaves = maxClaves;
+        this.vigenciaNanos = Duration.ofHours(horasVigencia).toNanos();
+        this.respuestas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Respuesta> mayor) {
+                return size() > RespuestasIdempotentes.this.maxClaves;
+            }
+        };
+    }
+
+    // Sin clave el alta se ejecuta siempre; la operacion separa las claves de cada endpoint
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> ejecutar(String operacion, String clave, Object peticion, Supplier<Mono<T>> alta) {
+        if (clave == null) {
+            return alta.get();
+        }
+        if (clave.isBlank() || clave.length() > LONGITUD_MAXIMA_CLAVE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "La cabecera " + CABECERA + " debe tener entre 1 y " + LONGITUD_MAXIMA_CLAVE + " caracteres");
+        }
+        // La huella se toma antes del alta, que completa el objeto de la peticion
+        String huella = huella(peticion);
+        String id = operacion + "|" + clave;
+        long ahora = System.nanoTime();
+        Respuesta nueva = new Respuesta(huella, ahora);
+        nueva.resultado = Mono.defer(alta)
+                .doOnError(e -> olvidar(id, nueva))
+                .cache();
+
+        Respuesta existente;
+        synchronized (respuestas) {
+            existente = respuestas.get(id);
+            if (existente != null && ahora - existente.creada > vigenciaNanos) {
+                respuestas.remove(id);
+                existente = null;
+            }
+            if (existente == null) {
+                respuestas.put(id, nueva);
+            }
+        }
+        if (existente != null) {
+            if (!existente.huella.equals(huella)) {
+                return Mono.error(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                        "La clave " + clave + " ya se usó con una petición distinta"));
+            }
+            return (Mono<T>) existente.resultado;
+        }
+        // Se suscribe aqui para que el alta termine aunque el cliente que la pidio corte la conexion
+        nueva.resultado.subscribe(valor -> { }, e -> { });
+        return (Mono<T>) nueva.resultado;
+    }
+
+    // Para los controladores bloqueantes: el alta corre en el hilo de la peticion y los reintentos esperan su resultado
+    public <T> T ejecutarBloqueante(String operacion, String clave, Object peticion, Supplier<T> alta) {
+        return this.<T>ejecutar(operacion, clave, peticion, () -> Mono.fromCallable(alta::get)).block();
+    }
+
+    public int tamano() {
+        synchronized (respuestas) {
+            return respuestas.size();
+        }
+    }
+
+    private void olvidar(String id, Respuesta respuesta) {
+        synchronized (respuestas) {
+            respuestas.remove(id, respuesta);
+        }
+    }
+
+    private String huella(Object peticion) {
+        try {
+            byte[] cuerpo = objectMapper.writeValueAsBytes(peticion);
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(cuerpo));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No se pudo calcular la huella de la petición", e);
+        }
+    }
+
+    private static final class Respuesta {
+
+        private final String huella;
+        private final long creada;
+        private Mono<?> resultado;
+
+        Respuesta(String huella, long creada) {
+            this.huella = huella;
+            this.creada = creada;
+        }
+    }
+}
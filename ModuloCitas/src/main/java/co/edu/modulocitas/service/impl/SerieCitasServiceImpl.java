@@ -0,0 +1,242 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.VeterinarioNoDisponible;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.OcurrenciaSerie;
+import co.edu.modulocitas.dto.ResultadoSerieCitas;
+import co.edu.modulocitas.dto.SerieCitas;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.request.NotificacionRequest;
+import co.edu.modulocitas.service.SerieCitasService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Series de citas (planes de vacunacion o tratamientos). La regla se expande en todas sus
+ * fechas y cada una se comprueba en memoria con una sola lectura por fuente: las
+ * disponibilidades del veterinario (una llamada a usuarios), sus dias en IndiceAgenda y las
+ * citas de la mascota en el rango de la serie. Para cada fecha ocupada se propone la hora libre
+ * mas cercana dentro de {@code agenda.series.margen-dias}. La serie se guarda completa en una
+ * transaccion o no se guarda.
+ */
+@Service
+public class SerieCitasServiceImpl implements SerieCitasService {
+
+    private final AgendaServiceImpl agendaService;
+    private final IndiceAgenda indiceAgenda;
+    private final ReservaAgenda reservaAgenda;
+    private final UsuarioServiceImpl usuarioServiceImpl;
+    private final NotificacionesService notificacionesService;
+    private final int maxCitas;
+    private final int margenDias;
+    private final int segundosFranja;
+
+    public SerieCitasServiceImpl(AgendaServiceImpl agendaService,
+                                 IndiceAgenda indiceAgenda,
+                                 ReservaAgenda reservaAgenda,
+                                 UsuarioServiceImpl usuarioServiceImpl,
+                                 NotificacionesService notificacionesService,
+                                 @Value("${agenda.series.max-citas:52}") int maxCitas,
+                                 @Value("${agenda.series.margen-dias:3}") int margenDias,
+                                 @Value("${agenda.horarios.minutos-franja:5}") int minutosFranja) {
+        this.agendaService = agendaService;
+        this.indiceAgenda = indiceAgenda;
+        this.reservaAgenda = reservaAgenda;
+        this.usuarioServiceImpl = usuarioServiceImpl;
+        this.notificacionesService = notificacionesService;
+        this.maxCitas = maxCitas;
+        this.margenDias = margenDias;
+        this.segundosFranja = minutosFranja * 60;
+    }
+
+    @Override
+    public ResultadoSerieCitas crearSerie(SerieCitas serie) {
+        Cita base = serie.getCita();
+        if (base == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La serie debe indicar la primera cita");
+        }
+        if (serie.getRepeticiones() < 1 || serie.getRepeticiones() > maxCitas) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La serie debe tener entre 1 y " + maxCitas + " citas");
+        }
+        if (serie.getIntervaloDias() < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "El intervalo de la serie debe ser de al menos un día");
+        }
+        Servicio servicio = agendaService.validarDatosCita(base);
+        String idVeterinario = base.getIdVeterinario();
+        LocalDate desde = base.getFecha().minusDays(margenDias);
+        LocalDate hasta = base.getFecha().plusDays((long) serie.getIntervaloDias() * (serie.getRepeticiones() - 1) + margenDias);
+
+        // Una lectura de cada fuente para toda la serie
+        List<DisponibilidadVeterinario> franjas = agendaService.consultarDisponibilidades(idVeterinario);
+        if (franjas == null) {
+            throw new VeterinarioNoDisponible("No se pudo consultar la disponibilidad del veterinario");
+        }
+        indiceAgenda.precargar(List.of(idVeterinario), desde, hasta);
+        Agenda agenda = new Agenda(base.getIdPaciente(), idVeterinario, servicio.getDuracion(), franjas,
+                indiceAgenda.nuevoLote(), agendaService.pacientesOcupados(Set.of(base.getIdPaciente()), desde, hasta),
+                LocalDateTime.now());
+
+        List<OcurrenciaSerie> ocurrencias = new ArrayList<>();
+        List<LocalDateTime> elegidas = new ArrayList<>();
+        boolean completa = true;
+        for (int i = 0; i < serie.getRepeticiones(); i++) {
+            LocalDateTime pedida = LocalDateTime.of(base.getFecha().plusDays((long) serie.getIntervaloDias() * i), base.getHora());
+            String conflicto = agenda.conflicto(pedida);
+            LocalDateTime alternativa = conflicto == null ? null : agenda.alternativaMasCercana(pedida, margenDias);
+            LocalDateTime elegida = conflicto == null ? pedida : alternativa;
+            // La hora elegida se reserva en el lote para que las fechas siguientes no la propongan otra vez
+            if (elegida != null) {
+                agenda.reservar(elegida);
+            }
+            completa &= conflicto == null || (serie.isAceptarAlternativas() && alternativa != null);
+            elegidas.add(elegida);
+            ocurrencias.add(new OcurrenciaSerie(i, pedida.toLocalDate(), pedida.toLocalTime(), conflicto,
+                    alternativa == null ? null : alternativa.toLocalDate(),
+                    alternativa == null ? null : alternativa.toLocalTime(), null));
+        }
+        if (!completa) {
+            return new ResultadoSerieCitas(false, ocurrencias);
+        }
+
+        List<Cita> citas = new ArrayList<>();
+        for (LocalDateTime elegida : elegidas) {
+            citas.add(copiar(base, servicio, elegida));
+        }
+        List<Cita> guardadas = reservaAgenda.crearTodas(citas);
+        for (int i = 0; i < guardadas.size(); i++) {
+            ocurrencias.get(i).setCita(guardadas.get(i));
+        }
+        notificacionesService.enSegundoPlano(avisoSerie(guardadas));
+        return new ResultadoSerieCitas(true, ocurrencias);
+    }
+
+    private static Cita copiar(Cita base, Servicio servicio, LocalDateTime fechaHora) {
+        Cita cita = new Cita();
+        cita.setIdPaciente(base.getIdPaciente());
+        cita.setIdVeterinario(base.getIdVeterinario());
+        cita.setFecha(fechaHora.toLocalDate());
+        cita.setHora(fechaHora.toLocalTime());
+        cita.setEsUrgencia(base.isEsUrgencia());
+        cita.setMotivo(base.getMotivo());
+        cita.setEstado(base.getEstado());
+        cita.setServicio(servicio);
+        return cita;
+    }
+
+    // Un unico aviso con todas las fechas en lugar de uno por cita
+    private Mono<Void> avisoSerie(List<Cita> citas) {
+        Cita primera = citas.get(0);
+        return usuarioServiceImpl.obtenerContextoNotificacionReactivo(primera.getIdPaciente(), primera.getIdVeterinario())
+                .mapNotNull(datos -> solicitudSerie(citas, datos.getEmail(), datos.getNombreMascota(),
+                        datos.getNombreVeterinario()))
+                .flatMap(notificacionesService::notificar);
+    }
+
+    NotificacionRequest solicitudSerie(List<Cita> citas, String email, String nombreMascota, String nombreVeterinario) {
+        if (email == null || !email.contains("@")) {
+            System.err.println("Email destinatario no válido: " + email);
+            return null;
+        }
+        Servicio servicio = citas.get(0).getServicio();
+        StringBuilder mensaje = new StringBuilder();
+        mensaje.append("¡Hola! 😊\n\n")
+                .append(String.format("A agendado %d citas de %s para su mascota *%s* con el Dr. %s:\n\n",
+                        citas.size(), servicio.getTipo(), nombreMascota, nombreVeterinario));
+        for (Cita cita : citas) {
+            mensaje.append("📅 ").append(cita.getFecha()).append(" ⏰ ").append(cita.getHora()).append("\n");
+        }
+        mensaje.append("\nDuracion:").append(servicio.getDuracion()).append("\n")
+                .append("Recomendaciones: ").append(servicio.getRequisitos()).append("\n\n")
+                .append("Por favor asegúrese de llegar con 10 minutos de anticipación. Si necesita reprogramar, contáctenos a la brevedad.\n\n")
+                .append("¡Gracias por confiar en nosotros! 🐾\n\n\n\n")
+                .append("Mensaje generado automaticamente, por favor no respoder este correo.");
+
+        NotificacionRequest request = new NotificacionRequest();
+        request.setTipo("Cita");
+        request.setDestinatario(email);
+        request.setMensaje(mensaje.toString());
+        return request;
+    }
+
+    // Estado en memoria de la agenda del veterinario y de la mascota mientras se arma la serie
+    private final class Agenda {
+
+        private final String idPaciente;
+        private final String idVeterinario;
+        private final int duracion;
+        private final List<DisponibilidadVeterinario> franjas;
+        private final IndiceAgenda.Lote lote;
+        private final Set<String> pacienteOcupado;
+        private final LocalDateTime ahora;
+
+        Agenda(String idPaciente, String idVeterinario, int duracion, List<DisponibilidadVeterinario> franjas,
+               IndiceAgenda.Lote lote, Set<String> pacienteOcupado, LocalDateTime ahora) {
+            this.idPaciente = idPaciente;
+            this.idVeterinario = idVeterinario;
+            this.duracion = duracion;
+            this.franjas = franjas;
+            this.lote = lote;
+            this.pacienteOcupado = pacienteOcupado;
+            this.ahora = ahora;
+        }
+
+        // Mismas reglas que crearCitasLote; null si la hora esta libre
+        String conflicto(LocalDateTime inicio) {
+            LocalDate fecha = inicio.toLocalDate();
+            LocalTime hora = inicio.toLocalTime();
+            if (inicio.isBefore(ahora)) {
+                return "La fecha ya pasó";
+            }
+            if (hora.toSecondOfDay() + duracion * 60 > 24 * 3600) {
+                return "La cita debe terminar el mismo día";
+            }
+            if (franjas.stream().noneMatch(franja -> franja.cubre(fecha, hora))) {
+                return "El veterinario no está disponible en ese horario";
+            }
+            if (pacienteOcupado.contains(AgendaServiceImpl.clavePaciente(idPaciente, fecha, hora))) {
+                return "La mascota ya tiene una cita en esa fecha y hora.";
+            }
+            if (lote.hayConflicto(idVeterinario, fecha, hora, duracion)) {
+                return "Ya hay una cita asignada en ese intervalo para el veterinario.";
+            }
+            return null;
+        }
+
+        // Recorre franjas alternando despues y antes de la hora pedida: la primera libre es la mas cercana
+        LocalDateTime alternativaMasCercana(LocalDateTime pedida, int margenDias) {
+            LocalDateTime primera = pedida.toLocalDate().minusDays(margenDias).atStartOfDay();
+            LocalDateTime ultima = pedida.toLocalDate().plusDays(margenDias + 1L).atStartOfDay();
+            for (long paso = 1; ; paso++) {
+                LocalDateTime despues = pedida.plusSeconds(paso * segundosFranja);
+                LocalDateTime antes = pedida.minusSeconds(paso * segundosFranja);
+                boolean despuesEnRango = despues.isBefore(ultima);
+                boolean antesEnRango = !antes.isBefore(primera);
+                if (!despuesEnRango && !antesEnRango) {
+                    return null;
+                }
+                if (despuesEnRango && conflicto(despues) == null) {
+                    return despues;
+                }
+                if (antesEnRango && conflicto(antes) == null) {
+                    return antes;
+                }
+            }
+        }
+
+        void reservar(LocalDateTime inicio) {
+            lote.reservar(idVeterinario, inicio.toLocalDate(), inicio.toLocalTime(), duracion);
+            pacienteOcupado.add(AgendaServiceImpl.clavePaciente(idPaciente, inicio.toLocalDate(), inicio.toLocalTime()));
+        }
+    }
+}
@@ -1,23 +1,40 @@
 package co.edu.modulocitas.service.impl;
 
+import co.edu.modulocitas.cache.CacheAcotada;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
 import co.edu.modulocitas.model.Servicio;
 import co.edu.modulocitas.repository.ServicioRepository;
 import co.edu.modulocitas.service.ServicioService;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
-@RequiredArgsConstructor
 public class ServicioServiceImpl implements ServicioService {
 
     private final ServicioRepository servicioRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // El catalogo casi no cambia: se sirve desde memoria y se invalida en cada escritura
+    private final CacheAcotada<Integer, Servicio> cacheServicios;
+
+    public ServicioServiceImpl(ServicioRepository servicioRepository,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${servicios.cache.max-entradas:256}") int maxEntradas) {
+        this.servicioRepository = servicioRepository;
+        this.eventPublisher = eventPublisher;
+        this.cacheServicios = new CacheAcotada<>(maxEntradas);
+    }
 
     @Override
     public Servicio crearServicio(Servicio servicio) {
-        return servicioRepository.save(servicio);
+        Servicio servicioGuardado = servicioRepository.save(servicio);
+        cacheServicios.invalidar(servicioGuardado.getId());
+        return servicioGuardado;
     }
 
     @Override
@@ -28,7 +45,9 @@ public class ServicioServiceImpl implements ServicioService {
                     servicioActual.setDuracion(servicio.getDuracion());
                     servicioActual.setRequisitos(servicio.getRequisitos());
                     servicioActual.setTipo(servicio.getTipo());
-                    return servicioRepository.save(servicioActual);
+                    Servicio servicioGuardado = servicioRepository.save(servicioActual);
+                    invalidar(idServicio);
+                    return servicioGuardado;
                 });
     }
 
@@ -37,17 +56,29 @@ public class ServicioServiceImpl implements ServicioService {
         return servicioRepository.findById(idServicio)
                 .map( servicio -> {
                     servicioRepository.delete(servicio);
+                    invalidar(idServicio);
                     return servicio;
                 });
     }
 
     @Override
     public Optional<Servicio> consultarServicioPorId(int idServicio) {
-        return servicioRepository.findById(idServicio);
+        return cacheServicios.obtener(idServicio, servicioRepository::findById);
     }
 
     @Override
     public List<Servicio> consultarServicios() {
         return servicioRepository.findAll();
     }
+
+    @Override
+    public Map<String, Object> estadisticasCache() {
+        return cacheServicios.estadisticas();
+    }
+
+    // Ademas de la cache, avisa a quien guarde datos derivados del servicio (p. ej. su duracion)
+    private void invalidar(Integer idServicio) {
+        cacheServicios.invalidar(idServicio);
+        eventPublisher.publishEvent(new ServicioModificadoEvent(idServicio));
+    }
 }
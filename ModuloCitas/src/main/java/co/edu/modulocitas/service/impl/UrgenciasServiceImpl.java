@@ -0,0 +1,291 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.UsuarioOcupadoExcepcion;
+import co.edu.modulocitas.Exception.VeterinarioNoDisponible;
+import co.edu.modulocitas.dto.CitaDesplazada;
+import co.edu.modulocitas.dto.CitaUrgente;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.ResultadoUrgencia;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.UrgenciasService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Citas urgentes. Si la hora pedida esta ocupada, las citas PROGRAMADA no urgentes que la
+ * bloquean se mueven al hueco libre menos costoso del mismo dia: minutos de desplazamiento mas
+ * {@code agenda.urgencias.penalizacion-cambio-veterinario} si pasan a uno de los veterinarios
+ * alternativos. La busqueda se hace en memoria sobre los mapas de bits de franjas que IndiceAgenda
+ * marca para cada veterinario (sin las citas desplazadas), alejandose de la hora original, y se
+ * corta en cuanto ningun hueco mas lejano puede mejorar el mejor encontrado. El plan se guarda en una transaccion y
+ * los avisos de reprogramacion salen en una sola peticion al modulo de notificaciones.
+ */
+@Service
+public class UrgenciasServiceImpl implements UrgenciasService {
+
+    private static final int SEGUNDOS_DIA = 24 * 3600;
+
+    private final AgendaServiceImpl agendaService;
+    private final IndiceAgenda indiceAgenda;
+    private final ReservaAgenda reservaAgenda;
+    private final CitaRepository citaRepository;
+    private final NotificacionesService notificacionesService;
+    private final int maxDesplazadas;
+    private final int maxVeterinarios;
+    private final int penalizacionCambioVeterinario;
+    private final int segundosFranja;
+
+    public UrgenciasServiceImpl(AgendaServiceImpl agendaService,
+                                IndiceAgenda indiceAgenda,
+                                ReservaAgenda reservaAgenda,
+                                CitaRepository citaRepository,
+                                NotificacionesService notificacionesService,
+                                @Value("${agenda.urgencias.max-desplazadas:4}") int maxDesplazadas,
+                                @Value("${agenda.urgencias.max-veterinarios:10}") int maxVeterinarios,
+                                @Value("${agenda.urgencias.penalizacion-cambio-veterinario:60}") int penalizacionCambioVeterinario,
+                                @Value("${agenda.horarios.minutos-franja:5}") int minutosFranja) {
+        this.agendaService = agendaService;
+        this.indiceAgenda = indiceAgenda;
+        this.reservaAgenda = reservaAgenda;
+        this.citaRepository = citaRepository;
+        this.notificacionesService = notificacionesService;
+        this.maxDesplazadas = maxDesplazadas;
+        this.maxVeterinarios = maxVeterinarios;
+        this.penalizacionCambioVeterinario = penalizacionCambioVeterinario;
+        this.segundosFranja = minutosFranja * 60;
+    }
+
+    @Override
+    public ResultadoUrgencia crearUrgencia(CitaUrgente peticion) {
+        Cita urgente = peticion.getCita();
+        if (urgente == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La petición debe indicar la cita urgente");
+        }
+        Servicio servicio = agendaService.validarDatosCita(urgente);
+        urgente.setServicio(servicio);
+        urgente.setEsUrgencia(true);
+        if (urgente.getEstado() == null) {
+            urgente.setEstado(Estado.PROGRAMADA);
+        }
+        if (urgente.getHora().toSecondOfDay() + servicio.getDuracion() * 60 > SEGUNDOS_DIA) {
+            throw new IllegalArgumentException("La cita debe terminar el mismo día");
+        }
+
+        // El veterinario de la urgencia primero; los alternativos solo reciben citas desplazadas
+        Set<String> candidatos = new LinkedHashSet<>();
+        candidatos.add(urgente.getIdVeterinario());
+        if (peticion.getVeterinariosAlternativos() != null) {
+            candidatos.addAll(peticion.getVeterinariosAlternativos());
+        }
+        if (candidatos.size() > maxVeterinarios) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Se admiten como máximo " + maxVeterinarios + " veterinarios");
+        }
+        Map<String, List<DisponibilidadVeterinario>> disponibilidades = new LinkedHashMap<>();
+        for (String idVeterinario : candidatos) {
+            List<DisponibilidadVeterinario> franjas = agendaService.consultarDisponibilidades(idVeterinario);
+            if (franjas != null) {
+                disponibilidades.put(idVeterinario, franjas);
+            } else if (idVeterinario.equals(urgente.getIdVeterinario())) {
+                throw new VeterinarioNoDisponible("No se pudo consultar la disponibilidad del veterinario");
+            }
+        }
+        if (disponibilidades.get(urgente.getIdVeterinario()).stream()
+                .noneMatch(franja -> franja.cubre(urgente.getFecha(), urgente.getHora()))) {
+            throw new VeterinarioNoDisponible("El veterinario no está disponible en ese horario");
+        }
+
+        long inicio = System.nanoTime();
+        indiceAgenda.precargar(disponibilidades.keySet(), urgente.getFecha(), urgente.getFecha());
+        Plan plan = planificar(urgente, servicio.getDuracion(), disponibilidades);
+        double msDecision = (System.nanoTime() - inicio) / 1_000_000.0;
+        System.out.printf("Urgencia %s %s %s: %d citas desplazadas, decision en %.2f ms%n", urgente.getIdVeterinario(),
+                urgente.getFecha(), urgente.getHora(), plan.desplazadas().size(), msDecision);
+
+        if (plan.reubicadas().isEmpty()) {
+            Cita guardada = reservaAgenda.crear(urgente);
+            notificacionesService.enSegundoPlano(avisos(guardada, List.of()));
+            return new ResultadoUrgencia(guardada, List.of(), msDecision);
+        }
+        ReservaAgenda.Reubicacion reubicacion = reservaAgenda.crearDesplazando(urgente, plan.reubicadas());
+        notificacionesService.enSegundoPlano(avisos(reubicacion.urgente(), reubicacion.reubicadas()));
+        return new ResultadoUrgencia(reubicacion.urgente(), plan.desplazadas(), msDecision);
+    }
+
+    // Decide donde va cada cita bloqueante sin escribir nada; falla si alguna no se puede mover
+    private Plan planificar(Cita urgente, int duracion, Map<String, List<DisponibilidadVeterinario>> disponibilidades) {
+        LocalDate fecha = urgente.getFecha();
+        int inicioUrgente = urgente.getHora().toSecondOfDay();
+        int finUrgente = inicioUrgente + duracion * 60;
+
+        List<Cita> bloqueantes = new ArrayList<>();
+        if (indiceAgenda.hayConflicto(urgente.getIdVeterinario(), fecha, urgente.getHora(), duracion)) {
+            for (Cita cita : citaRepository.findCitaByIdVeterinarioAndFecha(urgente.getIdVeterinario(), fecha)) {
+                int inicioCita = cita.getHora() == null ? 0 : cita.getHora().toSecondOfDay();
+                if (IndiceAgenda.ocupaHorario(cita) && inicioCita < finUrgente
+                        && inicioCita + indiceAgenda.duracion(cita) * 60 > inicioUrgente) {
+                    bloqueantes.add(cita);
+                }
+            }
+        }
+        for (Cita cita : bloqueantes) {
+            if (cita.getEstado() != Estado.PROGRAMADA || cita.isEsUrgencia()) {
+                throw new UsuarioOcupadoExcepcion("La cita " + cita.getIdCita() + " de las " + cita.getHora()
+                        + " no se puede desplazar: está " + cita.getEstado() + (cita.isEsUrgencia() ? " y es urgente" : ""));
+            }
+        }
+        if (bloqueantes.size() > maxDesplazadas) {
+            throw new UsuarioOcupadoExcepcion("La urgencia desplazaría " + bloqueantes.size()
+                    + " citas; el máximo es " + maxDesplazadas);
+        }
+
+        Set<String> pacientes = new HashSet<>();
+        pacientes.add(urgente.getIdPaciente());
+        bloqueantes.forEach(cita -> pacientes.add(cita.getIdPaciente()));
+        Set<String> pacienteOcupado = agendaService.pacientesOcupados(pacientes, fecha, fecha);
+        Set<Integer> ignorar = new HashSet<>();
+        for (Cita cita : bloqueantes) {
+            ignorar.add(cita.getIdCita());
+            pacienteOcupado.remove(AgendaServiceImpl.clavePaciente(cita.getIdPaciente(), fecha, cita.getHora()));
+        }
+        if (pacienteOcupado.contains(AgendaServiceImpl.clavePaciente(urgente.getIdPaciente(), fecha, urgente.getHora()))) {
+            throw new UsuarioOcupadoExcepcion("La mascota ya tiene una cita en esa fecha y hora.");
+        }
+
+        Huecos huecos = new Huecos(fecha, disponibilidades, ignorar, pacienteOcupado, LocalDateTime.now());
+        huecos.reservar(urgente.getIdVeterinario(), urgente.getIdPaciente(), inicioUrgente, duracion);
+        List<Cita> reubicadas = new ArrayList<>();
+        List<CitaDesplazada> desplazadas = new ArrayList<>();
+        bloqueantes.sort(Comparator.comparing(Cita::getHora));
+        for (Cita cita : bloqueantes) {
+            int duracionCita = indiceAgenda.duracion(cita);
+            Hueco hueco = huecos.masCercano(cita, duracionCita);
+            if (hueco == null) {
+                throw new UsuarioOcupadoExcepcion("No hay un hueco libre el " + fecha + " para reubicar la cita "
+                        + cita.getIdCita() + " de las " + cita.getHora());
+            }
+            huecos.reservar(hueco.idVeterinario(), cita.getIdPaciente(), hueco.hora().toSecondOfDay(), duracionCita);
+            desplazadas.add(new CitaDesplazada(cita.getIdCita(), cita.getIdPaciente(), cita.getIdVeterinario(),
+                    cita.getHora(), hueco.idVeterinario(), hueco.hora(),
+                    Math.abs(hueco.hora().toSecondOfDay() - cita.getHora().toSecondOfDay()) / 60));
+            cita.setIdVeterinario(hueco.idVeterinario());
+            cita.setHora(hueco.hora());
+            reubicadas.add(cita);
+        }
+        return new Plan(reubicadas, desplazadas);
+    }
+
+    // La urgencia y todas las reprogramaciones en un unico lote de avisos
+    private Mono<Void> avisos(Cita urgente, List<Cita> reubicadas) {
+        List<Cita> citas = new ArrayList<>();
+        citas.add(urgente);
+        citas.addAll(reubicadas);
+        return agendaService.avisosEnLote(citas, (cita, email, nombreMascota, nombreVeterinario) -> cita == urgente
+                ? agendaService.solicitudCita(cita, email, nombreMascota, nombreVeterinario)
+                : agendaService.solicitudCambioEstado(cita, Estado.REPROGRAMADA, email, nombreMascota, nombreVeterinario));
+    }
+
+    private record Plan(List<Cita> reubicadas, List<CitaDesplazada> desplazadas) {
+    }
+
+    private record Hueco(String idVeterinario, LocalTime hora, int coste) {
+    }
+
+    // Agenda del dia de los veterinarios candidatos como mapas de bits de franjas, igual que HorarioServiceImpl
+    private final class Huecos {
+
+        private final LocalDate fecha;
+        private final Map<String, BitSet> inicios = new HashMap<>();
+        private final Map<String, BitSet> ocupadas = new HashMap<>();
+        private final Set<String> pacienteOcupado;
+
+        Huecos(LocalDate fecha, Map<String, List<DisponibilidadVeterinario>> disponibilidades, Set<Integer> ignorar,
+               Set<String> pacienteOcupado, LocalDateTime ahora) {
+            this.fecha = fecha;
+            this.pacienteOcupado = pacienteOcupado;
+            disponibilidades.forEach((idVeterinario, franjas) -> {
+                BitSet permitidos = HorarioServiceImpl.iniciosPermitidos(franjas, fecha, segundosFranja);
+                // Una cita no se puede mover a una hora que ya paso
+                if (fecha.isBefore(ahora.toLocalDate())) {
+                    permitidos.clear();
+                } else if (fecha.equals(ahora.toLocalDate())) {
+                    permitidos.clear(0, ahora.toLocalTime().toSecondOfDay() / segundosFranja + 1);
+                }
+                BitSet ocupadasVeterinario = new BitSet(SEGUNDOS_DIA / segundosFranja);
+                indiceAgenda.marcarOcupadas(idVeterinario, fecha, ocupadasVeterinario, segundosFranja, ignorar);
+                inicios.put(idVeterinario, permitidos);
+                ocupadas.put(idVeterinario, ocupadasVeterinario);
+            });
+        }
+
+        // Recorre las franjas alejandose de la hora original en cada veterinario; se deja de buscar en
+        // cuanto el desplazamiento mas la penalizacion ya no puede mejorar el mejor hueco encontrado
+        Hueco masCercano(Cita cita, int duracion) {
+            int original = cita.getHora().toSecondOfDay();
+            int base = original / segundosFranja;
+            int ultimoInicio = (SEGUNDOS_DIA - duracion * 60) / segundosFranja;
+            Hueco mejor = null;
+            for (String idVeterinario : inicios.keySet()) {
+                int penalizacion = idVeterinario.equals(cita.getIdVeterinario()) ? 0 : penalizacionCambioVeterinario;
+                for (int paso = 0; ; paso++) {
+                    if (mejor != null && Math.max(0, paso - 1) * segundosFranja / 60 + penalizacion >= mejor.coste()) {
+                        break;
+                    }
+                    int despues = base + paso;
+                    int antes = base - paso;
+                    if (despues > ultimoInicio && antes < 0) {
+                        break;
+                    }
+                    for (int franja : paso == 0 ? new int[]{despues} : new int[]{despues, antes}) {
+                        if (franja >= 0 && franja <= ultimoInicio && libre(idVeterinario, cita.getIdPaciente(), franja, duracion)) {
+                            int coste = Math.abs(franja * segundosFranja - original) / 60 + penalizacion;
+                            if (mejor == null || coste < mejor.coste()) {
+                                mejor = new Hueco(idVeterinario, LocalTime.ofSecondOfDay((long) franja * segundosFranja), coste);
+                            }
+                        }
+                    }
+                }
+            }
+            return mejor;
+        }
+
+        private boolean libre(String idVeterinario, String idPaciente, int franja, int duracion) {
+            if (!inicios.get(idVeterinario).get(franja)) {
+                return false;
+            }
+            int siguienteOcupada = ocupadas.get(idVeterinario).nextSetBit(franja);
+            return (siguienteOcupada < 0 || siguienteOcupada >= franja + franjas(duracion * 60))
+                    && !pacienteOcupado.contains(AgendaServiceImpl.clavePaciente(idPaciente, fecha,
+                    LocalTime.ofSecondOfDay((long) franja * segundosFranja)));
+        }
+
+        void reservar(String idVeterinario, String idPaciente, int inicio, int duracion) {
+            int fin = Math.min(inicio + duracion * 60, SEGUNDOS_DIA);
+            ocupadas.get(idVeterinario).set(inicio / segundosFranja, franjas(fin));
+            pacienteOcupado.add(AgendaServiceImpl.clavePaciente(idPaciente, fecha, LocalTime.ofSecondOfDay(inicio)));
+        }
+
+        private int franjas(int segundos) {
+            return (segundos + segundosFranja - 1) / segundosFranja;
+        }
+    }
+}
@@ -2,97 +2,242 @@ package co.edu.modulocitas.service.impl;
 
 
 import co.edu.modulocitas.Exception.VeterinarioNoDisponible;
-import lombok.RequiredArgsConstructor;
+import co.edu.modulocitas.cache.AgrupadorConsultas;
+import co.edu.modulocitas.cache.CacheRemota;
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.InvalidacionUsuarios;
+import co.edu.modulocitas.remoto.ProteccionRemota;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 
+/**
+ * Cliente del microservicio de usuarios. Los avisos piden sus tres datos con
+ * obtenerContextoNotificacion, que resuelve en una sola peticion lo que no este en cache. El
+ * email del propietario y los nombres de mascota y veterinario se guardan en una CacheRemota por
+ * id durante {@code agenda.usuarios.minutos-vigencia} (los ids que no existen,
+ * {@code minutos-vigencia-ausentes}); usuarios avisa en /agenda/usuarios/cache/invalidar cuando
+ * cambia alguno de ellos. Las consultas sueltas que no estan en cache se juntan durante
+ * {@code agenda.usuarios.lote.ventana-ms} y viajan en una peticion por lote a los endpoints
+ * /nombres y /emails de usuarios. La disponibilidad de los veterinarios no se guarda: cambia a lo
+ * largo del dia. Todas las llamadas pasan por la ProteccionRemota de usuarios (tiempo maximo,
+ * llamadas a la vez y circuito): sin respuesta, la disponibilidad falla enseguida con 503 y los
+ * avisos salen sin los nombres que no se pudieron obtener.
+ */
 @Service
-@RequiredArgsConstructor
 public class UsuarioServiceImpl {
 
-    @Qualifier(value = "usuarioWebClient")
     private final WebClient usuarioWebClient;
+    private final CacheRemota<String, String> emails;
+    private final CacheRemota<String, String> nombresMascota;
+    private final CacheRemota<String, String> nombresVeterinario;
+    private final AgrupadorConsultas<String, String> lotesEmails;
+    private final AgrupadorConsultas<String, String> lotesNombresMascota;
+    private final AgrupadorConsultas<String, String> lotesNombresVeterinario;
+    private final ProteccionRemota proteccion;
+    private final Duration limiteDisponibilidad;
+    private final Duration limiteConsultas;
+
+    public UsuarioServiceImpl(@Qualifier("usuarioWebClient") WebClient usuarioWebClient,
+                              @Qualifier("proteccionUsuarios") ProteccionRemota proteccion,
+                              @Value("${agenda.usuarios.proteccion.timeout-disponibilidad-ms:1500}") long timeoutDisponibilidadMs,
+                              @Value("${agenda.usuarios.proteccion.timeout-consultas-ms:1000}") long timeoutConsultasMs,
+                              @Value("${agenda.usuarios.max-entradas:10000}") int maxEntradas,
+                              @Value("${agenda.usuarios.minutos-vigencia:10}") int minutosVigencia,
+                              @Value("${agenda.usuarios.minutos-vigencia-ausentes:1}") int minutosVigenciaAusentes,
+                              @Value("${agenda.usuarios.lote.ventana-ms:5}") long ventanaLoteMs,
+                              @Value("${agenda.usuarios.lote.max-ids:100}") int maxIdsLote) {
+        this.usuarioWebClient = usuarioWebClient;
+        this.proteccion = proteccion;
+        this.limiteDisponibilidad = Duration.ofMillis(timeoutDisponibilidadMs);
+        this.limiteConsultas = Duration.ofMillis(timeoutConsultasMs);
+        Duration vigencia = Duration.ofMinutes(minutosVigencia);
+        Duration vigenciaAusentes = Duration.ofMinutes(minutosVigenciaAusentes);
+        this.emails = new CacheRemota<>(maxEntradas, vigencia, vigenciaAusentes);
+        this.nombresMascota = new CacheRemota<>(maxEntradas, vigencia, vigenciaAusentes);
+        this.nombresVeterinario = new CacheRemota<>(maxEntradas, vigencia, vigenciaAusentes);
+        Duration ventanaLote = Duration.ofMillis(ventanaLoteMs);
+        this.lotesEmails = new AgrupadorConsultas<>(ventanaLote, maxIdsLote,
+                ids -> cargarLote("/usuarios/emails", "idsMascota", ids));
+        this.lotesNombresMascota = new AgrupadorConsultas<>(ventanaLote, maxIdsLote,
+                ids -> cargarLote("/mascotas/nombres", "ids", ids));
+        this.lotesNombresVeterinario = new AgrupadorConsultas<>(ventanaLote, maxIdsLote,
+                ids -> cargarLote("/veterinarios/nombres", "ids", ids));
+    }
 
 
     // Metodo que consulta a otro microservicio si un veterinario está disponible en una fecha y hora específicas.
     public void verificarDisponibilidadVeterinario(String veterinarioId, LocalDate fecha, LocalTime hora) {
+        verificarDisponibilidadVeterinarioReactivo(veterinarioId, fecha, hora)
+                .block();                                  // Bloquea hasta recibir la respuesta (de forma sincrónica)
+    }
 
+    // Igual que verificarDisponibilidadVeterinario pero sin bloquear: termina vacio o con VeterinarioNoDisponible.
+    // Si usuarios no contesta a tiempo o su circuito esta abierto falla enseguida con ServicioRemotoNoDisponible
+    public Mono<Void> verificarDisponibilidadVeterinarioReactivo(String veterinarioId, LocalDate fecha, LocalTime hora) {
 
         // Realiza una solicitud HTTP GET al endpoint del microservicio de usuarios
-        Map<String, Object> response = usuarioWebClient.get() // Inicia la construcción de una petición GET con WebClient
+        Mono<Map<String, Object>> respuesta = usuarioWebClient.get() // Inicia la construcción de una petición GET con WebClient
                 .uri(uriBuilder -> uriBuilder              // Usa un uriBuilder para construir dinámicamente la URL
                         .path("/disponibilidades/verificar/{veterinarioId}")    // Define el path del endpoint con un parámetro
                         .queryParam("fecha", fecha)            // Agrega el parámetro de la fecha (en formato ISO)
                         .queryParam("hora", hora)              // Agrega el parámetro de la hora (en formato HH:mm)
                         .build(veterinarioId))                 // Sustituye el {veterinarioId} en la URL con el valor real
-//                .uri(urlCompleta)
                 .retrieve()                                // Ejecuta la solicitud HTTP y obtiene la respuesta
-                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}) // Convierte la respuesta a un Mono de tipo Map<String, Object>
-                .block();                                  // Bloquea hasta recibir la respuesta (de forma sincrónica)
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}); // Convierte la respuesta a un Mono de tipo Map<String, Object>
+        return proteccion.proteger("disponibilidad", limiteDisponibilidad, respuesta)
+                .defaultIfEmpty(Map.of())
+                .flatMap(response -> Boolean.TRUE.equals(response.get("disponible"))
+                        ? Mono.<Void>empty()
+                        : Mono.error(new VeterinarioNoDisponible("El veterinario no está disponible en ese horario")));
+    }
 
-        if (response == null || !Boolean.TRUE.equals(response.get("disponible"))) {
-            throw new VeterinarioNoDisponible("El veterinario no está disponible en ese horario");
-        }
+    // Franjas activas del veterinario, para evaluar muchas citas sin una llamada por cada una
+    public List<DisponibilidadVeterinario> obtenerDisponibilidadesActivas(String veterinarioId) {
+        Mono<List<DisponibilidadVeterinario>> respuesta = usuarioWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/disponibilidades/veterinario/{veterinarioId}/activas")
+                        .build(veterinarioId))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<DisponibilidadVeterinario>>() {});
+        List<DisponibilidadVeterinario> disponibilidades = proteccion
+                .proteger("disponibilidadesActivas", limiteDisponibilidad, respuesta)
+                .block();
+        return disponibilidades == null ? List.of() : disponibilidades;
     }
 
     public String obtenerEmail(String idMascota) {
-        try {
-            String email= usuarioWebClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/usuarios/buscarEmail/idMascota/{idMascota}")
-                            .build(idMascota))
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block(); // Espera sincrónicamente la respuesta
-            System.out.println(email);
-            return email;
-        } catch (Exception e) {
-            System.err.println("Error al obtener el email del usuario: " + e.getMessage());
-            return null;
-        }
+        String email = obtenerEmailReactivo(idMascota).block(); // Espera sincrónicamente la respuesta
+        System.out.println(email);
+        return email;
     }
 
     public String obtenerNombreMascota(String idMascota) {
-         try {
-             String nombre = usuarioWebClient.get()
-                     .uri(uriBuilder -> uriBuilder
-                             .path("/mascotas/nombre/{idMascota}")
-                             .build(idMascota))
-                     .retrieve()
-                     .bodyToMono(String.class)
-                     .block(); // Espera sincrónicamente la respuesta
-             System.out.println("Mascota:" +nombre);
-             return nombre;
-         } catch (Exception e) {
-             System.err.println("Error al obtener el nombre de la mascota: " + e.getMessage());
-             return null;
-         }
+        String nombre = obtenerNombreMascotaReactivo(idMascota).block(); // Espera sincrónicamente la respuesta
+        System.out.println("Mascota:" +nombre);
+        return nombre;
     }
 
     public String obtenerNombreVeterinario(String idVeterinario) {
-        try {
-            String nombre = usuarioWebClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/veterinarios/nombre/{idVeterinario}")
-                            .build(idVeterinario))
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block(); // Espera sincrónicamente la respuesta
-            System.out.println("Veterinario:" +idVeterinario);
-            System.out.println("Veterinario"+ nombre);
-            return nombre;
-        } catch (Exception e) {
-            System.err.println("Error al obtener el nombre del veterinario: " + e.getMessage());
-            return null;
+        String nombre = obtenerNombreVeterinarioReactivo(idVeterinario).block(); // Espera sincrónicamente la respuesta
+        System.out.println("Veterinario:" +idVeterinario);
+        System.out.println("Veterinario"+ nombre);
+        return nombre;
+    }
+
+    public ContextoNotificacion obtenerContextoNotificacion(String idMascota, String idVeterinario) {
+        return obtenerContextoNotificacionReactivo(idMascota, idVeterinario).block();
+    }
+
+    // Las variantes reactivas no fallan: ante un error terminan vacias, como las bloqueantes devuelven null.
+    // Lo que no esta en cache se pide por lote: varias citas resueltas a la vez comparten una peticion
+    public Mono<String> obtenerEmailReactivo(String idMascota) {
+        return consultar(emails, idMascota, lotesEmails::obtener, "Error al obtener el email del usuario: ");
+    }
+
+    public Mono<String> obtenerNombreMascotaReactivo(String idMascota) {
+        return consultar(nombresMascota, idMascota, lotesNombresMascota::obtener,
+                "Error al obtener el nombre de la mascota: ");
+    }
+
+    public Mono<String> obtenerNombreVeterinarioReactivo(String idVeterinario) {
+        return consultar(nombresVeterinario, idVeterinario, lotesNombresVeterinario::obtener,
+                "Error al obtener el nombre del veterinario: ");
+    }
+
+    // Los tres datos de un aviso. Lo que no este en cache llega con una sola peticion a
+    // /usuarios/contexto-notificacion, compartida por los tres; nunca termina vacio ni con error
+    public Mono<ContextoNotificacion> obtenerContextoNotificacionReactivo(String idMascota, String idVeterinario) {
+        Mono<ContextoNotificacion> contexto = Mono.defer(() -> cargarContexto(idMascota, idVeterinario)).cache();
+        return Mono.zip(
+                        AgendaReactivaServiceImpl.opcional(consultar(emails, idMascota,
+                                id -> contexto.mapNotNull(ContextoNotificacion::getEmail),
+                                "Error al obtener el email del usuario: ")),
+                        AgendaReactivaServiceImpl.opcional(consultar(nombresMascota, idMascota,
+                                id -> contexto.mapNotNull(ContextoNotificacion::getNombreMascota),
+                                "Error al obtener el nombre de la mascota: ")),
+                        AgendaReactivaServiceImpl.opcional(consultar(nombresVeterinario, idVeterinario,
+                                id -> contexto.mapNotNull(ContextoNotificacion::getNombreVeterinario),
+                                "Error al obtener el nombre del veterinario: ")))
+                .map(datos -> new ContextoNotificacion(datos.getT1().orElse(null), datos.getT2().orElse(null),
+                        datos.getT3().orElse(null)));
+    }
+
+    // Una mascota invalida su nombre y el email de su propietario
+    public void invalidar(InvalidacionUsuarios invalidacion) {
+        if (invalidacion.getMascotas() != null) {
+            invalidacion.getMascotas().forEach(idMascota -> {
+                emails.invalidar(idMascota);
+                nombresMascota.invalidar(idMascota);
+            });
+        }
+        if (invalidacion.getVeterinarios() != null) {
+            invalidacion.getVeterinarios().forEach(nombresVeterinario::invalidar);
+        }
+    }
+
+    public Map<String, Object> estadisticasProteccion() {
+        return proteccion.estadisticas();
+    }
+
+    public Map<String, Object> estadisticasCache() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("emails", emails.estadisticas());
+        estadisticas.put("nombresMascota", nombresMascota.estadisticas());
+        estadisticas.put("nombresVeterinario", nombresVeterinario.estadisticas());
+        Map<String, Object> lotes = new LinkedHashMap<>();
+        lotes.put("emails", lotesEmails.estadisticas());
+        lotes.put("nombresMascota", lotesNombresMascota.estadisticas());
+        lotes.put("nombresVeterinario", lotesNombresVeterinario.estadisticas());
+        estadisticas.put("lotes", lotes);
+        return estadisticas;
+    }
+
+    private Mono<String> consultar(CacheRemota<String, String> cache, String id,
+                                   Function<String, Mono<String>> cargador, String mensajeError) {
+        if (id == null) {
+            return Mono.empty();
         }
+        return cache.obtener(id, cargador)
+                .onErrorResume(e -> {
+                    System.err.println(mensajeError + e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<ContextoNotificacion> cargarContexto(String idMascota, String idVeterinario) {
+        return proteccion.proteger("contextoNotificacion", limiteConsultas, usuarioWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/usuarios/contexto-notificacion")
+                        .queryParam("idMascota", Objects.toString(idMascota, ""))
+                        .queryParam("idVeterinario", Objects.toString(idVeterinario, ""))
+                        .build())
+                .retrieve()
+                .bodyToMono(ContextoNotificacion.class));
+    }
+
+    // Los ids que no vienen en la respuesta no existen y se recuerdan como ausentes; un error no
+    private Mono<Map<String, String>> cargarLote(String path, String parametro, Set<String> ids) {
+        return proteccion.proteger(path, limiteConsultas, usuarioWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(path)
+                        .queryParam(parametro, String.join(",", ids))
+                        .build())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, String>>() {}));
     }
 }
@@ -0,0 +1,225 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.event.CitasVencidasEvent;
+import co.edu.modulocitas.service.VencimientoCitasService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Barrido de citas vencidas: las citas PROGRAMADA con fecha anterior a hoy menos
+ * {@code agenda.vencimiento.dias-gracia} pasan a CANCELADA, dejan de contar como ocupadas y
+ * sueltan sus franjas de reserva_franja. Cada lote bloquea como mucho
+ * {@code agenda.vencimiento.tamano-lote} filas con SELECT ... FOR UPDATE sobre
+ * idx_cita_estado_agenda (estado, fecha) y las cambia con un unico UPDATE ... IN, asi ninguna
+ * transaccion retiene bloqueos mucho tiempo. La ejecucion programada solo empieza lotes entre
+ * {@code hora-inicio} y {@code hora-fin} para no competir con las reservas del dia; si la ventana
+ * se cierra a medias, la siguiente noche sigue donde quedo. No se notifica a nadie ni se emiten
+ * eventos SSE: son citas de dias pasados.
+ */
+@Service
+public class VencimientoCitasServiceImpl implements VencimientoCitasService {
+
+    public static final Estado ESTADO_VENCIDA = Estado.CANCELADA;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final IndiceAgenda indiceAgenda;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean habilitado;
+    private final int diasGracia;
+    private final int tamanoLote;
+    private final long pausaMs;
+    private final LocalTime horaInicio;
+    private final LocalTime horaFin;
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+
+    private volatile Map<String, Object> ultimaEjecucion = Map.of();
+    private volatile long totalVencidas;
+    private volatile long totalLotes;
+    private volatile long totalMsBloqueo;
+    private volatile long maxMsBloqueo;
+    private volatile long ejecuciones;
+
+    public VencimientoCitasServiceImpl(NamedParameterJdbcTemplate jdbcTemplate,
+                                       TransactionTemplate transactionTemplate,
+                                       IndiceAgenda indiceAgenda,
+                                       ApplicationEventPublisher eventPublisher,
+                                       @Value("${agenda.vencimiento.habilitado:true}") boolean habilitado,
+                                       @Value("${agenda.vencimiento.dias-gracia:1}") int diasGracia,
+                                       @Value("${agenda.vencimiento.tamano-lote:500}") int tamanoLote,
+                                       @Value("${agenda.vencimiento.pausa-ms:50}") long pausaMs,
+                                       @Value("${agenda.vencimiento.hora-inicio:1}") int horaInicio,
+                                       @Value("${agenda.vencimiento.hora-fin:6}") int horaFin) {
+        if (diasGracia < 1) {
+            throw new IllegalStateException("agenda.vencimiento.dias-gracia debe ser al menos 1");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.indiceAgenda = indiceAgenda;
+        this.eventPublisher = eventPublisher;
+        this.habilitado = habilitado;
+        this.diasGracia = diasGracia;
+        this.tamanoLote = tamanoLote;
+        this.pausaMs = pausaMs;
+        this.horaInicio = LocalTime.of(horaInicio, 0);
+        this.horaFin = LocalTime.of(horaFin, 0);
+    }
+
+    @Scheduled(cron = "${agenda.vencimiento.cron:0 0 1 * * *}")
+    public void vencerPeriodicamente() {
+        if (!habilitado || !dentroDeVentana()) {
+            return;
+        }
+        try {
+            System.out.println("Vencimiento de citas: " + vencer(true));
+        } catch (DataAccessException e) {
+            System.err.println("No se pudieron vencer las citas: " + e.getMessage());
+        }
+    }
+
+    // Ejecucion manual: no espera a la ventana nocturna, pero sigue yendo por lotes
+    @Override
+    public Map<String, Object> vencer() {
+        return vencer(false);
+    }
+
+    private Map<String, Object> vencer(boolean soloEnVentana) {
+        if (!enCurso.compareAndSet(false, true)) {
+            Map<String, Object> ocupado = new LinkedHashMap<>();
+            ocupado.put("estado", "vencimiento en curso");
+            return ocupado;
+        }
+        try {
+            LocalDate limite = LocalDate.now().minusDays(diasGracia);
+            long inicio = System.nanoTime();
+            long msBloqueo = 0;
+            long msMaxLote = 0;
+            int lotes = 0;
+            int vencidas = 0;
+            boolean cortada = false;
+            int procesadas;
+            do {
+                if (soloEnVentana && !dentroDeVentana()) {
+                    cortada = true;
+                    break;
+                }
+                if (lotes > 0 && pausaMs > 0) {
+                    // Deja pasar a las transacciones que esperaban alguna de las filas del lote anterior
+                    Thread.sleep(pausaMs);
+                }
+                long inicioLote = System.nanoTime();
+                List<Vencida> lote = transactionTemplate.execute(estado -> vencerLote(limite));
+                long msLote = (System.nanoTime() - inicioLote) / 1_000_000;
+                procesadas = lote == null ? 0 : lote.size();
+                msBloqueo += msLote;
+                msMaxLote = Math.max(msMaxLote, msLote);
+                if (procesadas > 0) {
+                    alVencer(lote);
+                    lotes++;
+                    vencidas += procesadas;
+                }
+            } while (procesadas == tamanoLote);
+
+            synchronized (this) {
+                ejecuciones++;
+                totalVencidas += vencidas;
+                totalLotes += lotes;
+                totalMsBloqueo += msBloqueo;
+                maxMsBloqueo = Math.max(maxMsBloqueo, msMaxLote);
+            }
+            Map<String, Object> ejecucion = new LinkedHashMap<>();
+            ejecucion.put("fecha", LocalDateTime.now());
+            ejecucion.put("anterioresA", limite);
+            ejecucion.put("vencidas", vencidas);
+            ejecucion.put("lotes", lotes);
+            ejecucion.put("ms", (System.nanoTime() - inicio) / 1_000_000);
+            // Suma y maximo del tiempo que los lotes mantuvieron filas de cita bloqueadas
+            ejecucion.put("msBloqueo", msBloqueo);
+            ejecucion.put("msMaxLote", msMaxLote);
+            ejecucion.put("cortadaPorVentana", cortada);
+            ultimaEjecucion = ejecucion;
+            return ejecucion;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, Object> interrumpida = new LinkedHashMap<>();
+            interrumpida.put("estado", "vencimiento interrumpido");
+            return interrumpida;
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> estadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("habilitado", habilitado);
+        estadisticas.put("diasGracia", diasGracia);
+        estadisticas.put("tamanoLote", tamanoLote);
+        estadisticas.put("ventana", horaInicio + "-" + horaFin);
+        estadisticas.put("ejecuciones", ejecuciones);
+        estadisticas.put("totalVencidas", totalVencidas);
+        estadisticas.put("totalLotes", totalLotes);
+        estadisticas.put("totalMsBloqueo", totalMsBloqueo);
+        estadisticas.put("maxMsLote", maxMsBloqueo);
+        estadisticas.put("ultimaEjecucion", ultimaEjecucion);
+        return estadisticas;
+    }
+
+    boolean dentroDeVentana() {
+        LocalTime ahora = LocalTime.now();
+        // Una ventana como 22-5 cruza la medianoche
+        return horaInicio.isBefore(horaFin)
+                ? !ahora.isBefore(horaInicio) && ahora.isBefore(horaFin)
+                : !ahora.isBefore(horaInicio) || ahora.isBefore(horaFin);
+    }
+
+    // Las filas cambiadas salen del rango (PROGRAMADA, fecha < limite): el siguiente lote no las vuelve a leer
+    private List<Vencida> vencerLote(LocalDate limite) {
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("programada", Estado.PROGRAMADA.name())
+                .addValue("limite", limite)
+                .addValue("lote", tamanoLote);
+        List<Vencida> vencidas = jdbcTemplate.query(
+                "SELECT id_cita, id_veterinario, fecha FROM cita WHERE estado = :programada AND fecha < :limite"
+                        + " LIMIT :lote FOR UPDATE",
+                parametros, (fila, n) -> new Vencida(fila.getInt(1), fila.getString(2), fila.getObject(3, LocalDate.class)));
+        if (vencidas.isEmpty()) {
+            return vencidas;
+        }
+        MapSqlParameterSource porIds = new MapSqlParameterSource("ids", vencidas.stream().map(Vencida::idCita).toList())
+                .addValue("vencida", ESTADO_VENCIDA.name());
+        jdbcTemplate.update("UPDATE cita SET estado = :vencida, version = version + 1 WHERE id_cita IN (:ids)", porIds);
+        jdbcTemplate.update("DELETE FROM reserva_franja WHERE id_cita IN (:ids)", porIds);
+        return vencidas;
+    }
+
+    // Tras el commit: el indice suelta las citas y la vista y las estadisticas releen esas fechas
+    private void alVencer(List<Vencida> vencidas) {
+        Set<LocalDate> fechas = new HashSet<>();
+        for (Vencida vencida : vencidas) {
+            indiceAgenda.retirar(vencida.idCita(), vencida.idVeterinario(), vencida.fecha());
+            fechas.add(vencida.fecha());
+        }
+        eventPublisher.publishEvent(new CitasVencidasEvent(fechas));
+    }
+
+    private record Vencida(Integer idCita, String idVeterinario, LocalDate fecha) {
+    }
+}
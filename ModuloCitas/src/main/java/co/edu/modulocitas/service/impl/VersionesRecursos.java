@@ -0,0 +1,112 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.event.CitaGuardadaEvent;
+import co.edu.modulocitas.event.CitasVencidasEvent;
+import co.edu.modulocitas.event.HistoriaClinicaGuardadaEvent;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versiones baratas de las lecturas que los paneles repiten: las citas de una fecha y la
+ * historia clinica de un paciente. Cada escritura (CitaGuardadaEvent, CitasVencidasEvent,
+ * HistoriaClinicaGuardadaEvent) asigna a su fecha o paciente el siguiente valor de una secuencia
+ * y los controladores responden If-None-Match con 304 sin consultar MySQL. Los eventos se
+ * publican tras el commit y la ETag se calcula antes de leer, asi una respuesta nunca lleva una
+ * version mas nueva que sus datos. Las versiones son de cada instancia: la ETag incluye un
+ * identificador de arranque y caduca cada {@code agenda.etag.segundos-validez} para acotar el
+ * tiempo que no se ven las escrituras de otra instancia.
+ */
+@Service
+public class VersionesRecursos {
+
+    private final String instancia = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong secuencia = new AtomicLong();
+    private final Contadores<LocalDate> agendaPorFecha;
+    private final Contadores<String> historiaPorPaciente;
+    private final long msValidez;
+
+    public VersionesRecursos(@Value("${agenda.etag.max-claves:10000}") int maxClaves,
+                             @Value("${agenda.etag.segundos-validez:300}") int segundosValidez) {
+        this.agendaPorFecha = new Contadores<>(maxClaves);
+        this.historiaPorPaciente = new Contadores<>(maxClaves);
+        this.msValidez = segundosValidez * 1000L;
+    }
+
+    public String etagAgenda(LocalDate fecha) {
+        return etag("a", agendaPorFecha.version(fecha));
+    }
+
+    public String etagHistoriaPaciente(String idPaciente) {
+        return etag("h", historiaPorPaciente.version(idPaciente));
+    }
+
+    @EventListener
+    public void alGuardarCita(CitaGuardadaEvent evento) {
+        if (evento.cita().getFecha() != null) {
+            agendaPorFecha.modificar(evento.cita().getFecha());
+        }
+        if (evento.fechaAnterior() != null) {
+            agendaPorFecha.modificar(evento.fechaAnterior());
+        }
+    }
+
+    @EventListener
+    public void alVencerCitas(CitasVencidasEvent evento) {
+        evento.fechas().forEach(agendaPorFecha::modificar);
+    }
+
+    @EventListener
+    public void alGuardarHistoria(HistoriaClinicaGuardadaEvent evento) {
+        if (evento.idPaciente() != null) {
+            historiaPorPaciente.modificar(evento.idPaciente());
+        }
+    }
+
+    // Cada cita de la respuesta lleva su servicio
+    @EventListener
+    public void alModificarServicio(ServicioModificadoEvent evento) {
+        agendaPorFecha.invalidarTodo();
+    }
+
+    private String etag(String recurso, long version) {
+        long periodo = msValidez > 0 ? System.currentTimeMillis() / msValidez : 0;
+        return "W/\"" + recurso + "-" + instancia + "-" + periodo + "-" + version + "\"";
+    }
+
+    // Sin entrada, una clave vale el minimo: al vaciar el mapa sube a la secuencia, asi ninguna version vuelve atras
+    private final class Contadores<K> {
+
+        private final Map<K, Long> versiones = new ConcurrentHashMap<>();
+        private final int maxClaves;
+        private volatile long minimo;
+
+        Contadores(int maxClaves) {
+            this.maxClaves = maxClaves;
+        }
+
+        long version(K clave) {
+            Long version = versiones.get(clave);
+            long base = minimo;
+            return version == null ? base : Math.max(version, base);
+        }
+
+        void modificar(K clave) {
+            if (versiones.size() >= maxClaves) {
+                invalidarTodo();
+            }
+            versiones.merge(clave, secuencia.incrementAndGet(), Math::max);
+        }
+
+        void invalidarTodo() {
+            minimo = secuencia.incrementAndGet();
+            versiones.clear();
+        }
+    }
+}
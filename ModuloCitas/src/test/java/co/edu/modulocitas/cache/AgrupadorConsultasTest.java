@@ -0,0 +1,70 @@
+package co.edu.modulocitas.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AgrupadorConsultasTest {
+
+    @Test
+    void doscientasCitasSeResuelvenEnLotesDeMaxLote() {
+        List<Set<String>> lotes = new CopyOnWriteArrayList<>();
+        AgrupadorConsultas<String, String> agrupador = new AgrupadorConsultas<>(Duration.ofMillis(20), 100, ids -> {
+            lotes.add(ids);
+            return Mono.just(ids.stream().filter(id -> !id.equals("m-ausente"))
+                    .collect(Collectors.toMap(id -> id, id -> "nombre-" + id)));
+        });
+
+        // 200 citas con ids distintos y un id que no existe, pedido dos veces en la misma ventana
+        List<String> pedidos = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            pedidos.add("m-" + i);
+        }
+        pedidos.add("m-ausente");
+        pedidos.add("m-ausente");
+        List<Optional<String>> nombres = Flux.fromIterable(pedidos)
+                .flatMapSequential(id -> agrupador.obtener(id).map(Optional::of).defaultIfEmpty(Optional.empty()), 512)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(202, nombres.size());
+        assertEquals("nombre-m-7", nombres.get(7).orElseThrow());
+        assertTrue(nombres.get(200).isEmpty());
+        assertTrue(nombres.get(201).isEmpty());
+        // Dos lotes llenos y uno que sale al cerrar la ventana, en lugar de una peticion por cita
+        assertEquals(3, lotes.size());
+        assertEquals(Set.of("m-ausente"), lotes.get(2));
+        Map<String, Object> estadisticas = agrupador.estadisticas();
+        assertEquals(202L, estadisticas.get("consultas"));
+        assertEquals(2L, estadisticas.get("lotesLlenos"));
+    }
+
+    @Test
+    void unErrorDelLoteLlegaATodasSusConsultas() {
+        AgrupadorConsultas<String, String> agrupador = new AgrupadorConsultas<>(Duration.ofMillis(10), 100,
+                ids -> Mono.error(new IllegalStateException("usuarios caido")));
+
+        Mono<String> primera = agrupador.obtener("v-1").cache();
+        Mono<String> segunda = agrupador.obtener("v-2").cache();
+        primera.subscribe(valor -> { }, e -> { });
+        segunda.subscribe(valor -> { }, e -> { });
+
+        assertThrows(IllegalStateException.class, () -> primera.block(Duration.ofSeconds(5)));
+        assertThrows(IllegalStateException.class, () -> segunda.block(Duration.ofSeconds(5)));
+        assertEquals(1L, agrupador.estadisticas().get("lotes"));
+        assertEquals(1L, agrupador.estadisticas().get("errores"));
+    }
+}
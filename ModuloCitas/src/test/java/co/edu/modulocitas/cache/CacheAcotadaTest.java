@@ -0,0 +1,71 @@
+package co.edu.modulocitas.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheAcotadaTest {
+
+    @Test
+    void cuentaAciertosFallosYDesalojaLaEntradaMenosUsada() {
+        CacheAcotada<Integer, String> cache = new CacheAcotada<>(2);
+        AtomicInteger cargas = new AtomicInteger();
+
+        cache.obtener(1, id -> { cargas.incrementAndGet(); return Optional.of("uno"); });
+        cache.obtener(2, id -> { cargas.incrementAndGet(); return Optional.of("dos"); });
+        cache.obtener(1, id -> { cargas.incrementAndGet(); return Optional.of("uno"); });
+        cache.obtener(3, id -> { cargas.incrementAndGet(); return Optional.of("tres"); });
+        // La 2 fue la menos usada y se desalojo; la 1 sigue en cache
+        cache.obtener(1, id -> { cargas.incrementAndGet(); return Optional.of("uno"); });
+        cache.obtener(2, id -> { cargas.incrementAndGet(); return Optional.of("dos"); });
+
+        Map<String, Object> estadisticas = cache.estadisticas();
+        assertEquals(4, cargas.get());
+        assertEquals(2L, estadisticas.get("aciertos"));
+        assertEquals(4L, estadisticas.get("fallos"));
+        assertEquals(2L, estadisticas.get("desalojos"));
+        assertEquals(2, estadisticas.get("tamano"));
+    }
+
+    @Test
+    void noGuardaValoresVaciosNiLecturasAnterioresAUnaInvalidacion() {
+        CacheAcotada<Integer, String> cache = new CacheAcotada<>(10);
+
+        assertTrue(cache.obtener(1, id -> Optional.empty()).isEmpty());
+        cache.obtener(2, id -> {
+            cache.invalidarTodo();
+            return Optional.of("obsoleto");
+        });
+
+        assertEquals(0, cache.estadisticas().get("tamano"));
+    }
+
+    @Test
+    void cargaLasClavesAusentesDeUnaSolaVez() {
+        CacheAcotada<Integer, String> cache = new CacheAcotada<>(10);
+        List<List<Integer>> cargas = new ArrayList<>();
+        Function<List<Integer>, Map<Integer, String>> cargador = ids -> {
+            cargas.add(ids);
+            Map<Integer, String> valores = new HashMap<>();
+            ids.forEach(id -> valores.put(id, "v" + id));
+            return valores;
+        };
+
+        cache.obtenerTodos(List.of(1, 2), cargador);
+        Map<Integer, String> valores = cache.obtenerTodos(List.of(1, 2, 3, 4), cargador);
+
+        assertEquals(Map.of(1, "v1", 2, "v2", 3, "v3", 4, "v4"), valores);
+        assertEquals(List.of(List.of(1, 2), List.of(3, 4)), cargas);
+        assertEquals(2L, cache.estadisticas().get("aciertos"));
+        assertEquals(4L, cache.estadisticas().get("fallos"));
+    }
+}
@@ -0,0 +1,71 @@
+package co.edu.modulocitas.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheRemotaTest {
+
+    @Test
+    void lasPeticionesConcurrentesDeUnaClaveEsperanUnaSolaCarga() {
+        CacheRemota<String, String> cache = new CacheRemota<>(10, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        Sinks.One<String> respuesta = Sinks.one();
+        AtomicInteger cargas = new AtomicInteger();
+
+        List<String> recibidos = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cache.obtener("m-1", id -> {
+                cargas.incrementAndGet();
+                return respuesta.asMono();
+            }).subscribe(recibidos::add);
+        }
+        assertEquals(1, cargas.get());
+        assertTrue(recibidos.isEmpty());
+
+        respuesta.tryEmitValue("Luna");
+        assertEquals(10, recibidos.size());
+        assertEquals("Luna", cache.obtener("m-1", id -> Mono.just("otra")).block());
+
+        Map<String, Object> estadisticas = cache.estadisticas();
+        assertEquals(1L, estadisticas.get("fallos"));
+        assertEquals(9L, estadisticas.get("compartidas"));
+        assertEquals(1L, estadisticas.get("aciertos"));
+        assertEquals(10.0 / 11, (Double) estadisticas.get("tasaAciertos"), 1e-9);
+    }
+
+    @Test
+    void recuerdaLosIdsAusentesHastaQueCaducanYNoGuardaLosErrores() throws InterruptedException {
+        CacheRemota<String, String> cache = new CacheRemota<>(10, Duration.ofMinutes(1), Duration.ofMillis(50));
+        AtomicInteger cargas = new AtomicInteger();
+
+        assertNull(cache.obtener("m-x", id -> { cargas.incrementAndGet(); return Mono.empty(); }).block());
+        assertNull(cache.obtener("m-x", id -> { cargas.incrementAndGet(); return Mono.empty(); }).block());
+        assertEquals(1, cargas.get());
+        assertEquals(1L, cache.estadisticas().get("aciertosAusentes"));
+        // Pasada la vigencia de los ausentes se vuelve a preguntar
+        Thread.sleep(80);
+        assertEquals("Toby", cache.obtener("m-x", id -> { cargas.incrementAndGet(); return Mono.just("Toby"); }).block());
+        assertEquals(2, cargas.get());
+
+        // Un fallo de usuarios no se confunde con un id inexistente
+        Mono<String> caido = cache.obtener("m-y", id -> Mono.error(new IllegalStateException("usuarios caido")))
+                .onErrorResume(e -> Mono.empty());
+        assertNull(caido.block());
+        assertEquals("Max", cache.obtener("m-y", id -> Mono.just("Max")).block());
+        assertEquals(1L, cache.estadisticas().get("errores"));
+
+        // Una invalidacion obliga a pedir de nuevo el dato
+        cache.invalidar("m-x");
+        assertEquals("Toby II", cache.obtener("m-x", id -> Mono.just("Toby II")).block());
+    }
+}
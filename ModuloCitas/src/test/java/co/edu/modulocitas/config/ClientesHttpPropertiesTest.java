@@ -0,0 +1,69 @@
+package co.edu.modulocitas.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// La configuracion de los pools se valida al arrancar en vez de fallar en la primera llamada
+class ClientesHttpPropertiesTest {
+
+    private final ApplicationContextRunner contexto = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(ValidationAutoConfiguration.class))
+            .withUserConfiguration(Habilitar.class)
+            .withPropertyValues(cliente("usuarios"))
+            .withPropertyValues(cliente("notificaciones"));
+
+    @Test
+    void enlazaCadaClienteConSusValores() {
+        contexto.withPropertyValues("agenda.http.notificaciones.max-conexiones=20",
+                        "agenda.http.notificaciones.http2=true")
+                .run(ctx -> {
+                    ClientesHttpProperties clientes = ctx.getBean(ClientesHttpProperties.class);
+                    assertEquals(50, clientes.usuarios().maxConexiones());
+                    assertEquals(5000, clientes.usuarios().msRespuesta());
+                    assertEquals(20, clientes.notificaciones().maxConexiones());
+                    assertTrue(clientes.notificaciones().http2());
+                });
+    }
+
+    @Test
+    void unPoolSinConexionesImpideArrancar() {
+        contexto.withPropertyValues("agenda.http.usuarios.max-conexiones=0")
+                .run(ctx -> assertNotNull(ctx.getStartupFailure()));
+    }
+
+    @Test
+    void unClienteSinConfigurarImpideArrancar() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(ValidationAutoConfiguration.class))
+                .withUserConfiguration(Habilitar.class)
+                .withPropertyValues(cliente("usuarios"))
+                .run(ctx -> assertNotNull(ctx.getStartupFailure()));
+    }
+
+    private static String[] cliente(String nombre) {
+        String prefijo = "agenda.http." + nombre + ".";
+        return new String[]{
+                prefijo + "max-conexiones=50",
+                prefijo + "max-pendientes=100",
+                prefijo + "ms-espera-conexion=1000",
+                prefijo + "segundos-inactividad=30",
+                prefijo + "segundos-vida=300",
+                prefijo + "segundos-desalojo=15",
+                prefijo + "ms-conexion=2000",
+                prefijo + "ms-respuesta=5000",
+                prefijo + "http2=false"};
+    }
+
+    @Configuration
+    @EnableConfigurationProperties(ClientesHttpProperties.class)
+    static class Habilitar {
+    }
+}
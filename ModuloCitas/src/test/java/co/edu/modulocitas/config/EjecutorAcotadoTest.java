@@ -0,0 +1,48 @@
+package co.edu.modulocitas.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EjecutorAcotadoTest {
+
+    @Test
+    void rechazaEnElActoPasadoElLimiteYLiberaAlTerminar() throws InterruptedException {
+        EjecutorAcotado ejecutor = new EjecutorAcotado(new SimpleAsyncTaskExecutor("prueba-"), 2);
+        CountDownLatch salida = new CountDownLatch(1);
+        CountDownLatch terminadas = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            ejecutor.execute(() -> {
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                terminadas.countDown();
+            });
+        }
+
+        // La tercera no espera a que se libere un hueco: el llamador recibe el rechazo enseguida
+        long inicio = System.nanoTime();
+        assertThrows(RejectedExecutionException.class, () -> ejecutor.execute(() -> { }));
+        assertTrue((System.nanoTime() - inicio) / 1_000_000 < 100);
+        assertEquals(2, ejecutor.enCurso());
+
+        salida.countDown();
+        assertTrue(terminadas.await(5, TimeUnit.SECONDS));
+        long limite = System.currentTimeMillis() + 5_000;
+        while (ejecutor.enCurso() > 0 && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        CountDownLatch otra = new CountDownLatch(1);
+        ejecutor.execute(otra::countDown);
+        assertTrue(otra.await(5, TimeUnit.SECONDS));
+    }
+}
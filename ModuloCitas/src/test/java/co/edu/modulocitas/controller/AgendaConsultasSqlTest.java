@@ -0,0 +1,113 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ServicioRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Cuenta las sentencias SQL de cada listado: deben ser constantes, sin importar cuantas citas o servicios haya
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class AgendaConsultasSqlTest {
+
+    private static final LocalDate FECHA = LocalDate.of(2025, 3, 10);
+    private static final int CITAS = 40;
+    private static final int SERVICIOS = 8;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CitaRepository citaRepository;
+
+    @Autowired
+    private ServicioRepository servicioRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics estadisticas;
+
+    @BeforeEach
+    void setUp() {
+        citaRepository.deleteAll();
+        servicioRepository.deleteAll();
+        List<Servicio> servicios = new ArrayList<>();
+        for (int i = 0; i < SERVICIOS; i++) {
+            Servicio servicio = new Servicio();
+            servicio.setTipo("servicio-" + i);
+            servicio.setDuracion(15 + i * 5);
+            servicios.add(servicio);
+        }
+        servicios = servicioRepository.saveAll(servicios);
+
+        List<Cita> citas = new ArrayList<>();
+        for (int i = 0; i < CITAS; i++) {
+            Cita cita = new Cita();
+            cita.setIdPaciente("pac-" + (i % 4));
+            cita.setIdVeterinario("vet-" + (i % 2));
+            cita.setFecha(FECHA);
+            cita.setHora(LocalTime.of(8, 0).plusMinutes(i * 10L));
+            cita.setEstado(Estado.PROGRAMADA);
+            cita.setServicio(servicios.get(i % SERVICIOS));
+            citas.add(cita);
+        }
+        citaRepository.saveAll(citas);
+
+        estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void losListadosDeCitasUsanUnaSolaConsulta() throws Exception {
+        assertUnaConsulta("/agenda/cita/allCitas", CITAS);
+        assertUnaConsulta("/agenda/cita/estado/PROGRAMADA", CITAS);
+        assertUnaConsulta("/agenda/cita/fecha/" + FECHA, CITAS);
+        assertUnaConsulta("/agenda/cita/fechaYhora/" + FECHA + "/08:00", 1);
+        assertUnaConsulta("/agenda/cita/veterinario/vet-0", CITAS / 2);
+        assertUnaConsulta("/agenda/cita/paciente/pac-1", CITAS / 4);
+        // La pagina pide tamano + 1 filas para saber si hay siguiente
+        assertUnaConsulta("/agenda/cita/allCitas/pagina?tamano=10", -1);
+    }
+
+    @Test
+    void losResumenesUsanUnaSolaConsulta() throws Exception {
+        assertUnaConsulta("/agenda/resumen/allCitas", CITAS);
+        assertUnaConsulta("/agenda/resumen/estado/PROGRAMADA", CITAS);
+        assertUnaConsulta("/agenda/resumen/fecha/" + FECHA, CITAS);
+        assertUnaConsulta("/agenda/resumen/hora/08:00", 1);
+        assertUnaConsulta("/agenda/resumen/fechaYhora/" + FECHA + "/08:00", 1);
+        assertUnaConsulta("/agenda/resumen/veterinario/vet-1", CITAS / 2);
+        assertUnaConsulta("/agenda/resumen/paciente/pac-2", CITAS / 4);
+    }
+
+    private void assertUnaConsulta(String url, int filasEsperadas) throws Exception {
+        estadisticas.clear();
+        var resultado = mockMvc.perform(get(url)).andExpect(status().isOk());
+        if (filasEsperadas >= 0) {
+            resultado.andExpect(jsonPath("$.length()").value(filasEsperadas));
+        }
+        assertEquals(1, estadisticas.getPrepareStatementCount(), "Sentencias SQL en " + url);
+    }
+}
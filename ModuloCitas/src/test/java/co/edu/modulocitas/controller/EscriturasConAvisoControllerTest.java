@@ -0,0 +1,99 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import co.edu.modulocitas.service.impl.IndiceAgenda;
+import co.edu.modulocitas.service.impl.NotificacionesService;
+import co.edu.modulocitas.service.impl.ReservaAgenda;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Una hora fuera de la rejilla de franjas es un error del cliente, no del servidor
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class EscriturasConAvisoControllerTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(7);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaAgenda reservaAgenda;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio consulta;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+    }
+
+    @Test
+    void unaHoraFueraDeLaRejillaSeRechazaConUn400() throws Exception {
+        mockMvc.perform(post("/agenda/crear")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(cita(LocalTime.of(10, 32)))))
+                .andExpect(status().isBadRequest());
+        assertEquals(0, citaRepository.count());
+
+        Cita guardada = reservaAgenda.crear(cita(LocalTime.of(10, 0)));
+        mockMvc.perform(put("/agenda/actualizar/{idCita}", guardada.getIdCita())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(cita(LocalTime.of(11, 7)))))
+                .andExpect(status().isBadRequest());
+        assertEquals(LocalTime.of(10, 0), citaRepository.findById(guardada.getIdCita()).orElseThrow().getHora());
+    }
+
+    private Cita cita(LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-1");
+        cita.setIdPaciente("pac-1");
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(consulta);
+        return cita;
+    }
+}
@@ -0,0 +1,104 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import co.edu.modulocitas.service.impl.IndiceAgenda;
+import co.edu.modulocitas.service.impl.NotificacionesService;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Con el perfil "reactivo" las mismas rutas devuelven un Mono y MVC las resuelve de forma asincrona
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"h2", "reactivo"})
+class EscriturasConAvisoReactivoControllerTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(6);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio consulta;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+        when(usuarioServiceImpl.verificarDisponibilidadVeterinarioReactivo(any(), any(), any())).thenReturn(Mono.empty());
+        when(usuarioServiceImpl.obtenerContextoNotificacionReactivo(any(), any()))
+                .thenReturn(Mono.just(new ContextoNotificacion("dueno@correo.com", "Luna", "Perez")));
+    }
+
+    @Test
+    void elAltaDeUnaCitaSeResuelveDeFormaAsincrona() throws Exception {
+        MvcResult resultado = mockMvc.perform(post("/agenda/crear")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(cita(LocalTime.of(9, 0)))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.hora").value("09:00:00"));
+        assertEquals(1, citaRepository.count());
+    }
+
+    private Cita cita(LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-1");
+        cita.setIdPaciente("pac-1");
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(consulta);
+        return cita;
+    }
+}
@@ -0,0 +1,151 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.HistoriaClinica;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.HistoriaClinicaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.HistoriaClinicaService;
+import co.edu.modulocitas.service.ServicioService;
+import co.edu.modulocitas.service.impl.IndiceAgenda;
+import co.edu.modulocitas.service.impl.NotificacionesService;
+import co.edu.modulocitas.service.impl.ReservaAgenda;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Paneles que repiten la misma consulta: sin cambios la respuesta es un 304 sin SQL
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class EtagControllerTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(4);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaAgenda reservaAgenda;
+    @Autowired
+    private HistoriaClinicaService historiaClinicaService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private HistoriaClinicaRepository historiaClinicaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Servicio consulta;
+
+    @BeforeEach
+    void setUp() {
+        historiaClinicaRepository.deleteAllInBatch();
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+    }
+
+    @Test
+    void laAgendaDeUnaFechaSinCambiosResponde304SinConsultarLaBaseDeDatos() throws Exception {
+        reservaAgenda.crear(cita(LocalTime.of(9, 0)));
+        String etag = mockMvc.perform(get("/agenda/cita/fecha/{fecha}", FECHA))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        mockMvc.perform(get("/agenda/cita/fecha/{fecha}", FECHA).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+
+        // Una cita en otra fecha no cambia esta agenda; una en la misma, si
+        reservaAgenda.crear(citaEn(FECHA.plusDays(1), LocalTime.of(9, 0)));
+        mockMvc.perform(get("/agenda/cita/fecha/{fecha}", FECHA).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        reservaAgenda.crear(cita(LocalTime.of(10, 0)));
+        String nueva = mockMvc.perform(get("/agenda/cita/fecha/{fecha}", FECHA).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, nueva);
+    }
+
+    @Test
+    void laHistoriaDeUnPacienteCambiaDeEtagAlEditarla() throws Exception {
+        HistoriaClinica historia = new HistoriaClinica();
+        historia.setIdPaciente("pac-1");
+        historia.setIdVeterinario("vet-1");
+        historia.setDiagnostico("Otitis");
+        historia = historiaClinicaRepository.save(historia);
+        String etag = mockMvc.perform(get("/historiaClinica/paciente/{id}", "pac-1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        mockMvc.perform(get("/historiaClinica/paciente/{id}", "pac-1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+
+        HistoriaClinica edicion = new HistoriaClinica();
+        edicion.setDiagnostico("Otitis externa");
+        historiaClinicaService.actualizarHistoriaClinica(historia.getId(), edicion);
+        mockMvc.perform(get("/historiaClinica/paciente/{id}", "pac-1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.diagnostico").value("Otitis externa"));
+    }
+
+    private Cita cita(LocalTime hora) {
+        return citaEn(FECHA, hora);
+    }
+
+    private Cita citaEn(LocalDate fecha, LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-1");
+        cita.setIdPaciente("pac-1");
+        cita.setFecha(fecha);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(consulta);
+        return cita;
+    }
+}
@@ -0,0 +1,141 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.HistoriaClinicaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import co.edu.modulocitas.service.impl.IndiceAgenda;
+import co.edu.modulocitas.service.impl.NotificacionesService;
+import co.edu.modulocitas.service.impl.RespuestasIdempotentes;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Reintentos de un cliente movil: la misma Idempotency-Key no repite el alta ni las llamadas remotas
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class IdempotenciaControllerTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(3);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private HistoriaClinicaRepository historiaClinicaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio consulta;
+
+    @BeforeEach
+    void setUp() {
+        historiaClinicaRepository.deleteAllInBatch();
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+        when(usuarioServiceImpl.obtenerContextoNotificacion(any(), any()))
+                .thenReturn(new ContextoNotificacion("dueno@correo.com", "Luna", "Perez"));
+    }
+
+    @Test
+    void elReintentoDeUnaCitaDevuelveLaMismaSinValidarNiLlamarAUsuarios() throws Exception {
+        String cuerpo = objectMapper.writeValueAsString(cita(LocalTime.of(9, 0)));
+
+        Integer idCita = objectMapper.readTree(crear("/agenda/crear", "movil-1", cuerpo)
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("idCita").asInt();
+        crear("/agenda/crear", "movil-1", cuerpo)
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.idCita").value(idCita));
+
+        assertEquals(1, citaRepository.count());
+        verify(usuarioServiceImpl, times(1)).verificarDisponibilidadVeterinario(any(), any(), any());
+
+        // Otra clave es otra alta: la hora ya esta ocupada
+        crear("/agenda/crear", "movil-2", cuerpo).andExpect(status().isConflict());
+        // La misma clave con otro cuerpo se rechaza
+        crear("/agenda/crear", "movil-1", objectMapper.writeValueAsString(cita(LocalTime.of(10, 0))))
+                .andExpect(status().isUnprocessableEntity());
+        assertEquals(1, citaRepository.count());
+    }
+
+    @Test
+    void elReintentoDeUnaHistoriaNoGuardaOtraNiVuelveAGenerarElPdf() throws Exception {
+        Cita cita = citaRepository.save(cita(LocalTime.of(9, 0)));
+        String cuerpo = objectMapper.writeValueAsString(Map.of("idCita", cita.getIdCita(),
+                "idPaciente", "pac-1", "idVeterinario", "vet-1", "diagnostico", "Otitis"));
+
+        crear("/historiaClinica/crear", "movil-3", cuerpo).andExpect(status().isOk());
+        crear("/historiaClinica/crear", "movil-3", cuerpo).andExpect(status().isOk())
+                .andExpect(jsonPath("$.diagnostico").value("Otitis"));
+
+        assertEquals(1, historiaClinicaRepository.count());
+        verify(usuarioServiceImpl, times(1)).obtenerContextoNotificacion("pac-1", "vet-1");
+        verify(notificacionesService, times(1)).enviarNotificacionConAdjunto(any());
+    }
+
+    // Sin el perfil "reactivo" las altas responden en el hilo de la peticion
+    private ResultActions crear(String ruta, String clave, String cuerpo) throws Exception {
+        return mockMvc.perform(post(ruta)
+                        .header(RespuestasIdempotentes.CABECERA, clave)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(cuerpo))
+                .andExpect(request().asyncNotStarted());
+    }
+
+    private Cita cita(LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-1");
+        cita.setIdPaciente("pac-1");
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(consulta);
+        return cita;
+    }
+}
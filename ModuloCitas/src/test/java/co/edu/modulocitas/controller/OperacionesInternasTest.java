@@ -0,0 +1,79 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.config.ServicioInternoInterceptor;
+import co.edu.modulocitas.dto.InvalidacionUsuarios;
+import co.edu.modulocitas.service.impl.NotificacionesService;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Los POST de mantenimiento y el aviso de usuarios exigen el token compartido entre servicios
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class OperacionesInternasTest {
+
+    private static final String AVISO = "{\"mascotas\":[\"m-1\"]}";
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Value("${servicios.token}")
+    private String token;
+
+    @Test
+    void sinTokenSeRechazanLasOperacionesDeMantenimiento() throws Exception {
+        mockMvc.perform(post("/agenda/archivo/ejecutar")).andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/agenda/vencimiento/ejecutar")).andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/agenda/vencimiento/ejecutar").header("X-Servicio-Token", "otro"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/agenda/vista/verificar")).andExpect(status().isUnauthorized());
+        mockMvc.perform(post("/agenda/vista/verificar").header("X-Servicio-Token", token)).andExpect(status().isOk());
+    }
+
+    @Test
+    void sinTokenConfiguradoSeRechazaTodo() {
+        ServicioInternoInterceptor interceptor = new ServicioInternoInterceptor("");
+        MockHttpServletRequest peticion = new MockHttpServletRequest("POST", "/agenda/archivo/ejecutar");
+        peticion.addHeader("X-Servicio-Token", "");
+        MockHttpServletResponse respuesta = new MockHttpServletResponse();
+
+        assertFalse(interceptor.preHandle(peticion, respuesta, new Object()));
+        assertEquals(401, respuesta.getStatus());
+    }
+
+    @Test
+    void elAvisoDeUsuariosSoloSeAceptaConElToken() throws Exception {
+        mockMvc.perform(post("/agenda/usuarios/cache/invalidar")
+                        .contentType(MediaType.APPLICATION_JSON).content(AVISO))
+                .andExpect(status().isUnauthorized());
+        verify(usuarioServiceImpl, never()).invalidar(any());
+
+        mockMvc.perform(post("/agenda/usuarios/cache/invalidar").header("X-Servicio-Token", token)
+                        .contentType(MediaType.APPLICATION_JSON).content(AVISO))
+                .andExpect(status().isNoContent());
+        verify(usuarioServiceImpl).invalidar(any(InvalidacionUsuarios.class));
+    }
+}
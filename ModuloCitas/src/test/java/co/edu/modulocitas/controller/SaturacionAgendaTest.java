@@ -0,0 +1,75 @@
+package co.edu.modulocitas.controller;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import co.edu.modulocitas.service.impl.NotificacionesService;
+import co.edu.modulocitas.service.impl.UsuarioServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Con el pool de validaciones lleno el alta responde 503 en vez de un 500
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("h2")
+class SaturacionAgendaTest {
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+    @MockBean(name = "agendaExecutor")
+    private Executor agendaExecutor;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private CitaRepository citaRepository;
+
+    @Test
+    void conElPoolDeValidacionesLlenoSeResponde503() throws Exception {
+        Servicio consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+        long antes = citaRepository.count();
+        doThrow(new RejectedExecutionException("lleno")).when(agendaExecutor).execute(any());
+
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-lleno");
+        cita.setIdPaciente("pac-1");
+        cita.setFecha(LocalDate.now().plusDays(8));
+        cita.setHora(LocalTime.of(9, 0));
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(consulta);
+        mockMvc.perform(post("/agenda/crear")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(cita)))
+                .andExpect(status().isServiceUnavailable());
+        assertEquals(antes, citaRepository.count());
+    }
+}
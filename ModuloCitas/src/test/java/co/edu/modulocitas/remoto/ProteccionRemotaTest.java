@@ -0,0 +1,44 @@
+package co.edu.modulocitas.remoto;
+
+import co.edu.modulocitas.Exception.ServicioRemotoNoDisponible;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProteccionRemotaTest {
+
+    private static final Duration LIMITE = Duration.ofSeconds(2);
+
+    @Test
+    void unaLlamadaLentaQueTerminaBienNoCierraElCircuitoAbierto() {
+        ProteccionRemota proteccion = new ProteccionRemota("usuarios", 10, 1, Duration.ofMillis(300), e -> true);
+
+        // Sale con el circuito cerrado y responde cuando ya se abrio
+        Mono<String> lenta = proteccion.proteger("lenta", LIMITE, Mono.just("ok").delayElement(Duration.ofMillis(150))).cache();
+        lenta.subscribe();
+        assertThrows(IllegalStateException.class, () -> proteccion.proteger("falla", LIMITE,
+                Mono.error(new IllegalStateException("usuarios caido"))).block());
+        assertEquals("ABIERTO", proteccion.estadisticas().get("circuito"));
+
+        assertEquals("ok", lenta.block(Duration.ofSeconds(5)));
+        assertEquals("ABIERTO", proteccion.estadisticas().get("circuito"));
+        assertThrows(ServicioRemotoNoDisponible.class, () -> proteccion.proteger("rechazada", LIMITE, Mono.just("ok")).block());
+
+        // Pasado el tiempo abierto, solo la llamada de prueba lo cierra
+        esperar(350);
+        assertEquals("ok", proteccion.proteger("prueba", LIMITE, Mono.just("ok")).block());
+        assertEquals("CERRADO", proteccion.estadisticas().get("circuito"));
+    }
+
+    private static void esperar(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.AgendaDiariaService;
+import co.edu.modulocitas.service.AgendaService;
+import co.edu.modulocitas.service.ServicioService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class AgendaDiariaServiceImplTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(5);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private AgendaService agendaService;
+    @Autowired
+    private AgendaDiariaService agendaDiariaService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Servicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        agendaDiariaService.verificar();
+        servicio = new Servicio();
+        servicio.setTipo("Vacunacion");
+        servicio.setDuracion(20);
+        // Por el servicio para invalidar su id en la cache: otros contextos de prueba recrean las tablas
+        servicio = servicioService.crearServicio(servicio);
+    }
+
+    @Test
+    void seMantieneOrdenadaConLasAltasCambiosYEstados() {
+        Cita tarde = agendaService.crearCita(cita("vet-1", "pac-1", LocalTime.of(11, 0)));
+        Cita temprano = agendaService.crearCita(cita("vet-1", "pac-2", LocalTime.of(9, 0)));
+        agendaService.crearCita(cita("vet-2", "pac-3", LocalTime.of(10, 0)));
+
+        assertEquals(List.of(temprano.getIdCita(), tarde.getIdCita()), ids(agendaDiariaService.consultarAgendaDelDia("vet-1", FECHA)));
+        assertEquals(3, agendaDiariaService.consultarAgendaFecha(FECHA).size());
+        assertEquals("Vacunacion", agendaDiariaService.consultarAgendaFecha(FECHA).get(0).tipoServicio());
+
+        // Reprogramada a otro dia: sale del dia anterior y entra, en orden, en el nuevo
+        Cita cambio = cita("vet-1", "pac-1", LocalTime.of(8, 0));
+        cambio.setFecha(FECHA.plusDays(1));
+        agendaService.actualizarCita(tarde.getIdCita(), cambio);
+        agendaService.cambiarEstado(temprano.getIdCita(), Estado.CANCELADA);
+
+        List<CitaResumen> dia = agendaDiariaService.consultarAgendaDelDia("vet-1", FECHA);
+        assertEquals(List.of(temprano.getIdCita()), ids(dia));
+        assertEquals(Estado.CANCELADA, dia.get(0).estado());
+        assertEquals(List.of(temprano.getIdCita(), tarde.getIdCita()),
+                ids(agendaDiariaService.consultarAgendaVeterinario("vet-1", FECHA, FECHA.plusDays(1))));
+
+        // Lo que se mantuvo en memoria coincide con la tabla
+        assertEquals(0, agendaDiariaService.verificar().get("diferencias"));
+    }
+
+    @Test
+    void lasConsultasNoTocanLaBaseDeDatosYLaVerificacionCorrigeCambiosExternos() {
+        Cita guardada = agendaService.crearCita(cita("vet-1", "pac-1", LocalTime.of(9, 0)));
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        agendaDiariaService.consultarAgendaDelDia("vet-1", FECHA);
+        agendaDiariaService.consultarAgendaVeterinario("vet-1", FECHA.minusDays(3), FECHA.plusDays(3));
+        agendaDiariaService.consultarAgendaFecha(FECHA);
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+
+        // Un cambio hecho fuera de AgendaService no llega a la vista hasta la verificacion
+        Cita externa = citaRepository.findById(guardada.getIdCita()).orElseThrow();
+        externa.setHora(LocalTime.of(15, 0));
+        citaRepository.save(externa);
+        citaRepository.save(cita("vet-3", "pac-9", LocalTime.of(10, 0)));
+
+        Map<String, Object> resultado = agendaDiariaService.verificar();
+        assertEquals(1, resultado.get("faltantes"));
+        assertEquals(1, resultado.get("distintas"));
+        assertEquals(LocalTime.of(15, 0), agendaDiariaService.consultarAgendaDelDia("vet-1", FECHA).get(0).hora());
+        assertEquals(1, agendaDiariaService.consultarAgendaDelDia("vet-3", FECHA).size());
+    }
+
+    @Test
+    void laVerificacionPeriodicaCuentaLasCitasCorregidas() {
+        long antes = (Long) agendaDiariaService.verificar().get("correccionesAcumuladas");
+        citaRepository.save(cita("vet-4", "pac-7", LocalTime.of(11, 0)));
+        citaRepository.save(cita("vet-4", "pac-8", LocalTime.of(12, 0)));
+
+        ((AgendaDiariaServiceImpl) agendaDiariaService).verificarPeriodicamente();
+
+        assertEquals(antes + 2, agendaDiariaService.verificar().get("correccionesAcumuladas"));
+        assertEquals(2, agendaDiariaService.consultarAgendaDelDia("vet-4", FECHA).size());
+    }
+
+    private static List<Integer> ids(List<CitaResumen> citas) {
+        return citas.stream().map(CitaResumen::idCita).toList();
+    }
+
+    private Cita cita(String veterinario, String paciente, LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente(paciente);
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(servicio);
+        return cita;
+    }
+}
@@ -0,0 +1,243 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.VeterinarioNoDisponible;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.repository.ServicioRepository;
+import co.edu.modulocitas.service.AgendaService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class AgendaReactivaServiceImplTest {
+
+    private static final int CITAS = 64;
+    private static final int LATENCIA_MS = 100;
+    private static final LocalDate FECHA = LocalDate.now().plusDays(20);
+
+    private static final AtomicInteger notificaciones = new AtomicInteger();
+    private static final ScheduledExecutorService demoras = Executors.newScheduledThreadPool(2);
+    private static final HttpServer usuarios = servidorConLatencia();
+
+    @DynamicPropertySource
+    static void urls(DynamicPropertyRegistry registry) {
+        String url = "http://localhost:" + usuarios.getAddress().getPort();
+        registry.add("usuarios.url", () -> url + "/api");
+        registry.add("notificaciones.url", () -> url);
+        // Las 64 peticiones llegan a la vez: que el limite de llamadas a usuarios no rechace ninguna
+        registry.add("agenda.usuarios.proteccion.max-llamadas", () -> 2 * CITAS);
+    }
+
+    @Autowired
+    private AgendaService agendaService;
+    @Autowired
+    private AgendaServiceImpl agendaServiceImpl;
+    @Autowired
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @Autowired
+    private NotificacionesService notificacionesService;
+    @Autowired
+    private Scheduler jdbcScheduler;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ServicioRepository servicioRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private AgendaReactivaServiceImpl agendaReactiva;
+    private Servicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        servicio = new Servicio();
+        servicio.setTipo("Consulta");
+        servicio.setDuracion(30);
+        servicio = servicioRepository.save(servicio);
+        notificaciones.set(0);
+        // Mismos beans que usa la aplicacion con el perfil "reactivo"
+        agendaReactiva = new AgendaReactivaServiceImpl(agendaServiceImpl, usuarioServiceImpl,
+                notificacionesService, jdbcScheduler, 3000);
+    }
+
+    @AfterAll
+    static void detenerServidor() {
+        usuarios.stop(0);
+        demoras.shutdownNow();
+    }
+
+    @Test
+    void creaLasMismasCitasSinBloquearUnHiloPorPeticion() throws Exception {
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+
+        // Bloqueante: cada peticion ocupa un hilo (de Tomcat) mientras usuarios responde
+        hilos.resetPeakThreadCount();
+        int hilosAntes = hilos.getThreadCount();
+        long inicio = System.nanoTime();
+        ExecutorService peticiones = Executors.newFixedThreadPool(CITAS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<Cita>> bloqueantes = new ArrayList<>();
+        for (int i = 0; i < CITAS; i++) {
+            Cita cita = cita("vet-b-" + i);
+            bloqueantes.add(peticiones.submit(() -> {
+                salida.await();
+                return agendaService.crearCita(cita);
+            }));
+        }
+        salida.countDown();
+        for (Future<Cita> creada : bloqueantes) {
+            creada.get();
+        }
+        long msBloqueante = (System.nanoTime() - inicio) / 1_000_000;
+        int hilosBloqueante = hilos.getPeakThreadCount() - hilosAntes;
+        peticiones.shutdown();
+        esperarNotificaciones(CITAS);
+
+        // Reactiva: todas las peticiones se lanzan desde este hilo y ninguno espera la red
+        notificaciones.set(0);
+        hilos.resetPeakThreadCount();
+        hilosAntes = hilos.getThreadCount();
+        inicio = System.nanoTime();
+        List<Cita> reactivas = Flux.range(0, CITAS)
+                .flatMap(i -> agendaReactiva.crearCita(cita("vet-r-" + i)), CITAS)
+                .collectList()
+                .block();
+        long msReactiva = (System.nanoTime() - inicio) / 1_000_000;
+        int hilosReactiva = hilos.getPeakThreadCount() - hilosAntes;
+        esperarNotificaciones(CITAS);
+
+        System.out.printf("AgendaReactiva: %d citas con usuarios a %d ms: bloqueante %d ms (+%d hilos), reactiva %d ms (+%d hilos)%n",
+                CITAS, LATENCIA_MS, msBloqueante, hilosBloqueante, msReactiva, hilosReactiva);
+        assertEquals(CITAS, reactivas.size());
+        assertEquals(2L * CITAS, citaRepository.count());
+    }
+
+    @Test
+    void propagaLaNoDisponibilidadDelVeterinarioYNoGuarda() {
+        assertThrows(VeterinarioNoDisponible.class, () -> agendaReactiva.crearCita(cita("vet-ocupado")).block());
+        assertEquals(0, citaRepository.count());
+    }
+
+    @Test
+    void publicaElPoolYLaLatenciaPorEndpointDeUsuarios() throws InterruptedException {
+        agendaReactiva.crearCita(cita("vet-metricas-7")).block();
+        esperarNotificaciones(1);
+
+        // Un solo timer para todos los veterinarios: el id del path no llega a la etiqueta uri
+        Timer verificar = Metrics.globalRegistry.find("reactor.netty.http.client.response.time")
+                .tag("uri", "/api/disponibilidades/verificar/{id}")
+                .timer();
+        assertNotNull(verificar);
+        assertTrue(verificar.count() > 0);
+        assertEquals(50.0, Metrics.globalRegistry.get("reactor.netty.connection.provider.max.connections")
+                .tag("name", "usuarios").gauge().value());
+        assertNotNull(Metrics.globalRegistry.find("reactor.netty.connection.provider.total.connections")
+                .tag("name", "notificaciones").gauge());
+    }
+
+    private void esperarNotificaciones(int esperadas) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10_000;
+        while (notificaciones.get() < esperadas && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        assertEquals(esperadas, notificaciones.get());
+    }
+
+    private Cita cita(String veterinario) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente("pac-" + veterinario);
+        cita.setFecha(FECHA);
+        cita.setHora(LocalTime.of(9, 0));
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(servicio);
+        return cita;
+    }
+
+    // Simula usuarios y notificaciones con una latencia fija; las respuestas se demoran sin ocupar hilos
+    private static HttpServer servidorConLatencia() {
+        try {
+            HttpServer servidor = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            servidor.createContext("/", intercambio -> demoras.schedule(
+                    () -> responder(intercambio), LATENCIA_MS, TimeUnit.MILLISECONDS));
+            servidor.setExecutor(Executors.newFixedThreadPool(4));
+            servidor.start();
+            return servidor;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void responder(HttpExchange intercambio) {
+        String path = intercambio.getRequestURI().getPath();
+        String cuerpo;
+        if (path.startsWith("/api/disponibilidades/verificar/")) {
+            intercambio.getResponseHeaders().add("Content-Type", "application/json");
+            cuerpo = "{\"disponible\":" + !path.endsWith("vet-ocupado") + "}";
+        } else if (path.equals("/api/usuarios/contexto-notificacion")) {
+            intercambio.getResponseHeaders().add("Content-Type", "application/json");
+            cuerpo = "{\"email\":\"dueno@correo.com\",\"nombreMascota\":\"Nombre\",\"nombreVeterinario\":\"Nombre\"}";
+        } else if (path.startsWith("/api/usuarios/buscarEmail/")) {
+            cuerpo = "dueno@correo.com";
+        } else if (path.startsWith("/notificar")) {
+            notificaciones.incrementAndGet();
+            cuerpo = "";
+        } else {
+            cuerpo = "Nombre";
+        }
+        try (intercambio) {
+            intercambio.getRequestBody().readAllBytes();
+            byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+            intercambio.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(bytes);
+            }
+        } catch (IOException e) {
+            System.err.println("Error en el servidor de prueba: " + e.getMessage());
+        }
+    }
+}
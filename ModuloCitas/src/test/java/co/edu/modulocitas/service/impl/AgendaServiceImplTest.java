@@ -0,0 +1,197 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.CambioEstadoLote;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.ResultadoCambioEstado;
+import co.edu.modulocitas.dto.ResultadoCitaLote;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.request.NotificacionRequest;
+import co.edu.modulocitas.service.ServicioService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class AgendaServiceImplTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(2);
+    private static final int CITAS = 30;
+    private static final int PACIENTES = 10;
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private AgendaServiceImpl agendaService;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaAgenda reservaAgenda;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private List<Cita> citas;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        Servicio consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(20);
+        consulta = servicioService.crearServicio(consulta);
+
+        List<Cita> nuevas = new ArrayList<>();
+        for (int i = 0; i < CITAS; i++) {
+            Cita cita = new Cita();
+            cita.setIdVeterinario("vet-" + (i % 2));
+            cita.setIdPaciente("pac-" + (i % PACIENTES));
+            cita.setFecha(FECHA);
+            cita.setHora(LocalTime.of(8, 0).plusMinutes(20L * i));
+            cita.setEstado(Estado.PROGRAMADA);
+            cita.setServicio(consulta);
+            nuevas.add(cita);
+        }
+        citas = reservaAgenda.crearTodas(nuevas);
+        when(usuarioServiceImpl.obtenerEmailReactivo(any())).thenReturn(Mono.just("dueno@correo.com"));
+        when(usuarioServiceImpl.obtenerNombreMascotaReactivo(any())).thenReturn(Mono.just("Luna"));
+        when(usuarioServiceImpl.obtenerNombreVeterinarioReactivo(any())).thenReturn(Mono.just("Perez"));
+        when(notificacionesService.notificarLote(anyList())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cancelaElLoteConUnSoloUpdateYRechazaLasVersionesViejas() {
+        // Alguien reprogramo la primera cita despues de que el cliente leyera la agenda
+        agendaService.cambiarEstadoSinNotificar(citas.get(0).getIdCita(), Estado.EN_CURSO);
+        CambioEstadoLote cambio = lote(Estado.CANCELADA, citas);
+        CambioEstadoLote.VersionCita inexistente = new CambioEstadoLote.VersionCita();
+        inexistente.setIdCita(-1);
+        inexistente.setVersion(0L);
+        cambio.getCitas().add(inexistente);
+
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        List<ResultadoCambioEstado> resultados = agendaService.cambiarEstados(cambio);
+
+        // SELECT ... FOR UPDATE, UPDATE ... IN y DELETE de sus franjas, sin importar cuantas citas haya
+        assertEquals(3, estadisticas.getPrepareStatementCount());
+        assertEquals(CITAS + 1, resultados.size());
+        assertFalse(resultados.get(0).isActualizada());
+        assertFalse(resultados.get(CITAS).isActualizada());
+        for (int i = 1; i < CITAS; i++) {
+            assertTrue(resultados.get(i).isActualizada());
+            assertEquals(1L, resultados.get(i).getVersion());
+        }
+        assertEquals(CITAS - 1, citaRepository.findCitaByEstado(Estado.CANCELADA).size());
+        // Solo la cita en curso conserva sus 4 franjas y su lugar en el indice
+        assertEquals(4, reservaFranjaRepository.count());
+        assertFalse(indiceAgenda.hayConflicto("vet-1", FECHA, citas.get(1).getHora(), 20));
+        assertTrue(indiceAgenda.hayConflicto("vet-0", FECHA, citas.get(0).getHora(), 20));
+
+        // Un solo envio con todos los avisos; cada paciente y veterinario se consulta una vez
+        ArgumentCaptor<Mono<Void>> envio = ArgumentCaptor.forClass(Mono.class);
+        verify(notificacionesService, times(1)).enSegundoPlano(envio.capture());
+        envio.getValue().block();
+        ArgumentCaptor<List<NotificacionRequest>> avisos = ArgumentCaptor.forClass(List.class);
+        verify(notificacionesService, times(1)).notificarLote(avisos.capture());
+        assertEquals(CITAS - 1, avisos.getValue().size());
+        verify(usuarioServiceImpl, times(PACIENTES)).obtenerEmailReactivo(any());
+        verify(usuarioServiceImpl, times(2)).obtenerNombreVeterinarioReactivo(any());
+    }
+
+    @Test
+    void marcarAtendidasNoNotificaNiSueltaLasFranjas() {
+        List<ResultadoCambioEstado> resultados = agendaService.cambiarEstados(lote(Estado.ATENDIDA, citas));
+
+        assertTrue(resultados.stream().allMatch(ResultadoCambioEstado::isActualizada));
+        assertEquals(CITAS, citaRepository.findCitaByEstado(Estado.ATENDIDA).size());
+        assertEquals(CITAS * 4, reservaFranjaRepository.count());
+        verify(notificacionesService, never()).enSegundoPlano(any());
+
+        // Repetir el cierre con las mismas versiones ya no cambia nada
+        assertTrue(agendaService.cambiarEstados(lote(Estado.CANCELADA, citas)).stream().noneMatch(ResultadoCambioEstado::isActualizada));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unLoteDeCitasSeNotificaEnUnSoloEnvio() {
+        List<Cita> nuevas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Cita cita = new Cita();
+            cita.setIdVeterinario("vet-lote");
+            cita.setIdPaciente("pac-lote-" + i);
+            cita.setFecha(FECHA.plusDays(1));
+            cita.setHora(LocalTime.of(9, 0).plusMinutes(30L * i));
+            cita.setEstado(Estado.PROGRAMADA);
+            cita.setServicio(citas.get(0).getServicio());
+            nuevas.add(cita);
+        }
+        DisponibilidadVeterinario franja = new DisponibilidadVeterinario();
+        franja.setDiaSemana(FECHA.plusDays(1).getDayOfWeek());
+        franja.setHoraInicio(LocalTime.of(8, 0));
+        franja.setHoraFin(LocalTime.of(18, 0));
+        franja.setActivo(true);
+        when(usuarioServiceImpl.obtenerDisponibilidadesActivas("vet-lote")).thenReturn(List.of(franja));
+
+        assertTrue(agendaService.crearCitasLote(nuevas).stream().allMatch(ResultadoCitaLote::isCreada));
+
+        ArgumentCaptor<Mono<Void>> envio = ArgumentCaptor.forClass(Mono.class);
+        verify(notificacionesService, times(1)).enSegundoPlano(envio.capture());
+        envio.getValue().block();
+        ArgumentCaptor<List<NotificacionRequest>> avisos = ArgumentCaptor.forClass(List.class);
+        verify(notificacionesService, times(1)).notificarLote(avisos.capture());
+        assertEquals(5, avisos.getValue().size());
+        verify(notificacionesService, never()).enviarNotificacion(any());
+    }
+
+    private static CambioEstadoLote lote(Estado estado, List<Cita> citas) {
+        CambioEstadoLote cambio = new CambioEstadoLote();
+        cambio.setEstado(estado);
+        cambio.setCitas(new ArrayList<>());
+        for (Cita cita : citas) {
+            CambioEstadoLote.VersionCita version = new CambioEstadoLote.VersionCita();
+            version.setIdCita(cita.getIdCita());
+            version.setVersion(cita.getVersion());
+            cambio.getCitas().add(version);
+        }
+        return cambio;
+    }
+}
@@ -0,0 +1,238 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.PaginaCitas;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaArchivadaRepository;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.repository.ServicioRepository;
+import co.edu.modulocitas.service.AgendaService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class ArchivoCitasServiceImplTest {
+
+    private static final LocalDate HOY = LocalDate.now();
+    private static final LocalDate ANTIGUA = HOY.minusDays(400);
+    private static final int CITAS_ANTIGUAS = 20_000;
+    private static final int CONSULTAS = 2_000;
+    private static final Sort ORDEN_AGENDA = Sort.by("fecha", "hora", "idCita");
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private ArchivoCitasServiceImpl archivoCitasService;
+    @Autowired
+    private AgendaService agendaService;
+    @Autowired
+    private EstadisticasAgendaServiceImpl estadisticasAgendaService;
+    // Los recorridos piden el fetch size de streaming de Connector/J, que H2 no admite
+    @SpyBean
+    private CitaRepository citaRepository;
+    @SpyBean
+    private CitaArchivadaRepository citaArchivadaRepository;
+    @Autowired
+    private ServicioRepository servicioRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Servicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        citaArchivadaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        estadisticasAgendaService.alModificarServicio(new ServicioModificadoEvent(null));
+        servicio = new Servicio();
+        servicio.setTipo("Consulta");
+        servicio.setDuracion(30);
+        servicio = servicioRepository.save(servicio);
+        // Funciones de MySQL que usa la consulta nativa conflictoHorario
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS \"TIME\" FOR '" + FuncionesMySql.class.getName() + ".hora'");
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS ADDTIME FOR '" + FuncionesMySql.class.getName() + ".sumarHora'");
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS SEC_TO_TIME FOR '" + FuncionesMySql.class.getName() + ".segundosAHora'");
+    }
+
+    @AfterEach
+    void vaciarArchivo() {
+        citaArchivadaRepository.deleteAllInBatch();
+        archivoCitasService.comprobarArchivo();
+    }
+
+    @Test
+    void mueveSoloLasCitasTerminadasAntiguasYLasConsultasLasSiguenDevolviendo() {
+        Cita atendida = guardar("vet-1", "pac-1", ANTIGUA, Estado.ATENDIDA);
+        Cita cancelada = guardar("vet-1", "pac-1", ANTIGUA.plusDays(1), Estado.CANCELADA);
+        Cita olvidada = guardar("vet-1", "pac-1", ANTIGUA, Estado.PROGRAMADA);
+        Cita reciente = guardar("vet-1", "pac-1", HOY.minusDays(3), Estado.ATENDIDA);
+        Map<String, Object> estadisticasAntes = estadisticasAgendaService.consultarEstadisticas(ANTIGUA, ANTIGUA.plusDays(1), null);
+        estadisticasAgendaService.alModificarServicio(new ServicioModificadoEvent(null));
+
+        Map<String, Object> ejecucion = archivoCitasService.archivar();
+
+        assertEquals(2, ejecucion.get("archivadas"));
+        assertEquals(Set.of(olvidada.getIdCita(), reciente.getIdCita()), ids(citaRepository.findAll()));
+        assertEquals(Set.of(atendida.getIdCita(), cancelada.getIdCita()),
+                citaArchivadaRepository.findAll().stream().map(c -> c.getIdCita()).collect(Collectors.toSet()));
+
+        // Mismas respuestas que antes del traslado
+        assertEquals(Estado.CANCELADA, agendaService.consultarCitaPorId(cancelada.getIdCita()).orElseThrow().getEstado());
+        assertEquals(30, agendaService.consultarCitaPorId(atendida.getIdCita()).orElseThrow().getServicio().getDuracion());
+        assertEquals(4, agendaService.consultarCitaPorPaciente("pac-1").size());
+        assertEquals(Set.of(atendida.getIdCita(), reciente.getIdCita()), ids(agendaService.consultarCitaPorEstado(Estado.ATENDIDA)));
+        assertEquals(Set.of(atendida.getIdCita(), olvidada.getIdCita()),
+                agendaService.consultarResumenPorFecha(ANTIGUA).stream().map(CitaResumen::idCita).collect(Collectors.toSet()));
+        Map<String, Object> estadisticasDespues = estadisticasAgendaService.consultarEstadisticas(ANTIGUA, ANTIGUA.plusDays(1), null);
+        assertEquals(estadisticasAntes.get("porEstado"), estadisticasDespues.get("porEstado"));
+
+        // Una segunda pasada no encuentra nada que mover
+        assertEquals(0, archivoCitasService.archivar().get("archivadas"));
+    }
+
+    @Test
+    void lasPaginasYLosRecorridosIncluyenLasArchivadas() {
+        Cita atendida = guardar("vet-1", "pac-1", ANTIGUA, Estado.ATENDIDA);
+        Cita cancelada = guardar("vet-1", "pac-1", ANTIGUA.plusDays(1), Estado.CANCELADA);
+        Cita olvidada = guardar("vet-1", "pac-1", ANTIGUA.plusDays(2), Estado.PROGRAMADA);
+        Cita reciente = guardar("vet-1", "pac-1", HOY.minusDays(3), Estado.ATENDIDA);
+        archivoCitasService.archivar();
+
+        // Paginas de una cita que alternan entre cita_archivo y cita, en orden de agenda
+        List<Integer> paginadas = new ArrayList<>();
+        String cursor = null;
+        do {
+            PaginaCitas pagina = agendaService.consultarPaginaCitas(null, null, cursor, 1);
+            pagina.getCitas().forEach(cita -> paginadas.add(cita.getIdCita()));
+            cursor = pagina.getSiguienteCursor();
+        } while (cursor != null);
+        assertEquals(List.of(atendida.getIdCita(), cancelada.getIdCita(), olvidada.getIdCita(), reciente.getIdCita()), paginadas);
+        assertEquals(List.of(atendida.getIdCita(), reciente.getIdCita()),
+                agendaService.consultarPaginaCitas(Estado.ATENDIDA, null, null, 10).getCitas().stream().map(Cita::getIdCita).toList());
+        assertEquals(4, agendaService.consultarPaginaCitas(null, "vet-1", null, 10).getCitas().size());
+
+        doAnswer(invocacion -> citaRepository.findAll(ORDEN_AGENDA).stream()).when(citaRepository).recorrerTodas();
+        doAnswer(invocacion -> citaArchivadaRepository.findAll(ORDEN_AGENDA).stream()).when(citaArchivadaRepository).recorrerTodas();
+        doAnswer(invocacion -> citaArchivadaRepository.findByEstado(Estado.CANCELADA).stream())
+                .when(citaArchivadaRepository).recorrerPorEstado(Estado.CANCELADA);
+        doAnswer(invocacion -> citaRepository.findCitaByEstado(Estado.CANCELADA).stream())
+                .when(citaRepository).recorrerPorEstado(Estado.CANCELADA);
+        List<Cita> recorridas = new ArrayList<>();
+        agendaService.recorrerCitas(null, null, recorridas::add);
+        // Primero todo el archivo y despues las vigentes
+        assertEquals(List.of(atendida.getIdCita(), cancelada.getIdCita(), olvidada.getIdCita(), reciente.getIdCita()),
+                recorridas.stream().map(Cita::getIdCita).toList());
+        assertTrue(recorridas.stream().allMatch(cita -> cita.getServicio().getDuracion() == 30));
+        List<Cita> canceladas = new ArrayList<>();
+        agendaService.recorrerCitas(Estado.CANCELADA, null, canceladas::add);
+        assertEquals(Set.of(cancelada.getIdCita()), ids(canceladas));
+    }
+
+    @Test
+    void conflictoHorarioRecorreMenosFilasTrasArchivar() {
+        List<Object[]> filas = new ArrayList<>();
+        for (int i = 0; i < CITAS_ANTIGUAS; i++) {
+            // El mismo veterinario durante meses: su rango en idx_cita_veterinario_agenda es largo
+            LocalDate fecha = ANTIGUA.plusDays(i % 200);
+            filas.add(new Object[]{1_000_000 + i, "pac-" + i, "vet-1", Date.valueOf(fecha),
+                    Time.valueOf(LocalTime.of(8, 0).plusMinutes(30L * (i / 200 % 20))),
+                    i % 4 == 0 ? Estado.CANCELADA.name() : Estado.ATENDIDA.name(), servicio.getId()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO cita (id_cita, id_paciente, id_veterinario, fecha, hora, es_urgencia,"
+                + " estado, servicio_id) VALUES (?, ?, ?, ?, ?, FALSE, ?, ?)", filas);
+        for (int i = 0; i < 20; i++) {
+            guardar("vet-1", "pac-hoy-" + i, HOY.plusDays(i), Estado.PROGRAMADA);
+        }
+
+        long msAntes = medirConflictoHorario();
+        long filasAntes = citaRepository.count();
+        Map<String, Object> ejecucion = archivoCitasService.archivar();
+        long msDespues = medirConflictoHorario();
+        long filasDespues = citaRepository.count();
+
+        System.out.printf("Archivo: %d citas en %s lotes (%s ms, lote mas largo %s ms); cita %d -> %d filas;"
+                        + " %d llamadas a conflictoHorario: %d ms antes, %d ms despues%n",
+                ejecucion.get("archivadas"), ejecucion.get("lotes"), ejecucion.get("ms"), ejecucion.get("msMaxLote"),
+                filasAntes, filasDespues, CONSULTAS, msAntes, msDespues);
+        assertEquals(CITAS_ANTIGUAS, ejecucion.get("archivadas"));
+        assertEquals(20, filasDespues);
+        assertEquals(CITAS_ANTIGUAS, citaArchivadaRepository.count());
+        assertTrue((Integer) ejecucion.get("lotes") >= CITAS_ANTIGUAS / 1000);
+    }
+
+    // Consultas del veterinario sobre toda su historia, como las de un informe o una reprogramacion masiva
+    private long medirConflictoHorario() {
+        long inicio = System.nanoTime();
+        for (int i = 0; i < CONSULTAS; i++) {
+            citaRepository.conflictoHorario("vet-1", ANTIGUA.plusDays(i % 200), LocalTime.of(9, 0), 30);
+        }
+        return (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    private static Set<Integer> ids(List<Cita> citas) {
+        return citas.stream().map(Cita::getIdCita).collect(Collectors.toSet());
+    }
+
+    private Cita guardar(String veterinario, String paciente, LocalDate fecha, Estado estado) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente(paciente);
+        cita.setFecha(fecha);
+        cita.setHora(LocalTime.of(9, 0).plusHours(citaRepository.count() % 8));
+        cita.setEstado(estado);
+        cita.setServicio(servicio);
+        return citaRepository.save(cita);
+    }
+
+    // H2 invoca los alias por reflexion: la clase debe ser publica
+    public static class FuncionesMySql {
+
+        public static LocalTime hora(LocalTime hora) {
+            return hora;
+        }
+
+        public static LocalTime sumarHora(LocalTime hora, LocalTime duracion) {
+            return hora.plusSeconds(duracion.toSecondOfDay());
+        }
+
+        public static LocalTime segundosAHora(long segundos) {
+            return LocalTime.ofSecondOfDay(segundos);
+        }
+    }
+}
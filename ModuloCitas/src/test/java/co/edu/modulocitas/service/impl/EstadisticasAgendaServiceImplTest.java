@@ -0,0 +1,129 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.event.ServicioModificadoEvent;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.repository.ServicioRepository;
+import co.edu.modulocitas.service.AgendaService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class EstadisticasAgendaServiceImplTest {
+
+    private static final LocalDate HOY = LocalDate.now();
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private EstadisticasAgendaServiceImpl estadisticasAgendaService;
+    @Autowired
+    private AgendaService agendaService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ServicioRepository servicioRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Servicio consulta;
+    private Servicio cirugia;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        // El borrado masivo no publica eventos: se descartan los dias cerrados de otras pruebas
+        estadisticasAgendaService.alModificarServicio(new ServicioModificadoEvent(null));
+        consulta = servicio("Consulta", 30);
+        cirugia = servicio("Cirugia", 90);
+    }
+
+    @Test
+    void agregaPorEstadoVeterinarioYDiaConMinutosDelServicio() {
+        guardar("vet-1", HOY.minusDays(2), Estado.ATENDIDA, consulta);
+        guardar("vet-1", HOY.minusDays(2), Estado.ATENDIDA, cirugia);
+        guardar("vet-2", HOY.minusDays(2), Estado.CANCELADA, consulta);
+        guardar("vet-2", HOY, Estado.PROGRAMADA, cirugia);
+        guardar("vet-1", HOY.plusDays(1), Estado.PROGRAMADA, consulta);
+
+        Map<String, Object> estadisticas = estadisticasAgendaService.consultarEstadisticas(HOY.minusDays(3), HOY.plusDays(1), null);
+
+        assertEquals(5L, estadisticas.get("citas"));
+        assertEquals(270L, estadisticas.get("minutos"));
+        assertEquals(Map.of("citas", 2L, "minutos", 120L), porClave(estadisticas, "porEstado").get("ATENDIDA"));
+        assertEquals(Map.of("citas", 3L, "minutos", 150L), porClave(estadisticas, "porVeterinario").get("vet-1"));
+        assertEquals(Map.of("citas", 3L, "minutos", 150L), porClave(estadisticas, "porDia").get(HOY.minusDays(2).toString()));
+
+        Map<String, Object> delVeterinario = estadisticasAgendaService.consultarEstadisticas(HOY.minusDays(3), HOY.plusDays(1), "vet-2");
+        assertEquals(2L, delVeterinario.get("citas"));
+        assertEquals(120L, delVeterinario.get("minutos"));
+    }
+
+    @Test
+    void losDiasPasadosSeSirvenDeCacheHastaQueCambiaUnaCitaDeEseDia() {
+        Cita pasada = guardar("vet-1", HOY.minusDays(5), Estado.PROGRAMADA, consulta);
+        guardar("vet-1", HOY.minusDays(1), Estado.ATENDIDA, consulta);
+        Statistics sql = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        estadisticasAgendaService.consultarEstadisticas(HOY.minusDays(10), HOY.minusDays(1), null);
+        sql.clear();
+        Map<String, Object> repetida = estadisticasAgendaService.consultarEstadisticas(HOY.minusDays(10), HOY.minusDays(1), null);
+        assertEquals(0, sql.getPrepareStatementCount());
+        assertEquals(2L, repetida.get("citas"));
+
+        // Solo el dia de hoy en adelante vuelve a MySQL, con un unico GROUP BY
+        sql.clear();
+        estadisticasAgendaService.consultarEstadisticas(HOY.minusDays(10), HOY.plusDays(7), null);
+        assertEquals(1, sql.getPrepareStatementCount());
+
+        agendaService.cambiarEstado(pasada.getIdCita(), Estado.ATENDIDA);
+        Map<String, Object> actualizada = estadisticasAgendaService.consultarEstadisticas(HOY.minusDays(10), HOY.minusDays(1), null);
+        assertEquals(Map.of("citas", 2L, "minutos", 60L), porClave(actualizada, "porEstado").get("ATENDIDA"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Long>> porClave(Map<String, Object> estadisticas, String seccion) {
+        return (Map<String, Map<String, Long>>) estadisticas.get(seccion);
+    }
+
+    private Servicio servicio(String tipo, int duracion) {
+        Servicio servicio = new Servicio();
+        servicio.setTipo(tipo);
+        servicio.setDuracion(duracion);
+        return servicioRepository.save(servicio);
+    }
+
+    private Cita guardar(String veterinario, LocalDate fecha, Estado estado, Servicio servicio) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente("pac-" + citaRepository.count());
+        cita.setFecha(fecha);
+        cita.setHora(LocalTime.of(9, 0).plusHours(citaRepository.count()));
+        cita.setEstado(estado);
+        cita.setServicio(servicio);
+        return citaRepository.save(cita);
+    }
+}
@@ -0,0 +1,112 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.CitaResumen;
+import co.edu.modulocitas.dto.EventoAgenda;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.enums.TipoEventoAgenda;
+import co.edu.modulocitas.service.ServicioService;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class EventosAgendaServiceImplTest {
+
+    private static final LocalDate FECHA = LocalDate.of(2025, 3, 10);
+    private static final int CAPACIDAD = 4;
+
+    private final EventosAgendaServiceImpl eventos =
+            new EventosAgendaServiceImpl(mock(ServicioService.class), CAPACIDAD, 10, 3600);
+    private long secuencia;
+
+    @Test
+    void filtraPorVeterinarioYFechaIncluyendoLasCitasQueSalenDeLaAgenda() {
+        Receptor porVeterinario = new Receptor(Long.MAX_VALUE);
+        Receptor porFecha = new Receptor(Long.MAX_VALUE);
+        eventos.suscribir("vet-1", null).subscribe(porVeterinario);
+        eventos.suscribir(null, FECHA).subscribe(porFecha);
+
+        eventos.publicar(evento(TipoEventoAgenda.CREADA, "vet-1", FECHA, null, null));
+        eventos.publicar(evento(TipoEventoAgenda.CREADA, "vet-2", FECHA.plusDays(1), null, null));
+        // Reprogramada de vet-1 a vet-2: quien mira vet-1 debe enterarse de que la cita se fue
+        eventos.publicar(evento(TipoEventoAgenda.REPROGRAMADA, "vet-2", FECHA.plusDays(2), "vet-1", FECHA));
+        eventos.publicar(evento(TipoEventoAgenda.CAMBIO_ESTADO, "vet-3", FECHA, null, null));
+
+        assertEquals(List.of(1L, 3L), porVeterinario.secuencias());
+        assertEquals(List.of(1L, 3L, 4L), porFecha.secuencias());
+        porVeterinario.dispose();
+        porFecha.dispose();
+        assertEquals(0, eventos.estadisticas().get("suscriptores"));
+    }
+
+    @Test
+    void unSuscriptorLentoPierdeEventosAcotadosYRecibeUnaResincronizacion() {
+        Receptor lento = new Receptor(0);
+        eventos.suscribir(null, null).subscribe(lento);
+
+        for (int i = 0; i < 11; i++) {
+            eventos.publicar(evento(TipoEventoAgenda.CREADA, "vet-1", FECHA, null, null));
+        }
+        lento.request(Long.MAX_VALUE);
+        eventos.publicar(evento(TipoEventoAgenda.CREADA, "vet-1", FECHA, null, null));
+
+        List<EventoAgenda> recibidos = lento.eventos;
+        int retenidos = recibidos.size() - 2;
+        // Solo quedaron en memoria los que cabian en la cola (mas el que ya tenia el merge)
+        assertTrue(retenidos >= CAPACIDAD && retenidos <= CAPACIDAD + 1, "retenidos: " + retenidos);
+        for (int i = 0; i < retenidos; i++) {
+            assertEquals(i + 1, recibidos.get(i).secuencia());
+        }
+        assertEquals(TipoEventoAgenda.RESINCRONIZAR, recibidos.get(retenidos).tipo());
+        assertEquals(12L, recibidos.get(retenidos + 1).secuencia());
+        assertEquals((long) 11 - retenidos, eventos.estadisticas().get("descartados"));
+        assertEquals(1L, eventos.estadisticas().get("resincronizaciones"));
+        lento.dispose();
+    }
+
+    private EventoAgenda evento(TipoEventoAgenda tipo, String veterinario, LocalDate fecha,
+                                String veterinarioAnterior, LocalDate fechaAnterior) {
+        long id = ++secuencia;
+        CitaResumen cita = new CitaResumen((int) id, "pac-1", veterinario, fecha, LocalTime.of(9, 0),
+                Estado.PROGRAMADA, false, "control", 1, "Consulta", 30);
+        return new EventoAgenda(id, tipo, cita, veterinarioAnterior, fechaAnterior);
+    }
+
+    // Pide solo la demanda inicial indicada; el resto se pide a mano con request()
+    private static final class Receptor extends BaseSubscriber<ServerSentEvent<EventoAgenda>> {
+
+        private final long demandaInicial;
+        private final List<EventoAgenda> eventos = new CopyOnWriteArrayList<>();
+
+        private Receptor(long demandaInicial) {
+            this.demandaInicial = demandaInicial;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (demandaInicial > 0) {
+                request(demandaInicial);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(ServerSentEvent<EventoAgenda> evento) {
+            if (evento.data() != null) {
+                eventos.add(evento.data());
+            }
+        }
+
+        private List<Long> secuencias() {
+            return eventos.stream().map(EventoAgenda::secuencia).toList();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.HorariosLibres;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HorarioServiceImplTest {
+
+    // Un lunes lejano para no chocar con la exclusion de horas pasadas
+    private static final LocalDate LUNES = LocalDate.now().plusDays(30).with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+    private static final int MINUTOS_FRANJA = 5;
+
+    private final Map<Integer, Servicio> servicios = new HashMap<>();
+    private final Map<String, List<DisponibilidadVeterinario>> disponibilidades = new HashMap<>();
+    private final List<Cita> citas = new ArrayList<>();
+
+    private final ServicioService servicioService = mock(ServicioService.class);
+    private final UsuarioServiceImpl usuarioService = mock(UsuarioServiceImpl.class);
+    private final CitaRepository citaRepository = mock(CitaRepository.class);
+    private IndiceAgenda indiceAgenda;
+    private HorarioServiceImpl horarioService;
+
+    @BeforeEach
+    void setUp() {
+        when(servicioService.consultarServicioPorId(anyInt()))
+                .thenAnswer(invocation -> Optional.ofNullable(servicios.get(invocation.<Integer>getArgument(0))));
+        when(usuarioService.obtenerDisponibilidadesActivas(anyString()))
+                .thenAnswer(invocation -> disponibilidades.getOrDefault(invocation.<String>getArgument(0), List.of()));
+        when(citaRepository.findCitaByIdVeterinarioInAndFechaBetween(anyCollection(), any(), any()))
+                .thenAnswer(invocation -> citas);
+
+        indiceAgenda = new IndiceAgenda(citaRepository, servicioService);
+        horarioService = new HorarioServiceImpl(servicioService, usuarioService, indiceAgenda, Runnable::run);
+        ReflectionTestUtils.setField(horarioService, "minutosFranja", MINUTOS_FRANJA);
+        ReflectionTestUtils.setField(horarioService, "maxDias", 31);
+        ReflectionTestUtils.setField(horarioService, "maxVeterinarios", 20);
+    }
+
+    @Test
+    void ofreceSoloLasHorasQueCrearCitaAceptaria() {
+        Random random = new Random(11);
+        List<String> veterinarios = List.of("vet-1", "vet-2", "vet-3");
+        for (String veterinario : veterinarios) {
+            for (DayOfWeek dia : DayOfWeek.values()) {
+                int inicio = 6 * 60 + random.nextInt(6) * 37;
+                disponibilidad(veterinario, dia, LocalTime.of(inicio / 60, inicio % 60),
+                        LocalTime.of(inicio / 60 + 3 + random.nextInt(4), random.nextInt(60)), random.nextInt(8) > 0);
+                disponibilidad(veterinario, dia, LocalTime.of(15, 0), LocalTime.of(19, 30), true);
+            }
+            for (int i = 0; i < 60; i++) {
+                LocalDate fecha = LUNES.plusDays(random.nextInt(7));
+                LocalTime hora = LocalTime.ofSecondOfDay(6 * 3600 + random.nextInt(14 * 3600));
+                Estado estado = Estado.values()[random.nextInt(Estado.values().length)];
+                cita(veterinario, fecha, hora, 10 + random.nextInt(50), estado);
+            }
+        }
+        int duracion = 25;
+
+        List<HorariosLibres> libres = horarioService.consultarHorariosLibres(
+                veterinarios, LUNES, LUNES.plusDays(6), null, duracion);
+
+        Map<String, List<LocalTime>> obtenidas = new HashMap<>();
+        libres.forEach(dia -> obtenidas.put(dia.getIdVeterinario() + dia.getFecha(), dia.getHoras()));
+        for (String veterinario : veterinarios) {
+            for (LocalDate fecha = LUNES; !fecha.isAfter(LUNES.plusDays(6)); fecha = fecha.plusDays(1)) {
+                assertEquals(horasLibresUnaAUna(veterinario, fecha, duracion),
+                        obtenidas.getOrDefault(veterinario + fecha, List.of()), veterinario + " " + fecha);
+            }
+        }
+        // Todos los dias del rango se leen con una sola consulta
+        verify(citaRepository, times(1)).findCitaByIdVeterinarioInAndFechaBetween(anyCollection(), any(), any());
+        verify(citaRepository, never()).findCitaByIdVeterinarioAndFecha(anyString(), any());
+    }
+
+    @Test
+    void benchmarkSemanaDeDiezVeterinarios() {
+        Random random = new Random(3);
+        List<String> veterinarios = new ArrayList<>();
+        for (int v = 1; v <= 10; v++) {
+            String veterinario = "vet-" + v;
+            veterinarios.add(veterinario);
+            for (DayOfWeek dia : DayOfWeek.values()) {
+                disponibilidad(veterinario, dia, LocalTime.of(8, 0), LocalTime.of(12, 0), true);
+                disponibilidad(veterinario, dia, LocalTime.of(14, 0), LocalTime.of(20, 0), true);
+            }
+            for (int i = 0; i < 7 * 25; i++) {
+                LocalTime hora = LocalTime.of(8, 0).plusMinutes(random.nextInt(12 * 12) * 5L);
+                cita(veterinario, LUNES.plusDays(i % 7), hora, 15 + random.nextInt(4) * 15, Estado.PROGRAMADA);
+            }
+        }
+        Servicio consulta = servicio(30);
+
+        horarioService.consultarHorariosLibres(veterinarios, LUNES, LUNES.plusDays(6), consulta.getId(), null);
+        int repeticiones = 200;
+        long inicio = System.nanoTime();
+        int horas = 0;
+        for (int i = 0; i < repeticiones; i++) {
+            for (HorariosLibres dia : horarioService.consultarHorariosLibres(
+                    veterinarios, LUNES, LUNES.plusDays(6), consulta.getId(), null)) {
+                horas += dia.getHoras().size();
+            }
+        }
+        long microsegundos = (System.nanoTime() - inicio) / 1000 / repeticiones;
+
+        System.out.printf("HorarioService: semana de %d veterinarios en %d us (%d horas libres)%n",
+                veterinarios.size(), microsegundos, horas / repeticiones);
+        assertTrue(horas > 0);
+    }
+
+    // Aplica, para cada hora candidata, las mismas reglas que crearCita valida por separado
+    private List<LocalTime> horasLibresUnaAUna(String veterinario, LocalDate fecha, int duracion) {
+        List<LocalTime> horas = new ArrayList<>();
+        for (int minuto = 0; minuto * 60 + duracion * 60 <= 24 * 3600; minuto += MINUTOS_FRANJA) {
+            LocalTime hora = LocalTime.ofSecondOfDay(minuto * 60L);
+            boolean cubierta = disponibilidades.get(veterinario).stream().anyMatch(franja -> franja.cubre(fecha, hora));
+            if (cubierta && !indiceAgenda.hayConflicto(veterinario, fecha, hora, duracion)) {
+                horas.add(hora);
+            }
+        }
+        return horas;
+    }
+
+    private void disponibilidad(String veterinario, DayOfWeek dia, LocalTime inicio, LocalTime fin, boolean activo) {
+        DisponibilidadVeterinario franja = new DisponibilidadVeterinario();
+        franja.setVeterinarioId(veterinario);
+        franja.setDiaSemana(dia);
+        franja.setHoraInicio(inicio);
+        franja.setHoraFin(fin);
+        franja.setActivo(activo);
+        disponibilidades.computeIfAbsent(veterinario, v -> new ArrayList<>()).add(franja);
+    }
+
+    private void cita(String veterinario, LocalDate fecha, LocalTime hora, int duracion, Estado estado) {
+        Cita cita = new Cita();
+        cita.setIdCita(citas.size() + 1);
+        cita.setIdVeterinario(veterinario);
+        cita.setFecha(fecha);
+        cita.setHora(hora);
+        cita.setEstado(estado);
+        cita.setServicio(servicio(duracion));
+        citas.add(cita);
+    }
+
+    private Servicio servicio(int duracion) {
+        Servicio servicio = new Servicio();
+        servicio.setId(servicios.size() + 1);
+        servicio.setDuracion(duracion);
+        servicios.put(servicio.getId(), servicio);
+        return servicio;
+    }
+}
@@ -0,0 +1,183 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndiceAgendaTest {
+
+    private static final String VETERINARIO = "vet-1";
+    private static final LocalDate FECHA = LocalDate.of(2025, 3, 10);
+
+    private final Map<Integer, Servicio> servicios = new HashMap<>();
+    private final ServicioService servicioService = mock(ServicioService.class);
+
+    @BeforeEach
+    void setUp() {
+        when(servicioService.consultarServicioPorId(anyInt()))
+                .thenAnswer(invocation -> Optional.ofNullable(servicios.get(invocation.<Integer>getArgument(0))));
+    }
+
+    @Test
+    void coincideConLaConsultaSqlParaLosEstadosOcupados() {
+        Random random = new Random(42);
+        List<Cita> citas = new ArrayList<>();
+        for (int i = 1; i <= 400; i++) {
+            Estado estado = Estado.values()[random.nextInt(Estado.values().length)];
+            citas.add(cita(i, LocalTime.ofSecondOfDay(random.nextInt(20 * 3600)), 5 + random.nextInt(90), estado));
+        }
+        IndiceAgenda indice = indiceCon(citas);
+
+        for (int i = 0; i < 2000; i++) {
+            LocalTime hora = LocalTime.ofSecondOfDay(random.nextInt(24 * 3600));
+            int duracion = 1 + random.nextInt(120);
+            assertEquals(conflictosSql(citas, hora, duracion),
+                    indice.contarConflictos(VETERINARIO, FECHA, hora, duracion));
+        }
+    }
+
+    @Test
+    void cargaElDiaUnaSolaVezYSeMantieneConLosCambios() {
+        CitaRepository repository = mock(CitaRepository.class);
+        when(repository.findCitaByIdVeterinarioAndFecha(anyString(), any())).thenReturn(new ArrayList<>());
+        IndiceAgenda indice = new IndiceAgenda(repository, servicioService);
+
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 0), 30));
+
+        Cita cita = cita(1, LocalTime.of(9, 0), 30, Estado.PROGRAMADA);
+        indice.registrar(cita);
+        assertTrue(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 15), 30));
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 30), 30));
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(8, 30), 30));
+
+        cita.setEstado(Estado.CANCELADA);
+        indice.registrar(cita);
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 15), 30));
+
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setHora(LocalTime.of(11, 0));
+        indice.registrar(cita);
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 15), 30));
+        assertTrue(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(10, 45), 30));
+
+        indice.retirar(1, VETERINARIO, FECHA);
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(10, 45), 30));
+
+        verify(repository, times(1)).findCitaByIdVeterinarioAndFecha(VETERINARIO, FECHA);
+    }
+
+    @Test
+    void unaCitaGuardadaMientrasSeLeeElDiaNoSePierde() {
+        CitaRepository repository = mock(CitaRepository.class);
+        IndiceAgenda indice = new IndiceAgenda(repository, servicioService);
+        Cita confirmada = cita(1, LocalTime.of(9, 0), 30, Estado.PROGRAMADA);
+        // La consulta ya leyo el dia cuando otra peticion confirma su cita y la registra
+        when(repository.findCitaByIdVeterinarioAndFecha(VETERINARIO, FECHA)).thenAnswer(invocation -> {
+            indice.registrar(confirmada);
+            return new ArrayList<>();
+        });
+
+        assertTrue(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 15), 30));
+        assertTrue(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 15), 30));
+        verify(repository, times(1)).findCitaByIdVeterinarioAndFecha(VETERINARIO, FECHA);
+    }
+
+    @Test
+    void unaCitaReprogramadaOcupaSuNuevaHora() {
+        IndiceAgenda indice = indiceCon(List.of(cita(1, LocalTime.of(11, 0), 30, Estado.REPROGRAMADA)));
+
+        assertTrue(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(11, 15), 30));
+    }
+
+    @Test
+    void unLoteDetectaConflictosConElIndiceYEntreSusPropiasCitas() {
+        IndiceAgenda indice = indiceCon(List.of(cita(1, LocalTime.of(9, 0), 30, Estado.PROGRAMADA)));
+        IndiceAgenda.Lote lote = indice.nuevoLote();
+
+        assertTrue(lote.hayConflicto(VETERINARIO, FECHA, LocalTime.of(9, 15), 30));
+        assertFalse(lote.hayConflicto(VETERINARIO, FECHA, LocalTime.of(10, 0), 30));
+        lote.reservar(VETERINARIO, FECHA, LocalTime.of(10, 0), 30);
+        assertTrue(lote.hayConflicto(VETERINARIO, FECHA, LocalTime.of(10, 15), 30));
+
+        // Las reservas del lote no llegan al indice hasta que las citas se guardan
+        assertFalse(indice.hayConflicto(VETERINARIO, FECHA, LocalTime.of(10, 15), 30));
+    }
+
+    @Test
+    void coincideConLaConsultaSqlEnUnDiaSaturado() {
+        List<Cita> citas = new ArrayList<>();
+        // Citas de un minuto cada 15 segundos: agenda saturada con varios solapes por franja
+        for (int i = 0; i < 5000; i++) {
+            citas.add(cita(i + 1, LocalTime.ofSecondOfDay(i * 15L), 1, Estado.PROGRAMADA));
+        }
+        IndiceAgenda indice = indiceCon(citas);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 2000; i++) {
+            LocalTime hora = LocalTime.ofSecondOfDay(random.nextInt(24 * 3600 - 3600));
+            int duracion = 1 + random.nextInt(60);
+            long esperados = conflictosSql(citas, hora, duracion);
+            assertEquals(esperados, indice.contarConflictos(VETERINARIO, FECHA, hora, duracion));
+            // Dentro de las horas con citas cualquier minuto se solapa al menos con cuatro
+            if (hora.toSecondOfDay() + 60 <= 5000 * 15) {
+                assertTrue(esperados >= 4);
+            }
+        }
+    }
+
+    private IndiceAgenda indiceCon(List<Cita> citas) {
+        CitaRepository repository = mock(CitaRepository.class);
+        when(repository.findCitaByIdVeterinarioAndFecha(VETERINARIO, FECHA)).thenReturn(citas);
+        return new IndiceAgenda(repository, servicioService);
+    }
+
+    // Replica en Java el predicado de CitaRepository.conflictoHorario sobre los estados ocupados
+    private static long conflictosSql(List<Cita> citas, LocalTime hora, int duracion) {
+        int nuevoInicio = hora.toSecondOfDay();
+        int nuevoFin = nuevoInicio + duracion * 60;
+        return citas.stream()
+                .filter(c -> IndiceAgenda.ESTADOS_OCUPADOS.contains(c.getEstado()))
+                .filter(c -> nuevoInicio < c.getHora().toSecondOfDay() + c.getServicio().getDuracion() * 60)
+                .filter(c -> nuevoFin > c.getHora().toSecondOfDay())
+                .count();
+    }
+
+    private Cita cita(int id, LocalTime hora, int duracion, Estado estado) {
+        Servicio servicio = new Servicio();
+        servicio.setId(id);
+        servicio.setDuracion(duracion);
+        servicios.put(id, servicio);
+        Cita cita = new Cita();
+        cita.setIdCita(id);
+        cita.setIdVeterinario(VETERINARIO);
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(estado);
+        cita.setServicio(servicio);
+        return cita;
+    }
+}
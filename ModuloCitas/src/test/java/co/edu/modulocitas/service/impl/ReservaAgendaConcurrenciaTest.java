@@ -0,0 +1,221 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.UsuarioOcupadoExcepcion;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.ReservaFranja;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.repository.ServicioRepository;
+import co.edu.modulocitas.service.AgendaService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class ReservaAgendaConcurrenciaTest {
+
+    private static final int RESERVADORES = 64;
+    private static final int DURACION = 30;
+    private static final LocalDate FECHA = LocalDate.now().plusDays(10);
+
+    // Las validaciones remotas y las notificaciones no forman parte de la prueba
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private AgendaService agendaService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ServicioRepository servicioRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        servicio = new Servicio();
+        servicio.setTipo("Consulta");
+        servicio.setDuracion(DURACION);
+        servicio = servicioRepository.save(servicio);
+    }
+
+    @Test
+    void sesentaYCuatroReservadoresNoProducenDoblesReservas() throws Exception {
+        // Pocas agendas y horas cada 10 minutos para citas de 30: casi todos los intentos compiten
+        int creadasConCompetencia = reservarEnParalelo(4, 1, 40);
+        assertSinSolapes();
+        // Una agenda por reservador: el bloqueo por (veterinario, fecha) no deberia frenarlos
+        int creadasSinCompetencia = reservarEnParalelo(RESERVADORES, 3, 40);
+        assertSinSolapes();
+
+        long citas = citaRepository.count();
+        assertEquals(creadasConCompetencia + creadasSinCompetencia, citas);
+        assertEquals(citas * (DURACION / 5), reservaFranjaRepository.count());
+    }
+
+    @Test
+    void laBaseDeDatosRechazaLaCitaQueOtraInstanciaYaReservo() {
+        String veterinario = "vet-db";
+        // El dia queda cargado en el indice local antes de que "otra instancia" reserve
+        assertEquals(0, indiceAgenda.contarConflictos(veterinario, FECHA, LocalTime.of(9, 0), DURACION));
+        Cita ajena = cita(veterinario, "pac-1", LocalTime.of(9, 0));
+        ajena = citaRepository.save(ajena);
+        for (int franja = 9 * 12; franja < 9 * 12 + DURACION / 5; franja++) {
+            reservaFranjaRepository.save(new ReservaFranja(veterinario, FECHA, franja, ajena.getIdCita()));
+        }
+
+        assertThrows(UsuarioOcupadoExcepcion.class,
+                () -> agendaService.crearCita(cita(veterinario, "pac-2", LocalTime.of(9, 10))));
+        assertEquals(1, citaRepository.count());
+        // Tras el reintento el indice se recargo y ya conoce la cita ajena
+        assertTrue(indiceAgenda.hayConflicto(veterinario, FECHA, LocalTime.of(9, 10), DURACION));
+    }
+
+    @Test
+    void noSeReservaEncimaDeUnaCitaReprogramada() {
+        String veterinario = "vet-reprogramada";
+        Cita original = agendaService.crearCita(cita(veterinario, "pac-1", LocalTime.of(9, 0)));
+        Cita movida = cita(veterinario, "pac-1", LocalTime.of(11, 0));
+        movida.setEstado(Estado.REPROGRAMADA);
+        agendaService.actualizarCita(original.getIdCita(), movida);
+
+        assertThrows(UsuarioOcupadoExcepcion.class,
+                () -> agendaService.crearCita(cita(veterinario, "pac-2", LocalTime.of(11, 15))));
+        // La hora que dejo libre si se puede reservar
+        agendaService.crearCita(cita(veterinario, "pac-3", LocalTime.of(9, 0)));
+        assertEquals(2, citaRepository.count());
+    }
+
+    @Test
+    void lasCitasEmpiezanEnLaRejillaYLaSiguienteNoChocaConLaFranjaCompartida() {
+        String veterinario = "vet-rejilla";
+        Servicio largo = new Servicio();
+        largo.setTipo("Cirugía");
+        largo.setDuracion(32);
+        largo = servicioRepository.save(largo);
+        Cita primera = cita(veterinario, "pac-1", LocalTime.of(10, 0));
+        primera.setServicio(largo);
+        agendaService.crearCita(primera);
+
+        // 10:32 no se solapa pero compartiria la franja de las 10:30: se rechaza por la hora, no como ocupada
+        assertThrows(ResponseStatusException.class,
+                () -> agendaService.crearCita(cita(veterinario, "pac-2", LocalTime.of(10, 32))));
+        agendaService.crearCita(cita(veterinario, "pac-2", LocalTime.of(10, 35)));
+        assertEquals(2, citaRepository.count());
+    }
+
+    @Test
+    void moverUnaCitaCompruebaLaAgendaAunqueLaOtraNoTengaFranjas() {
+        String veterinario = "vet-mover";
+        Cita sinFranjas = agendaService.crearCita(cita(veterinario, "pac-1", LocalTime.of(9, 0)));
+        Cita movida = agendaService.crearCita(cita(veterinario, "pac-2", LocalTime.of(10, 0)));
+        // Como una cita anterior a reserva_franja: solo el indice sabe que ocupa las 9:00
+        reservaFranjaRepository.deleteAllInBatch(reservaFranjaRepository.findAll().stream()
+                .filter(reserva -> reserva.getIdCita().equals(sinFranjas.getIdCita()))
+                .toList());
+
+        Cita cambio = cita(veterinario, "pac-2", LocalTime.of(9, 15));
+        assertThrows(UsuarioOcupadoExcepcion.class, () -> agendaService.actualizarCita(movida.getIdCita(), cambio));
+        assertEquals(LocalTime.of(10, 0), citaRepository.findById(movida.getIdCita()).orElseThrow().getHora());
+    }
+
+    private int reservarEnParalelo(int veterinarios, int dias, int intentosPorReservador) throws Exception {
+        ExecutorService hilos = Executors.newFixedThreadPool(RESERVADORES);
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicInteger creadas = new AtomicInteger();
+        AtomicInteger ocupadas = new AtomicInteger();
+        List<Future<?>> reservadores = new ArrayList<>();
+        for (int r = 0; r < RESERVADORES; r++) {
+            Random random = new Random(r);
+            String paciente = "pac-" + veterinarios + "-" + r;
+            reservadores.add(hilos.submit(() -> {
+                salida.await();
+                for (int i = 0; i < intentosPorReservador; i++) {
+                    String veterinario = "vet-" + veterinarios + "-" + random.nextInt(veterinarios);
+                    Cita cita = cita(veterinario, paciente, LocalTime.of(8, 0).plusMinutes(random.nextInt(60) * 10L));
+                    cita.setFecha(FECHA.plusDays(random.nextInt(dias)));
+                    try {
+                        agendaService.crearCita(cita);
+                        creadas.incrementAndGet();
+                    } catch (UsuarioOcupadoExcepcion e) {
+                        ocupadas.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+        for (Future<?> reservador : reservadores) {
+            reservador.get();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        hilos.shutdown();
+
+        int intentos = RESERVADORES * intentosPorReservador;
+        System.out.printf("ReservaAgenda: %d reservadores, %d agendas: %d intentos en %.2f s (%.0f/s), %d creadas, %d rechazadas%n",
+                RESERVADORES, veterinarios * dias, intentos, segundos, intentos / segundos, creadas.get(), ocupadas.get());
+        assertEquals(intentos, creadas.get() + ocupadas.get());
+        return creadas.get();
+    }
+
+    private void assertSinSolapes() {
+        Map<String, List<Cita>> porAgenda = citaRepository.findAll().stream()
+                .collect(Collectors.groupingBy(c -> c.getIdVeterinario() + "|" + c.getFecha()));
+        porAgenda.forEach((agenda, citas) -> {
+            citas.sort(Comparator.comparing(Cita::getHora));
+            for (int i = 1; i < citas.size(); i++) {
+                LocalTime finAnterior = citas.get(i - 1).getHora().plusMinutes(DURACION);
+                if (citas.get(i).getHora().isBefore(finAnterior)) {
+                    fail("Doble reserva en " + agenda + ": " + citas.get(i - 1).getHora() + " y " + citas.get(i).getHora());
+                }
+            }
+        });
+    }
+
+    private Cita cita(String veterinario, String paciente, LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente(paciente);
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(servicio);
+        return cita;
+    }
+}
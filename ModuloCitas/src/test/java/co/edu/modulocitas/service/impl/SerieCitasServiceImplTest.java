@@ -0,0 +1,167 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.OcurrenciaSerie;
+import co.edu.modulocitas.dto.ResultadoSerieCitas;
+import co.edu.modulocitas.dto.SerieCitas;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class SerieCitasServiceImplTest {
+
+    private static final LocalDate PRIMERA = LocalDate.now().plusDays(10);
+    private static final LocalTime HORA = LocalTime.of(9, 0);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private SerieCitasServiceImpl serieCitasService;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaAgenda reservaAgenda;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio vacuna;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        vacuna = new Servicio();
+        vacuna.setTipo("Vacunacion");
+        vacuna.setDuracion(30);
+        vacuna = servicioService.crearServicio(vacuna);
+
+        // Atiende todos los dias de 8:00 a 18:00
+        List<DisponibilidadVeterinario> semana = new ArrayList<>();
+        for (DayOfWeek dia : DayOfWeek.values()) {
+            DisponibilidadVeterinario franja = new DisponibilidadVeterinario();
+            franja.setDiaSemana(dia);
+            franja.setHoraInicio(LocalTime.of(8, 0));
+            franja.setHoraFin(LocalTime.of(18, 0));
+            franja.setActivo(true);
+            semana.add(franja);
+        }
+        when(usuarioServiceImpl.obtenerDisponibilidadesActivas(any())).thenReturn(semana);
+        when(usuarioServiceImpl.obtenerContextoNotificacionReactivo(any(), any()))
+                .thenReturn(Mono.just(new ContextoNotificacion("dueno@correo.com", "Luna", "Perez")));
+    }
+
+    @Test
+    void guardaLaSerieCompletaConUnaConsultaDeDisponibilidadYUnAviso() {
+        ResultadoSerieCitas resultado = serieCitasService.crearSerie(serie(21, 6, false));
+
+        assertTrue(resultado.isCreada());
+        assertEquals(6, citaRepository.count());
+        for (OcurrenciaSerie ocurrencia : resultado.getOcurrencias()) {
+            assertNull(ocurrencia.getConflicto());
+            assertEquals(PRIMERA.plusDays(21L * ocurrencia.getPosicion()), ocurrencia.getCita().getFecha());
+            assertNotNull(ocurrencia.getCita().getIdCita());
+        }
+        verify(usuarioServiceImpl, times(1)).obtenerDisponibilidadesActivas("vet-1");
+        verify(usuarioServiceImpl, never()).verificarDisponibilidadVeterinario(any(), any(), any());
+        verify(notificacionesService, times(1)).enSegundoPlano(any());
+    }
+
+    @Test
+    void proponeLaHoraLibreMasCercanaYNoGuardaNadaSalvoQueSeAcepte() {
+        // La tercera dosis choca con una cita ya reservada de 9:00 a 9:30
+        reservaAgenda.crear(cita("otra-mascota", PRIMERA.plusDays(42), HORA));
+
+        ResultadoSerieCitas rechazada = serieCitasService.crearSerie(serie(21, 6, false));
+
+        assertFalse(rechazada.isCreada());
+        assertEquals(1, citaRepository.count());
+        OcurrenciaSerie tercera = rechazada.getOcurrencias().get(2);
+        assertNotNull(tercera.getConflicto());
+        assertEquals(PRIMERA.plusDays(42), tercera.getFechaAlternativa());
+        assertEquals(LocalTime.of(9, 30), tercera.getHoraAlternativa());
+        assertNull(rechazada.getOcurrencias().get(1).getConflicto());
+
+        ResultadoSerieCitas aceptada = serieCitasService.crearSerie(serie(21, 6, true));
+
+        assertTrue(aceptada.isCreada());
+        assertEquals(7, citaRepository.count());
+        assertEquals(LocalTime.of(9, 30), aceptada.getOcurrencias().get(2).getCita().getHora());
+        assertEquals(HORA, aceptada.getOcurrencias().get(3).getCita().getHora());
+    }
+
+    @Test
+    void lasFechasDeLaMismaSerieNoSeSolapanEntreSi() {
+        // Intervalo de un dia con la misma mascota: cada fecha es independiente, ninguna choca
+        ResultadoSerieCitas diaria = serieCitasService.crearSerie(serie(1, 3, false));
+        assertTrue(diaria.isCreada());
+
+        // Repetir la misma serie: todas ocupadas, cada alternativa distinta y sin solaparse
+        ResultadoSerieCitas repetida = serieCitasService.crearSerie(serie(1, 3, true));
+        assertTrue(repetida.isCreada());
+        assertEquals(6, citaRepository.count());
+        for (OcurrenciaSerie ocurrencia : repetida.getOcurrencias()) {
+            assertNotNull(ocurrencia.getConflicto());
+            // Solo se solapa consigo misma
+            assertEquals(1L, indiceAgenda.contarConflictos("vet-1", ocurrencia.getCita().getFecha(),
+                    ocurrencia.getCita().getHora(), 30));
+        }
+    }
+
+    private SerieCitas serie(int intervaloDias, int repeticiones, boolean aceptarAlternativas) {
+        SerieCitas serie = new SerieCitas();
+        serie.setCita(cita("pac-1", PRIMERA, HORA));
+        serie.setIntervaloDias(intervaloDias);
+        serie.setRepeticiones(repeticiones);
+        serie.setAceptarAlternativas(aceptarAlternativas);
+        return serie;
+    }
+
+    private Cita cita(String paciente, LocalDate fecha, LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-1");
+        cita.setIdPaciente(paciente);
+        cita.setFecha(fecha);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(vacuna);
+        return cita;
+    }
+}
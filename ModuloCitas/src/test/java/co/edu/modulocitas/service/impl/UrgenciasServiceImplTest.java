@@ -0,0 +1,180 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.UsuarioOcupadoExcepcion;
+import co.edu.modulocitas.dto.CitaDesplazada;
+import co.edu.modulocitas.dto.CitaUrgente;
+import co.edu.modulocitas.dto.DisponibilidadVeterinario;
+import co.edu.modulocitas.dto.ResultadoUrgencia;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class UrgenciasServiceImplTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(5);
+    private static final int VETERINARIOS = 10;
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private UrgenciasServiceImpl urgenciasService;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaAgenda reservaAgenda;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio consulta;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+
+        // Atienden todos los dias de 8:00 a 18:00
+        List<DisponibilidadVeterinario> semana = new ArrayList<>();
+        for (DayOfWeek dia : DayOfWeek.values()) {
+            DisponibilidadVeterinario franja = new DisponibilidadVeterinario();
+            franja.setDiaSemana(dia);
+            franja.setHoraInicio(LocalTime.of(8, 0));
+            franja.setHoraFin(LocalTime.of(18, 0));
+            franja.setActivo(true);
+            semana.add(franja);
+        }
+        when(usuarioServiceImpl.obtenerDisponibilidadesActivas(any())).thenReturn(semana);
+        when(usuarioServiceImpl.obtenerEmailReactivo(any())).thenReturn(Mono.just("dueno@correo.com"));
+        when(usuarioServiceImpl.obtenerNombreMascotaReactivo(any())).thenReturn(Mono.just("Luna"));
+        when(usuarioServiceImpl.obtenerNombreVeterinarioReactivo(any())).thenReturn(Mono.just("Perez"));
+    }
+
+    @Test
+    void desplazaLaCitaBloqueanteALaHoraLibreMasCercanaDelMismoVeterinario() {
+        Cita bloqueante = reservaAgenda.crear(cita("vet-1", "pac-a", LocalTime.of(9, 0)));
+        reservaAgenda.crear(cita("vet-1", "pac-b", LocalTime.of(9, 30)));
+
+        ResultadoUrgencia resultado = urgenciasService.crearUrgencia(urgencia(LocalTime.of(9, 0), List.of("vet-2")));
+
+        // 8:30 esta libre y a la misma distancia que 9:30 (ocupada): se adelanta media hora
+        assertEquals(1, resultado.getDesplazadas().size());
+        CitaDesplazada desplazada = resultado.getDesplazadas().get(0);
+        assertEquals(bloqueante.getIdCita(), desplazada.getIdCita());
+        assertEquals("vet-1", desplazada.getIdVeterinario());
+        assertEquals(LocalTime.of(8, 30), desplazada.getHora());
+        assertEquals(30, desplazada.getMinutosDesplazada());
+        Cita movida = citaRepository.findById(bloqueante.getIdCita()).orElseThrow();
+        assertEquals(LocalTime.of(8, 30), movida.getHora());
+        assertEquals(Estado.PROGRAMADA, movida.getEstado());
+        assertTrue(resultado.getCita().isEsUrgencia());
+        assertEquals(3, citaRepository.count());
+        // Tres citas de 30 minutos en franjas de 5: sin franjas huerfanas ni solapes
+        assertEquals(18, reservaFranjaRepository.count());
+        assertEquals(1L, indiceAgenda.contarConflictos("vet-1", FECHA, LocalTime.of(9, 0), 30));
+        // Un solo envio en segundo plano con la urgencia y la reprogramacion
+        verify(notificacionesService, times(1)).enSegundoPlano(any());
+    }
+
+    @Test
+    void enUnDiaCompletoPasaLaCitaAlVeterinarioAlternativoEnDecenasDeMilisegundos() {
+        // Diez veterinarios con el dia completo de 8:00 a 18:00 salvo un hueco de vet-7 a las 15:00
+        List<Cita> citas = new ArrayList<>();
+        for (int v = 1; v <= VETERINARIOS; v++) {
+            for (LocalTime hora = LocalTime.of(8, 0); hora.isBefore(LocalTime.of(18, 0)); hora = hora.plusMinutes(30)) {
+                if (v != 7 || !hora.equals(LocalTime.of(15, 0))) {
+                    citas.add(cita("vet-" + v, "pac-" + v + "-" + hora, hora));
+                }
+            }
+        }
+        reservaAgenda.crearTodas(citas);
+        List<String> alternativos = new ArrayList<>();
+        for (int v = 2; v <= VETERINARIOS; v++) {
+            alternativos.add("vet-" + v);
+        }
+
+        ResultadoUrgencia resultado = urgenciasService.crearUrgencia(urgencia(LocalTime.of(12, 0), alternativos));
+
+        System.out.printf("Urgencia en dia completo (%d citas, %d veterinarios): decision en %.2f ms%n",
+                citas.size(), VETERINARIOS, resultado.getMsDecision());
+        CitaDesplazada desplazada = resultado.getDesplazadas().get(0);
+        assertEquals("vet-7", desplazada.getIdVeterinario());
+        assertEquals(LocalTime.of(15, 0), desplazada.getHora());
+        assertTrue(resultado.getMsDecision() < 100, "decision en " + resultado.getMsDecision() + " ms");
+        assertEquals(citas.size() + 1, citaRepository.count());
+    }
+
+    @Test
+    void noDesplazaOtraUrgenciaNiCitasAtendidasYNoGuardaNada() {
+        Cita otraUrgencia = cita("vet-1", "pac-a", LocalTime.of(9, 0));
+        otraUrgencia.setEsUrgencia(true);
+        reservaAgenda.crear(otraUrgencia);
+        Cita atendida = cita("vet-1", "pac-b", LocalTime.of(11, 0));
+        atendida.setEstado(Estado.ATENDIDA);
+        reservaAgenda.crear(atendida);
+
+        assertThrows(UsuarioOcupadoExcepcion.class,
+                () -> urgenciasService.crearUrgencia(urgencia(LocalTime.of(9, 15), List.of("vet-2"))));
+        assertThrows(UsuarioOcupadoExcepcion.class,
+                () -> urgenciasService.crearUrgencia(urgencia(LocalTime.of(11, 0), List.of("vet-2"))));
+
+        assertEquals(2, citaRepository.count());
+        assertEquals(LocalTime.of(9, 0), citaRepository.findById(otraUrgencia.getIdCita()).orElseThrow().getHora());
+        verify(notificacionesService, never()).enSegundoPlano(any());
+    }
+
+    private CitaUrgente urgencia(LocalTime hora, List<String> alternativos) {
+        CitaUrgente peticion = new CitaUrgente();
+        peticion.setCita(cita("vet-1", "pac-urgente", hora));
+        peticion.setVeterinariosAlternativos(alternativos);
+        return peticion;
+    }
+
+    private Cita cita(String veterinario, String paciente, LocalTime hora) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente(paciente);
+        cita.setFecha(FECHA);
+        cita.setHora(hora);
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(consulta);
+        return cita;
+    }
+}
@@ -0,0 +1,181 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.Exception.ServicioRemotoNoDisponible;
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.remoto.ProteccionRemota;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// usuarios lento: las llamadas terminan a tiempo, el circuito se abre y los avisos siguen sin nombres
+class UsuarioServiceImplTest {
+
+    private static final LocalDate FECHA = LocalDate.now().plusDays(1);
+    private static final LocalTime HORA = LocalTime.of(9, 0);
+    private static final long LIMITE_MS = 150;
+    private static final long MS_ABIERTO = 300;
+
+    private final ScheduledExecutorService demoras = Executors.newScheduledThreadPool(2);
+    private final AtomicInteger peticiones = new AtomicInteger();
+    private volatile long latenciaMs;
+    private HttpServer usuarios;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        usuarios = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        usuarios.createContext("/", intercambio -> {
+            peticiones.incrementAndGet();
+            demoras.schedule(() -> responder(intercambio), latenciaMs, TimeUnit.MILLISECONDS);
+        });
+        usuarios.setExecutor(Executors.newFixedThreadPool(4));
+        usuarios.start();
+    }
+
+    @AfterEach
+    void detenerServidor() {
+        usuarios.stop(0);
+        demoras.shutdownNow();
+    }
+
+    @Test
+    void laDisponibilidadFallaEnseguidaYElCircuitoSeAbreHastaQueUsuariosResponde() {
+        ProteccionRemota proteccion = proteccion(20, 3);
+        UsuarioServiceImpl usuarioService = usuarioService(proteccion);
+        usuarioService.verificarDisponibilidadVeterinario("vet-1", FECHA, HORA);
+        latenciaMs = 2_000;
+
+        for (int i = 0; i < 3; i++) {
+            long inicio = System.nanoTime();
+            assertThrows(ServicioRemotoNoDisponible.class,
+                    () -> usuarioService.verificarDisponibilidadVeterinario("vet-1", FECHA, HORA));
+            assertTrue(ms(inicio) < LIMITE_MS + 200, "esperó " + ms(inicio) + " ms");
+        }
+        assertEquals("ABIERTO", proteccion.estadisticas().get("circuito"));
+        assertEquals(3L, proteccion.estadisticas().get("tiemposAgotados"));
+
+        // Con el circuito abierto no sale ninguna peticion
+        esperar(100);
+        int enviadas = peticiones.get();
+        long inicio = System.nanoTime();
+        assertThrows(ServicioRemotoNoDisponible.class,
+                () -> usuarioService.verificarDisponibilidadVeterinario("vet-1", FECHA, HORA));
+        assertTrue(ms(inicio) < 50, "esperó " + ms(inicio) + " ms");
+        esperar(100);
+        assertEquals(enviadas, peticiones.get());
+        assertEquals(1L, proteccion.estadisticas().get("rechazadasPorCircuito"));
+
+        // Pasado ms-abierto una llamada de prueba cierra el circuito
+        latenciaMs = 0;
+        esperar(MS_ABIERTO + 50);
+        assertDoesNotThrow(() -> usuarioService.verificarDisponibilidadVeterinario("vet-1", FECHA, HORA));
+        assertEquals("CERRADO", proteccion.estadisticas().get("circuito"));
+    }
+
+    @Test
+    void lasLlamadasDeMasSeRechazanYLosAvisosSalenSinNombres() {
+        ProteccionRemota proteccion = proteccion(2, 100);
+        UsuarioServiceImpl usuarioService = usuarioService(proteccion);
+        usuarioService.verificarDisponibilidadVeterinario("vet-1", FECHA, HORA);
+        latenciaMs = 400;
+
+        // Dos llamadas esperan a usuarios hasta agotar su tiempo; las otras tres no llegan a salir
+        long inicioLote = System.nanoTime();
+        List<String> resultados = Flux.range(0, 5)
+                .flatMap(i -> usuarioService.verificarDisponibilidadVeterinarioReactivo("vet-" + i, FECHA, HORA)
+                        .thenReturn("disponible")
+                        .onErrorResume(ServicioRemotoNoDisponible.class, e -> Mono.just("no disponible")))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        assertTrue(ms(inicioLote) < LIMITE_MS + 200, "esperó " + ms(inicioLote) + " ms");
+        assertEquals(5, resultados.stream().filter("no disponible"::equals).count());
+        assertEquals(3L, proteccion.estadisticas().get("rechazadasPorLimite"));
+        assertEquals(2L, proteccion.estadisticas().get("tiemposAgotados"));
+
+        // El contexto del aviso llega a tiempo aunque sin datos
+        long inicio = System.nanoTime();
+        ContextoNotificacion contexto = usuarioService.obtenerContextoNotificacion("m-1", "vet-1");
+        assertTrue(ms(inicio) < LIMITE_MS + 500, "esperó " + ms(inicio) + " ms");
+        assertNull(contexto.getEmail());
+        assertNull(contexto.getNombreVeterinario());
+
+        // Un 404 no cuenta como fallo de usuarios
+        latenciaMs = 0;
+        assertThrows(WebClientResponseException.NotFound.class, () -> usuarioService.obtenerDisponibilidadesActivas("vet-404"));
+        assertEquals(0, proteccion.estadisticas().get("fallosSeguidos"));
+    }
+
+    private ProteccionRemota proteccion(int maxLlamadas, int fallosParaAbrir) {
+        return new ProteccionRemota("usuarios", maxLlamadas, fallosParaAbrir, Duration.ofMillis(MS_ABIERTO),
+                e -> !(e instanceof WebClientResponseException respuesta && respuesta.getStatusCode().is4xxClientError()));
+    }
+
+    private UsuarioServiceImpl usuarioService(ProteccionRemota proteccion) {
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + usuarios.getAddress().getPort() + "/api")
+                .build();
+        // La primera peticion de WebClient inicializa Netty y tarda mas que el limite
+        webClient.get().uri("/disponibilidades/verificar/vet-0").retrieve().toBodilessEntity().block();
+        return new UsuarioServiceImpl(webClient, proteccion, LIMITE_MS, LIMITE_MS, 100, 10, 1, 5, 100);
+    }
+
+    private static long ms(long inicio) {
+        return (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    private static void esperar(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void responder(HttpExchange intercambio) {
+        String path = intercambio.getRequestURI().getPath();
+        int estado = path.contains("vet-404") ? 404 : 200;
+        String cuerpo;
+        if (path.startsWith("/api/disponibilidades/verificar/")) {
+            cuerpo = "{\"disponible\":true}";
+        } else if (path.startsWith("/api/disponibilidades/veterinario/")) {
+            cuerpo = "[]";
+        } else {
+            cuerpo = "{\"email\":\"dueno@correo.com\",\"nombreMascota\":\"Luna\",\"nombreVeterinario\":\"Perez\"}";
+        }
+        try (intercambio) {
+            intercambio.getRequestBody().readAllBytes();
+            intercambio.getResponseHeaders().add("Content-Type", "application/json");
+            byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+            intercambio.sendResponseHeaders(estado, bytes.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(bytes);
+            }
+        } catch (IOException e) {
+            // El cliente ya se fue por tiempo agotado
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.service.ServicioService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("h2")
+class VencimientoCitasServiceImplTest {
+
+    private static final LocalDate HOY = LocalDate.now();
+    private static final int OLVIDADAS = 1_200;
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private VencimientoCitasServiceImpl vencimientoCitasService;
+    @Autowired
+    private ServicioService servicioService;
+    @Autowired
+    private ReservaAgenda reservaAgenda;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Servicio consulta;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        consulta = new Servicio();
+        consulta.setTipo("Consulta");
+        consulta.setDuracion(30);
+        consulta = servicioService.crearServicio(consulta);
+    }
+
+    @Test
+    void cancelaPorLotesSoloLasProgramadasVencidasYSueltaSusFranjas() {
+        Cita vencida = reservaAgenda.crear(cita(HOY.minusDays(3), Estado.PROGRAMADA));
+        Cita atendida = reservaAgenda.crear(cita(HOY.minusDays(3), Estado.ATENDIDA));
+        // Dentro del dia de gracia: aun se puede marcar atendida
+        Cita deAyer = reservaAgenda.crear(cita(HOY.minusDays(1), Estado.PROGRAMADA));
+        Cita futura = reservaAgenda.crear(cita(HOY.plusDays(1), Estado.PROGRAMADA));
+        List<Object[]> filas = new ArrayList<>();
+        for (int i = 0; i < OLVIDADAS; i++) {
+            filas.add(new Object[]{2_000_000 + i, "pac-" + i, "vet-" + (i % 5), Date.valueOf(HOY.minusDays(10 + i % 300)),
+                    Time.valueOf(LocalTime.of(8, 0).plusMinutes(30L * (i % 16))), Estado.PROGRAMADA.name(), consulta.getId()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO cita (id_cita, id_paciente, id_veterinario, fecha, hora, es_urgencia,"
+                + " estado, servicio_id, version) VALUES (?, ?, ?, ?, ?, FALSE, ?, ?, 0)", filas);
+        assertTrue(indiceAgenda.hayConflicto("vet-1", vencida.getFecha(), vencida.getHora(), 30));
+
+        Map<String, Object> ejecucion = vencimientoCitasService.vencer();
+
+        System.out.println("Vencimiento: " + ejecucion);
+        assertEquals(OLVIDADAS + 1, ejecucion.get("vencidas"));
+        // Lotes de 500 filas
+        assertEquals(3, ejecucion.get("lotes"));
+        assertEquals(OLVIDADAS + 1, citaRepository.findCitaByEstado(Estado.CANCELADA).size());
+        Cita cancelada = citaRepository.findById(vencida.getIdCita()).orElseThrow();
+        assertEquals(Estado.CANCELADA, cancelada.getEstado());
+        assertEquals(vencida.getVersion() + 1, cancelada.getVersion());
+        assertEquals(Estado.ATENDIDA, citaRepository.findById(atendida.getIdCita()).orElseThrow().getEstado());
+        assertEquals(Estado.PROGRAMADA, citaRepository.findById(deAyer.getIdCita()).orElseThrow().getEstado());
+        assertEquals(Estado.PROGRAMADA, citaRepository.findById(futura.getIdCita()).orElseThrow().getEstado());
+        // Tres citas de 30 minutos siguen ocupando sus 6 franjas; la vencida ya no
+        assertEquals(18, reservaFranjaRepository.count());
+        assertFalse(indiceAgenda.hayConflicto("vet-1", vencida.getFecha(), vencida.getHora(), 30));
+
+        assertEquals(0, vencimientoCitasService.vencer().get("vencidas"));
+        Map<String, Object> estadisticas = vencimientoCitasService.estadisticas();
+        assertTrue((Long) estadisticas.get("totalVencidas") >= OLVIDADAS + 1);
+        assertTrue((Long) estadisticas.get("ejecuciones") >= 2);
+    }
+
+    private Cita cita(LocalDate fecha, Estado estado) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario("vet-1");
+        cita.setIdPaciente("pac-" + estado + "-" + fecha);
+        cita.setFecha(fecha);
+        cita.setHora(LocalTime.of(9, 0).plusHours(estado.ordinal()));
+        cita.setEstado(estado);
+        cita.setServicio(consulta);
+        return cita;
+    }
+}
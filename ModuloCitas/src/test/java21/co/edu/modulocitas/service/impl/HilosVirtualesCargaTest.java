@@ -0,0 +1,160 @@
+package co.edu.modulocitas.service.impl;
+
+import co.edu.modulocitas.dto.ContextoNotificacion;
+import co.edu.modulocitas.enums.Estado;
+import co.edu.modulocitas.model.Cita;
+import co.edu.modulocitas.model.Servicio;
+import co.edu.modulocitas.repository.CitaRepository;
+import co.edu.modulocitas.repository.ReservaFranjaRepository;
+import co.edu.modulocitas.repository.ServicioRepository;
+import co.edu.modulocitas.service.AgendaService;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+// Solo se compila con el perfil java21 (src/test/java21)
+@SpringBootTest
+@ActiveProfiles({"h2", "java21"})
+class HilosVirtualesCargaTest {
+
+    private static final int RESERVAS = 1000;
+    // Maximo de hilos de Tomcat por defecto (server.tomcat.threads.max)
+    private static final int HILOS_TOMCAT = 200;
+    private static final int LATENCIA_MS = 50;
+    private static final LocalDate FECHA = LocalDate.now().plusDays(30);
+
+    @MockBean
+    private UsuarioServiceImpl usuarioServiceImpl;
+    @MockBean
+    private NotificacionesService notificacionesService;
+
+    @Autowired
+    private AgendaService agendaService;
+    @Autowired
+    private CitaRepository citaRepository;
+    @Autowired
+    private ServicioRepository servicioRepository;
+    @Autowired
+    private ReservaFranjaRepository reservaFranjaRepository;
+    @Autowired
+    private IndiceAgenda indiceAgenda;
+
+    private Servicio servicio;
+
+    @BeforeEach
+    void setUp() {
+        reservaFranjaRepository.deleteAllInBatch();
+        citaRepository.deleteAllInBatch();
+        indiceAgenda.invalidarTodo();
+        servicio = new Servicio();
+        servicio.setTipo("Consulta");
+        servicio.setDuracion(30);
+        servicio = servicioRepository.save(servicio);
+
+        // usuarios responde con latencia fija; la espera es bloqueante como la de WebClient.block()
+        doAnswer(invocacion -> {
+            Thread.sleep(LATENCIA_MS);
+            return null;
+        }).when(usuarioServiceImpl).verificarDisponibilidadVeterinario(any(), any(), any());
+        when(usuarioServiceImpl.obtenerContextoNotificacion(any(), any())).thenAnswer(invocacion -> {
+            Thread.sleep(LATENCIA_MS);
+            return new ContextoNotificacion("dueno@correo.com", "Luna", "Perez");
+        });
+    }
+
+    @Test
+    void milReservasConcurrentesSinHilosVirtualesFijadosEnElCodigoDeLaAgenda() throws Exception {
+        double porSegundoPlataforma;
+        try (ExecutorService hilos = Executors.newFixedThreadPool(HILOS_TOMCAT)) {
+            porSegundoPlataforma = reservar(hilos, "p");
+        }
+
+        List<RecordedEvent> fijados = new CopyOnWriteArrayList<>();
+        double porSegundoVirtual;
+        try (RecordingStream jfr = new RecordingStream()) {
+            jfr.enable("jdk.VirtualThreadPinned").withStackTrace().withThreshold(Duration.ZERO);
+            jfr.onEvent("jdk.VirtualThreadPinned", fijados::add);
+            jfr.startAsync();
+            try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+                porSegundoVirtual = reservar(hilos, "v");
+            }
+            jfr.stop();
+        }
+
+        List<String> fijadosPropios = fijados.stream()
+                .map(HilosVirtualesCargaTest::pila)
+                .filter(pila -> pila.contains("co.edu.modulocitas"))
+                .distinct()
+                .toList();
+        System.out.printf("HilosVirtuales: %d reservas concurrentes con usuarios a %d ms: %d hilos de plataforma %.0f/s, "
+                        + "hilos virtuales %.0f/s; %d eventos de hilo fijado (%d en la agenda)%n",
+                RESERVAS, LATENCIA_MS, HILOS_TOMCAT, porSegundoPlataforma, porSegundoVirtual,
+                fijados.size(), fijadosPropios.size());
+        fijadosPropios.forEach(pila -> System.out.println("Hilo virtual fijado:\n" + pila));
+        assertEquals(List.of(), fijadosPropios);
+        assertEquals(2L * RESERVAS, citaRepository.count());
+    }
+
+    // Lanza todas las reservas a la vez, una por veterinario, y devuelve reservas por segundo
+    private double reservar(ExecutorService hilos, String prefijo) throws Exception {
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<Cita>> reservas = new ArrayList<>();
+        for (int i = 0; i < RESERVAS; i++) {
+            Cita cita = cita("vet-" + prefijo + "-" + i);
+            reservas.add(hilos.submit(() -> {
+                salida.await();
+                return agendaService.crearCita(cita);
+            }));
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+        for (Future<Cita> reserva : reservas) {
+            reserva.get();
+        }
+        return RESERVAS / ((System.nanoTime() - inicio) / 1e9);
+    }
+
+    private static String pila(RecordedEvent evento) {
+        if (evento.getStackTrace() == null) {
+            return "";
+        }
+        return evento.getStackTrace().getFrames().stream()
+                .map(RecordedFrame::getMethod)
+                .map(metodo -> "  " + metodo.getType().getName() + "." + metodo.getName())
+                .collect(Collectors.joining("\n"));
+    }
+
+    private Cita cita(String veterinario) {
+        Cita cita = new Cita();
+        cita.setIdVeterinario(veterinario);
+        cita.setIdPaciente("pac-" + veterinario);
+        cita.setFecha(FECHA);
+        cita.setHora(LocalTime.of(9, 0));
+        cita.setEstado(Estado.PROGRAMADA);
+        cita.setServicio(servicio);
+        return cita;
+    }
+}
@@ -35,6 +35,20 @@ def notificar(data: Notificacion):
         raise HTTPException(status_code=500, detail=str(e))
 
 
+# Varias notificaciones en una peticion (p. ej. las citas reprogramadas por una urgencia)
+@app.post("/notificar/lote")
+def notificar_lote(datos: list[Notificacion]):
+    enviadas = 0
+    errores = []
+    for data in datos:
+        try:
+            notificar(data)
+            enviadas += 1
+        except HTTPException as e:
+            errores.append({"destinatario": data.destinatario, "detalle": e.detail})
+    return {"estado": "ok", "enviadas": enviadas, "errores": errores}
+
+
 
 # Modelo de entrada
 class NotificacionAdjunto(BaseModel):
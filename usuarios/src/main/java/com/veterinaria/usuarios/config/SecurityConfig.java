@@ -1,6 +1,7 @@
 package com.veterinaria.usuarios.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -38,7 +39,8 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                                   @Value("${servicios.token:}") String tokenServicios) throws Exception {
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(AbstractHttpConfigurer::disable)
@@ -47,9 +49,15 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/api/public/**").permitAll()
                         .requestMatchers("/api/disponibilidades/verificar/**").permitAll()
+                        .requestMatchers("/api/disponibilidades/veterinario/*/activas").permitAll()
                         .requestMatchers("/api/veterinarios/nombre/**").permitAll()
                         .requestMatchers("/api/mascotas/nombre/**").permitAll()
                         .requestMatchers("/api/usuarios/buscarEmail/idMascota/**").permitAll()
+                        // Consultas por lote de emails y nombres: solo otros microservicios con el token compartido
+                        .requestMatchers("/api/usuarios/contexto-notificacion").hasRole("SERVICIO")
+                        .requestMatchers("/api/veterinarios/nombres").hasRole("SERVICIO")
+                        .requestMatchers("/api/mascotas/nombres").hasRole("SERVICIO")
+                        .requestMatchers("/api/usuarios/emails").hasRole("SERVICIO")
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
 
                         // Rutas para administradores
@@ -68,6 +76,7 @@ public class SecurityConfig {
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
                 .authenticationProvider(authenticationProvider())
+                .addFilterBefore(new ServicioInternoFilter(tokenServicios), UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
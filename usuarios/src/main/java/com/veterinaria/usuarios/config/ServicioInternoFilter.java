@@ -0,0 +1,48 @@
+package com.veterinaria.usuarios.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+// Autentica con ROLE_SERVICIO las peticiones de otros microservicios (ModuloCitas) que traen el
+// secreto compartido servicios.token en la cabecera X-Servicio-Token. Sin token configurado no autentica a nadie
+public class ServicioInternoFilter extends OncePerRequestFilter {
+
+    public static final String CABECERA = "X-Servicio-Token";
+
+    private final byte[] token;
+
+    public ServicioInternoFilter(String token) {
+        this.token = token == null ? new byte[0] : token.getBytes(StandardCharsets.UTF_8);
+        if (this.token.length == 0) {
+            System.err.println("servicios.token vacio (SERVICIOS_TOKEN): se rechazan las consultas por lote");
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        String recibido = request.getHeader(CABECERA);
+        // Comparacion en tiempo constante para no revelar el secreto por la duracion de la respuesta
+        if (token.length > 0 && recibido != null
+                && MessageDigest.isEqual(token, recibido.getBytes(StandardCharsets.UTF_8))) {
+            SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                    "servicio-interno", null, List.of(new SimpleGrantedAuthority("ROLE_SERVICIO"))));
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -75,6 +76,12 @@ public class MascotaController {
         }
     }
 
+    // Nombres de varias mascotas con una sola consulta, por id; los ids que no existen no aparecen
+    @GetMapping("/nombres")
+    public ResponseEntity<Map<String, String>> findNombresByIds(@RequestParam List<String> ids) {
+        return ResponseEntity.ok(mascotaService.findNombresByIds(ids));
+    }
+
     @GetMapping("/nombre/{id}")
     public ResponseEntity<String> findNombreById(@PathVariable String id) {
 
@@ -1,5 +1,6 @@
 package com.veterinaria.usuarios.controller;
 
+import com.veterinaria.usuarios.dto.ContextoNotificacionDTO;
 import com.veterinaria.usuarios.model.Propietario;
 import com.veterinaria.usuarios.service.PropietarioService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.*;
 import jakarta.validation.Valid;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -197,6 +199,19 @@ public class PropietarioController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // Los tres datos de un aviso de ModuloCitas en una sola peticion
+    @GetMapping("/contexto-notificacion")
+    public ContextoNotificacionDTO obtenerContextoNotificacion(@RequestParam String idMascota,
+                                                              @RequestParam String idVeterinario) {
+        return propietarioService.buscarContextoNotificacion(idMascota, idVeterinario);
+    }
+
+    // Email del propietario de varias mascotas, por id de mascota
+    @GetMapping("/emails")
+    public Map<String, String> obtenerEmailsPorMascotas(@RequestParam List<String> idsMascota) {
+        return propietarioService.buscarEmailsPorMascotaIds(idsMascota);
+    }
+
     @GetMapping("/buscarEmail/idMascota/{idMascota}")
     public String obtenerMascotaPorId(@PathVariable String idMascota) {
         return propietarioService.buscarEmailPorMascotaId(idMascota);
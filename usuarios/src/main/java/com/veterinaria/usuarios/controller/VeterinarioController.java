@@ -9,6 +9,7 @@ import jakarta.validation.Valid;
 
 import javax.swing.text.html.Option;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -64,6 +65,12 @@ public class VeterinarioController {
         return ResponseEntity.noContent().build();
     }
 
+    // Nombres de varios veterinarios con una sola consulta, por id; los ids que no existen no aparecen
+    @GetMapping("/nombres")
+    public ResponseEntity<Map<String, String>> getNombresVeterinariosByIds(@RequestParam List<String> ids) {
+        return ResponseEntity.ok(veterinarioService.findNombresByIds(ids));
+    }
+
     @GetMapping("/nombre/{id}")
     public ResponseEntity<String> getNombreVeterinariosById(@PathVariable String id) {
         Optional<Veterinario> veterinario = veterinarioService.findById(id);
@@ -0,0 +1,15 @@
+package com.veterinaria.usuarios.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Lo que ModuloCitas necesita para avisar de una cita; cada campo es null si su id no existe
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContextoNotificacionDTO {
+    private String email;
+    private String nombreMascota;
+    private String nombreVeterinario;
+}
@@ -2,11 +2,16 @@ package com.veterinaria.usuarios.repository;
 
 import com.veterinaria.usuarios.model.Mascota;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface MascotaRepository extends MongoRepository<Mascota, String> {
     List<Mascota> findByPropietarioId(String propietarioId);
+
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'nombre': 1, 'propietarioId': 1 }")
+    List<Mascota> findNombresByIdIn(Collection<String> ids);
 }
\ No newline at end of file
@@ -5,6 +5,8 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -20,4 +22,7 @@ public interface PropietarioRepository extends MongoRepository<Propietario, Stri
     Optional<Propietario> findByMascotaId(String mascotaId);
 
     String findIdByMascotasId(String id);
+
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'email': 1 }")
+    List<Propietario> findEmailsByIdIn(Collection<String> ids);
 }
\ No newline at end of file
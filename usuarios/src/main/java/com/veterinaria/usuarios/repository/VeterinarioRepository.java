@@ -2,7 +2,10 @@ package com.veterinaria.usuarios.repository;
 
 import com.veterinaria.usuarios.model.Veterinario;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +14,7 @@ public interface VeterinarioRepository extends MongoRepository<Veterinario, Stri
     Optional<Veterinario> findByMatriculaProfesional(String matricula);
     boolean existsByEmail(String email);
     boolean existsByMatriculaProfesional(String matricula);
+
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'nombre': 1 }")
+    List<Veterinario> findNombresByIdIn(Collection<String> ids);
 }
\ No newline at end of file
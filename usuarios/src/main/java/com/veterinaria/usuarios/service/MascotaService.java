@@ -3,6 +3,7 @@ package com.veterinaria.usuarios.service;
 import com.veterinaria.usuarios.dto.MascotaDTO;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface MascotaService {
@@ -12,4 +13,5 @@ public interface MascotaService {
     MascotaDTO save(MascotaDTO mascotaDTO);
     MascotaDTO update(String id, MascotaDTO mascotaDTO);
     void deleteById(String id);
+    Map<String, String> findNombresByIds(List<String> ids);
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package com.veterinaria.usuarios.service;
 
+import com.veterinaria.usuarios.dto.ContextoNotificacionDTO;
 import com.veterinaria.usuarios.dto.PropietarioDTO;
 import com.veterinaria.usuarios.model.Propietario;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface PropietarioService {
@@ -41,4 +43,10 @@ public interface PropietarioService {
 
     String buscarPropietarioPorMascotaId(String id);
     String buscarEmailPorMascotaId(String id);
+
+    // Email del propietario, nombre de la mascota y nombre del veterinario con una sola agregacion
+    ContextoNotificacionDTO buscarContextoNotificacion(String idMascota, String idVeterinario);
+
+    // Email del propietario de cada mascota; las mascotas sin propietario no aparecen
+    Map<String, String> buscarEmailsPorMascotaIds(List<String> idsMascota);
 }
\ No newline at end of file
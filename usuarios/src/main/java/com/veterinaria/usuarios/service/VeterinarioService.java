@@ -2,6 +2,7 @@ package com.veterinaria.usuarios.service;
 
 import com.veterinaria.usuarios.model.Veterinario;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface VeterinarioService {
@@ -14,4 +15,5 @@ public interface VeterinarioService {
     void deleteById(String id);
     boolean existsByEmail(String email);
     boolean existsByMatricula(String matricula);
+    Map<String, String> findNombresByIds(List<String> ids);
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.veterinaria.usuarios.service.impl;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+// Avisa a ModuloCitas de que descarte los emails y nombres que tiene guardados de estos ids.
+// Se envia en segundo plano y sin reintentos: si falla, ModuloCitas los renueva al caducar.
+@Service
+public class AvisoCitasService {
+
+    private final RestTemplate restTemplate;
+    private final Executor executor;
+    private final String url;
+    private final boolean habilitado;
+
+    public AvisoCitasService(RestTemplateBuilder restTemplateBuilder,
+                             @Qualifier("applicationTaskExecutor") Executor executor,
+                             @Value("${citas.url:http://localhost:8081}") String url,
+                             @Value("${citas.invalidar-cache:true}") boolean habilitado,
+                             @Value("${servicios.token:}") String tokenServicios) {
+        // ModuloCitas solo acepta el aviso con el secreto compartido entre servicios
+        this.restTemplate = restTemplateBuilder
+                .defaultHeader("X-Servicio-Token", tokenServicios)
+                .setConnectTimeout(Duration.ofSeconds(1))
+                .setReadTimeout(Duration.ofSeconds(2))
+                .build();
+        this.executor = executor;
+        this.url = url + "/agenda/usuarios/cache/invalidar";
+        this.habilitado = habilitado;
+    }
+
+    public void mascotasModificadas(List<String> idsMascota) {
+        avisar(Map.of("mascotas", idsMascota));
+    }
+
+    public void veterinarioModificado(String idVeterinario) {
+        avisar(Map.of("veterinarios", List.of(idVeterinario)));
+    }
+
+    private void avisar(Map<String, List<String>> ids) {
+        if (!habilitado || ids.values().stream().allMatch(List::isEmpty)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                restTemplate.postForLocation(url, ids);
+            } catch (RestClientException e) {
+                System.err.println("No se pudo invalidar la cache de ModuloCitas: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -9,7 +9,9 @@ import com.veterinaria.usuarios.service.MascotaService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -18,11 +20,14 @@ public class MascotaServiceImpl implements MascotaService {
 
     private final MascotaRepository mascotaRepository;
     private final PropietarioRepository propietarioRepository;
+    private final AvisoCitasService avisoCitasService;
 
     @Autowired
-    public MascotaServiceImpl(MascotaRepository mascotaRepository, PropietarioRepository propietarioRepository) {
+    public MascotaServiceImpl(MascotaRepository mascotaRepository, PropietarioRepository propietarioRepository,
+                              AvisoCitasService avisoCitasService) {
         this.mascotaRepository = mascotaRepository;
         this.propietarioRepository = propietarioRepository;
+        this.avisoCitasService = avisoCitasService;
     }
 
     @Override
@@ -74,6 +79,8 @@ public class MascotaServiceImpl implements MascotaService {
         Mascota mascota = convertToEntity(mascotaDTO);
         mascota.setId(id);
         mascota = mascotaRepository.save(mascota);
+        // Cambia su nombre y quiza su propietario (el email de sus avisos)
+        avisoCitasService.mascotasModificadas(List.of(id));
         return convertToDTO(mascota);
     }
 
@@ -95,6 +102,19 @@ public class MascotaServiceImpl implements MascotaService {
         }
 
         mascotaRepository.deleteById(id);
+        avisoCitasService.mascotasModificadas(List.of(id));
+    }
+
+    // Un solo $in para todos los ids; los que no existen no aparecen
+    @Override
+    public Map<String, String> findNombresByIds(List<String> ids) {
+        Map<String, String> nombres = new HashMap<>();
+        for (Mascota mascota : mascotaRepository.findNombresByIdIn(ids)) {
+            if (mascota.getNombre() != null) {
+                nombres.put(mascota.getId(), mascota.getNombre());
+            }
+        }
+        return nombres;
     }
 
     private MascotaDTO convertToDTO(Mascota mascota) {
@@ -1,13 +1,23 @@
 package com.veterinaria.usuarios.service.impl;
 
+import com.veterinaria.usuarios.dto.ContextoNotificacionDTO;
 import com.veterinaria.usuarios.dto.PropietarioDTO;
+import com.veterinaria.usuarios.model.Mascota;
 import com.veterinaria.usuarios.model.Propietario;
+import com.veterinaria.usuarios.model.Veterinario;
+import com.veterinaria.usuarios.repository.MascotaRepository;
 import com.veterinaria.usuarios.repository.PropietarioRepository;
 import com.veterinaria.usuarios.service.PropietarioService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -15,10 +25,17 @@ import java.util.stream.Collectors;
 public class PropietarioServiceImpl implements PropietarioService {
 
     private final PropietarioRepository propietarioRepository;
+    private final MascotaRepository mascotaRepository;
+    private final AvisoCitasService avisoCitasService;
+    private final MongoTemplate mongoTemplate;
 
     @Autowired
-    public PropietarioServiceImpl(PropietarioRepository propietarioRepository) {
+    public PropietarioServiceImpl(PropietarioRepository propietarioRepository, MascotaRepository mascotaRepository,
+                                  AvisoCitasService avisoCitasService, MongoTemplate mongoTemplate) {
         this.propietarioRepository = propietarioRepository;
+        this.mascotaRepository = mascotaRepository;
+        this.avisoCitasService = avisoCitasService;
+        this.mongoTemplate = mongoTemplate;
     }
 
     @Override
@@ -50,6 +67,7 @@ public class PropietarioServiceImpl implements PropietarioService {
         Propietario propietario = convertToEntity(propietarioDTO);
         propietario.setId(id);
         propietario = propietarioRepository.save(propietario);
+        avisarMascotas(id);
         return convertToDTO(propietario);
     }
 
@@ -59,6 +77,14 @@ public class PropietarioServiceImpl implements PropietarioService {
             throw new RuntimeException("Propietario no encontrado con ID: " + id);
         }
         propietarioRepository.deleteById(id);
+        avisarMascotas(id);
+    }
+
+    // ModuloCitas guarda el email del propietario por cada una de sus mascotas
+    private void avisarMascotas(String idPropietario) {
+        avisoCitasService.mascotasModificadas(mascotaRepository.findByPropietarioId(idPropietario).stream()
+                .map(Mascota::getId)
+                .toList());
     }
 
     @Override
@@ -181,4 +207,78 @@ public class PropietarioServiceImpl implements PropietarioService {
             return null;
         }
     }
+
+    // Parte de la mascota, le une el veterinario con $unionWith (asi su nombre llega aunque la mascota no
+    // exista), agrupa ambos en un documento y busca el email del propietario con $lookup por propietarioId
+    @Override
+    public ContextoNotificacionDTO buscarContextoNotificacion(String idMascota, String idVeterinario) {
+        List<Document> etapas = List.of(
+                new Document("$match", new Document("_id", idDocumento(idMascota))),
+                new Document("$project", new Document("_id", 0)
+                        .append("nombreMascota", "$nombre")
+                        .append("propietarioId", 1)),
+                new Document("$unionWith", new Document("coll", mongoTemplate.getCollectionName(Veterinario.class))
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("_id", idDocumento(idVeterinario))),
+                                new Document("$project", new Document("_id", 0).append("nombreVeterinario", "$nombre"))))),
+                new Document("$group", new Document("_id", null)
+                        .append("nombreMascota", new Document("$max", "$nombreMascota"))
+                        .append("propietarioId", new Document("$max", "$propietarioId"))
+                        .append("nombreVeterinario", new Document("$max", "$nombreVeterinario"))),
+                new Document("$lookup", new Document("from", mongoTemplate.getCollectionName(Propietario.class))
+                        .append("let", new Document("propietario", new Document("$convert", new Document("input", "$propietarioId")
+                                .append("to", "objectId")
+                                .append("onError", "$propietarioId")
+                                .append("onNull", null))))
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("$expr", new Document("$eq", List.of("$_id", "$$propietario")))),
+                                new Document("$project", new Document("_id", 0).append("email", 1))))
+                        .append("as", "propietario")),
+                new Document("$project", new Document("_id", 0)
+                        .append("nombreMascota", 1)
+                        .append("nombreVeterinario", 1)
+                        .append("email", new Document("$arrayElemAt", List.of("$propietario.email", 0)))));
+
+        Document resultado = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Mascota.class))
+                .aggregate(etapas)
+                .first();
+        if (resultado == null) {
+            return new ContextoNotificacionDTO();
+        }
+        return new ContextoNotificacionDTO(resultado.getString("email"), resultado.getString("nombreMascota"),
+                resultado.getString("nombreVeterinario"));
+    }
+
+    // Dos $in: las mascotas con su propietarioId y despues los emails de esos propietarios
+    @Override
+    public Map<String, String> buscarEmailsPorMascotaIds(List<String> idsMascota) {
+        Map<String, String> propietarioPorMascota = new HashMap<>();
+        for (Mascota mascota : mascotaRepository.findNombresByIdIn(idsMascota)) {
+            if (mascota.getPropietarioId() != null) {
+                propietarioPorMascota.put(mascota.getId(), mascota.getPropietarioId());
+            }
+        }
+        if (propietarioPorMascota.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> emailPorPropietario = new HashMap<>();
+        for (Propietario propietario : propietarioRepository.findEmailsByIdIn(new HashSet<>(propietarioPorMascota.values()))) {
+            if (propietario.getEmail() != null) {
+                emailPorPropietario.put(propietario.getId(), propietario.getEmail());
+            }
+        }
+        Map<String, String> emails = new HashMap<>();
+        propietarioPorMascota.forEach((idMascota, idPropietario) -> {
+            String email = emailPorPropietario.get(idPropietario);
+            if (email != null) {
+                emails.put(idMascota, email);
+            }
+        });
+        return emails;
+    }
+
+    // Spring Data guarda como ObjectId los ids String que tienen su formato
+    private static Object idDocumento(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
 }
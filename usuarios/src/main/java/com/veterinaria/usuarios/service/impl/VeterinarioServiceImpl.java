@@ -5,7 +5,9 @@ import com.veterinaria.usuarios.repository.VeterinarioRepository;
 import com.veterinaria.usuarios.service.VeterinarioService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -14,6 +16,9 @@ public class VeterinarioServiceImpl implements VeterinarioService {
     @Autowired
     private VeterinarioRepository veterinarioRepository;
 
+    @Autowired
+    private AvisoCitasService avisoCitasService;
+
     @Override
     public List<Veterinario> findAll() {
         return veterinarioRepository.findAll();
@@ -43,7 +48,9 @@ public class VeterinarioServiceImpl implements VeterinarioService {
     public Veterinario update(String id, Veterinario veterinario) {
         if (veterinarioRepository.existsById(id)) {
             veterinario.setId(id);
-            return veterinarioRepository.save(veterinario);
+            Veterinario guardado = veterinarioRepository.save(veterinario);
+            avisoCitasService.veterinarioModificado(id);
+            return guardado;
         }
         return null;
     }
@@ -51,6 +58,7 @@ public class VeterinarioServiceImpl implements VeterinarioService {
     @Override
     public void deleteById(String id) {
         veterinarioRepository.deleteById(id);
+        avisoCitasService.veterinarioModificado(id);
     }
 
     @Override
@@ -62,4 +70,16 @@ public class VeterinarioServiceImpl implements VeterinarioService {
     public boolean existsByMatricula(String matricula) {
         return veterinarioRepository.existsByMatriculaProfesional(matricula);
     }
+
+    // Un solo $in para todos los ids; los que no existen no aparecen
+    @Override
+    public Map<String, String> findNombresByIds(List<String> ids) {
+        Map<String, String> nombres = new HashMap<>();
+        for (Veterinario veterinario : veterinarioRepository.findNombresByIdIn(ids)) {
+            if (veterinario.getNombre() != null) {
+                nombres.put(veterinario.getId(), veterinario.getNombre());
+            }
+        }
+        return nombres;
+    }
 }
\ No newline at end of file
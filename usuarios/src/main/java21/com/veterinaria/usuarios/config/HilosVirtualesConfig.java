@@ -0,0 +1,29 @@
+package com.veterinaria.usuarios.config;
+
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+
+import java.util.concurrent.Executors;
+
+// Solo se compila con el perfil java21. Spring Boot 3.1 aun no tiene spring.threads.virtual.enabled,
+// asi que los hilos virtuales se configuran a mano: las peticiones pasan casi todo el tiempo esperando a Mongo.
+@Configuration
+public class HilosVirtualesConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> hilosVirtualesTomcat() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    // Reemplaza el pool de Spring para @Async y las peticiones asincronas de MVC
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
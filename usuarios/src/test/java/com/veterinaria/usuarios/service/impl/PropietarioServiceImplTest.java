@@ -0,0 +1,98 @@
+package com.veterinaria.usuarios.service.impl;
+
+import com.mongodb.client.MongoCollection;
+import com.veterinaria.usuarios.dto.ContextoNotificacionDTO;
+import com.veterinaria.usuarios.model.Mascota;
+import com.veterinaria.usuarios.model.Propietario;
+import com.veterinaria.usuarios.model.Veterinario;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Necesita un MongoDB en localhost, igual que UsuariosApplicationTests
+@SpringBootTest(properties = "citas.invalidar-cache=false")
+class PropietarioServiceImplTest {
+
+    @Autowired
+    private PropietarioServiceImpl propietarioService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ObjectId idPropietario = new ObjectId();
+    private final ObjectId idMascota = new ObjectId();
+    private final ObjectId idMascotaSinPropietario = new ObjectId();
+    private final ObjectId idVeterinario = new ObjectId();
+
+    // Documentos en crudo, como los deja la aplicacion: propietarioId es el ObjectId del propietario en texto
+    @BeforeEach
+    void setUp() {
+        coleccion(Propietario.class).insertOne(new Document("_id", idPropietario)
+                .append("nombre", "Ana").append("email", "ana@correo.com"));
+        coleccion(Mascota.class).insertOne(new Document("_id", idMascota)
+                .append("nombre", "Toby").append("propietarioId", idPropietario.toHexString()));
+        coleccion(Mascota.class).insertOne(new Document("_id", idMascotaSinPropietario)
+                .append("nombre", "Luna").append("propietarioId", new ObjectId().toHexString()));
+        coleccion(Veterinario.class).insertOne(new Document("_id", idVeterinario).append("nombre", "Dr. Perez"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        coleccion(Propietario.class).deleteOne(new Document("_id", idPropietario));
+        coleccion(Mascota.class).deleteOne(new Document("_id", idMascota));
+        coleccion(Mascota.class).deleteOne(new Document("_id", idMascotaSinPropietario));
+        coleccion(Veterinario.class).deleteOne(new Document("_id", idVeterinario));
+    }
+
+    @Test
+    void devuelveEmailYNombresEnUnaConsulta() {
+        ContextoNotificacionDTO contexto = propietarioService.buscarContextoNotificacion(
+                idMascota.toHexString(), idVeterinario.toHexString());
+
+        assertEquals("ana@correo.com", contexto.getEmail());
+        assertEquals("Toby", contexto.getNombreMascota());
+        assertEquals("Dr. Perez", contexto.getNombreVeterinario());
+    }
+
+    @Test
+    void sinMascotaSoloDevuelveElVeterinario() {
+        ContextoNotificacionDTO contexto = propietarioService.buscarContextoNotificacion(
+                new ObjectId().toHexString(), idVeterinario.toHexString());
+
+        assertNull(contexto.getEmail());
+        assertNull(contexto.getNombreMascota());
+        assertEquals("Dr. Perez", contexto.getNombreVeterinario());
+    }
+
+    @Test
+    void sinPropietarioDevuelveLosNombresSinEmail() {
+        ContextoNotificacionDTO contexto = propietarioService.buscarContextoNotificacion(
+                idMascotaSinPropietario.toHexString(), idVeterinario.toHexString());
+
+        assertNull(contexto.getEmail());
+        assertEquals("Luna", contexto.getNombreMascota());
+        assertEquals("Dr. Perez", contexto.getNombreVeterinario());
+    }
+
+    @Test
+    void sinMascotaNiVeterinarioDevuelveUnContextoVacio() {
+        ContextoNotificacionDTO contexto = propietarioService.buscarContextoNotificacion(
+                new ObjectId().toHexString(), new ObjectId().toHexString());
+
+        assertNull(contexto.getEmail());
+        assertNull(contexto.getNombreMascota());
+        assertNull(contexto.getNombreVeterinario());
+    }
+
+    private MongoCollection<Document> coleccion(Class<?> tipo) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(tipo));
+    }
+}